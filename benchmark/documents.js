@@ -0,0 +1,140 @@
+const fs = require('fs');
+
+// Content each page carries at most, larger documents get more pages
+const PageContentSize = 128 * 1024;
+const Line = '0 -14 Td (Lorem ipsum dolor sit amet, consectetur adipiscing '
+  + 'elit, sed do eiusmod tempor incididunt ut labore.) Tj\n';
+
+/**
+ * Parse a size such as "100k", "1m" or "1048576".
+ *
+ * @param {string} size
+ * @returns {number} Size in bytes
+ */
+const parseSize = (size) => {
+  const matches = /^(\d+(?:\.\d+)?)\s*([km]?)b?$/i.exec(String(size).trim());
+
+  if (!matches) {
+    throw new Error(`Could not parse size: ${size}`);
+  }
+
+  const factor = { '': 1, k: 1024, m: 1024 * 1024 }[matches[2].toLowerCase()];
+
+  return Math.round(Number(matches[1]) * factor);
+};
+
+/**
+ * Format a size in bytes the way it is parsed.
+ *
+ * @param {number} size
+ * @returns {string}
+ */
+const formatSize = (size) => {
+  if (size >= 1024 * 1024) {
+    return `${+(size / 1024 / 1024).toFixed(1)}m`;
+  }
+
+  return size >= 1024 ? `${+(size / 1024).toFixed(1)}k` : `${size}`;
+};
+
+const pageContent = (page, size) => {
+  const header = `BT /F1 12 Tf 72 800 Td (Benchmark page ${page + 1}) Tj\n`;
+  const lines = Math.max(0, Math.floor((size - header.length) / Line.length));
+
+  return `${header}${Line.repeat(lines)}ET\n`;
+};
+
+/**
+ * Build an unsigned PDF of about the given size, made of text pages.
+ *
+ * @param {number} size - Size in bytes
+ * @returns {Buffer} document
+ */
+const buildDocument = (size) => {
+  const pageCount = Math.max(1, Math.ceil(size / PageContentSize));
+  const fontId = 3;
+  const pageId = (page) => 4 + page * 2;
+  const objects = [
+    '<< /Type /Catalog /Pages 2 0 R >>',
+    `<< /Type /Pages /Count ${pageCount} /Kids [${
+      Array.from({ length: pageCount }, (_, page) => `${pageId(page)} 0 R`)
+        .join(' ')
+    }] >>`,
+    '<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica >>',
+  ];
+
+  for (let page = 0; page < pageCount; page++) {
+    const content = pageContent(page, size / pageCount);
+
+    objects.push(
+      `<< /Type /Page /Parent 2 0 R /MediaBox [0 0 595 842] /Contents ${
+        pageId(page) + 1} 0 R /Resources << /Font << /F1 ${fontId} 0 R >> >> >>`,
+      `<< /Length ${content.length} >>\nstream\n${content}endstream`,
+    );
+  }
+
+  let pdf = '%PDF-1.4\n%\xe2\xe3\xcf\xd3\n';
+  const offsets = objects.map((object, index) => {
+    const offset = Buffer.byteLength(pdf, 'latin1');
+    pdf += `${index + 1} 0 obj\n${object}\nendobj\n`;
+
+    return offset;
+  });
+
+  const xrefOffset = Buffer.byteLength(pdf, 'latin1');
+  pdf += `xref\n0 ${objects.length + 1}\n0000000000 65535 f \n`;
+  pdf += offsets
+    .map((offset) => `${String(offset).padStart(10, '0')} 00000 n \n`)
+    .join('');
+  pdf += `trailer\n<< /Size ${objects.length + 1} /Root 1 0 R >>\n`;
+  pdf += `startxref\n${xrefOffset}\n%%EOF\n`;
+
+  return Buffer.from(pdf, 'latin1');
+};
+
+/**
+ * Write an unsigned PDF of about the given size.
+ *
+ * @param {string} path
+ * @param {number} size - Size in bytes
+ */
+const writeDocument = (path, size) => {
+  fs.writeFileSync(path, buildDocument(size));
+};
+
+/**
+ * Bytes the last signature of a document covers, i.e. everything but its
+ * placeholder, taken from its byte range.
+ *
+ * @param {Buffer} document
+ * @returns {Buffer}
+ */
+const signedContent = (document) => {
+  const regex = /\/ByteRange\s*\[\s*(\d+)\s+(\d+)\s+(\d+)\s+(\d+)\s*\]/g;
+  const text = document.toString('latin1');
+  let matches = null;
+  let last = null;
+
+  while ((matches = regex.exec(text)) !== null) {
+    last = matches;
+  }
+
+  if (!last) {
+    throw new Error('Document has no signature placeholder');
+  }
+
+  const [start, length, gapEnd, endLength] = last.slice(1).map(Number);
+
+  return Buffer.concat([
+    document.slice(start, start + length),
+    document.slice(gapEnd, gapEnd + endLength),
+  ]);
+};
+
+module.exports = {
+  parseSize,
+  formatSize,
+  buildDocument,
+  writeDocument,
+  signedContent,
+};
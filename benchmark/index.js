@@ -0,0 +1,252 @@
+const fs = require('fs');
+const os = require('os');
+const path = require('path');
+
+const {
+  parseSize,
+  formatSize,
+  writeDocument,
+  signedContent,
+} = require('./documents');
+const { createAuthority, signContent } = require('./material');
+const { summarize, createMonitor } = require('./stats');
+const {
+  Operations,
+  createSpawnTransport,
+  createDaemonTransport,
+} = require('./transports');
+
+const Usage = `
+Throughput benchmark of the package against the bundled jar
+
+Usage: npm run benchmark -- [options]
+  --operations <list>    Operations to run, default is placeholder,digest,sign,ltv
+  --sizes <list>         Document sizes, default is 100k,1m
+  --concurrency <list>   Calls in flight, default is 1,4
+  --iterations <int>     Calls per run, default is 20
+  --transports <list>    Transports to compare, default is spawn,daemon
+                           * spawn   A JVM per call, as the package functions run
+                           * daemon  A single warmed-up daemon JVM
+  --warmup <int>         Daemon warm-up iterations, default is the daemon default
+  --package <path>       Directory holding libs/ with the jar, default is the repository
+  --sample <int>         Process sampling interval in milliseconds, default is 20
+  --json <path>          Where to write the results as JSON
+`;
+
+const parseOptions = (argv) => {
+  const given = {};
+
+  for (let i = 0; i < argv.length; i += 2) {
+    if (!argv[i].startsWith('--') || argv[i + 1] === undefined) {
+      throw new Error(Usage);
+    }
+
+    given[argv[i].slice(2)] = argv[i + 1];
+  }
+
+  const list = (value) => value.split(',').map((item) => item.trim());
+  const options = {
+    operations: list(given.operations || Object.keys(Operations).join(',')),
+    sizes: list(given.sizes || '100k,1m').map(parseSize),
+    concurrency: list(given.concurrency || '1,4').map(Number),
+    iterations: Number(given.iterations || 20),
+    transports: list(given.transports || 'spawn,daemon'),
+    warmup: given.warmup !== undefined ? Number(given.warmup) : undefined,
+    packagePath: path.resolve(given.package || path.join(__dirname, '..')),
+    sample: Number(given.sample || 20),
+    json: given.json,
+  };
+
+  options.operations.forEach((operation) => {
+    if (!Operations[operation]) {
+      throw new Error(`Unknown operation: ${operation}`);
+    }
+  });
+
+  return options;
+};
+
+/**
+ * Documents and arguments every operation is run with, for a document size.
+ * The placeholdered and signed documents are made once, with the spawn
+ * transport, and signed with a local test signature.
+ */
+const prepareFixtures = async (directory, size, authority, transport) => {
+  const name = formatSize(size);
+  const unsigned = path.join(directory, `${name}-unsigned.pdf`);
+  const placeholdered = path.join(directory, `${name}-placeholdered.pdf`);
+  const signed = path.join(directory, `${name}-signed.pdf`);
+
+  writeDocument(unsigned, size);
+  await transport.run('placeholder', { file: unsigned, out: placeholdered });
+
+  const signature = signContent(
+    authority.directory, signedContent(fs.readFileSync(placeholdered)),
+  );
+  await transport.run('sign', { file: placeholdered, out: signed, signature });
+
+  const out = (call) => path.join(directory, `${name}-out-${call}.pdf`);
+
+  return {
+    placeholder: (call) => ({ file: unsigned, out: out(call) }),
+    digest: () => ({ file: placeholdered }),
+    sign: (call) => ({ file: placeholdered, out: out(call), signature }),
+    ltv: (call) => ({
+      file: signed,
+      out: out(call),
+      crl: [authority.crl],
+      ocsp: [authority.ocsp],
+    }),
+  };
+};
+
+const measure = async (transport, operation, argsOf, concurrency, calls) => {
+  const latencies = [];
+  let next = 0;
+
+  transport.usage();
+  const start = process.hrtime();
+
+  const worker = async () => {
+    while (next < calls) {
+      const args = argsOf(next++);
+      const callStart = process.hrtime();
+
+      await transport.run(operation, args);
+
+      const [seconds, nanoseconds] = process.hrtime(callStart);
+      latencies.push(seconds * 1000 + nanoseconds / 1e6);
+
+      if (args.out && fs.existsSync(args.out)) {
+        fs.unlinkSync(args.out);
+      }
+    }
+  };
+
+  await Promise.all(Array.from({ length: concurrency }, worker));
+
+  const [seconds, nanoseconds] = process.hrtime(start);
+  const usage = transport.usage();
+
+  return {
+    throughput: calls / (seconds + nanoseconds / 1e9),
+    ...summarize(latencies),
+    peakRssMb: usage.peakRss / 1024 / 1024,
+    cpuMsPerCall: usage.cpuMs / calls,
+  };
+};
+
+const Columns = [
+  ['transport', 9, (row) => row.transport],
+  ['operation', 11, (row) => row.operation],
+  ['size', 6, (row) => row.size],
+  ['conc', 5, (row) => row.concurrency],
+  ['calls/s', 9, (row) => row.throughput.toFixed(2)],
+  ['p50 ms', 9, (row) => row.p50.toFixed(0)],
+  ['p90 ms', 9, (row) => row.p90.toFixed(0)],
+  ['p99 ms', 9, (row) => row.p99.toFixed(0)],
+  ['max ms', 9, (row) => row.max.toFixed(0)],
+  ['peak RSS MB', 12, (row) => row.peakRssMb.toFixed(0)],
+  ['CPU ms/call', 12, (row) => row.cpuMsPerCall.toFixed(0)],
+];
+
+const formatRow = (cells) => cells
+  .map((cell, index) => String(cell).padStart(Columns[index][1]))
+  .join(' ');
+
+const removeDirectory = (directory) => {
+  fs.readdirSync(directory).forEach((entry) => {
+    const entryPath = path.join(directory, entry);
+
+    if (fs.statSync(entryPath).isDirectory()) {
+      removeDirectory(entryPath);
+    } else {
+      fs.unlinkSync(entryPath);
+    }
+  });
+
+  fs.rmdirSync(directory);
+};
+
+const run = async (options) => {
+  const directory = fs.mkdtempSync(path.join(os.tmpdir(), 'pdf-signatures-'));
+  const authorityDirectory = path.join(directory, 'authority');
+  const monitor = createMonitor(options.sample);
+  const spawn = createSpawnTransport({
+    packagePath: options.packagePath,
+    monitor,
+  });
+  const results = [];
+
+  try {
+    fs.mkdirSync(authorityDirectory);
+    const authority = {
+      directory: authorityDirectory,
+      ...createAuthority(authorityDirectory),
+    };
+
+    const fixtures = new Map();
+    for (const size of options.sizes) {
+      fixtures.set(
+        size, await prepareFixtures(directory, size, authority, spawn),
+      );
+    }
+
+    console.log(formatRow(Columns.map(([title]) => title)));
+
+    for (const transportName of options.transports) {
+      const transport = transportName === 'daemon'
+        ? await createDaemonTransport({
+          packagePath: options.packagePath,
+          workers: Math.max(...options.concurrency),
+          warmup: options.warmup,
+        })
+        : spawn;
+
+      for (const size of options.sizes) {
+        for (const operation of options.operations) {
+          for (const concurrency of options.concurrency) {
+            const row = {
+              transport: transport.name,
+              operation,
+              size: formatSize(size),
+              concurrency,
+              ...(await measure(
+                transport,
+                operation,
+                fixtures.get(size)[operation],
+                concurrency,
+                options.iterations,
+              )),
+            };
+
+            results.push(row);
+            console.log(formatRow(Columns.map(([, , cell]) => cell(row))));
+          }
+        }
+      }
+
+      await transport.close();
+    }
+  } finally {
+    removeDirectory(directory);
+  }
+
+  if (options.json) {
+    fs.writeFileSync(options.json, `${JSON.stringify(results, null, 2)}\n`);
+  }
+};
+
+if (require.main === module) {
+  Promise.resolve()
+    .then(() => run(parseOptions(process.argv.slice(2))))
+    .catch((error) => {
+      console.error(error.message || error);
+      process.exit(1);
+    });
+}
+
+module.exports = {
+  parseOptions,
+  run,
+};
@@ -0,0 +1,98 @@
+const fs = require('fs');
+const path = require('path');
+const { execFileSync } = require('child_process');
+
+const Subject = '/CN=pdf-signatures benchmark';
+
+const openssl = (directory, args) => execFileSync('openssl', args, {
+  cwd: directory,
+  stdio: ['ignore', 'ignore', 'pipe'],
+});
+
+const readBase64 = (directory, file) => fs
+  .readFileSync(path.join(directory, file))
+  .toString('base64');
+
+/**
+ * Create a throwaway self-signed certificate, with a CRL and a successful
+ * OCSP response issued for it, using the openssl command line. Nothing of
+ * it is meant to be trusted.
+ *
+ * @param {string} directory - Directory to keep the material in
+ * @returns {object} Base64-encoded DER "crl" and "ocsp"
+ */
+const createAuthority = (directory) => {
+  openssl(directory, [
+    'req', '-x509', '-newkey', 'rsa:2048', '-nodes', '-days', '2',
+    '-subj', Subject, '-keyout', 'key.pem', '-out', 'cert.pem',
+  ]);
+
+  fs.writeFileSync(
+    path.join(directory, 'ca.cnf'),
+    '[ca]\ndefault_ca = benchmark\n\n'
+    + '[benchmark]\ndatabase = index.txt\ncrlnumber = crlnumber\n'
+    + 'default_md = sha256\n',
+  );
+  fs.writeFileSync(path.join(directory, 'index.txt'), '');
+  fs.writeFileSync(path.join(directory, 'crlnumber'), '01\n');
+
+  openssl(directory, [
+    'ca', '-gencrl', '-config', 'ca.cnf', '-keyfile', 'key.pem',
+    '-cert', 'cert.pem', '-crldays', '2', '-out', 'crl.pem',
+  ]);
+  openssl(directory, [
+    'crl', '-in', 'crl.pem', '-outform', 'DER', '-out', 'crl.der',
+  ]);
+
+  // The responder answers from the index, which lists the certificate valid
+  const serial = execFileSync(
+    'openssl', ['x509', '-in', 'cert.pem', '-noout', '-serial'],
+    { cwd: directory },
+  ).toString().trim().split('=')[1];
+  const expiry = new Date(Date.now() + 2 * 24 * 60 * 60 * 1000)
+    .toISOString().replace(/[-:T]/g, '').slice(2, 14);
+
+  fs.writeFileSync(
+    path.join(directory, 'index.txt'),
+    `V\t${expiry}Z\t\t${serial}\tunknown\t${Subject}\n`,
+  );
+
+  openssl(directory, [
+    'ocsp', '-issuer', 'cert.pem', '-cert', 'cert.pem', '-no_nonce',
+    '-reqout', 'request.der',
+  ]);
+  openssl(directory, [
+    'ocsp', '-index', 'index.txt', '-CA', 'cert.pem', '-rsigner', 'cert.pem',
+    '-rkey', 'key.pem', '-reqin', 'request.der', '-ndays', '2',
+    '-respout', 'ocsp.der',
+  ]);
+
+  return {
+    crl: readBase64(directory, 'crl.der'),
+    ocsp: readBase64(directory, 'ocsp.der'),
+  };
+};
+
+/**
+ * Sign content with the certificate of the authority, as a detached CMS
+ * signature like the ones signPdf embeds.
+ *
+ * @param {string} directory - Directory of the authority
+ * @param {Buffer} content - Signed bytes of the document
+ * @returns {string} Base64-encoded DER signature
+ */
+const signContent = (directory, content) => {
+  fs.writeFileSync(path.join(directory, 'content.bin'), content);
+
+  openssl(directory, [
+    'cms', '-sign', '-binary', '-in', 'content.bin', '-signer', 'cert.pem',
+    '-inkey', 'key.pem', '-outform', 'DER', '-out', 'signature.der',
+  ]);
+
+  return readBase64(directory, 'signature.der');
+};
+
+module.exports = {
+  createAuthority,
+  signContent,
+};
@@ -0,0 +1,128 @@
+const fs = require('fs');
+const { execFileSync } = require('child_process');
+
+const ClockTicks = (() => {
+  try {
+    return Number(execFileSync('getconf', ['CLK_TCK']).toString()) || 100;
+  } catch (error) {
+    return 100;
+  }
+})();
+
+/**
+ * Latency summary of a run.
+ *
+ * @param {number[]} latencies - Milliseconds
+ * @returns {object} Percentiles, mean and maximum in milliseconds
+ */
+const summarize = (latencies) => {
+  const sorted = [...latencies].sort((a, b) => a - b);
+  const percentile = (p) => sorted[
+    Math.min(sorted.length - 1, Math.max(0, Math.ceil(p * sorted.length) - 1))
+  ];
+
+  return {
+    mean: sorted.reduce((sum, value) => sum + value, 0) / sorted.length,
+    p50: percentile(0.5),
+    p90: percentile(0.9),
+    p99: percentile(0.99),
+    max: sorted[sorted.length - 1],
+  };
+};
+
+/**
+ * Peak resident size and CPU time of a process so far, read from /proc.
+ *
+ * @param {number} pid
+ * @returns {object|null} "peakRss" in bytes and "cpuMs", null if gone
+ */
+const readUsage = (pid) => {
+  try {
+    const status = fs.readFileSync(`/proc/${pid}/status`, 'utf8');
+    const stat = fs.readFileSync(`/proc/${pid}/stat`, 'utf8');
+    // Fields after the command name, which may contain spaces
+    const fields = stat.slice(stat.lastIndexOf(')') + 2).split(' ');
+    const peakRss = /VmHWM:\s+(\d+) kB/.exec(status);
+
+    return {
+      peakRss: peakRss ? Number(peakRss[1]) * 1024 : 0,
+      cpuMs: (Number(fields[11]) + Number(fields[12])) * 1000 / ClockTicks,
+    };
+  } catch (error) {
+    return null;
+  }
+};
+
+const children = (pid) => {
+  try {
+    return fs.readFileSync(`/proc/${pid}/task/${pid}/children`, 'utf8')
+      .split(' ').filter((child) => child).map(Number);
+  } catch (error) {
+    return [];
+  }
+};
+
+const processTree = (pid) => [pid, ...children(pid).map(processTree)]
+  .reduce((result, value) => result.concat(value), []);
+
+/**
+ * Samples processes and their children, i.e. the shell and the JVM of a
+ * spawned command, until they exit. Usage is sampled: CPU time spent after
+ * the last sample is missed, the peak resident size is not.
+ *
+ * @param {number} interval - Sampling interval in milliseconds
+ */
+const createMonitor = (interval) => {
+  const watched = new Map();
+  let timer = null;
+
+  const sample = (usage) => {
+    processTree(usage.pid).forEach((pid) => {
+      const current = readUsage(pid);
+
+      if (current) {
+        usage.peakRss = Math.max(usage.peakRss, current.peakRss);
+        usage.cpuMs.set(pid, current.cpuMs);
+      }
+    });
+  };
+
+  return {
+    /**
+     * Start sampling a process.
+     *
+     * @param {number} pid
+     * @returns {function} Stops sampling and returns "peakRss" and "cpuMs"
+     */
+    watch: (pid) => {
+      const usage = { pid, peakRss: 0, cpuMs: new Map() };
+      watched.set(pid, usage);
+      sample(usage);
+
+      if (!timer) {
+        timer = setInterval(() => watched.forEach(sample), interval);
+      }
+
+      return () => {
+        sample(usage);
+        watched.delete(pid);
+
+        if (watched.size === 0) {
+          clearInterval(timer);
+          timer = null;
+        }
+
+        return {
+          peakRss: usage.peakRss,
+          cpuMs: [...usage.cpuMs.values()].reduce((sum, ms) => sum + ms, 0),
+        };
+      };
+    },
+  };
+};
+
+module.exports = {
+  summarize,
+  readUsage,
+  createMonitor,
+};
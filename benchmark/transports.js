@@ -0,0 +1,188 @@
+const readline = require('readline');
+const childProcess = require('child_process');
+const installedPath = require('get-installed-path');
+
+const { ExecutablePath, CommandsMap } = require('../src/main/js/constants');
+const { readUsage } = require('./stats');
+
+/**
+ * Package functions of every benchmarked operation
+ *
+ * @enum {string}
+ */
+const Operations = {
+  placeholder: 'addSignaturePlaceholderToPdf',
+  digest: 'pdfDigest',
+  sign: 'signPdf',
+  ltv: 'addLtvToPdf',
+};
+
+const OperationCommands = {
+  placeholder: CommandsMap.AddPlaceholder,
+  digest: CommandsMap.CalculateDigest,
+  sign: CommandsMap.SignDocument,
+  ltv: CommandsMap.AddLtvInformation,
+};
+
+const sumUsage = (usages) => ({
+  peakRss: usages.reduce((peak, usage) => Math.max(peak, usage.peakRss), 0),
+  cpuMs: usages.reduce((sum, usage) => sum + usage.cpuMs, 0),
+});
+
+/**
+ * Calls the package functions, which spawn a JVM per call. The package is
+ * pointed at the given directory, and every spawned process is sampled.
+ *
+ * @param {object} options
+ * @param {string} options.packagePath - Directory holding the bundled jar
+ * @param {object} options.monitor - Process monitor
+ * @returns {object} transport
+ */
+const createSpawnTransport = ({ packagePath, monitor }) => {
+  const { exec } = childProcess;
+  let usages = [];
+
+  // Both are taken by the package when it is loaded, so patched before
+  installedPath.getInstalledPath = async () => packagePath;
+  childProcess.exec = (command, callback) => {
+    let stop = null;
+    const child = exec(command, (...args) => {
+      usages.push(stop());
+      callback(...args);
+    });
+    stop = monitor.watch(child.pid);
+
+    return child;
+  };
+
+  const pdf = require('../src/main/js/pdf');
+
+  return {
+    name: 'spawn',
+    run: (operation, args) => pdf[Operations[operation]](args),
+    usage: () => {
+      const usage = sumUsage(usages);
+      usages = [];
+
+      return usage;
+    },
+    close: async () => {
+      childProcess.exec = exec;
+    },
+  };
+};
+
+/**
+ * Convert package function arguments to daemon request fields.
+ *
+ * @param {object} args
+ * @returns {string[]}
+ */
+const toFields = (args) => Object.entries(args)
+  .filter(([, value]) => value !== null && value !== undefined)
+  .map(([name, value]) => [].concat(value)
+    .map((item) => [`--${name}`, String(item)])
+    .reduce((result, pair) => result.concat(pair), []))
+  .reduce((result, fields) => result.concat(fields), []);
+
+/**
+ * Serves calls from a single daemon JVM, see "Daemon mode" in the README.
+ * Resolves once the daemon is warmed up.
+ *
+ * @param {object} options
+ * @param {string} options.packagePath - Directory holding the bundled jar
+ * @param {number} options.workers - Requests served concurrently
+ * @param {number} [options.warmup] - Warm-up iterations
+ * @returns {Promise<object>} transport
+ */
+const createDaemonTransport = ({ packagePath, workers, warmup }) => {
+  // Loaded only now, the spawn transport patches what the package loads
+  const { buildJavaOptions } = require('../src/main/js/command');
+  const javaOptions = buildJavaOptions(packagePath).split(' ')
+    .filter((option) => option);
+  const daemon = childProcess.spawn('java', [
+    ...javaOptions,
+    '-jar', `${packagePath}/${ExecutablePath}`,
+    'daemon',
+    '--workers', String(workers),
+    ...(warmup !== undefined ? ['--warmup', String(warmup)] : []),
+  ], { stdio: ['pipe', 'pipe', 'inherit'] });
+
+  const pending = new Map();
+  let nextId = 0;
+  let block = {};
+  let lastUsage = null;
+
+  return new Promise((resolve, reject) => {
+    const transport = {
+      name: 'daemon',
+      run: (operation, args) => new Promise((resolveCall, rejectCall) => {
+        const id = String(++nextId);
+        pending.set(id, { resolve: resolveCall, reject: rejectCall });
+        daemon.stdin.write(
+          `${[id, OperationCommands[operation], ...toFields(args)].join('\t')}\n`,
+        );
+      }),
+      usage: () => {
+        const current = readUsage(daemon.pid) || { peakRss: 0, cpuMs: 0 };
+        const cpuMs = current.cpuMs - (lastUsage ? lastUsage.cpuMs : 0);
+        lastUsage = current;
+
+        return { peakRss: current.peakRss, cpuMs };
+      },
+      close: () => new Promise((resolveClose) => {
+        daemon.once('exit', resolveClose);
+        daemon.stdin.write('0\tshutdown\n');
+      }),
+    };
+
+    const respond = (response) => {
+      if (response.STATE === 'READY') {
+        lastUsage = readUsage(daemon.pid);
+        resolve(transport);
+        return;
+      }
+
+      const call = pending.get(response.ID);
+      if (!call) {
+        return;
+      }
+
+      pending.delete(response.ID);
+
+      if (response.STATUS === 'SUCCESS') {
+        call.resolve(response.RESULT);
+      } else {
+        call.reject(new Error(
+          `${response.STATUS} ${response.ERROR_TYPE}: ${response.ERROR_MESSAGE}`,
+        ));
+      }
+    };
+
+    readline.createInterface({ input: daemon.stdout }).on('line', (line) => {
+      if (line) {
+        const separator = line.indexOf('=');
+        block[line.slice(0, separator)] = line.slice(separator + 1);
+      } else {
+        respond(block);
+        block = {};
+      }
+    });
+
+    daemon.on('error', reject);
+    daemon.on('exit', (code) => {
+      const error = new Error(`Daemon exited with code ${code}`);
+
+      pending.forEach((call) => call.reject(error));
+      pending.clear();
+      reject(error);
+    });
+  });
+};
+
+module.exports = {
+  Operations,
+  toFields,
+  createSpawnTransport,
+  createDaemonTransport,
+};
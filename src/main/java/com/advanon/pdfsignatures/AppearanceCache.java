@@ -0,0 +1,284 @@
+package com.advanon.pdfsignatures;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Image;
+import com.itextpdf.text.Phrase;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.BaseFont;
+import com.itextpdf.text.pdf.ColumnText;
+import com.itextpdf.text.pdf.PdfImportedPage;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfTemplate;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Process-wide cache of the resources of signature appearances.
+ * <p>
+ *   Decoding the image and loading the font take far longer than the rest
+ *   of adding a placeholder, and only depend on the template. The image is
+ *   rendered once into a single-page document of its own size, with the
+ *   compressed image stream in it, and the font is loaded once. Every
+ *   appearance then imports that page, scaled into the signature
+ *   rectangle, which copies the encoded image stream as it is, and draws
+ *   its own text with the loaded font. The font subset is made by the
+ *   document the appearance is drawn into.
+ * </p>
+ * <p>
+ *   Entries are keyed by {@link AppearanceTemplate#cacheKey()}. The cache
+ *   is bounded by the total size of the rendered images and the font files
+ *   ({@code 32 MB} by default, see {@link #MAX_SIZE_PROPERTY}), least
+ *   recently used entries are evicted first.
+ * </p>
+ */
+final class AppearanceCache {
+  static final String MAX_SIZE_PROPERTY = "pdfsignatures.appearanceCacheSize";
+  private static final long DEFAULT_MAX_SIZE = 32L * 1024 * 1024;
+  // Space between the text and the rectangle border, in points
+  private static final float TEXT_PADDING = 2;
+  private static final float LEADING = 1.2f;
+
+  private static final AppearanceCache INSTANCE = new AppearanceCache(
+      Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE)
+  );
+
+  private final long maxSize;
+  private final Map<String, Resources> entries
+      = new LinkedHashMap<>(16, 0.75f, true);
+  private long size;
+
+  AppearanceCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  static AppearanceCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Draw an appearance into a document.
+   *
+   * @param stamper Stamper of the document
+   * @param template Appearance template
+   * @param text Resolved text, may be null
+   * @param width Rectangle width in points
+   * @param height Rectangle height in points
+   * @param images Opened image documents, to close once stamped
+   * @return appearance form, to draw into the widget appearance
+   * @throws SignatureException if the appearance could not be drawn
+   */
+  PdfTemplate draw(
+      @NotNull PdfStamper stamper,
+      @NotNull AppearanceTemplate template,
+      @Nullable String text,
+      float width,
+      float height,
+      @NotNull List<PdfReader> images
+  ) throws SignatureException {
+    Resources resources = get(template);
+    PdfTemplate appearance = PdfTemplate.createTemplate(
+        stamper.getWriter(), width, height
+    );
+    float textLeft = 0;
+
+    try {
+      if (resources.image != null) {
+        PdfReader reader = new PdfReader(resources.image);
+        images.add(reader);
+
+        PdfImportedPage image = stamper.getImportedPage(reader, 1);
+        float imageWidth = text != null ? width / 2 : width;
+        float scale = Math.min(
+            imageWidth / image.getWidth(), height / image.getHeight()
+        );
+
+        appearance.addTemplate(
+            image,
+            scale,
+            0,
+            0,
+            scale,
+            (imageWidth - image.getWidth() * scale) / 2,
+            (height - image.getHeight() * scale) / 2
+        );
+        textLeft = imageWidth;
+      }
+
+      if (text != null) {
+        float fontSize = template.getFontSize();
+
+        ColumnText column = new ColumnText(appearance);
+        column.setSimpleColumn(
+            new Phrase(text, new Font(resources.font, fontSize)),
+            textLeft + TEXT_PADDING,
+            TEXT_PADDING,
+            width - TEXT_PADDING,
+            height - TEXT_PADDING,
+            fontSize * LEADING,
+            Element.ALIGN_LEFT
+        );
+        column.go();
+      }
+    } catch (IOException | DocumentException e) {
+      throw new SignatureException(e.getMessage());
+    }
+
+    return appearance;
+  }
+
+  /**
+   * Load the resources of a template, or return the ones loaded before.
+   *
+   * @param template Appearance template
+   * @return template resources
+   * @throws SignatureException if the resources could not be loaded
+   */
+  Resources get(
+      @NotNull AppearanceTemplate template
+  ) throws SignatureException {
+    String key = template.cacheKey();
+
+    synchronized (this) {
+      Resources resources = entries.get(key);
+
+      if (resources != null) {
+        return resources;
+      }
+    }
+
+    // Loading takes long, do not block other threads meanwhile. The same
+    // template may be loaded twice by concurrent requests, which is
+    // harmless.
+    Resources resources = load(template);
+
+    put(key, resources);
+
+    return resources;
+  }
+
+  /**
+   * Total size of cached resources.
+   *
+   * @return size in bytes
+   */
+  synchronized long getSize() {
+    return size;
+  }
+
+  private synchronized void put(
+      @NotNull String key,
+      @NotNull Resources value
+  ) {
+    if (value.size > maxSize || entries.containsKey(key)) {
+      return;
+    }
+
+    entries.put(key, value);
+    size += value.size;
+
+    Iterator<Resources> iterator = entries.values().iterator();
+
+    while (size > maxSize && iterator.hasNext()) {
+      size -= iterator.next().size;
+      iterator.remove();
+    }
+  }
+
+  private Resources load(
+      @NotNull AppearanceTemplate template
+  ) throws SignatureException {
+    try {
+      byte[] image = template.getImage() != null
+          ? renderImage(template.getImage())
+          : null;
+      BaseFont font = null;
+      long fontFileSize = 0;
+
+      if (template.getText() != null && template.getFont() != null) {
+        font = BaseFont.createFont(
+            template.getFont(), BaseFont.IDENTITY_H, BaseFont.EMBEDDED
+        );
+        fontFileSize = new File(template.getFont()).length();
+      } else if (template.getText() != null) {
+        font = BaseFont.createFont();
+      }
+
+      return new Resources(
+          image, font, (image != null ? image.length : 0) + fontFileSize
+      );
+    } catch (IOException | DocumentException e) {
+      throw new SignatureException(e.getMessage());
+    }
+  }
+
+  /**
+   * Render an image into a single-page document of the image size.
+   */
+  private static byte[] renderImage(
+      @NotNull String path
+  ) throws IOException, DocumentException {
+    Image image = Image.getInstance(path);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    Document document = new Document(
+        new Rectangle(image.getScaledWidth(), image.getScaledHeight()),
+        0,
+        0,
+        0,
+        0
+    );
+
+    PdfWriter writer = PdfWriter.getInstance(document, outputStream);
+    document.open();
+
+    image.setAbsolutePosition(0, 0);
+    writer.getDirectContent().addImage(image);
+
+    document.close();
+
+    return outputStream.toByteArray();
+  }
+
+  /**
+   * Resources of a template: the rendered image, if any, and the font of
+   * the text, if any.
+   */
+  static final class Resources {
+    @Nullable private final byte[] image;
+    @Nullable private final BaseFont font;
+    private final long size;
+
+    private Resources(
+        @Nullable byte[] image,
+        @Nullable BaseFont font,
+        long size
+    ) {
+      this.image = image;
+      this.font = font;
+      this.size = size;
+    }
+
+    @Nullable
+    byte[] getImage() {
+      return image;
+    }
+
+    @Nullable
+    BaseFont getFont() {
+      return font;
+    }
+  }
+}
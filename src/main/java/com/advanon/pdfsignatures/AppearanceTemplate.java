@@ -0,0 +1,139 @@
+package com.advanon.pdfsignatures;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Visible signature appearance: an image and a text, drawn side by side
+ * into the signature rectangle.
+ * <p>
+ *   The text may refer to the signature with {@code {name}},
+ *   {@code {reason}}, {@code {location}}, {@code {contact}} and
+ *   {@code {date}} (the signing day). The image and the font are loaded
+ *   once per template, the text is laid out for every signature, see
+ *   {@link AppearanceCache}.
+ * </p>
+ */
+public final class AppearanceTemplate {
+  static final float DEFAULT_FONT_SIZE = 10;
+
+  @Nullable private final String image;
+  @Nullable private final String text;
+  @Nullable private final String font;
+  private final float fontSize;
+
+  /**
+   * Create an appearance template.
+   *
+   * @param image Path to a PNG, JPEG or GIF image, may be null
+   * @param text Text template, may be null
+   * @param font Path to a TrueType font, Helvetica is used if null
+   * @param fontSize Font size in points, default is used if null
+   * @throws SignatureException if there is neither an image nor a text
+   */
+  public AppearanceTemplate(
+      @Nullable String image,
+      @Nullable String text,
+      @Nullable String font,
+      @Nullable Float fontSize
+  ) throws SignatureException {
+    if (image == null && text == null) {
+      throw new SignatureException("Appearance needs an image or a text");
+    }
+
+    if (fontSize != null && fontSize <= 0) {
+      throw new SignatureException("Font size must be positive");
+    }
+
+    this.image = image;
+    this.text = text;
+    this.font = font;
+    this.fontSize = fontSize != null ? fontSize : DEFAULT_FONT_SIZE;
+  }
+
+  @Nullable
+  public String getImage() {
+    return image;
+  }
+
+  @Nullable
+  public String getText() {
+    return text;
+  }
+
+  @Nullable
+  public String getFont() {
+    return font;
+  }
+
+  public float getFontSize() {
+    return fontSize;
+  }
+
+  /**
+   * Resolve the text template for a signature.
+   *
+   * @param fieldName Signature field name
+   * @param metadata Signature metadata
+   * @return resolved text or null if there is no text
+   */
+  @Nullable
+  String resolveText(
+      @NotNull String fieldName,
+      @NotNull SignatureMetadata metadata
+  ) {
+    if (text == null) {
+      return null;
+    }
+
+    return text
+      .replace("{name}", fieldName)
+      .replace("{reason}", valueOf(metadata.getReason()))
+      .replace("{location}", valueOf(metadata.getLocation()))
+      .replace("{contact}", valueOf(metadata.getContact()))
+      .replace("{date}", formatDay(metadata.getDate()));
+  }
+
+  /**
+   * Format the day of a date in its own time zone, not the host one.
+   */
+  private static String formatDay(@Nullable Calendar date) {
+    if (date == null) {
+      return "";
+    }
+
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+    format.setTimeZone(date.getTimeZone());
+
+    return format.format(date.getTime());
+  }
+
+  /**
+   * Key of the template resources. Files are identified by path, size and
+   * modification time, so that replaced files are loaded again.
+   *
+   * @return cache key
+   */
+  String cacheKey() {
+    return fileKey(image) + "|" + fileKey(font) + "|" + (text != null);
+  }
+
+  private static String fileKey(@Nullable String path) {
+    if (path == null) {
+      return "";
+    }
+
+    File file = new File(path);
+
+    return file.getAbsolutePath() + ":" + file.length()
+      + ":" + file.lastModified();
+  }
+
+  private static String valueOf(@Nullable String value) {
+    return value != null ? value : "";
+  }
+}
@@ -3,8 +3,11 @@ package com.advanon.pdfsignatures;
 import com.itextpdf.text.pdf.codec.Base64;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 
 import javax.xml.bind.DatatypeConverter;
@@ -12,12 +15,14 @@ import javax.xml.bind.DatatypeConverter;
 import org.jetbrains.annotations.NotNull;
 
 class ApplicationArguments {
+  private List<String> given;
   private Stack<String> arguments = new Stack<String>();
 
   private String file;
   private String out;
   private String password;
   private Integer estimatedSize;
+  private boolean autoEstimatedSize;
   private CertificationLevel certificationLevel;
   private String reason;
   private String location;
@@ -25,10 +30,33 @@ class ApplicationArguments {
   private Calendar date;
   private HashAlgorithm hashAlgorithm;
   private byte[] signature;
+  private byte[] rawSignature;
+  private String certChain;
+  private Map<String, byte[]> fieldSignatures = new LinkedHashMap<>();
+  private List<String> fieldSpecs = new ArrayList<>();
+  private String field;
   private List<byte[]> crls = new ArrayList<>();
   private List<byte[]> ocsps = new ArrayList<>();
+  private Integer warmUpIterations;
+  private Long warmUpTime;
+  private String readyFile;
+  private String store;
+  private String manifest;
+  private String sizeStats;
+  private String profile;
+  private String seed;
+  private String inbox;
+  private String outbox;
+  private String errors;
+  private String chain;
+  private Integer workers;
+  private Long timeout;
+  private String traceparent;
+  private String traceFile;
+  private String revisions;
 
   ApplicationArguments(@NotNull List<String> arguments) {
+    this.given = new ArrayList<>(arguments);
     this.arguments.addAll(arguments);
   }
 
@@ -43,6 +71,20 @@ class ApplicationArguments {
     return this;
   }
 
+  /**
+   * Parse the given arguments again, with some of them overridden.
+   *
+   * @param overrides Argument names and values taking precedence
+   * @return parsed arguments
+   */
+  public ApplicationArguments with(@NotNull String... overrides) {
+    // Arguments are parsed from the end, the first occurrence wins
+    List<String> merged = new ArrayList<>(Arrays.asList(overrides));
+    merged.addAll(given);
+
+    return new ApplicationArguments(merged).parse();
+  }
+
   public String getFile() {
     return this.file;
   }
@@ -59,6 +101,10 @@ class ApplicationArguments {
     return this.estimatedSize;
   }
 
+  public boolean isAutoEstimatedSize() {
+    return this.autoEstimatedSize;
+  }
+
   public CertificationLevel getCertificationLevel() {
     return this.certificationLevel;
   }
@@ -87,6 +133,26 @@ class ApplicationArguments {
     return this.signature;
   }
 
+  public byte[] getRawSignature() {
+    return this.rawSignature;
+  }
+
+  public String getCertChain() {
+    return this.certChain;
+  }
+
+  public Map<String, byte[]> getFieldSignatures() {
+    return this.fieldSignatures;
+  }
+
+  public List<String> getFieldSpecs() {
+    return this.fieldSpecs;
+  }
+
+  public String getField() {
+    return this.field;
+  }
+
   public List<byte[]> getCrls() {
     return this.crls;
   }
@@ -95,6 +161,74 @@ class ApplicationArguments {
     return this.ocsps;
   }
 
+  public Integer getWarmUpIterations() {
+    return this.warmUpIterations;
+  }
+
+  public Long getWarmUpTime() {
+    return this.warmUpTime;
+  }
+
+  public String getReadyFile() {
+    return this.readyFile;
+  }
+
+  public String getStore() {
+    return this.store;
+  }
+
+  public String getManifest() {
+    return this.manifest;
+  }
+
+  public String getSizeStats() {
+    return this.sizeStats;
+  }
+
+  public String getProfile() {
+    return this.profile;
+  }
+
+  public String getSeed() {
+    return this.seed;
+  }
+
+  public String getInbox() {
+    return this.inbox;
+  }
+
+  public String getOutbox() {
+    return this.outbox;
+  }
+
+  public String getErrors() {
+    return this.errors;
+  }
+
+  public String getChain() {
+    return this.chain;
+  }
+
+  public Integer getWorkers() {
+    return this.workers;
+  }
+
+  public Long getTimeout() {
+    return this.timeout;
+  }
+
+  public String getTraceparent() {
+    return this.traceparent;
+  }
+
+  public String getTraceFile() {
+    return this.traceFile;
+  }
+
+  public String getRevisions() {
+    return this.revisions;
+  }
+
   private void fillArguments(@NotNull String name, @NotNull String value) {
     switch (name) {
       case "--file":
@@ -110,7 +244,11 @@ class ApplicationArguments {
         password = value;
         break;
       case "--estimatedsize":
-        estimatedSize = Integer.parseInt(value);
+        if (value.equals("auto")) {
+          autoEstimatedSize = true;
+        } else {
+          estimatedSize = Integer.parseInt(value);
+        }
         break;
       case "--certlevel":
         certificationLevel =
@@ -134,14 +272,101 @@ class ApplicationArguments {
       case "--signature":
         signature = Base64.decode(value);
         break;
+      case "--rawsignature":
+        rawSignature = Base64.decode(value);
+        break;
+      case "--certchain":
+        certChain = value;
+        break;
+      case "--fieldsignature":
+        putFieldSignature(value);
+        break;
+      case "--fieldspec":
+        // Arguments are parsed from the end, fields keep the given order
+        fieldSpecs.add(0, value);
+        break;
+      case "--field":
+        field = value;
+        break;
       case "--crl":
         crls.add(Base64.decode(value));
         break;
       case "--ocsp":
         ocsps.add(Base64.decode(value));
         break;
+      case "--warmup":
+        warmUpIterations = Integer.parseInt(value);
+        break;
+      case "--warmuptime":
+        warmUpTime = Long.parseLong(value);
+        break;
+      case "--readyfile":
+        readyFile = value;
+        break;
+      case "--store":
+        store = value;
+        break;
+      case "--manifest":
+        manifest = value;
+        break;
+      case "--sizestats":
+        sizeStats = value;
+        break;
+      case "--profile":
+        profile = value;
+        break;
+      case "--deterministic":
+        seed = value;
+        break;
+      case "--inbox":
+        inbox = value;
+        break;
+      case "--outbox":
+        outbox = value;
+        break;
+      case "--errors":
+        errors = value;
+        break;
+      case "--chain":
+        chain = value;
+        break;
+      case "--workers":
+        workers = Integer.parseInt(value);
+        break;
+      case "--timeout":
+        timeout = Long.parseLong(value);
+        break;
+      case "--traceparent":
+        traceparent = value;
+        break;
+      case "--tracefile":
+        traceFile = value;
+        break;
+      case "--revisions":
+        revisions = value;
+        break;
       default:
         break;
     }
   }
+
+  /**
+   * Field signatures are given as "field name:base64 signature".
+   *
+   * @param value Field signature argument
+   */
+  private void putFieldSignature(@NotNull String value) {
+    int separator = value.lastIndexOf(':');
+
+    if (separator <= 0) {
+      throw new IllegalArgumentException(
+        "Field signature must be given as <field name>:<base64 signature>"
+      );
+    }
+
+    fieldSignatures.put(
+        value.substring(0, separator),
+        Base64.decode(value.substring(separator + 1))
+    );
+  }
 }
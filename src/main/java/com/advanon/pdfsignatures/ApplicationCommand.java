@@ -1,12 +1,12 @@
 package com.advanon.pdfsignatures;
 
-import com.itextpdf.text.pdf.codec.Base64;
-
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 class ApplicationCommand {
   private String command;
@@ -22,16 +22,100 @@ class ApplicationCommand {
 
   public void execute() {
     try {
-      String result = executeCommand();
+      Trace trace = trace();
+
+      if (trace != null) {
+        // The JVM started up for this very command
+        trace.record(
+            "jvm.startup",
+            System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(
+              ManagementFactory.getRuntimeMXBean().getUptime()
+            )
+        );
+      }
+
+      String result = call(new Cancellation(arguments.getTimeout()), trace);
       System.out.println(formatResult(result));
     } catch (Exception e) {
       System.err.println(formatError(e));
     }
   }
 
-  private String executeCommand()
-      throws PdfDocumentException, SignatureException, IOException,
-             DigestException, ValidationException {
+  /**
+   * Execute the command and return the formatted response instead of
+   * printing it. Used by the daemon, which frames responses on its own.
+   *
+   * @return formatted response, successful or not
+   */
+  String respond() {
+    return respond(new Cancellation(arguments.getTimeout()), System.nanoTime());
+  }
+
+  /**
+   * Execute the command within the given cancellation and return the
+   * formatted response.
+   *
+   * @param cancellation Deadline and cancel signal of the request
+   * @param received {@link System#nanoTime()} the request was received at,
+   *                 traced as the time it was queued
+   * @return formatted response, successful or not
+   */
+  String respond(@NotNull Cancellation cancellation, long received) {
+    try {
+      Trace trace = trace();
+
+      if (trace != null) {
+        trace.record("queue", received);
+      }
+
+      return "STATUS=SUCCESS\n"
+             + "RESULT=" + call(cancellation, trace);
+    } catch (Exception e) {
+      return formatError(e);
+    }
+  }
+
+  /**
+   * Trace of the command, if --tracefile is given. The daemon and watch
+   * commands trace the requests they serve instead.
+   */
+  @Nullable
+  private Trace trace() {
+    if (arguments.getTraceFile() == null
+        || command.equals("daemon")
+        || command.equals("watch")) {
+      return null;
+    }
+
+    return new Trace(
+        command,
+        arguments.getTraceparent(),
+        new OtlpFileExporter(Paths.get(arguments.getTraceFile()))
+    );
+  }
+
+  private String call(
+      @NotNull Cancellation cancellation,
+      @Nullable Trace trace
+  ) throws IOException {
+    if (trace == null) {
+      return cancellation.call(this::executeCommand);
+    }
+
+    return trace.call(() -> cancellation.call(this::executeCommand));
+  }
+
+  /**
+   * Execute the command.
+   * <p>
+   *   Document commands are instantiated right here, so that their classes
+   *   are loaded only when the command is actually requested.
+   * </p>
+   *
+   * @return command result
+   * @throws IOException if reading or writing documents fails
+   */
+  private String executeCommand() throws IOException {
     switch (command) {
       case "help":
         return executeHelp();
@@ -40,13 +124,23 @@ class ApplicationCommand {
       case "-v":
         return executeVersion();
       case "placeholder":
-        return executePlaceholder();
+        return new PlaceholderCommand().execute(arguments);
       case "digest":
-        return executeDigest();
+        return new DigestCommand().execute(arguments);
       case "sign":
-        return executeSign();
+        return new SignCommand().execute(arguments);
       case "ltv":
-        return executeLtv();
+        return new LtvCommand().execute(arguments);
+      case "verify":
+        return new VerifyCommand().execute(arguments);
+      case "extract":
+        return new ExtractCommand().execute(arguments);
+      case "preflight":
+        return new PreflightCommand().execute(arguments);
+      case "daemon":
+        return new DaemonCommand().execute(arguments);
+      case "watch":
+        return new WatchCommand().execute(arguments);
       default:
         return executeHelp();
     }
@@ -65,7 +159,8 @@ class ApplicationCommand {
       "  placeholder                                 Add a signature placeholder\n" +
       "    --file <path>                             Path to the document\n" +
       "    --out <path>                              Path where to save a new document\n" +
-      "    [--estimatedsize <int>]                   Estimated signature size, default is 30000 bytes\n" +
+      "    [--estimatedsize <int|auto>]              Estimated signature size, default is 30000 bytes,\n" +
+      "                                              auto sizes it after the signatures recorded in --sizestats\n" +
       "    [--certlevel <int>]                       Desired certification level, default is 0\n" +
       "      * 0                                     Not certified\n" +
       "      * 1                                     Certified, no changes allowed\n" +
@@ -76,27 +171,86 @@ class ApplicationCommand {
       "    [--location <location>]                   Signing location\n" +
       "    [--contact <contact>]                     Signing contact\n" +
       "    [--date <contact>]                        Date of signing in ISO 8601 format\n" +
+      "    [--manifest <path>]                       Where to save a manifest of the placeholder, used by digest, sign and verify\n" +
+      "    [--sizestats <path>]                      Directory of recorded signature sizes\n" +
+      "    [--profile <name>]                        Signer profile the sizes are recorded for, default is \"default\"\n" +
+      "    [--fieldspec <spec>...]                   Signature field to add a placeholder for, several ones are added empty and only named, each needs a pass of its own,\n" +
+      "                                              i.e. name=Buyer;page=2;rect=36,36,236,96;size=30000;reason=Approval,\n" +
+      "                                              image=<path>, text=<template>, font=<ttf path> and fontsize=<float> make it visible,\n" +
+      "                                              the text may refer to {name}, {reason}, {location}, {contact} and {date},\n" +
+      "                                              a field is described as <name>:<byte range>:<base64 digest>, empty fields by their names separated by ;\n" +
+      "    [--algorithm <SHA-256|SHA-384|SHA-512>]   Digest algorithm of the field descriptions and --certchain, default is SHA-512\n" +
+      "    [--deterministic <seed>]                  Write the same document for the same input, metadata and seed, requires --date\n" +
+      "    [--certchain <path>]                      PEM or DER signer certificate chain, signer first, the digest of the CMS signed attributes\n" +
+      "                                              is returned (or described) instead of the document digest, see sign --rawsignature\n" +
       "  digest                                      Calculate document digest excluding signatures\n" +
       "    --file <path>                             Path to the document\n" +
       "    [--password <string>]                     Document password\n" +
       "    [--algorithm <SHA-256|SHA-384|SHA-512>]   Encryption algorithm, default is SHA-512\n" +
+      "    [--manifest <path>]                       Placeholder manifest, the document is not parsed if it matches\n" +
+      "    [--field <name>]                          Hash the byte range of the given signature field only\n" +
+      "    [--certchain <path>]                      PEM or DER signer certificate chain, return the digest of the CMS signed attributes for --field or the only empty placeholder\n" +
       "  sign                                        Sign the document with external signature\n" +
       "    --file <path>                             Path to the document\n" +
       "    --out <path>                              Path where to save a new document\n" +
-      "    --signature <base64 string>               Base64-encoded signature\n" +
+      "    --signature <base64 string>               Base64-encoded signature, embedded into the empty placeholder\n" +
+      "    --fieldsignature <name:base64 string>...  Base64-encoded signature of a field, instead of --signature\n" +
+      "    --rawsignature <base64 string>            Base64-encoded raw signature of the signed attributes digest, instead of --signature,\n" +
+      "                                              the CMS container is assembled around it\n" +
+      "    [--certchain <path>]                      PEM or DER signer certificate chain, signer first, required with --rawsignature\n" +
+      "    [--algorithm <SHA-256|SHA-384|SHA-512>]   Digest algorithm of --rawsignature, default is SHA-512\n" +
+      "    [--field <name>]                          Field of --rawsignature, needed unless a single placeholder is empty\n" +
       "    [--password <string>]                     Document password\n" +
+      "    [--manifest <path>]                       Placeholder manifest, the document is not parsed if it matches\n" +
+      "    [--sizestats <path>]                      Directory where to record embedded signature sizes\n" +
+      "    [--profile <name>]                        Signer profile the sizes are recorded for, default is \"default\"\n" +
       "  ltv                                         Add LTV information to the document\n" +
       "    --file <path>                             Path to the document\n" +
       "    --out <path>                              Path where to save a new document\n" +
       "    --crl <base64 string>...                  Base64-encoded CRL (each single CRL should be prepended with -crl)\n" +
       "    --ocsp <base64 string>...                 Base64-encoded OCSP (each single OCSP should be prepended with -ocsp)\n" +
+      "    [--store <path>]                          Directory of stored CRLs and OCSPs, given ones are added to it\n" +
+      "                                              and stored ones matching signature certificates are embedded\n" +
+      "    [--password <string>]                     Document password\n" +
+      "  verify                                      Verify every document signature\n" +
+      "    --file <path>                             Path to the document\n" +
+      "    [--password <string>]                     Document password\n" +
+      "    [--manifest <path>]                       Placeholder manifest, the document is not parsed if it matches\n" +
+      "  extract                                     Extract the PKCS7 of every document signature, described as <name>:<contents>:<revision>\n" +
+      "    --file <path>                             Path to the document\n" +
+      "    [--out <path>]                            Directory where to write <document>.<field>.p7s files, the PKCS7s are returned base64-encoded if omitted\n" +
+      "    [--revisions <path>]                      Directory where to write the revision every signature signs as <document>.<field>.pdf\n" +
       "    [--password <string>]                     Document password\n" +
+      "    [--manifest <path>]                       Placeholder manifest, the document is not parsed if it matches\n" +
+      "  preflight                                   Check the document integrity, described as encrypted=<bool>;certlevel=<int>;signatures=<name:coverage,...>\n" +
+      "    --file <path>                             Path to the document\n" +
+      "    [--password <string>]                     Document password\n" +
+      "  daemon                                      Serve commands read from stdin, one per line\n" +
+      "    [--warmup <int>]                          Maximum warm-up iterations, default is 2000, 0 disables warm-up\n" +
+      "    [--warmuptime <int>]                      Maximum warm-up time in milliseconds, default is 60000\n" +
+      "    [--readyfile <path>]                      File created once the daemon is warmed up\n" +
+      "    [--workers <int>]                         Requests served concurrently, default is the number of cores\n" +
+      "  watch                                       Process documents dropped into a directory until stopped\n" +
+      "    --inbox <path>                            Directory documents are dropped into, files starting with a dot are ignored\n" +
+      "    --outbox <path>                           Directory results are written to\n" +
+      "    [--errors <path>]                         Directory failed documents and error reports are moved to, default is <outbox>/errors\n" +
+      "    [--chain <placeholder|sign>]              Operations run on every document, default is placeholder\n" +
+      "      * placeholder                           Add a placeholder to name.pdf, write it and its digest as name.digest\n" +
+      "      * sign                                  Embed the base64 signature of name.sig into name.pdf, add LTV information\n" +
+      "                                              if --crl, --ocsp or --store are given\n" +
+      "    [--workers <int>]                         Documents processed concurrently, default is the number of cores\n" +
+      "    [<operation arguments>]                   Arguments of the operations, i.e. --estimatedsize or --store\n" +
+      "\n" +
+      "Every command takes [--timeout <int>], the time it may take in milliseconds, and answers STATUS=CANCELLED past it.\n" +
+      "Every command takes [--tracefile <path>], a file its spans are appended to in the OTLP JSON format,\n" +
+      "and [--traceparent <string>], the W3C trace context it joins.\n" +
       "\n" +
       "Example\n" +
       "  placeholder --file file.pdf --out placeholdered.pdf                                                                   Add signature placeholder\n" +
       "  digest --file placeholdered.pdf --algorithm sha512                                                                    Calculate document digest\n" +
       "  sign --file placeholdered.pdf --out signed.pdf --signature abb4rjfh=                                                  Sign the document with external signature\n" +
-      "  ltv --file signed.pdf --out signedltv.pdf --crl abb4rjfh= --crl fgsllldj5kg= --oscp abb4rjfh= --ocsp fgsllldj5kg=     Insert LTV information into signed document"
+      "  ltv --file signed.pdf --out signedltv.pdf --crl abb4rjfh= --crl fgsllldj5kg= --oscp abb4rjfh= --ocsp fgsllldj5kg=     Insert LTV information into signed document\n" +
+      "  verify --file signed.pdf                                                                                              Verify document signatures"
     ;
   }
   // CHECKSTYLE:ON
@@ -105,87 +259,6 @@ class ApplicationCommand {
     return "Advanon PKCS7 document signer v" + Constants.VERSION;
   }
 
-  private String executePlaceholder()
-      throws PdfDocumentException, SignatureException,
-             DigestException, IOException {
-    SignatureMetadata metadata = new SignatureMetadata(
-        arguments.getReason(),
-        arguments.getLocation(),
-        arguments.getContact(),
-        arguments.getDate()
-    );
-
-    Placeholder placeholder = new Placeholder(
-        metadata,
-        arguments.getEstimatedSize(),
-        arguments.getCertificationLevel()
-    );
-
-    PdfDocument pdf = new PdfDocument(
-        arguments.getFile(),
-        arguments.getPassword()
-    );
-
-    pdf.addSignaturePlaceholder(placeholder);
-
-    OutputStream fileOutputStream = new FileOutputStream(arguments.getOut());
-    fileOutputStream.write(pdf.getContentBytes());
-    fileOutputStream.close();
-
-    return arguments.getOut();
-  }
-
-  private String executeDigest()
-      throws PdfDocumentException, SignatureException,
-             DigestException, IOException {
-    PdfDocument pdf = new PdfDocument(
-        arguments.getFile(),
-        arguments.getPassword()
-    );
-
-    return Base64.encodeBytes(
-        pdf.digest(arguments.getHashAlgorithm()), Base64.DONT_BREAK_LINES
-    );
-  }
-
-  private String executeSign()
-      throws PdfDocumentException, SignatureException, IOException {
-    Signature signature = new Signature(arguments.getSignature());
-    PdfDocument pdf = new PdfDocument(
-        arguments.getFile(),
-        arguments.getPassword()
-    );
-
-    pdf.addSignature(signature);
-
-    OutputStream fileOutputStream = new FileOutputStream(arguments.getOut());
-    fileOutputStream.write(pdf.getContentBytes());
-    fileOutputStream.close();
-
-    return arguments.getOut();
-  }
-
-  private String executeLtv()
-      throws PdfDocumentException, ValidationException, IOException {
-    PdfDocument pdf = new PdfDocument(
-        arguments.getFile(),
-        arguments.getPassword()
-    );
-
-    Validation ltv = new Validation(
-        arguments.getOcsps(),
-        arguments.getCrls()
-    );
-
-    pdf.addValidation(ltv);
-
-    OutputStream fileOutputStream = new FileOutputStream(arguments.getOut());
-    fileOutputStream.write(pdf.getContentBytes());
-    fileOutputStream.close();
-
-    return arguments.getOut();
-  }
-
   private String formatResult(String result) {
     if (clearFormatting()) {
       return result;
@@ -196,7 +269,9 @@ class ApplicationCommand {
   }
 
   private String formatError(Exception error) {
-    return "STATUS=ERROR\n"
+    return "STATUS="
+           + (error instanceof CancelledException ? "CANCELLED" : "ERROR")
+           + "\n"
            + "ERROR_TYPE=" + error.getClass() + "\n"
            + "ERROR_MESSAGE=" + error.getMessage();
   }
@@ -205,6 +280,8 @@ class ApplicationCommand {
     return command.equals("help")
           || command.equals("version")
           || command.equals("--version")
-          || command.equals("-v");
+          || command.equals("-v")
+          || command.equals("daemon")
+          || command.equals("watch");
   }
 }
@@ -0,0 +1,142 @@
+package com.advanon.pdfsignatures;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Process-wide pool of reusable byte slabs, so that long-running processes
+ * do not allocate fresh buffers for every document.
+ * <p>
+ *   Slabs come in size classes, every one four times the previous, from
+ *   {@code 64 KB} to {@code 16 MB}. A request is served by a slab of the
+ *   smallest class which fits it. Released slabs are kept up to a total of
+ *   {@code 64 MB} by default (see {@link #MAX_SIZE_PROPERTY}, zero disables
+ *   pooling), slabs released beyond it are left to the garbage collector.
+ * </p>
+ * <p>
+ *   Slabs are heap arrays rather than direct buffers: digests and iText
+ *   consume arrays, direct buffers would be copied into one anyway.
+ * </p>
+ * <p>
+ *   Copy and hash buffers and the chunks of {@link DocumentBuffer} are
+ *   pooled. Written documents stay in their chunks, hashable bytes are
+ *   ranges of them and are hashed through a pooled buffer, see
+ *   {@link PdfDocument}. The content read from a file or given as an array
+ *   is not pooled: iText parses it from an array of its exact size, which a
+ *   slab is not. Nor is the array copy of written content which the byte
+ *   array API and seeded output take.
+ * </p>
+ */
+final class BufferPool {
+  static final String MAX_SIZE_PROPERTY = "pdfsignatures.bufferPoolSize";
+  static final int MIN_SLAB_SIZE = Streams.BUFFER_SIZE;
+  private static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+  private static final int CLASS_COUNT = 5;
+
+  private static final BufferPool INSTANCE = new BufferPool(
+      Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE)
+  );
+
+  private final long maxSize;
+  private final Queue<byte[]>[] classes;
+  private final AtomicLong retained = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  @SuppressWarnings("unchecked")
+  BufferPool(long maxSize) {
+    this.maxSize = maxSize;
+    this.classes = new Queue[CLASS_COUNT];
+
+    for (int i = 0; i < CLASS_COUNT; i++) {
+      classes[i] = new ConcurrentLinkedQueue<>();
+    }
+  }
+
+  static BufferPool getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Take a slab of at least the given size. Requests larger than the
+   * largest class get a fresh array of the exact size.
+   *
+   * @param size Minimal slab size in bytes
+   * @return slab, to release once done
+   */
+  byte[] acquire(int size) {
+    int sizeClass = sizeClass(size);
+
+    if (sizeClass < 0) {
+      misses.incrementAndGet();
+      return new byte[size];
+    }
+
+    byte[] slab = classes[sizeClass].poll();
+
+    if (slab == null) {
+      misses.incrementAndGet();
+      return new byte[MIN_SLAB_SIZE << (2 * sizeClass)];
+    }
+
+    retained.addAndGet(-slab.length);
+    hits.incrementAndGet();
+
+    return slab;
+  }
+
+  /**
+   * Give a slab back to the pool. Arrays which are not of a class size are
+   * dropped.
+   *
+   * @param slab Slab taken from the pool
+   */
+  void release(@NotNull byte[] slab) {
+    int sizeClass = sizeClass(slab.length);
+
+    if (sizeClass < 0 || slab.length != MIN_SLAB_SIZE << (2 * sizeClass)) {
+      return;
+    }
+
+    if (retained.addAndGet(slab.length) > maxSize) {
+      retained.addAndGet(-slab.length);
+      return;
+    }
+
+    classes[sizeClass].offer(slab);
+  }
+
+  /**
+   * Share of acquired slabs served from the pool.
+   *
+   * @return hit rate between 0 and 1, or 0 if nothing was acquired yet
+   */
+  double getHitRate() {
+    long hitCount = hits.get();
+    long total = hitCount + misses.get();
+
+    return total > 0 ? (double) hitCount / total : 0;
+  }
+
+  /**
+   * Total size of slabs kept for reuse.
+   *
+   * @return size in bytes
+   */
+  long getRetained() {
+    return retained.get();
+  }
+
+  private static int sizeClass(int size) {
+    for (int i = 0; i < CLASS_COUNT; i++) {
+      if (size <= MIN_SLAB_SIZE << (2 * i)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+}
@@ -0,0 +1,147 @@
+package com.advanon.pdfsignatures;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Deadline and cancel signal of a request, checked cooperatively.
+ * <p>
+ *   A request runs within its cancellation, which long-running loops check
+ *   at every chunk they process: range copies, digests, stamper output and
+ *   validation material parsing. Once the deadline passes or the request is
+ *   cancelled, the next checkpoint throws a {@link CancelledException}, which
+ *   unwinds the request and releases its document and buffers on the way.
+ *   Requests which are cancelled while still queued do not start at all.
+ * </p>
+ * <p>
+ *   Checkpoints find the cancellation of the thread they run on, work handed
+ *   to other threads takes it along with {@link #bind(Function)}.
+ * </p>
+ */
+final class Cancellation {
+  private static final Cancellation NONE = new Cancellation(null);
+  private static final ThreadLocal<Cancellation> CURRENT = new ThreadLocal<>();
+
+  @Nullable private final Long deadline;
+  @Nullable private volatile String reason;
+
+  /**
+   * Create a cancellation.
+   *
+   * @param timeout Time the request may take in milliseconds, unlimited if
+   *                null
+   */
+  Cancellation(@Nullable Long timeout) {
+    this.deadline = timeout != null
+      ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout)
+      : null;
+  }
+
+  /**
+   * Cancellation of the request the current thread works on.
+   *
+   * @return cancellation, never cancelled if there is no request
+   */
+  static Cancellation current() {
+    Cancellation current = CURRENT.get();
+
+    return current != null ? current : NONE;
+  }
+
+  /**
+   * Whether the current thread works on a request with a cancellation.
+   *
+   * @return true within {@link #call(Task)}
+   */
+  static boolean isActive() {
+    return CURRENT.get() != null;
+  }
+
+  /**
+   * Check the cancellation of the request the current thread works on.
+   *
+   * @throws CancelledException if the request is cancelled
+   */
+  static void checkpoint() throws CancelledException {
+    Cancellation current = CURRENT.get();
+
+    if (current != null) {
+      current.check();
+    }
+  }
+
+  /**
+   * Cancel the request, it stops at its next checkpoint.
+   */
+  void cancel() {
+    reason = "Request was cancelled";
+  }
+
+  /**
+   * Throw if the request is cancelled or past its deadline.
+   *
+   * @throws CancelledException if the request is cancelled
+   */
+  void check() throws CancelledException {
+    if (reason != null) {
+      throw new CancelledException(reason);
+    }
+
+    if (deadline != null && System.nanoTime() - deadline >= 0) {
+      throw new CancelledException("Request deadline exceeded");
+    }
+  }
+
+  /**
+   * Run a task within the cancellation, on the current thread.
+   *
+   * @param task Task to run
+   * @param <T> Result type
+   * @param <E> Exception type
+   * @return task result
+   * @throws E if the task fails
+   * @throws CancelledException if the request is cancelled
+   */
+  <T, E extends Exception> T call(@NotNull Task<T, E> task) throws E {
+    Cancellation previous = CURRENT.get();
+    CURRENT.set(this);
+
+    try {
+      check();
+
+      return task.run();
+    } finally {
+      if (previous != null) {
+        CURRENT.set(previous);
+      } else {
+        CURRENT.remove();
+      }
+    }
+  }
+
+  /**
+   * Bind a function to the cancellation, so that it runs within it on any
+   * thread, i.e. in parallel streams.
+   *
+   * @param function Function to bind
+   * @param <T> Argument type
+   * @param <R> Result type
+   * @return bound function
+   */
+  <T, R> Function<T, R> bind(@NotNull Function<T, R> function) {
+    return value -> call(() -> function.apply(value));
+  }
+
+  /**
+   * Work of a request.
+   *
+   * @param <T> Result type
+   * @param <E> Exception type
+   */
+  interface Task<T, E extends Exception> {
+    T run() throws E;
+  }
+}
@@ -0,0 +1,7 @@
+package com.advanon.pdfsignatures;
+
+public class CancelledException extends RuntimeException {
+  public CancelledException(String errorMessage) {
+    super(errorMessage);
+  }
+}
@@ -0,0 +1,297 @@
+package com.advanon.pdfsignatures;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1Set;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.CMSAttributes;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+import org.bouncycastle.asn1.cms.ContentInfo;
+import org.bouncycastle.asn1.cms.IssuerAndSerialNumber;
+import org.bouncycastle.asn1.cms.SignedData;
+import org.bouncycastle.asn1.cms.SignerIdentifier;
+import org.bouncycastle.asn1.cms.SignerInfo;
+import org.bouncycastle.asn1.ess.ESSCertIDv2;
+import org.bouncycastle.asn1.ess.SigningCertificateV2;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Certificate;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.IssuerSerial;
+import org.bouncycastle.operator.DefaultDigestAlgorithmIdentifierFinder;
+import org.bouncycastle.operator.DefaultSignatureAlgorithmIdentifierFinder;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Detached CMS container assembled around a raw signature value, so that
+ * external signers (i.e. HSMs) sign a single hash instead of building the
+ * whole container.
+ * <p>
+ *   The signed attributes are the PAdES baseline ones: content type,
+ *   message digest of the document and the signing certificate. Signing
+ *   time is left out, the signature dictionary carries the date. The
+ *   attributes depend on the document digest and the chain only, so
+ *   {@code placeholder} and {@code sign} build the very same ones and only
+ *   their digest travels to the signer. RSA (PKCS #1 v1.5) and ECDSA
+ *   signer keys are supported, ECDSA signatures either DER-encoded or as
+ *   plain r || s, the way PKCS #11 tokens give them.
+ * </p>
+ */
+final class CmsContainer {
+  private final SignerChain chain;
+  private final HashAlgorithm algorithm;
+
+  /**
+   * @param chain Signer certificate chain
+   * @param algorithm Digest algorithm, default is used if null
+   */
+  CmsContainer(
+      @NotNull SignerChain chain,
+      @Nullable HashAlgorithm algorithm
+  ) {
+    this.chain = chain;
+    this.algorithm = algorithm == null
+      ? Constants.DEFAULT_HASH_ALGORITHM
+      : algorithm;
+  }
+
+  /**
+   * Digest of the signed attributes, the hash the external signer signs.
+   *
+   * @param documentDigest Digest of the hashable document bytes
+   * @return signed attributes digest
+   * @throws SignatureException if the attributes could not be built
+   */
+  byte[] attributesDigest(
+      @NotNull byte[] documentDigest
+  ) throws SignatureException {
+    return hash(encode(signedAttributes(documentDigest)));
+  }
+
+  /**
+   * Assemble the container, once the raw signature is checked against the
+   * signer certificate.
+   *
+   * @param documentDigest Digest of the hashable document bytes
+   * @param rawSignature Signature value of the signed attributes digest
+   * @return DER-encoded detached CMS signature
+   * @throws SignatureException if the signature does not match or the
+   *         container could not be built
+   */
+  byte[] assemble(
+      @NotNull byte[] documentDigest,
+      @NotNull byte[] rawSignature
+  ) throws SignatureException {
+    X509Certificate signer = chain.getSigner();
+    ASN1Set attributes = signedAttributes(documentDigest);
+    String signatureAlgorithm = signatureAlgorithm(signer);
+    byte[] signatureValue = "EC".equals(signer.getPublicKey().getAlgorithm())
+        ? ecdsaSignature(rawSignature)
+        : rawSignature;
+
+    verify(signer, signatureAlgorithm, encode(attributes), signatureValue);
+
+    AlgorithmIdentifier digestAlgorithm = digestAlgorithm();
+    SignerInfo signerInfo = new SignerInfo(
+        new SignerIdentifier(new IssuerAndSerialNumber(
+          issuer(signer), signer.getSerialNumber()
+        )),
+        digestAlgorithm,
+        attributes,
+        new DefaultSignatureAlgorithmIdentifierFinder()
+          .find(signatureAlgorithm),
+        new DEROctetString(signatureValue),
+        null
+    );
+
+    ASN1EncodableVector certificates = new ASN1EncodableVector();
+    for (X509Certificate certificate : chain.getCertificates()) {
+      certificates.add(Certificate.getInstance(encoded(certificate)));
+    }
+
+    SignedData signedData = new SignedData(
+        new DERSet(digestAlgorithm),
+        new ContentInfo(CMSObjectIdentifiers.data, null),
+        new DERSet(certificates),
+        null,
+        new DERSet(signerInfo)
+    );
+
+    try {
+      return new ContentInfo(CMSObjectIdentifiers.signedData, signedData)
+        .getEncoded(ASN1Encoding.DER);
+    } catch (IOException e) {
+      throw new SignatureException(e.getMessage());
+    }
+  }
+
+  private ASN1Set signedAttributes(
+      @NotNull byte[] documentDigest
+  ) throws SignatureException {
+    X509Certificate signer = chain.getSigner();
+    ESSCertIDv2 certId = new ESSCertIDv2(
+        digestAlgorithm(),
+        hash(encoded(signer)),
+        new IssuerSerial(
+          new GeneralNames(new GeneralName(issuer(signer))),
+          signer.getSerialNumber()
+        )
+    );
+
+    ASN1EncodableVector attributes = new ASN1EncodableVector();
+    attributes.add(new Attribute(
+        CMSAttributes.contentType,
+        new DERSet(CMSObjectIdentifiers.data)
+    ));
+    attributes.add(new Attribute(
+        CMSAttributes.messageDigest,
+        new DERSet(new DEROctetString(documentDigest))
+    ));
+    attributes.add(new Attribute(
+        PKCSObjectIdentifiers.id_aa_signingCertificateV2,
+        new DERSet(new SigningCertificateV2(certId))
+    ));
+
+    // DER sorts the attributes, the encoding is the same every time
+    return new DERSet(attributes);
+  }
+
+  private AlgorithmIdentifier digestAlgorithm() {
+    return new DefaultDigestAlgorithmIdentifierFinder()
+      .find(algorithm.getAlgorithmName());
+  }
+
+  /**
+   * JCA name of the signature algorithm, i.e. SHA512withECDSA.
+   */
+  private String signatureAlgorithm(
+      @NotNull X509Certificate signer
+  ) throws SignatureException {
+    String keyAlgorithm = signer.getPublicKey().getAlgorithm();
+    String digestName = algorithm.getAlgorithmName().replace("-", "");
+
+    switch (keyAlgorithm) {
+      case "RSA":
+        return digestName + "withRSA";
+      case "EC":
+        return digestName + "withECDSA";
+      default:
+        throw new SignatureException(
+          "Unsupported signer key algorithm: " + keyAlgorithm
+        );
+    }
+  }
+
+  /**
+   * DER-encoded ECDSA signature, converted from r || s if needed.
+   */
+  private static byte[] ecdsaSignature(
+      @NotNull byte[] rawSignature
+  ) throws SignatureException {
+    try {
+      ASN1Sequence sequence = ASN1Sequence.getInstance(rawSignature);
+
+      if (sequence.size() == 2 && Arrays.equals(
+          sequence.getEncoded(ASN1Encoding.DER), rawSignature
+      )) {
+        return rawSignature;
+      }
+    } catch (IllegalArgumentException | IOException e) {
+      // Not DER-encoded, taken as r || s
+    }
+
+    if (rawSignature.length == 0 || rawSignature.length % 2 != 0) {
+      throw new SignatureException("Malformed ECDSA signature");
+    }
+
+    int half = rawSignature.length / 2;
+    ASN1EncodableVector values = new ASN1EncodableVector();
+    values.add(new ASN1Integer(
+        new BigInteger(1, Arrays.copyOfRange(rawSignature, 0, half))
+    ));
+    values.add(new ASN1Integer(new BigInteger(
+        1, Arrays.copyOfRange(rawSignature, half, rawSignature.length)
+    )));
+
+    try {
+      return new DERSequence(values).getEncoded(ASN1Encoding.DER);
+    } catch (IOException e) {
+      throw new SignatureException(e.getMessage());
+    }
+  }
+
+  private static void verify(
+      @NotNull X509Certificate signer,
+      @NotNull String signatureAlgorithm,
+      @NotNull byte[] attributes,
+      @NotNull byte[] rawSignature
+  ) throws SignatureException {
+    try {
+      java.security.Signature verifier
+          = java.security.Signature.getInstance(signatureAlgorithm);
+      verifier.initVerify(signer.getPublicKey());
+      verifier.update(attributes);
+
+      if (!verifier.verify(rawSignature)) {
+        throw new SignatureException(
+          "Raw signature does not match the signer certificate"
+        );
+      }
+    } catch (GeneralSecurityException e) {
+      throw new SignatureException(
+        "Could not verify raw signature: " + e.getMessage()
+      );
+    }
+  }
+
+  private byte[] hash(@NotNull byte[] content) throws SignatureException {
+    try {
+      return MessageDigest.getInstance(algorithm.getAlgorithmName())
+        .digest(content);
+    } catch (NoSuchAlgorithmException e) {
+      throw new SignatureException(e.getMessage());
+    }
+  }
+
+  private static X500Name issuer(@NotNull X509Certificate certificate) {
+    return X500Name.getInstance(
+        certificate.getIssuerX500Principal().getEncoded()
+    );
+  }
+
+  private static byte[] encoded(
+      @NotNull X509Certificate certificate
+  ) throws SignatureException {
+    try {
+      return certificate.getEncoded();
+    } catch (CertificateEncodingException e) {
+      throw new SignatureException(e.getMessage());
+    }
+  }
+
+  private static byte[] encode(@NotNull ASN1Set set) throws SignatureException {
+    try {
+      return set.getEncoded(ASN1Encoding.DER);
+    } catch (IOException e) {
+      throw new SignatureException(e.getMessage());
+    }
+  }
+}
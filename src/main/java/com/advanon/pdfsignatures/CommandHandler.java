@@ -0,0 +1,101 @@
+package com.advanon.pdfsignatures;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Handler of a single application command.
+ * <p>
+ *   Every command lives in its own class, so that the JVM only loads the
+ *   classes of the command which is actually executed. For instance,
+ *   `digest` and `sign` never load BouncyCastle OCSP classes needed by `ltv`.
+ * </p>
+ */
+abstract class CommandHandler {
+  /**
+   * Execute the command.
+   *
+   * @param arguments Parsed command arguments
+   * @return command result
+   * @throws IOException if reading or writing documents fails
+   */
+  abstract String execute(
+      @NotNull ApplicationArguments arguments
+  ) throws IOException;
+
+  /**
+   * Write document content to the given path.
+   *
+   * @param pdf Document to write
+   * @param path Destination path
+   * @throws IOException if writing fails
+   */
+  protected void writeOut(
+      @NotNull PdfDocument pdf,
+      @NotNull String path
+  ) throws IOException {
+    try (
+        Trace.Scope span = Trace.span("write");
+        OutputStream fileOutputStream = new FileOutputStream(path)
+    ) {
+      pdf.writeContent(fileOutputStream);
+    }
+  }
+
+  /**
+   * With {@code --certchain} external signers sign the digest of the CMS
+   * signed attributes instead of the document digest, and the container is
+   * assembled around their raw signature, see {@link CmsContainer}.
+   *
+   * @param arguments Parsed command arguments
+   * @return container, null if no certificate chain is given
+   * @throws SignatureException if the chain could not be read
+   */
+  @Nullable
+  protected CmsContainer cmsContainer(
+      @NotNull ApplicationArguments arguments
+  ) throws SignatureException {
+    if (arguments.getCertChain() == null) {
+      return null;
+    }
+
+    return new CmsContainer(
+        SignerChain.read(Paths.get(arguments.getCertChain())),
+        arguments.getHashAlgorithm()
+    );
+  }
+
+  /**
+   * Field a raw signature is for: the given one, or the only placeholder
+   * which is not signed yet.
+   *
+   * @param arguments Parsed command arguments
+   * @param emptyPlaceholders Names of the empty placeholders
+   * @return field name
+   * @throws SignatureException if no field is given and there is not
+   *                            exactly one empty placeholder
+   */
+  protected String rawSignatureField(
+      @NotNull ApplicationArguments arguments,
+      @NotNull List<String> emptyPlaceholders
+  ) throws SignatureException {
+    if (arguments.getField() != null) {
+      return arguments.getField();
+    }
+
+    if (emptyPlaceholders.size() != 1) {
+      throw new SignatureException(
+        "--certchain needs --field, the document has "
+          + emptyPlaceholders.size() + " empty placeholders"
+      );
+    }
+
+    return emptyPlaceholders.get(0);
+  }
+}
@@ -0,0 +1,43 @@
+package com.advanon.pdfsignatures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Positional reads of document content, the way
+ * {@link FileChannel#read(ByteBuffer, long)} does them, so that content
+ * kept in a file is hashed without reading it into heap.
+ */
+interface ContentSource {
+  /**
+   * Read content at the given position into the buffer.
+   *
+   * @param buffer Buffer to fill up to its limit
+   * @param position Content position
+   * @return number of bytes read, -1 past the end of the content
+   * @throws IOException if reading fails
+   */
+  int read(@NotNull ByteBuffer buffer, long position) throws IOException;
+
+  /**
+   * Positional reads of an array.
+   *
+   * @param content Content array
+   * @return content source
+   */
+  static ContentSource of(@NotNull byte[] content) {
+    return (buffer, position) -> {
+      if (position >= content.length) {
+        return -1;
+      }
+
+      int read = (int) Math.min(buffer.remaining(), content.length - position);
+      buffer.put(content, (int) position, read);
+
+      return read;
+    };
+  }
+}
@@ -0,0 +1,329 @@
+package com.advanon.pdfsignatures;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Long-running mode which serves commands over stdio, so that
+ * the JVM startup is paid once and not for every call.
+ * <p>
+ *   Every request is a single line of tab-separated fields:
+ *   request id, command name and command arguments
+ *   (i.e. "1\tdigest\t--file\tfile.pdf"). Every response is a block of
+ *   KEY=value lines, starting with "ID=request id" and terminated with
+ *   an empty line.
+ * </p>
+ * <p>
+ *   The daemon warms itself up on startup. It announces its state with
+ *   "STATE=WARMING" and "STATE=READY" blocks, answers the "ready" command
+ *   with READY or NOT_READY and, if configured, creates a ready file once
+ *   warmed up. Requests are served during the warm-up as well, though
+ *   slower, so routers should wait for the ready state.
+ * </p>
+ * <p>
+ *   Requests are served concurrently by a {@link LaneScheduler}, responses
+ *   may come in a different order than requests. "shutdown" waits for the
+ *   requests being served. "cancel" followed by a request id cancels that
+ *   request, which then answers with STATUS=CANCELLED, as requests past
+ *   their --timeout do.
+ * </p>
+ * <p>
+ *   The "stats" command answers with the buffer pool hit rate and the
+ *   bytes it retains, as comma-separated key=value pairs.
+ * </p>
+ */
+final class Daemon {
+  static final String FIELD_SEPARATOR = "\t";
+  private static final Pattern KEY_PATTERN = Pattern.compile("[A-Z_]+=");
+
+  private final BufferedReader input;
+  private final PrintStream output;
+  private final WarmUp warmUp;
+  @Nullable private final Path readyFile;
+  private final LaneScheduler scheduler;
+  private final Map<String, Cancellation> requests = new ConcurrentHashMap<>();
+  private final AtomicBoolean ready = new AtomicBoolean(false);
+
+  Daemon(
+      @NotNull BufferedReader input,
+      @NotNull PrintStream output,
+      @NotNull WarmUp warmUp,
+      @Nullable Path readyFile
+  ) {
+    this(
+        input,
+        output,
+        warmUp,
+        readyFile,
+        new LaneScheduler(Runtime.getRuntime().availableProcessors())
+    );
+  }
+
+  Daemon(
+      @NotNull BufferedReader input,
+      @NotNull PrintStream output,
+      @NotNull WarmUp warmUp,
+      @Nullable Path readyFile,
+      @NotNull LaneScheduler scheduler
+  ) {
+    this.input = input;
+    this.output = output;
+    this.warmUp = warmUp;
+    this.readyFile = readyFile;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Serve requests until the input is closed or "shutdown" is received.
+   *
+   * @throws IOException if reading requests fails
+   */
+  void run() throws IOException {
+    writeBlock("STATE=WARMING");
+
+    Thread warmUpThread = new Thread(this::warmUp, "pdf-signatures-warmup");
+    warmUpThread.setDaemon(true);
+    warmUpThread.start();
+
+    try {
+      String line;
+
+      while ((line = input.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+
+        if (!serve(Arrays.asList(line.split(FIELD_SEPARATOR, -1)))) {
+          break;
+        }
+      }
+    } finally {
+      warmUpThread.interrupt();
+      awaitRequests();
+      deleteReadyFile();
+    }
+  }
+
+  boolean isReady() {
+    return ready.get();
+  }
+
+  /**
+   * Serve a single request.
+   *
+   * @param fields Request fields
+   * @return false if the daemon should stop
+   */
+  private boolean serve(@NotNull List<String> fields) {
+    String id = fields.get(0);
+    String command = fields.size() > 1 ? fields.get(1) : "";
+
+    switch (command) {
+      case "shutdown":
+        awaitRequests();
+        writeResponse(id, "STATUS=SUCCESS\nRESULT=STOPPED");
+        return false;
+      case "ready":
+        writeResponse(
+            id, "STATUS=SUCCESS\nRESULT=" + (isReady() ? "READY" : "NOT_READY")
+        );
+        return true;
+      case "cancel":
+        writeResponse(id, cancel(fields));
+        return true;
+      case "stats":
+        writeResponse(id, "STATUS=SUCCESS\nRESULT=" + formatStats());
+        return true;
+      case "daemon":
+        writeResponse(id, formatError("Command is not supported by daemon"));
+        return true;
+      default:
+        break;
+    }
+
+    if (fields.size() % 2 != 0) {
+      writeResponse(id, formatError("Every argument must have a value"));
+      return true;
+    }
+
+    ApplicationArguments arguments = new ApplicationArguments(
+        fields.subList(2, fields.size())
+    ).parse();
+
+    ApplicationCommand applicationCommand
+        = new ApplicationCommand(command, arguments);
+    // The deadline counts from receipt, time spent queued included
+    Cancellation cancellation = new Cancellation(arguments.getTimeout());
+    long received = System.nanoTime();
+    requests.put(id, cancellation);
+
+    scheduler.execute(
+        scheduler.classify(command, inputSize(arguments)),
+        () -> {
+          try {
+            writeResponse(
+                id, applicationCommand.respond(cancellation, received)
+            );
+          } finally {
+            requests.remove(id, cancellation);
+          }
+        }
+    );
+
+    return true;
+  }
+
+  /**
+   * Cancel the request with the given id, which answers with
+   * STATUS=CANCELLED at its next checkpoint.
+   *
+   * @param fields Request fields, the request id comes third
+   * @return response
+   */
+  private String cancel(@NotNull List<String> fields) {
+    if (fields.size() != 3) {
+      return formatError("Request id to cancel is required");
+    }
+
+    Cancellation cancellation = requests.get(fields.get(2));
+
+    if (cancellation == null) {
+      return "STATUS=SUCCESS\nRESULT=NOT_FOUND";
+    }
+
+    cancellation.cancel();
+
+    return "STATUS=SUCCESS\nRESULT=CANCELLED";
+  }
+
+  private long inputSize(@NotNull ApplicationArguments arguments) {
+    if (arguments.getFile() == null) {
+      return 0;
+    }
+
+    try {
+      return Files.size(Paths.get(arguments.getFile()));
+    } catch (IOException | InvalidPathException e) {
+      // The command reports it
+      return 0;
+    }
+  }
+
+  /**
+   * Wait for the requests being served, so that every one is answered.
+   */
+  private void awaitRequests() {
+    try {
+      scheduler.shutdown();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void warmUp() {
+    try {
+      warmUp.run();
+    } catch (RuntimeException e) {
+      // A failed warm-up only means a slower start, serve anyway
+      writeBlock("WARMUP_ERROR=" + e.getMessage());
+    }
+
+    if (Thread.currentThread().isInterrupted()) {
+      return;
+    }
+
+    ready.set(true);
+    createReadyFile();
+    writeBlock("STATE=READY");
+  }
+
+  private void createReadyFile() {
+    if (readyFile == null) {
+      return;
+    }
+
+    try {
+      Files.write(readyFile, "READY\n".getBytes());
+    } catch (IOException e) {
+      writeBlock("WARMUP_ERROR=" + e.getMessage());
+    }
+  }
+
+  private void deleteReadyFile() {
+    if (readyFile == null) {
+      return;
+    }
+
+    try {
+      Files.deleteIfExists(readyFile);
+    } catch (IOException e) {
+      // Nothing to do, the process is going away anyway
+    }
+  }
+
+  private String formatStats() {
+    BufferPool pool = BufferPool.getInstance();
+
+    return String.format(
+        Locale.ROOT,
+        "buffer_pool_hit_rate=%.4f,buffer_pool_retained=%d",
+        pool.getHitRate(),
+        pool.getRetained()
+    );
+  }
+
+  private String formatError(@NotNull String message) {
+    return "STATUS=ERROR\n"
+           + "ERROR_TYPE=" + DaemonException.class + "\n"
+           + "ERROR_MESSAGE=" + message;
+  }
+
+  private void writeResponse(@NotNull String id, @NotNull String response) {
+    writeBlock("ID=" + id + "\n" + response);
+  }
+
+  /**
+   * Write a block of KEY=value lines. Empty lines terminate blocks, so they
+   * are dropped, and continuation lines of multi-line values (i.e. exception
+   * messages) are joined with the line they belong to.
+   *
+   * @param block Block content
+   */
+  private void writeBlock(@NotNull String block) {
+    StringBuilder builder = new StringBuilder();
+
+    for (String line : block.replace("\r", "").split("\n")) {
+      if (line.isEmpty()) {
+        continue;
+      }
+
+      if (builder.length() > 0 && !KEY_PATTERN.matcher(line).lookingAt()) {
+        builder.setCharAt(builder.length() - 1, ' ');
+      }
+
+      builder.append(line).append('\n');
+    }
+
+    builder.append('\n');
+
+    synchronized (output) {
+      output.print(builder);
+      output.flush();
+    }
+  }
+}
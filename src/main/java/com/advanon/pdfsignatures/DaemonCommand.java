@@ -0,0 +1,45 @@
+package com.advanon.pdfsignatures;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Runs the daemon on top of stdin / stdout until stdin is closed.
+ */
+final class DaemonCommand extends CommandHandler {
+  String execute(@NotNull ApplicationArguments arguments) throws IOException {
+    WarmUp warmUp = new WarmUp(
+        arguments.getWarmUpIterations() != null
+          ? arguments.getWarmUpIterations()
+          : WarmUp.DEFAULT_MAX_ITERATIONS,
+        arguments.getWarmUpTime() != null
+          ? arguments.getWarmUpTime()
+          : WarmUp.DEFAULT_MAX_DURATION
+    );
+
+    Daemon daemon = new Daemon(
+        new BufferedReader(
+          new InputStreamReader(System.in, StandardCharsets.UTF_8)
+        ),
+        System.out,
+        warmUp,
+        arguments.getReadyFile() != null
+          ? Paths.get(arguments.getReadyFile())
+          : null,
+        new LaneScheduler(
+          arguments.getWorkers() != null
+            ? arguments.getWorkers()
+            : Runtime.getRuntime().availableProcessors()
+        )
+    );
+
+    daemon.run();
+
+    return "";
+  }
+}
@@ -0,0 +1,7 @@
+package com.advanon.pdfsignatures;
+
+public class DaemonException extends RuntimeException {
+  public DaemonException(String errorMessage) {
+    super(errorMessage);
+  }
+}
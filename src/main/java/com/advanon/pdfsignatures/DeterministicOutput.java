@@ -0,0 +1,287 @@
+package com.advanon.pdfsignatures;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bouncycastle.util.encoders.Hex;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Makes a written incremental update reproducible.
+ * <p>
+ *   iText stamps every document it writes with the current time, as the
+ *   Info /ModDate and the XMP modification dates, with a random file /ID
+ *   and with random tags on embedded font subsets. These are patched in
+ *   place once the update is written: dates are replaced by the signing
+ *   date in UTC, padded with whitespace to keep every offset, subset tags
+ *   are derived from the seed and the font name, and the /ID is derived
+ *   from the seed and the patched document. The permanent (first) /ID of
+ *   a document which had one is kept, as iText keeps it.
+ * </p>
+ * <p>
+ *   iText writes its dates in the default time zone and always replaces
+ *   the Info /ModDate when it closes the document, whatever the stamper
+ *   info says, so the dates are patched rather than set beforehand. UTC
+ *   dates are shorter than others, and the layout of the whole update
+ *   depends on their width. The stamper pass of a deterministic update
+ *   runs in UTC (see {@link #utc()}), where the signing date exactly fits
+ *   the date iText wrote. The same input, metadata and seed then give
+ *   byte-identical output whatever the host time zone.
+ * </p>
+ */
+final class DeterministicOutput {
+  private static final Pattern FILE_ID = Pattern.compile(
+      "/ID\\s*\\[\\s*<([0-9A-Fa-f]*)>\\s*<([0-9A-Fa-f]*)>"
+  );
+  private static final Pattern INFO_DATE = Pattern.compile(
+      "/ModDate\\s*\\(([^)]*)\\)"
+  );
+  private static final Pattern XMP_DATE = Pattern.compile(
+      "<[\\w.-]+:(?:ModifyDate|MetadataDate)>([^<]*)(</[^>]*>)"
+      + "|:(?:ModifyDate|MetadataDate)=\"([^\"]*)(\")"
+  );
+  private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+  private static final Object ZONE_LOCK = new Object();
+  private static final Pattern SUBSET_TAG = Pattern.compile(
+      "/([A-Z]{6})\\+([\\w.-]+)"
+  );
+
+  private static int zoneUsers;
+  @Nullable private static TimeZone hostZone;
+
+  private DeterministicOutput() {
+  }
+
+  /**
+   * Make UTC the default time zone until the returned scope is closed, so
+   * that iText writes its dates in UTC whatever the host time zone. The
+   * default time zone is process-wide: other threads see UTC as well while
+   * a deterministic update is written, and the host one is restored once
+   * the last of them is done.
+   *
+   * @return scope, to close once the update is written
+   */
+  static UtcScope utc() {
+    synchronized (ZONE_LOCK) {
+      if (zoneUsers++ == 0) {
+        hostZone = TimeZone.getDefault();
+        TimeZone.setDefault(UTC);
+      }
+    }
+
+    return new UtcScope();
+  }
+
+  /**
+   * Patch the dates and the file identifier of an update.
+   *
+   * @param content Document content, patched in place
+   * @param from Offset the update starts at
+   * @param keepFirstId Whether the permanent identifier is kept
+   * @param date Date to write
+   * @param seed Seed of the file identifier
+   * @throws SignatureException if a date could not be patched
+   */
+  static void apply(
+      @NotNull byte[] content,
+      int from,
+      boolean keepFirstId,
+      @NotNull Calendar date,
+      @NotNull String seed
+  ) throws SignatureException {
+    String written = new String(
+        content, from, content.length - from, StandardCharsets.ISO_8859_1
+    );
+
+    MatchResult infoDate = last(INFO_DATE.matcher(written));
+
+    if (infoDate != null) {
+      replace(
+          content,
+          from + infoDate.start(1),
+          from + infoDate.end(),
+          format(date, "'D:'yyyyMMddHHmmss'Z'") + ")"
+      );
+    }
+
+    Matcher xmpDate = XMP_DATE.matcher(written);
+    while (xmpDate.find()) {
+      int group = xmpDate.group(1) != null ? 1 : 3;
+
+      replace(
+          content,
+          from + xmpDate.start(group),
+          from + xmpDate.end(),
+          format(date, "yyyy-MM-dd'T'HH:mm:ss'Z'") + xmpDate.group(group + 1)
+      );
+    }
+
+    replaceSubsetTags(content, from, written, seed);
+
+    MatchResult fileId = last(FILE_ID.matcher(written));
+
+    if (fileId != null) {
+      int firstStart = from + fileId.start(1);
+      int firstEnd = from + fileId.end(1);
+      int secondStart = from + fileId.start(2);
+      int secondEnd = from + fileId.end(2);
+
+      if (!keepFirstId) {
+        Arrays.fill(content, firstStart, firstEnd, (byte) '0');
+      }
+      Arrays.fill(content, secondStart, secondEnd, (byte) '0');
+
+      byte[] id = Hex.toHexString(digest(seed, content))
+        .getBytes(StandardCharsets.US_ASCII);
+
+      if (!keepFirstId) {
+        copy(id, 0, content, firstStart, firstEnd);
+      }
+      copy(id, id.length / 2, content, secondStart, secondEnd);
+    }
+  }
+
+  /**
+   * Only the last match counts, earlier ones belong to former updates.
+   */
+  @Nullable
+  private static MatchResult last(@NotNull Matcher matcher) {
+    MatchResult result = null;
+
+    while (matcher.find()) {
+      result = matcher.toMatchResult();
+    }
+
+    return result;
+  }
+
+  /**
+   * Replace every subset tag of the update. A tag names a single subset,
+   * and is found in the font, its descendant and its descriptor, so each
+   * tag is replaced by the same one everywhere.
+   */
+  private static void replaceSubsetTags(
+      @NotNull byte[] content,
+      int from,
+      @NotNull String written,
+      @NotNull String seed
+  ) {
+    Map<String, byte[]> tags = new LinkedHashMap<>();
+    Matcher matcher = SUBSET_TAG.matcher(written);
+
+    while (matcher.find()) {
+      byte[] tag = tags.computeIfAbsent(
+          matcher.group(1),
+          key -> subsetTag(seed + "|" + tags.size(), matcher.group(2))
+      );
+
+      System.arraycopy(
+          tag, 0, content, from + matcher.start(1), tag.length
+      );
+    }
+  }
+
+  private static byte[] subsetTag(
+      @NotNull String seed,
+      @NotNull String fontName
+  ) {
+    byte[] hash = digest(seed, fontName.getBytes(StandardCharsets.UTF_8));
+    byte[] tag = new byte[6];
+
+    for (int i = 0; i < tag.length; i++) {
+      tag[i] = (byte) ('A' + (hash[i] & 0xff) % 26);
+    }
+
+    return tag;
+  }
+
+  /**
+   * Replace the bytes from start to end, padding with spaces.
+   */
+  private static void replace(
+      @NotNull byte[] content,
+      int start,
+      int end,
+      @NotNull String replacement
+  ) throws SignatureException {
+    byte[] bytes = replacement.getBytes(StandardCharsets.US_ASCII);
+
+    if (bytes.length > end - start) {
+      throw new SignatureException("Written date does not fit its place");
+    }
+
+    System.arraycopy(bytes, 0, content, start, bytes.length);
+    Arrays.fill(content, start + bytes.length, end, (byte) ' ');
+  }
+
+  private static void copy(
+      @NotNull byte[] id,
+      int offset,
+      @NotNull byte[] content,
+      int start,
+      int end
+  ) {
+    System.arraycopy(
+        id, offset, content, start, Math.min(end - start, id.length - offset)
+    );
+  }
+
+  private static String format(
+      @NotNull Calendar date,
+      @NotNull String pattern
+  ) {
+    SimpleDateFormat format = new SimpleDateFormat(pattern);
+    format.setTimeZone(UTC);
+
+    return format.format(date.getTime());
+  }
+
+  private static byte[] digest(
+      @NotNull String seed,
+      @NotNull byte[] content
+  ) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(seed.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+
+      return digest.digest(content);
+    } catch (NoSuchAlgorithmException e) {
+      throw new SignatureException(e.getMessage());
+    }
+  }
+
+  /**
+   * Stamper pass written in UTC, see {@link #utc()}.
+   */
+  static final class UtcScope implements AutoCloseable {
+    private boolean closed;
+
+    private UtcScope() {
+    }
+
+    @Override
+    public void close() {
+      synchronized (ZONE_LOCK) {
+        if (!closed && --zoneUsers == 0) {
+          TimeZone.setDefault(hostZone);
+          hostZone = null;
+        }
+
+        closed = true;
+      }
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package com.advanon.pdfsignatures;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -7,10 +9,24 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 class Digest {
-  private byte[] bytes;
+  private static final int CHUNK_SIZE = 1024 * 1024;
+
+  private ContentSource source;
+  private long[] ranges;
 
   Digest(@NotNull byte[] bytes) {
-    this.bytes = bytes;
+    this(ContentSource.of(bytes), new long[] {0, bytes.length});
+  }
+
+  /**
+   * Digest of content ranges, read from the source chunk by chunk.
+   *
+   * @param source Content source
+   * @param ranges Pairs of range start and length
+   */
+  Digest(@NotNull ContentSource source, @NotNull long[] ranges) {
+    this.source = source;
+    this.ranges = ranges;
   }
 
   /**
@@ -21,16 +37,41 @@ class Digest {
    * @throws DigestException if hashing fails
    */
   byte[] calculate(@Nullable HashAlgorithm algorithm) throws DigestException {
-    try {
+    byte[] slab = BufferPool.getInstance().acquire(CHUNK_SIZE);
+
+    try (Trace.Scope span = Trace.span("hash")) {
       MessageDigest digest = MessageDigest.getInstance(
           algorithm == null
             ? Constants.DEFAULT_HASH_ALGORITHM.getAlgorithmName()
             : algorithm.getAlgorithmName()
       );
+      ByteBuffer buffer = ByteBuffer.wrap(slab, 0, CHUNK_SIZE);
+
+      for (int i = 0; i + 1 < ranges.length; i += 2) {
+        long position = ranges[i];
+        long end = ranges[i] + ranges[i + 1];
+
+        // Hashed in chunks, so that cancelled requests stop early
+        while (position < end) {
+          Cancellation.checkpoint();
+          buffer.clear();
+          buffer.limit((int) Math.min(CHUNK_SIZE, end - position));
+
+          int read = source.read(buffer, position);
+          if (read <= 0) {
+            throw new DigestException("Unexpected end of document");
+          }
+
+          digest.update(slab, 0, read);
+          position += read;
+        }
+      }
 
-      return digest.digest(bytes);
-    } catch (NoSuchAlgorithmException e) {
+      return digest.digest();
+    } catch (NoSuchAlgorithmException | IOException e) {
       throw new DigestException(e.getMessage());
+    } finally {
+      BufferPool.getInstance().release(slab);
     }
   }
 }
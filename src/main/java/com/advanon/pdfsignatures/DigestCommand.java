@@ -0,0 +1,76 @@
+package com.advanon.pdfsignatures;
+
+import com.itextpdf.text.pdf.codec.Base64;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Calculates document digest excluding signatures, or the digest of a single
+ * signature field. Digests recorded in a matching placeholder manifest are
+ * returned without reading the document. With {@code --certchain} the
+ * digest of the CMS signed attributes is returned, see {@link CmsContainer},
+ * built for the digest of a single field: the one given with
+ * {@code --field}, or the only empty placeholder, as {@code sign} embeds it.
+ */
+final class DigestCommand extends CommandHandler {
+  String execute(
+      @NotNull ApplicationArguments arguments
+  ) throws PdfDocumentException, DigestException, ManifestException,
+      SignatureException, IOException {
+    CmsContainer container = cmsContainer(arguments);
+
+    if (arguments.getManifest() != null) {
+      Path file = Paths.get(arguments.getFile());
+      PlaceholderManifest manifest = PlaceholderManifest.read(
+          Paths.get(arguments.getManifest())
+      );
+
+      if (manifest.matches(file)) {
+        String field = container != null
+            ? rawSignatureField(
+              arguments, Signature.emptyPlaceholders(file, manifest)
+            )
+            : arguments.getField();
+        byte[] digest = field != null
+            ? manifest.getDigest(arguments.getHashAlgorithm(), field)
+            : manifest.getDigest(arguments.getHashAlgorithm());
+
+        if (digest != null) {
+          return encode(digest, container);
+        }
+      }
+    }
+
+    try (PdfDocument pdf = new PdfDocument(
+        arguments.getFile(),
+        arguments.getPassword()
+    )) {
+      // The signed attributes are built for the digest of a single field
+      String field = container != null
+          ? rawSignatureField(arguments, Signature.emptyPlaceholders(pdf))
+          : arguments.getField();
+
+      return encode(
+          field != null
+            ? pdf.digest(arguments.getHashAlgorithm(), field)
+            : pdf.digest(arguments.getHashAlgorithm()),
+          container
+      );
+    }
+  }
+
+  private String encode(
+      @NotNull byte[] digest,
+      @Nullable CmsContainer container
+  ) throws SignatureException {
+    return Base64.encodeBytes(
+      container != null ? container.attributesDigest(digest) : digest,
+      Base64.DONT_BREAK_LINES
+    );
+  }
+}
@@ -0,0 +1,356 @@
+package com.advanon.pdfsignatures;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Output buffer of a written document, taking heap from the allowance of
+ * the request and spilling to a temporary file once it is used up.
+ * <p>
+ *   Content kept in heap is held in fixed-size chunks from the
+ *   {@link BufferPool}, so that growing the buffer never copies it.
+ *   Content is read in place, by position or streamed out, which reads
+ *   spilled content from the file rather than into heap; it is only copied
+ *   into an array of the exact size for callers which need one. Buffers
+ *   must be released once read, which gives the heap back and deletes the
+ *   file; closing the stream, as iText does, keeps the content. Buffers
+ *   still held when the allowance is closed, along with their document,
+ *   are released then.
+ * </p>
+ */
+final class DocumentBuffer extends OutputStream implements ContentSource {
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  @Nullable private final MemoryBudget.Allowance allowance;
+  private final List<byte[]> chunks = new ArrayList<>();
+  private long taken;
+  private long size;
+  @Nullable private Path file;
+  @Nullable private OutputStream fileStream;
+  @Nullable private FileChannel fileChannel;
+  private boolean closed;
+
+  /**
+   * Create a buffer for content of about the expected size. The expected
+   * size is taken upfront, the buffer spills right away if it does not fit.
+   *
+   * @param allowance Allowance of the request, heap is not limited if null
+   * @param expectedSize Expected content size in bytes
+   * @throws IOException if the temporary file could not be created
+   */
+  DocumentBuffer(
+      @Nullable MemoryBudget.Allowance allowance,
+      long expectedSize
+  ) throws IOException {
+    this.allowance = allowance;
+
+    if (allowance != null) {
+      allowance.track(this);
+    }
+
+    if (allowance == null || allowance.tryTake(expectedSize)) {
+      taken = allowance != null ? expectedSize : 0;
+    } else {
+      spill();
+    }
+  }
+
+  /**
+   * Whether the content is kept in a temporary file.
+   *
+   * @return true if the buffer spilled
+   */
+  boolean isSpilled() {
+    return file != null;
+  }
+
+  /**
+   * Directory for temporary files of writers which are given one, so that
+   * their own buffers spill as well.
+   *
+   * @return temporary directory, or null if the buffer did not spill
+   */
+  @Nullable
+  File getSpillDirectory() {
+    return file != null ? file.getParent().toFile() : null;
+  }
+
+  long size() {
+    return size;
+  }
+
+  @Override
+  public void write(int value) throws IOException {
+    if (fileStream != null || !fits(1)) {
+      write(new byte[] {(byte) value}, 0, 1);
+      return;
+    }
+
+    int chunkOffset = (int) (size % CHUNK_SIZE);
+    if (chunkOffset == 0) {
+      Cancellation.checkpoint();
+      chunks.add(BufferPool.getInstance().acquire(CHUNK_SIZE));
+    }
+
+    chunks.get(chunks.size() - 1)[chunkOffset] = (byte) value;
+    size++;
+  }
+
+  @Override
+  public void write(
+      @NotNull byte[] bytes,
+      int offset,
+      int length
+  ) throws IOException {
+    // Checked once per chunk written, so that cancelled requests stop early
+    if (size / CHUNK_SIZE != (size + length) / CHUNK_SIZE) {
+      Cancellation.checkpoint();
+    }
+
+    if (fileStream == null && !fits(length)) {
+      spill();
+    }
+
+    if (fileStream != null) {
+      fileStream.write(bytes, offset, length);
+      size += length;
+      return;
+    }
+
+    while (length > 0) {
+      int chunkOffset = (int) (size % CHUNK_SIZE);
+
+      if (chunkOffset == 0) {
+        chunks.add(BufferPool.getInstance().acquire(CHUNK_SIZE));
+      }
+
+      int written = Math.min(length, CHUNK_SIZE - chunkOffset);
+      System.arraycopy(
+          bytes, offset, chunks.get(chunks.size() - 1), chunkOffset, written
+      );
+
+      offset += written;
+      length -= written;
+      size += written;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (fileStream != null && !closed) {
+      fileStream.flush();
+    }
+  }
+
+  /**
+   * Read content at the given position, from the chunks or the file.
+   *
+   * @param buffer Buffer to fill up to its limit
+   * @param position Content position
+   * @return number of bytes read, -1 past the end of the content
+   * @throws IOException if the spilled content could not be read
+   */
+  @Override
+  public int read(
+      @NotNull ByteBuffer buffer,
+      long position
+  ) throws IOException {
+    if (position >= size) {
+      return -1;
+    }
+
+    int length = (int) Math.min(buffer.remaining(), size - position);
+
+    if (fileStream != null) {
+      int limit = buffer.limit();
+      buffer.limit(buffer.position() + length);
+
+      try {
+        return channel().read(buffer, position);
+      } finally {
+        buffer.limit(limit);
+      }
+    }
+
+    int read = 0;
+
+    while (read < length) {
+      int chunkOffset = (int) ((position + read) % CHUNK_SIZE);
+      int copied = Math.min(length - read, CHUNK_SIZE - chunkOffset);
+
+      buffer.put(
+          chunks.get((int) ((position + read) / CHUNK_SIZE)),
+          chunkOffset,
+          copied
+      );
+      read += copied;
+    }
+
+    return read;
+  }
+
+  /**
+   * Stream the content out, chunk by chunk.
+   *
+   * @param outputStream Destination stream
+   * @throws IOException if reading the file or writing fails
+   */
+  void writeTo(@NotNull OutputStream outputStream) throws IOException {
+    if (fileStream != null) {
+      flush();
+
+      try (InputStream inputStream = Files.newInputStream(file)) {
+        Streams.copyInputToOutputStream(inputStream, outputStream);
+      }
+
+      return;
+    }
+
+    for (int i = 0; i < chunks.size(); i++) {
+      Cancellation.checkpoint();
+
+      long offset = (long) i * CHUNK_SIZE;
+      outputStream.write(
+          chunks.get(i), 0, (int) Math.min(CHUNK_SIZE, size - offset)
+      );
+    }
+  }
+
+  /**
+   * Content of the buffer, for callers which need an array. Prefer
+   * {@link #read} and {@link #writeTo}, which do not copy the content
+   * into heap.
+   *
+   * @return content copy of the exact size
+   * @throws IOException if the spilled content could not be read
+   */
+  byte[] toByteArray() throws IOException {
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Document is too large");
+    }
+
+    byte[] content = new byte[(int) size];
+    ByteBuffer buffer = ByteBuffer.wrap(content);
+
+    while (buffer.hasRemaining()) {
+      if (read(buffer, buffer.position()) < 0) {
+        throw new IOException("Unexpected end of buffer");
+      }
+    }
+
+    return content;
+  }
+
+  /**
+   * Give the heap back to the allowance and delete the temporary file.
+   * Releasing a buffer more than once has no effect.
+   */
+  void release() {
+    releaseChunks();
+
+    if (allowance != null) {
+      allowance.untrack(this);
+      allowance.giveBack(taken);
+      taken = 0;
+    }
+
+    if (file != null) {
+      try {
+        close();
+
+        if (fileChannel != null) {
+          fileChannel.close();
+        }
+
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        // Nothing to do, the file is in the temporary directory anyway
+      }
+
+      file = null;
+      fileStream = null;
+      fileChannel = null;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (fileStream != null && !closed) {
+      fileStream.close();
+    }
+
+    closed = true;
+  }
+
+  /**
+   * Channel reading the spilled content, opened once the writes are
+   * flushed to the file.
+   */
+  private FileChannel channel() throws IOException {
+    flush();
+
+    if (fileChannel == null) {
+      fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    return fileChannel;
+  }
+
+  /**
+   * Take heap for the chunks the given bytes need, if there is enough left.
+   */
+  private boolean fits(int length) {
+    long needed = (size + length + CHUNK_SIZE - 1) / CHUNK_SIZE * CHUNK_SIZE;
+
+    if (allowance == null || needed <= taken) {
+      return true;
+    }
+
+    if (allowance.tryTake(needed - taken)) {
+      taken = needed;
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Move the content to a temporary file and keep writing there.
+   */
+  private void spill() throws IOException {
+    file = Files.createTempFile("pdf-signatures", ".buffer");
+    fileStream = new BufferedOutputStream(Files.newOutputStream(file));
+
+    for (int i = 0; i < chunks.size(); i++) {
+      int offset = i * CHUNK_SIZE;
+      fileStream.write(
+          chunks.get(i), 0, (int) Math.min(CHUNK_SIZE, size - offset)
+      );
+    }
+
+    releaseChunks();
+
+    if (allowance != null) {
+      allowance.giveBack(taken);
+      taken = 0;
+    }
+  }
+
+  private void releaseChunks() {
+    chunks.forEach(BufferPool.getInstance()::release);
+    chunks.clear();
+  }
+}
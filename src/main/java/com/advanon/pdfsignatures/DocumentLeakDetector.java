@@ -0,0 +1,124 @@
+package com.advanon.pdfsignatures;
+
+import java.io.PrintStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Debug helper which reports documents that were garbage collected
+ * without being closed.
+ * <p>
+ *   Detection is disabled by default, as recording allocation stack traces
+ *   is expensive. Run the JVM with {@code -Dpdfsignatures.leakDetection=true}
+ *   to enable it. Every leaked document is then reported to stderr together
+ *   with the stack trace of the place where it was opened.
+ * </p>
+ */
+final class DocumentLeakDetector {
+  static final String ENABLED_PROPERTY = "pdfsignatures.leakDetection";
+
+  private static final DocumentLeakDetector INSTANCE = new DocumentLeakDetector(
+      Boolean.getBoolean(ENABLED_PROPERTY), System.err
+  );
+
+  private final boolean enabled;
+  private final PrintStream report;
+  private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+  private final Set<Tracker> trackers = ConcurrentHashMap.newKeySet();
+  private final AtomicLong leaks = new AtomicLong();
+
+  DocumentLeakDetector(boolean enabled, @NotNull PrintStream report) {
+    this.enabled = enabled;
+    this.report = report;
+  }
+
+  static DocumentLeakDetector getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Start tracking a resource.
+   *
+   * @param resource Resource which has to be closed
+   * @return tracker to close together with the resource,
+   *         or null if detection is disabled
+   */
+  @Nullable
+  Tracker track(@NotNull Object resource) {
+    if (!enabled) {
+      return null;
+    }
+
+    poll();
+
+    Tracker tracker = new Tracker(resource);
+    trackers.add(tracker);
+
+    return tracker;
+  }
+
+  /**
+   * Report resources which were collected since the last call.
+   */
+  void poll() {
+    Reference<?> reference;
+
+    while ((reference = queue.poll()) != null) {
+      Tracker tracker = (Tracker) reference;
+
+      if (trackers.remove(tracker)) {
+        leaks.incrementAndGet();
+        report.println(
+            "LEAK: " + tracker.resourceName + " was not closed"
+        );
+        tracker.allocation.printStackTrace(report);
+      }
+    }
+  }
+
+  /**
+   * Number of resources which are open at the moment, leaked ones included
+   * until they are collected.
+   *
+   * @return number of tracked resources
+   */
+  int getOpenCount() {
+    return trackers.size();
+  }
+
+  /**
+   * Number of resources reported as leaked so far.
+   *
+   * @return number of leaks
+   */
+  long getLeakCount() {
+    return leaks.get();
+  }
+
+  final class Tracker extends PhantomReference<Object> {
+    private final String resourceName;
+    private final Throwable allocation;
+
+    private Tracker(@NotNull Object resource) {
+      super(resource, queue);
+
+      this.resourceName = resource.getClass().getSimpleName();
+      this.allocation = new Throwable("Allocated at");
+    }
+
+    /**
+     * Stop tracking the resource, it was released properly.
+     */
+    void close() {
+      trackers.remove(this);
+      clear();
+    }
+  }
+}
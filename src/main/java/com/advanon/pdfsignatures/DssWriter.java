@@ -0,0 +1,219 @@
+package com.advanon.pdfsignatures;
+
+import com.itextpdf.text.pdf.PRStream;
+import com.itextpdf.text.pdf.PdfArray;
+import com.itextpdf.text.pdf.PdfDeveloperExtension;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfIndirectReference;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Writes the Document Security Store (DSS) of a document, see PAdES part 4.
+ * <p>
+ *   Every distinct CRL, OCSP response and certificate is written once, as a
+ *   compressed stream, and listed in the DSS. Per-signature VRI entries only
+ *   reference the shared streams, so the output grows with the amount of
+ *   distinct material, not with the number of signatures. Material already
+ *   stored in the DSS of previous revisions is reused, not written again.
+ * </p>
+ */
+final class DssWriter {
+  private final PdfReader reader;
+  private final PdfStamper stamper;
+  private final Material ocsps = new Material(PdfName.OCSPS);
+  private final Material crls = new Material(PdfName.CRLS);
+  private final Material certs = new Material(PdfName.CERTS);
+  private final PdfDictionary vris = new PdfDictionary();
+
+  DssWriter(@NotNull PdfReader reader, @NotNull PdfStamper stamper) {
+    this.reader = reader;
+    this.stamper = stamper;
+  }
+
+  /**
+   * Load the existing DSS, if any. Its VRI entries are kept unless they
+   * are replaced, its material is reused.
+   *
+   * @throws IOException if existing streams could not be read
+   */
+  void load() throws IOException {
+    PdfDictionary dss = reader.getCatalog().getAsDict(PdfName.DSS);
+
+    if (dss == null) {
+      return;
+    }
+
+    PdfDictionary existingVris = dss.getAsDict(PdfName.VRI);
+    if (existingVris != null) {
+      for (PdfName key : existingVris.getKeys()) {
+        vris.put(key, existingVris.get(key));
+      }
+    }
+
+    ocsps.load(dss.getAsArray(PdfName.OCSPS));
+    crls.load(dss.getAsArray(PdfName.CRLS));
+    certs.load(dss.getAsArray(PdfName.CERTS));
+  }
+
+  /**
+   * Add a VRI entry for a signature.
+   *
+   * @param key VRI key, hex-encoded SHA-1 of the signature contents
+   * @param ocspList DER-encoded basic OCSP responses
+   * @param crlList DER-encoded CRLs
+   * @param certList DER-encoded certificates
+   * @throws IOException if writing material fails
+   */
+  void addVerification(
+      @NotNull PdfName key,
+      @NotNull List<byte[]> ocspList,
+      @NotNull List<byte[]> crlList,
+      @NotNull List<byte[]> certList
+  ) throws IOException {
+    PdfDictionary vri = new PdfDictionary();
+
+    putReferences(vri, PdfName.OCSP, ocsps.add(ocspList));
+    putReferences(vri, PdfName.CRL, crls.add(crlList));
+    putReferences(vri, PdfName.CERT, certs.add(certList));
+
+    vris.put(key, addToBody(vri));
+  }
+
+  /**
+   * Add material which no signature references, so that it is still
+   * stored once in the DSS.
+   *
+   * @param ocspList DER-encoded basic OCSP responses
+   * @param crlList DER-encoded CRLs
+   * @throws IOException if writing material fails
+   */
+  void addUnreferenced(
+      @NotNull List<byte[]> ocspList,
+      @NotNull List<byte[]> crlList
+  ) throws IOException {
+    ocsps.add(ocspList);
+    crls.add(crlList);
+  }
+
+  /**
+   * Write the DSS and point the catalog at it.
+   *
+   * @throws IOException if writing fails
+   */
+  void write() throws IOException {
+    PdfDictionary dss = new PdfDictionary();
+
+    dss.put(PdfName.VRI, addToBody(vris));
+    ocsps.putInto(dss);
+    crls.putInto(dss);
+    certs.putInto(dss);
+
+    PdfDictionary catalog = reader.getCatalog();
+    catalog.put(PdfName.DSS, addToBody(dss));
+    stamper.getWriter().addDeveloperExtension(
+        PdfDeveloperExtension.ESIC_1_7_EXTENSIONLEVEL5
+    );
+    stamper.markUsed(catalog);
+  }
+
+  private void putReferences(
+      @NotNull PdfDictionary vri,
+      @NotNull PdfName name,
+      @NotNull PdfArray references
+  ) throws IOException {
+    if (references.size() > 0) {
+      vri.put(name, addToBody(references));
+    }
+  }
+
+  private PdfIndirectReference addToBody(
+      @NotNull PdfObject object
+  ) throws IOException {
+    return stamper.getWriter().addToBody(object, false).getIndirectReference();
+  }
+
+  /**
+   * Distinct material of a single kind, along with the references of the
+   * streams it is written to.
+   */
+  private final class Material {
+    private final PdfName arrayName;
+    private final PdfArray references = new PdfArray();
+    private final Map<ByteBuffer, PdfObject> referencesByContent
+        = new HashMap<>();
+
+    private Material(@NotNull PdfName arrayName) {
+      this.arrayName = arrayName;
+    }
+
+    private void load(@Nullable PdfArray existing) throws IOException {
+      if (existing == null) {
+        return;
+      }
+
+      for (int i = 0; i < existing.size(); i++) {
+        PdfObject reference = existing.getPdfObject(i);
+        PdfObject object = PdfReader.getPdfObject(reference);
+
+        references.add(reference);
+
+        if (object instanceof PRStream) {
+          referencesByContent.putIfAbsent(
+              ByteBuffer.wrap(PdfReader.getStreamBytes((PRStream) object)),
+              reference
+          );
+        }
+      }
+    }
+
+    /**
+     * Write contents which were not written yet.
+     *
+     * @param contents DER-encoded material
+     * @return references to the streams of all the given contents
+     * @throws IOException if writing fails
+     */
+    private PdfArray add(@NotNull List<byte[]> contents) throws IOException {
+      PdfArray added = new PdfArray();
+
+      for (byte[] content : contents) {
+        ByteBuffer key = ByteBuffer.wrap(content);
+        PdfObject reference = referencesByContent.get(key);
+
+        if (reference == null) {
+          PdfStream stream = new PdfStream(content);
+          stream.flateCompress();
+
+          reference = addToBody(stream);
+          referencesByContent.put(key, reference);
+          references.add(reference);
+        }
+
+        if (!added.contains(reference)) {
+          added.add(reference);
+        }
+      }
+
+      return added;
+    }
+
+    private void putInto(@NotNull PdfDictionary dss) throws IOException {
+      if (references.size() > 0) {
+        dss.put(arrayName, addToBody(references));
+      }
+    }
+  }
+}
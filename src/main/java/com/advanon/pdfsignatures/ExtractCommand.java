@@ -0,0 +1,33 @@
+package com.advanon.pdfsignatures;
+
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Extracts the PKCS7 of every document signature, and the revision it signs
+ * given {@code --revisions}, reported as a comma-separated list of "field
+ * name:contents:revision" entries. Contents are the path of the written
+ * file, or the base64-encoded PKCS7 without {@code --out}.
+ */
+final class ExtractCommand extends CommandHandler {
+  String execute(
+      @NotNull ApplicationArguments arguments
+  ) throws ExtractionException, ManifestException {
+    return new Extraction(
+        Paths.get(arguments.getFile()),
+        arguments.getPassword(),
+        arguments.getManifest() != null
+          ? PlaceholderManifest.read(Paths.get(arguments.getManifest()))
+          : null
+    ).extract(
+        arguments.getOut() != null ? Paths.get(arguments.getOut()) : null,
+        arguments.getRevisions() != null
+          ? Paths.get(arguments.getRevisions())
+          : null
+    ).stream()
+      .map(Extraction.Result::toString)
+      .collect(Collectors.joining(","));
+  }
+}
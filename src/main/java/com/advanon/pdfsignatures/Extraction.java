@@ -0,0 +1,454 @@
+package com.advanon.pdfsignatures;
+
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfArray;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfString;
+import com.itextpdf.text.pdf.codec.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Streams the signatures embedded into a document file out, and optionally
+ * the revision every one of them signs.
+ * <p>
+ *   Only the signature dictionaries are parsed, in partial mode, or nothing
+ *   at all given a matching {@link PlaceholderManifest}. /Contents slots are
+ *   read through positional reads of the file and hex-decoded a buffer at a
+ *   time, revisions are transferred straight from file to file. Neither is
+ *   ever held in memory as a whole.
+ * </p>
+ * <p>
+ *   Placeholders are padded with zeros, so only the DER-encoded PKCS7 is
+ *   written. Empty placeholders have neither contents nor a revision.
+ * </p>
+ */
+final class Extraction {
+  static final String CONTENTS_EXTENSION = ".p7s";
+  static final String REVISION_EXTENSION = ".pdf";
+  private static final long TRANSFER_SIZE = 8L * 1024 * 1024;
+  private static final byte[] HEX_VALUES = new byte[128];
+
+  static {
+    Arrays.fill(HEX_VALUES, (byte) -1);
+
+    for (int i = 0; i < 10; i++) {
+      HEX_VALUES['0' + i] = (byte) i;
+    }
+
+    for (int i = 0; i < 6; i++) {
+      HEX_VALUES['a' + i] = (byte) (10 + i);
+      HEX_VALUES['A' + i] = (byte) (10 + i);
+    }
+  }
+
+  private final Path path;
+  @Nullable private final String password;
+  @Nullable private final PlaceholderManifest manifest;
+
+  Extraction(
+      @NotNull Path path,
+      @Nullable String password,
+      @Nullable PlaceholderManifest manifest
+  ) {
+    this.path = path;
+    this.password = password;
+    this.manifest = manifest;
+  }
+
+  /**
+   * Extract every document signature.
+   *
+   * @param contentsDirectory Where to write the PKCS7 blobs, they are
+   *                          returned base64-encoded if null
+   * @param revisionsDirectory Where to write the signed revisions, they are
+   *                           not extracted if null
+   * @return extracted signatures, in the signature fields order
+   * @throws ExtractionException if the document could not be read or the
+   *         output could not be written
+   */
+  List<Result> extract(
+      @Nullable Path contentsDirectory,
+      @Nullable Path revisionsDirectory
+  ) throws ExtractionException {
+    try (FileChannel channel = FileChannel.open(
+        path, StandardOpenOption.READ
+    )) {
+      List<Slot> slots = manifest != null && manifest.matches(channel)
+          ? readSlots(manifest)
+          : readSlots();
+      List<Result> results = new ArrayList<>();
+      Set<String> fileNames = new HashSet<>();
+
+      for (Slot slot : slots) {
+        String fileName = fileName(slot.name, fileNames);
+        String contents = "";
+        String revision = "";
+
+        if (contentsDirectory == null) {
+          ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+          writeContents(channel, slot, outputStream);
+          contents = Base64.encodeBytes(
+            outputStream.toByteArray(), Base64.DONT_BREAK_LINES
+          );
+        } else {
+          Path contentsFile
+              = contentsDirectory.resolve(fileName + CONTENTS_EXTENSION);
+
+          if (writeContents(channel, slot, contentsFile)) {
+            contents = contentsFile.toString();
+          }
+        }
+
+        if (revisionsDirectory != null && !contents.isEmpty()) {
+          Path revisionFile
+              = revisionsDirectory.resolve(fileName + REVISION_EXTENSION);
+
+          writeRevision(channel, slot, revisionFile);
+          revision = revisionFile.toString();
+        }
+
+        results.add(new Result(slot.name, contents, revision));
+      }
+
+      return results;
+    } catch (IOException e) {
+      throw new ExtractionException(e.getMessage());
+    }
+  }
+
+  /**
+   * Read byte ranges and /Contents slots of every signature from its
+   * dictionary.
+   *
+   * @return signature slots
+   * @throws IOException if the document could not be parsed
+   */
+  private List<Slot> readSlots() throws IOException {
+    PdfReader reader = new PdfReader(
+        path.toString(),
+        password != null ? password.getBytes() : null,
+        true
+    );
+
+    try {
+      AcroFields acroFields = reader.getAcroFields();
+      List<Slot> slots = new ArrayList<>();
+
+      for (String name : acroFields.getSignatureNames()) {
+        PdfDictionary signatureDict = acroFields.getSignatureDictionary(name);
+        PdfArray byteRange = signatureDict.getAsArray(PdfName.BYTERANGE);
+        PdfString contents = signatureDict.getAsString(PdfName.CONTENTS);
+
+        if (byteRange == null || contents == null) {
+          throw new IOException("Invalid signature dictionary of " + name);
+        }
+
+        long[] ranges = byteRange.asLongArray();
+        long[] slot = PdfDocument.contentsSlot(ranges);
+
+        if (slot == null) {
+          throw new IOException("Invalid byte range of " + name);
+        }
+
+        slots.add(new Slot(name, ranges, slot[0], slot[1]));
+      }
+
+      return slots;
+    } finally {
+      reader.close();
+    }
+  }
+
+  private List<Slot> readSlots(@NotNull PlaceholderManifest manifest) {
+    List<Slot> slots = new ArrayList<>();
+
+    for (SignatureSlot field : manifest.getFields()) {
+      slots.add(new Slot(
+          field.getName(),
+          field.getByteRange(),
+          field.getStart(),
+          field.getEnd()
+      ));
+    }
+
+    return slots;
+  }
+
+  /**
+   * Write the PKCS7 blob to a file, unless the placeholder is empty.
+   *
+   * @return true if the file was written
+   */
+  private boolean writeContents(
+      @NotNull FileChannel channel,
+      @NotNull Slot slot,
+      @NotNull Path file
+  ) throws IOException {
+    long written;
+
+    try (OutputStream outputStream = Files.newOutputStream(file)) {
+      written = writeContents(channel, slot, outputStream);
+    }
+
+    if (written == 0) {
+      Files.delete(file);
+    }
+
+    return written > 0;
+  }
+
+  /**
+   * Decode the /Contents hex string, angle brackets left out, a buffer at
+   * a time. Decoding stops at the end of the DER-encoded PKCS7.
+   *
+   * @return number of bytes written
+   */
+  private long writeContents(
+      @NotNull FileChannel channel,
+      @NotNull Slot slot,
+      @NotNull OutputStream outputStream
+  ) throws IOException {
+    long position = slot.start + 1;
+    long end = slot.end - 1;
+
+    if (end < position || (end - position) % 2 != 0) {
+      throw new IOException("Invalid contents of " + slot.name);
+    }
+
+    byte[] slab = BufferPool.getInstance().acquire(Streams.BUFFER_SIZE);
+    byte[] decoded
+        = BufferPool.getInstance().acquire(Streams.BUFFER_SIZE / 2);
+    ByteBuffer buffer = ByteBuffer.wrap(slab);
+    long remaining = -1;
+    long written = 0;
+
+    try {
+      while (position < end && remaining != 0) {
+        Cancellation.checkpoint();
+        buffer.clear();
+        buffer.limit((int) Math.min(Streams.BUFFER_SIZE, end - position));
+
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, position + buffer.position()) < 0) {
+            throw new IOException("Byte range exceeds the file");
+          }
+        }
+
+        int length = decode(slot, slab, buffer.position(), decoded);
+
+        if (remaining < 0) {
+          remaining = derLength(decoded, length, (end - position) / 2);
+        }
+
+        int count = (int) Math.min(length, remaining);
+        outputStream.write(decoded, 0, count);
+        remaining -= count;
+        written += count;
+        position += buffer.position();
+      }
+    } finally {
+      BufferPool.getInstance().release(decoded);
+      BufferPool.getInstance().release(slab);
+    }
+
+    return written;
+  }
+
+  /**
+   * Copy the file up to the end of the signature byte range.
+   */
+  private void writeRevision(
+      @NotNull FileChannel channel,
+      @NotNull Slot slot,
+      @NotNull Path file
+  ) throws IOException {
+    long[] ranges = slot.ranges;
+    long end = ranges[ranges.length - 2] + ranges[ranges.length - 1];
+
+    if (end > channel.size()) {
+      throw new IOException("Byte range exceeds the file");
+    }
+
+    try (FileChannel target = FileChannel.open(
+        file,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING
+    )) {
+      long position = 0;
+
+      while (position < end) {
+        Cancellation.checkpoint();
+        long transferred = channel.transferTo(
+            position, Math.min(TRANSFER_SIZE, end - position), target
+        );
+
+        if (transferred <= 0) {
+          throw new IOException("Could not copy the revision");
+        }
+
+        position += transferred;
+      }
+    }
+  }
+
+  private static int decode(
+      @NotNull Slot slot,
+      @NotNull byte[] hex,
+      int length,
+      @NotNull byte[] decoded
+  ) throws IOException {
+    for (int i = 0, j = 0; i < length; i += 2, j++) {
+      int high = hex[i] >= 0 ? HEX_VALUES[hex[i]] : -1;
+      int low = hex[i + 1] >= 0 ? HEX_VALUES[hex[i + 1]] : -1;
+
+      if (high < 0 || low < 0) {
+        throw new IOException("Invalid contents of " + slot.name);
+      }
+
+      decoded[j] = (byte) (high << 4 | low);
+    }
+
+    return length / 2;
+  }
+
+  /**
+   * Length of the DER-encoded content from its first bytes: zero for empty
+   * placeholders, everything if the length is not definite.
+   *
+   * @param head First decoded bytes
+   * @param length Number of decoded bytes
+   * @param total Length of the whole decoded contents
+   * @return length to write
+   */
+  private static long derLength(@NotNull byte[] head, int length, long total) {
+    if (length == 0 || head[0] == 0) {
+      return 0;
+    }
+
+    if (head[0] != 0x30 || length < 2 || head[1] == (byte) 0x80) {
+      return total;
+    }
+
+    int first = head[1] & 0xff;
+
+    if (first < 0x80) {
+      return Math.min(total, 2L + first);
+    }
+
+    int octets = first & 0x7f;
+
+    if (octets > 4 || length < 2 + octets) {
+      return total;
+    }
+
+    long contentLength = 0;
+    for (int i = 0; i < octets; i++) {
+      contentLength = contentLength << 8 | head[2 + i] & 0xff;
+    }
+
+    return Math.min(total, 2L + octets + contentLength);
+  }
+
+  /**
+   * File name of a field, unique within the document and prefixed with the
+   * document name, so that several documents may share a directory.
+   */
+  private String fileName(@NotNull String field, @NotNull Set<String> taken) {
+    String document = path.getFileName().toString();
+    int extension = document.lastIndexOf('.');
+    String base = (extension > 0 ? document.substring(0, extension) : document)
+        + "." + field.replaceAll("[^A-Za-z0-9._-]", "_");
+    String fileName = base;
+
+    for (int i = 2; !taken.add(fileName); i++) {
+      fileName = base + "-" + i;
+    }
+
+    return fileName;
+  }
+
+  /**
+   * Signature extracted from the document, described as "field name:
+   * contents:revision" where both are empty for empty placeholders.
+   */
+  static final class Result {
+    private final String name;
+    private final String contents;
+    private final String revision;
+
+    private Result(
+        @NotNull String name,
+        @NotNull String contents,
+        @NotNull String revision
+    ) {
+      this.name = name;
+      this.contents = contents;
+      this.revision = revision;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    /**
+     * Path of the PKCS7 file, or the base64-encoded PKCS7.
+     *
+     * @return contents, empty for empty placeholders
+     */
+    String getContents() {
+      return contents;
+    }
+
+    /**
+     * Path of the signed revision file.
+     *
+     * @return revision, empty if not extracted
+     */
+    String getRevision() {
+      return revision;
+    }
+
+    @Override
+    public String toString() {
+      return name + ":" + contents + ":" + revision;
+    }
+  }
+
+  private static final class Slot {
+    private final String name;
+    private final long[] ranges;
+    private final long start;
+    private final long end;
+
+    private Slot(
+        @NotNull String name,
+        @NotNull long[] ranges,
+        long start,
+        long end
+    ) {
+      this.name = name;
+      this.ranges = ranges;
+      this.start = start;
+      this.end = end;
+    }
+  }
+}
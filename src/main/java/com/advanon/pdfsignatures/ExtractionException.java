@@ -0,0 +1,7 @@
+package com.advanon.pdfsignatures;
+
+public class ExtractionException extends RuntimeException {
+  public ExtractionException(String errorMessage) {
+    super(errorMessage);
+  }
+}
@@ -0,0 +1,246 @@
+package com.advanon.pdfsignatures;
+
+import java.util.Arrays;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Signature field to add a placeholder for: its name, metadata, estimated
+ * signature size, page, rectangle and appearance.
+ * <p>
+ *   On the command line a field is given as a semicolon-separated list of
+ *   key=value pairs, i.e. {@code name=Buyer;page=2;rect=36,36,236,96}.
+ *   Supported keys are {@code name}, {@code page}, {@code rect} (lower left
+ *   and upper right corners in points), {@code size}, {@code reason},
+ *   {@code location}, {@code contact}, and the appearance keys {@code image},
+ *   {@code text} ({@code \n} breaks lines), {@code font} and
+ *   {@code fontsize}.
+ * </p>
+ */
+public final class FieldSpec {
+  @Nullable private final String name;
+  private final SignatureMetadata metadata;
+  @Nullable private final Integer estimatedSize;
+  private final int page;
+  @Nullable private final float[] rectangle;
+  @Nullable private final AppearanceTemplate appearance;
+
+  /**
+   * Create a field spec.
+   *
+   * @param name Field name, generated if null
+   * @param metadata Signature metadata
+   * @param estimatedSize Estimated signature size, default is used if null
+   * @param page Page of the field widget, starting with 1
+   * @param rectangle Widget corners (llx, lly, urx, ury) in points,
+   *                  the signature is invisible if null
+   */
+  public FieldSpec(
+      @Nullable String name,
+      @NotNull SignatureMetadata metadata,
+      @Nullable Integer estimatedSize,
+      int page,
+      @Nullable float[] rectangle
+  ) {
+    this(name, metadata, estimatedSize, page, rectangle, null);
+  }
+
+  /**
+   * Create a field spec of a visible signature.
+   *
+   * @param name Field name, generated if null
+   * @param metadata Signature metadata
+   * @param estimatedSize Estimated signature size, default is used if null
+   * @param page Page of the field widget, starting with 1
+   * @param rectangle Widget corners (llx, lly, urx, ury) in points,
+   *                  the signature is invisible if null, or keeps the
+   *                  rectangle of a field added empty beforehand
+   * @param appearance Widget appearance, left blank if null
+   */
+  public FieldSpec(
+      @Nullable String name,
+      @NotNull SignatureMetadata metadata,
+      @Nullable Integer estimatedSize,
+      int page,
+      @Nullable float[] rectangle,
+      @Nullable AppearanceTemplate appearance
+  ) {
+    if (page < 1) {
+      throw new SignatureException("Page numbers start with 1");
+    }
+
+    if (rectangle != null && rectangle.length != 4) {
+      throw new SignatureException("Rectangle must have 4 coordinates");
+    }
+
+    if (appearance != null && rectangle != null
+        && (rectangle[2] <= rectangle[0] || rectangle[3] <= rectangle[1])) {
+      throw new SignatureException("Appearance needs a non-empty rectangle");
+    }
+
+    this.name = name;
+    this.metadata = metadata;
+    this.estimatedSize = estimatedSize;
+    this.page = page;
+    this.rectangle = rectangle != null
+      ? Arrays.copyOf(rectangle, rectangle.length)
+      : null;
+    this.appearance = appearance;
+  }
+
+  /**
+   * Parse a command line field spec.
+   *
+   * @param spec Semicolon-separated key=value pairs
+   * @param defaults Metadata used for keys which are not given
+   * @param defaultSize Estimated size used if not given, may be null
+   * @return field spec
+   * @throws SignatureException if the spec is malformed
+   */
+  static FieldSpec parse(
+      @NotNull String spec,
+      @NotNull SignatureMetadata defaults,
+      @Nullable Integer defaultSize
+  ) throws SignatureException {
+    String name = null;
+    Integer estimatedSize = defaultSize;
+    int page = 1;
+    float[] rectangle = null;
+    String reason = defaults.getReason();
+    String location = defaults.getLocation();
+    String contact = defaults.getContact();
+    String image = null;
+    String text = null;
+    String font = null;
+    Float fontSize = null;
+
+    try {
+      for (String pair : spec.split(";")) {
+        if (pair.trim().isEmpty()) {
+          continue;
+        }
+
+        int separator = pair.indexOf('=');
+        if (separator <= 0) {
+          throw new SignatureException("Malformed field spec: " + pair);
+        }
+
+        String key = pair.substring(0, separator).trim();
+        String value = pair.substring(separator + 1);
+
+        switch (key) {
+          case "name":
+            name = value;
+            break;
+          case "page":
+            page = Integer.parseInt(value.trim());
+            break;
+          case "rect":
+            rectangle = parseRectangle(value);
+            break;
+          case "size":
+            estimatedSize = Integer.parseInt(value.trim());
+            break;
+          case "reason":
+            reason = value;
+            break;
+          case "location":
+            location = value;
+            break;
+          case "contact":
+            contact = value;
+            break;
+          case "image":
+            image = value;
+            break;
+          case "text":
+            text = value.replace("\\n", "\n");
+            break;
+          case "font":
+            font = value;
+            break;
+          case "fontsize":
+            fontSize = Float.parseFloat(value.trim());
+            break;
+          default:
+            throw new SignatureException("Unknown field spec key: " + key);
+        }
+      }
+    } catch (NumberFormatException e) {
+      throw new SignatureException("Malformed field spec: " + spec);
+    }
+
+    return new FieldSpec(
+        name,
+        new SignatureMetadata(reason, location, contact, defaults.getDate()),
+        estimatedSize,
+        page,
+        rectangle,
+        image != null || text != null
+          ? new AppearanceTemplate(image, text, font, fontSize)
+          : null
+    );
+  }
+
+  private static float[] parseRectangle(@NotNull String value) {
+    String[] coordinates = value.split(",");
+
+    if (coordinates.length != 4) {
+      throw new SignatureException("Rectangle must have 4 coordinates");
+    }
+
+    float[] rectangle = new float[4];
+    for (int i = 0; i < coordinates.length; i++) {
+      rectangle[i] = Float.parseFloat(coordinates[i].trim());
+    }
+
+    return rectangle;
+  }
+
+  @Nullable
+  public String getName() {
+    return name;
+  }
+
+  public SignatureMetadata getMetadata() {
+    return metadata;
+  }
+
+  /**
+   * Estimated signature size in bytes.
+   *
+   * @return given size or the default one
+   */
+  public int getEstimatedSize() {
+    return estimatedSize != null
+      ? estimatedSize
+      : Constants.DEFAULT_ESTIMATED_SIGNATURE_SIZE;
+  }
+
+  public int getPage() {
+    return page;
+  }
+
+  /**
+   * Widget corners (llx, lly, urx, ury) in points.
+   *
+   * @return rectangle or null for invisible signatures
+   */
+  @Nullable
+  public float[] getRectangle() {
+    return rectangle != null
+      ? Arrays.copyOf(rectangle, rectangle.length)
+      : null;
+  }
+
+  /**
+   * Appearance of a visible signature.
+   *
+   * @return appearance or null if the widget is left blank
+   */
+  @Nullable
+  public AppearanceTemplate getAppearance() {
+    return appearance;
+  }
+}
@@ -0,0 +1,251 @@
+package com.advanon.pdfsignatures;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Shared worker pool which schedules requests in lanes, so that a large
+ * document does not hold up hundreds of small ones queued behind it.
+ * <p>
+ *   Requests are classified by input size and operation: inputs of at least
+ *   {@code 10 MB} (see {@link #LARGE_SIZE_PROPERTY}) go to the large lane,
+ *   others to the cheap lane (digest, sign, verify, extract) or the
+ *   expensive lane (placeholder, ltv and the rest). Preflight reads the
+ *   tail of the document only, so it goes to the cheap lane whatever the
+ *   size. Given a worker per lane, every lane has one reserved: other lanes
+ *   never take the last free worker of a lane which has requests queued and
+ *   none running. Lanes without queued requests hold no worker back, their
+ *   reservation is lent out until a request for them arrives, so that no
+ *   worker stays idle while requests wait.
+ * </p>
+ * <p>
+ *   Free workers take the next request by weighted fair queuing (stride
+ *   scheduling): while all lanes are backed up, cheap requests are taken
+ *   eight times and expensive ones four times as often as large ones. Lanes
+ *   which were idle do not get credit for it.
+ * </p>
+ */
+final class LaneScheduler {
+  static final String LARGE_SIZE_PROPERTY = "pdfsignatures.largeRequestSize";
+  private static final long DEFAULT_LARGE_SIZE = 10L * 1024 * 1024;
+  private static final long STRIDE = 1L << 20;
+
+  /**
+   * Lanes with their dequeuing weights.
+   */
+  enum Lane {
+    CHEAP(8),
+    EXPENSIVE(4),
+    LARGE(1);
+
+    private final int weight;
+
+    Lane(int weight) {
+      this.weight = weight;
+    }
+  }
+
+  private final int workers;
+  private final long largeSize;
+  private final int reserved;
+  private final ExecutorService executor;
+  private final Map<Lane, Queue<Runnable>> queues = new EnumMap<>(Lane.class);
+  private final Map<Lane, Integer> running = new EnumMap<>(Lane.class);
+  private final Map<Lane, Long> passes = new EnumMap<>(Lane.class);
+  private long virtualTime;
+  private int busy;
+  private boolean shutdown;
+
+  LaneScheduler(int workers) {
+    this(workers, Long.getLong(LARGE_SIZE_PROPERTY, DEFAULT_LARGE_SIZE));
+  }
+
+  /**
+   * Create a scheduler.
+   *
+   * @param workers Number of workers
+   * @param largeSize Input size from which requests are large, in bytes
+   */
+  LaneScheduler(int workers, long largeSize) {
+    this.workers = Math.max(1, workers);
+    this.largeSize = largeSize;
+    this.reserved = this.workers >= Lane.values().length ? 1 : 0;
+
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(
+        this.workers,
+        task -> new Thread(
+          task, "pdf-signatures-worker-" + threadCount.incrementAndGet()
+        )
+    );
+
+    for (Lane lane : Lane.values()) {
+      queues.put(lane, new ArrayDeque<>());
+      running.put(lane, 0);
+      passes.put(lane, 0L);
+    }
+  }
+
+  /**
+   * Lane of a request.
+   *
+   * @param operation Command name, i.e. "digest"
+   * @param inputSize Size of the input document in bytes
+   * @return lane
+   */
+  Lane classify(@NotNull String operation, long inputSize) {
+    if ("preflight".equals(operation)) {
+      return Lane.CHEAP;
+    }
+
+    if (inputSize >= largeSize) {
+      return Lane.LARGE;
+    }
+
+    switch (operation) {
+      case "digest":
+      case "sign":
+      case "verify":
+      case "extract":
+        return Lane.CHEAP;
+      default:
+        return Lane.EXPENSIVE;
+    }
+  }
+
+  /**
+   * Queue a request in its lane.
+   *
+   * @param lane Lane of the request
+   * @param task Request to run
+   * @throws RejectedExecutionException if the scheduler is shut down
+   */
+  synchronized void execute(@NotNull Lane lane, @NotNull Runnable task) {
+    if (shutdown) {
+      throw new RejectedExecutionException("Scheduler is shut down");
+    }
+
+    Queue<Runnable> queue = queues.get(lane);
+
+    if (queue.isEmpty() && running.get(lane) == 0) {
+      passes.put(lane, Math.max(passes.get(lane), virtualTime));
+    }
+
+    queue.add(task);
+    dispatch();
+  }
+
+  /**
+   * Number of requests waiting in a lane.
+   *
+   * @param lane Lane
+   * @return queued requests
+   */
+  synchronized int getQueued(@NotNull Lane lane) {
+    return queues.get(lane).size();
+  }
+
+  /**
+   * Stop taking requests and wait for the queued ones to complete. Shutting
+   * down more than once has no effect.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  void shutdown() throws InterruptedException {
+    synchronized (this) {
+      shutdown = true;
+
+      while (!isIdle()) {
+        wait();
+      }
+    }
+
+    executor.shutdown();
+  }
+
+  private boolean isIdle() {
+    return busy == 0 && queues.values().stream().allMatch(Queue::isEmpty);
+  }
+
+  /**
+   * Hand queued requests to free workers.
+   */
+  private void dispatch() {
+    while (busy < workers) {
+      Lane lane = next();
+
+      if (lane == null) {
+        return;
+      }
+
+      Runnable task = queues.get(lane).poll();
+      long pass = passes.get(lane);
+
+      virtualTime = pass;
+      passes.put(lane, pass + STRIDE / lane.weight);
+      running.merge(lane, 1, Integer::sum);
+      busy++;
+
+      executor.execute(() -> run(lane, task));
+    }
+  }
+
+  /**
+   * The lane with requests which may take a worker and is furthest behind
+   * its share.
+   */
+  @Nullable
+  private Lane next() {
+    Lane next = null;
+
+    for (Lane lane : Lane.values()) {
+      if (queues.get(lane).isEmpty() || !mayTake(lane)) {
+        continue;
+      }
+
+      if (next == null || passes.get(lane) < passes.get(next)) {
+        next = lane;
+      }
+    }
+
+    return next;
+  }
+
+  /**
+   * Whether a lane may take a free worker without taking the reserved one
+   * of another lane which waits for it.
+   */
+  private boolean mayTake(@NotNull Lane lane) {
+    int kept = 0;
+
+    for (Lane other : Lane.values()) {
+      if (other != lane && !queues.get(other).isEmpty()) {
+        kept += Math.max(0, reserved - running.get(other));
+      }
+    }
+
+    return busy + kept < workers;
+  }
+
+  private void run(@NotNull Lane lane, @NotNull Runnable task) {
+    try {
+      task.run();
+    } finally {
+      synchronized (this) {
+        running.merge(lane, -1, Integer::sum);
+        busy--;
+        dispatch();
+        notifyAll();
+      }
+    }
+  }
+}
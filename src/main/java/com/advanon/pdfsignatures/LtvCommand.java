@@ -0,0 +1,33 @@
+package com.advanon.pdfsignatures;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Embeds LTV information into the signed document.
+ */
+final class LtvCommand extends CommandHandler {
+  String execute(
+      @NotNull ApplicationArguments arguments
+  ) throws PdfDocumentException, ValidationException, IOException {
+    Validation ltv = new Validation(
+        arguments.getOcsps(),
+        arguments.getCrls(),
+        arguments.getStore() != null
+          ? RevocationStore.open(Paths.get(arguments.getStore()))
+          : null
+    );
+
+    try (PdfDocument pdf = new PdfDocument(
+        arguments.getFile(),
+        arguments.getPassword()
+    )) {
+      pdf.addValidation(ltv);
+      writeOut(pdf, arguments.getOut());
+    }
+
+    return arguments.getOut();
+  }
+}
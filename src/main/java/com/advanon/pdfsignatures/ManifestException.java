@@ -0,0 +1,7 @@
+package com.advanon.pdfsignatures;
+
+public class ManifestException extends RuntimeException {
+  public ManifestException(String errorMessage) {
+    super(errorMessage);
+  }
+}
@@ -0,0 +1,259 @@
+package com.advanon.pdfsignatures;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Process-wide budget of heap taken by the documents being worked on.
+ * <p>
+ *   Every document is admitted with an allowance: an estimate of the heap
+ *   it takes, made before the document is read, capped at the per-request
+ *   budget ({@code 64 MB} by default, see {@link #REQUEST_SIZE_PROPERTY}).
+ *   Larger documents are admitted with the capped allowance and spill to
+ *   disk, unless they are configured to be rejected instead (see
+ *   {@link #REJECT_LARGE_PROPERTY}). Allowances are reserved from the
+ *   process budget (half of the maximum heap by default, see
+ *   {@link #MAX_SIZE_PROPERTY}, zero disables admission control). When the
+ *   process budget is exhausted, documents wait for others to be closed
+ *   ({@code 30 seconds} at most by default, see {@link #WAIT_PROPERTY})
+ *   and are rejected afterwards, instead of running the JVM out of memory.
+ * </p>
+ * <p>
+ *   Cached documents take heap as long as they are cached, and are
+ *   reserved from the process budget too, see {@link TemplateCache}.
+ * </p>
+ * <p>
+ *   Buffers of a document take heap from its allowance, and spill to disk
+ *   once it is used up, see {@link DocumentBuffer}.
+ * </p>
+ */
+final class MemoryBudget {
+  static final String MAX_SIZE_PROPERTY = "pdfsignatures.memoryBudget";
+  static final String REQUEST_SIZE_PROPERTY
+      = "pdfsignatures.requestMemoryBudget";
+  static final String WAIT_PROPERTY = "pdfsignatures.memoryBudgetWait";
+  static final String REJECT_LARGE_PROPERTY
+      = "pdfsignatures.rejectLargeRequests";
+  private static final long DEFAULT_REQUEST_SIZE = 64L * 1024 * 1024;
+  private static final long DEFAULT_WAIT = 30000;
+
+  private static final MemoryBudget INSTANCE = new MemoryBudget(
+      Long.getLong(MAX_SIZE_PROPERTY, Runtime.getRuntime().maxMemory() / 2),
+      Long.getLong(REQUEST_SIZE_PROPERTY, DEFAULT_REQUEST_SIZE),
+      Long.getLong(WAIT_PROPERTY, DEFAULT_WAIT),
+      Boolean.getBoolean(REJECT_LARGE_PROPERTY)
+  );
+
+  private final long maxSize;
+  private final long requestSize;
+  private final long wait;
+  private final boolean rejectLarge;
+  private long reserved;
+
+  /**
+   * Create a memory budget which caps the allowance of large requests.
+   *
+   * @param maxSize Process budget in bytes, not limited if not positive
+   * @param requestSize Budget of a single request in bytes
+   * @param wait Longest time to wait for admission, in milliseconds
+   */
+  MemoryBudget(long maxSize, long requestSize, long wait) {
+    this(maxSize, requestSize, wait, false);
+  }
+
+  /**
+   * Create a memory budget.
+   *
+   * @param maxSize Process budget in bytes, not limited if not positive
+   * @param requestSize Budget of a single request in bytes
+   * @param wait Longest time to wait for admission, in milliseconds
+   * @param rejectLarge Whether requests over the per-request budget are
+   *                    rejected rather than capped
+   */
+  MemoryBudget(long maxSize, long requestSize, long wait, boolean rejectLarge) {
+    this.maxSize = maxSize;
+    this.requestSize = requestSize;
+    this.wait = wait;
+    this.rejectLarge = rejectLarge;
+  }
+
+  static MemoryBudget getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Admit a request, waiting for the budget to allow it. The allowance is
+   * capped at the per-request and the process budget, buffers of larger
+   * requests spill to disk.
+   *
+   * @param size Estimated heap the request takes, in bytes
+   * @return allowance of the request, to close once done
+   * @throws PdfDocumentException if large requests are rejected and the
+   *                              request exceeds the per-request budget,
+   *                              or the budget does not allow it in time
+   */
+  Allowance admit(long size) throws PdfDocumentException {
+    if (rejectLarge && size > requestSize) {
+      throw new PdfDocumentException(
+        "Request exceeds the per-request memory budget"
+      );
+    }
+
+    long allowed = Math.max(0, Math.min(size, requestSize));
+
+    if (maxSize <= 0) {
+      return new Allowance(allowed, false);
+    }
+
+    allowed = Math.min(allowed, maxSize);
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait);
+
+    synchronized (this) {
+      while (reserved + allowed > maxSize) {
+        long remaining = deadline - System.nanoTime();
+
+        if (remaining <= 0) {
+          throw new PdfDocumentException("Memory budget is exhausted");
+        }
+
+        try {
+          TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new PdfDocumentException(
+            "Interrupted while waiting for the memory budget"
+          );
+        }
+      }
+
+      reserved += allowed;
+    }
+
+    return new Allowance(allowed, true);
+  }
+
+  /**
+   * Reserve heap held beyond a single request, if the budget allows it
+   * right away. The per-request budget does not apply.
+   *
+   * @param size Heap to reserve, in bytes
+   * @return allowance, to close once the heap is released, or null if the
+   *         budget is exhausted
+   */
+  @Nullable
+  Allowance tryReserve(long size) {
+    long allowed = Math.max(0, size);
+
+    if (maxSize <= 0) {
+      return new Allowance(allowed, false);
+    }
+
+    synchronized (this) {
+      if (reserved + allowed > maxSize) {
+        return null;
+      }
+
+      reserved += allowed;
+    }
+
+    return new Allowance(allowed, true);
+  }
+
+  /**
+   * Heap reserved by admitted requests and cached documents.
+   *
+   * @return size in bytes
+   */
+  synchronized long getReserved() {
+    return reserved;
+  }
+
+  private synchronized void release(long size) {
+    reserved -= size;
+    notifyAll();
+  }
+
+  /**
+   * Heap a single request may take. Closing the allowance returns it to
+   * the process budget.
+   */
+  final class Allowance implements AutoCloseable {
+    private final long size;
+    private final boolean reserved;
+    private final Set<DocumentBuffer> buffers = new HashSet<>();
+    private long used;
+    private boolean closed;
+
+    private Allowance(long size, boolean reserved) {
+      this.size = size;
+      this.reserved = reserved;
+    }
+
+    /**
+     * Take heap from the allowance, if there is enough left.
+     *
+     * @param bytes Bytes to take
+     * @return whether the bytes were taken
+     */
+    synchronized boolean tryTake(long bytes) {
+      if (closed || used + bytes > size) {
+        return false;
+      }
+
+      used += bytes;
+      return true;
+    }
+
+    /**
+     * Give heap back to the allowance.
+     *
+     * @param bytes Bytes taken before
+     */
+    synchronized void giveBack(long bytes) {
+      used = Math.max(0, used - bytes);
+    }
+
+    synchronized long getAvailable() {
+      return size - used;
+    }
+
+    synchronized void track(@NotNull DocumentBuffer buffer) {
+      buffers.add(buffer);
+    }
+
+    synchronized void untrack(@NotNull DocumentBuffer buffer) {
+      buffers.remove(buffer);
+    }
+
+    /**
+     * Release buffers still held and return the allowance to the process
+     * budget. Closing an allowance more than once has no effect.
+     */
+    @Override
+    public void close() {
+      List<DocumentBuffer> held;
+
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+
+        closed = true;
+        held = new ArrayList<>(buffers);
+      }
+
+      held.forEach(DocumentBuffer::release);
+
+      if (reserved) {
+        release(size);
+      }
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package com.advanon.pdfsignatures;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Appends spans to a file in the OTLP JSON encoding, one
+ * {@code ExportTraceServiceRequest} per line, as the OpenTelemetry
+ * collector file exporter writes them.
+ * <p>
+ *   Every line is appended with a single write, so that the processes of
+ *   concurrent requests and the Node wrapper may share the file.
+ * </p>
+ */
+final class OtlpFileExporter implements SpanExporter {
+  static final String SERVICE_NAME = "pdf-signatures-jvm";
+  private static final Object LOCK = new Object();
+
+  private final Path file;
+
+  OtlpFileExporter(@NotNull Path file) {
+    this.file = file;
+  }
+
+  @Override
+  public void export(@NotNull List<Span> spans) throws IOException {
+    if (spans.isEmpty()) {
+      return;
+    }
+
+    byte[] line = (format(spans) + "\n").getBytes(StandardCharsets.UTF_8);
+
+    synchronized (LOCK) {
+      Files.write(
+          file,
+          line,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND
+      );
+    }
+  }
+
+  /**
+   * Encode spans as an export request.
+   *
+   * @param spans Spans to encode
+   * @return JSON export request
+   */
+  static String format(@NotNull List<Span> spans) {
+    StringBuilder json = new StringBuilder()
+        .append("{\"resourceSpans\":[{\"resource\":{\"attributes\":[")
+        .append(attribute("service.name", SERVICE_NAME)).append(',')
+        .append(attribute("service.version", Constants.VERSION))
+        .append("]},\"scopeSpans\":[{\"scope\":{\"name\":")
+        .append(string(OtlpFileExporter.class.getPackage().getName()))
+        .append(",\"version\":").append(string(Constants.VERSION))
+        .append("},\"spans\":[");
+
+    for (int i = 0; i < spans.size(); i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+
+      appendSpan(json, spans.get(i));
+    }
+
+    return json.append("]}]}]}").toString();
+  }
+
+  private static void appendSpan(
+      @NotNull StringBuilder json,
+      @NotNull Span span
+  ) {
+    json.append("{\"traceId\":").append(string(span.getTraceId()))
+        .append(",\"spanId\":").append(string(span.getSpanId()));
+
+    if (span.getParentSpanId() != null) {
+      json.append(",\"parentSpanId\":")
+          .append(string(span.getParentSpanId()));
+    }
+
+    // 64-bit integers are strings in the OTLP JSON encoding
+    json.append(",\"name\":").append(string(span.getName()))
+        .append(",\"kind\":").append(span.getKind())
+        .append(",\"startTimeUnixNano\":\"").append(span.getStartTime())
+        .append("\",\"endTimeUnixNano\":\"").append(span.getEndTime())
+        .append('"');
+
+    if (span.getError() != null) {
+      json.append(",\"status\":{\"code\":2,\"message\":")
+          .append(string(span.getError()))
+          .append('}');
+    }
+
+    json.append('}');
+  }
+
+  private static String attribute(@NotNull String key, @NotNull String value) {
+    return "{\"key\":" + string(key)
+           + ",\"value\":{\"stringValue\":" + string(value) + "}}";
+  }
+
+  private static String string(@NotNull String value) {
+    StringBuilder json = new StringBuilder("\"");
+
+    for (char character : value.toCharArray()) {
+      switch (character) {
+        case '"':
+          json.append("\\\"");
+          break;
+        case '\\':
+          json.append("\\\\");
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if (character < 0x20) {
+            json.append(String.format("\\u%04x", (int) character));
+          } else {
+            json.append(character);
+          }
+      }
+    }
+
+    return json.append('"').toString();
+  }
+}
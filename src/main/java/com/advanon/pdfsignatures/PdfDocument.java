@@ -5,43 +5,148 @@ import com.itextpdf.text.pdf.PdfDictionary;
 import com.itextpdf.text.pdf.PdfName;
 import com.itextpdf.text.pdf.PdfReader;
 
-import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.stream.LongStream;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-class PdfDocument {
+/**
+ * In-memory PDF document.
+ * <p>
+ *   Documents hold a parsed reader and must be closed once the work is done,
+ *   see {@link DocumentLeakDetector} to find documents which are not.
+ *   Readers of documents opened over and over again are duplicated from
+ *   a parsed master, see {@link TemplateCache}. Documents are admitted
+ *   within the process memory budget, see {@link MemoryBudget}.
+ * </p>
+ * <p>
+ *   Written content stays in the buffer it was written to, and is hashed
+ *   and written out from it, a spilled buffer from its file. Hashable bytes
+ *   are ranges of the content rather than a copy of them.
+ * </p>
+ */
+class PdfDocument implements AutoCloseable {
   public static final int CONTENT_START_BYTE_POS = 0;
   public static final int SIGNATURE_START_BYTE_POS = 1;
   public static final int SIGNATURE_END_BYTE_POS = 2;
   public static final int CONTENT_END_BYTE_POS = 3;
+  // Content, parsed objects, written output and an array copy of it
+  private static final int FOOTPRINT_FACTOR = 4;
 
   private PdfReader reader;
-  private byte[] contentBytes;
-  private byte[] hashableBytes;
+  @Nullable private byte[] contentBytes;
+  @Nullable private DocumentBuffer content;
+  @Nullable private byte[] hashableBytes;
+  @Nullable private long[] hashableRanges;
+  @Nullable private DocumentLeakDetector.Tracker leakTracker;
+  private MemoryBudget.Allowance allowance;
 
   PdfDocument(
       @NotNull String path, @Nullable String password
+  ) throws PdfDocumentException {
+    this(Paths.get(path), admit(fileSize(Paths.get(path))), password);
+  }
+
+  PdfDocument(
+      @NotNull byte[] contentBytes, @Nullable String password
+  ) throws PdfDocumentException {
+    this(contentBytes, admit(contentBytes.length), password);
+  }
+
+  /**
+   * Read a document admitted by its file size, so that the content is not
+   * read when the budget does not allow it.
+   */
+  private PdfDocument(
+      @NotNull Path path,
+      @NotNull MemoryBudget.Allowance allowance,
+      @Nullable String password
+  ) throws PdfDocumentException {
+    this(readAllBytes(path, allowance), allowance, password);
+  }
+
+  private PdfDocument(
+      @NotNull byte[] contentBytes,
+      @NotNull MemoryBudget.Allowance allowance,
+      @Nullable String password
+  ) throws PdfDocumentException {
+    this.allowance = allowance;
+
+    try (Trace.Scope span = Trace.span("parse")) {
+      try {
+        this.contentBytes = contentBytes;
+        this.reader = TemplateCache.getInstance().open(
+          contentBytes,
+          password != null ? password.getBytes() : null
+        );
+      } catch (IOException e) {
+        allowance.close();
+        throw new PdfDocumentException(e.getMessage());
+      }
+
+      try {
+        updateHashableBytes();
+      } catch (IOException | RuntimeException e) {
+        reader.close();
+        allowance.close();
+        throw new PdfDocumentException(e.getMessage());
+      }
+    }
+
+    this.leakTracker = DocumentLeakDetector.getInstance().track(this);
+  }
+
+  private static MemoryBudget.Allowance admit(
+      long contentSize
+  ) throws PdfDocumentException {
+    return MemoryBudget.getInstance().admit(contentSize * FOOTPRINT_FACTOR);
+  }
+
+  private static long fileSize(
+      @NotNull Path path
   ) throws PdfDocumentException {
     try {
-      this.contentBytes = Files.readAllBytes(Paths.get(path));
-      this.reader = new PdfReader(
-        new FileInputStream(path),
-        password != null ? password.getBytes() : null
-      );
+      return Files.size(path);
+    } catch (IOException e) {
+      throw new PdfDocumentException(e.getMessage());
+    }
+  }
 
-      updateHashableBytes();
+  private static byte[] readAllBytes(
+      @NotNull Path path,
+      @NotNull MemoryBudget.Allowance allowance
+  ) throws PdfDocumentException {
+    try {
+      return Files.readAllBytes(path);
     } catch (IOException e) {
+      allowance.close();
       throw new PdfDocumentException(e.getMessage());
     }
   }
 
+  /**
+   * Release the reader and everything it holds. Closing a document
+   * more than once has no effect.
+   */
+  @Override
+  public void close() {
+    reader.close();
+    releaseContent();
+    allowance.close();
+
+    if (leakTracker != null) {
+      leakTracker.close();
+      leakTracker = null;
+    }
+  }
+
   /**
    * Get document's PDF reader object.
    * @return document's PDF reader
@@ -50,25 +155,137 @@ class PdfDocument {
     return this.reader;
   }
 
+  /**
+   * Heap allowance of the document, buffers written for it take heap
+   * from it, see {@link MemoryBudget}.
+   *
+   * @return document allowance
+   */
+  MemoryBudget.Allowance getAllowance() {
+    return allowance;
+  }
+
   /**
    * Replace document content bytes kept in memory.
    *
    * @param contentBytes new document content
    */
   public void setContentBytes(@NotNull byte[] contentBytes) {
+    releaseContent();
     this.contentBytes = contentBytes;
   }
 
   /**
-   * Returns document content bytes.
+   * Replace document content with a written buffer, which the document
+   * releases once replaced or closed. Spilled content stays in its file.
+   *
+   * @param content new document content
+   */
+  void setContent(@NotNull DocumentBuffer content) {
+    releaseContent();
+    this.contentBytes = null;
+    this.content = content;
+  }
+
+  /**
+   * Returns document content bytes. Content written to a buffer is copied
+   * into an array then, prefer {@link #readContent} and
+   * {@link #writeContent}.
    *
    * @return document content stream
-   * @throws IOException if copying to the output stream fails
+   * @throws PdfDocumentException if the buffer could not be read
    */
-  public byte[] getContentBytes() throws IOException {
+  public byte[] getContentBytes() throws PdfDocumentException {
+    if (contentBytes == null && content != null) {
+      try {
+        contentBytes = content.toByteArray();
+      } catch (IOException e) {
+        throw new PdfDocumentException(e.getMessage());
+      }
+
+      releaseContent();
+    }
+
     return contentBytes;
   }
 
+  /**
+   * Document content length.
+   *
+   * @return length in bytes
+   */
+  long getContentLength() {
+    return content != null ? content.size() : contentBytes.length;
+  }
+
+  /**
+   * Read document content at the given position, without copying the
+   * whole of it.
+   *
+   * @param buffer Buffer to fill up to its limit
+   * @param position Content position
+   * @return number of bytes read, -1 past the end of the content
+   * @throws IOException if the spilled content could not be read
+   */
+  int readContent(
+      @NotNull ByteBuffer buffer,
+      long position
+  ) throws IOException {
+    return content != null
+      ? content.read(buffer, position)
+      : ContentSource.of(getContentBytes()).read(buffer, position);
+  }
+
+  /**
+   * Stream document content out.
+   *
+   * @param outputStream Destination stream
+   * @throws IOException if writing fails
+   */
+  void writeContent(@NotNull OutputStream outputStream) throws IOException {
+    if (content != null) {
+      content.writeTo(outputStream);
+    } else {
+      outputStream.write(contentBytes);
+    }
+  }
+
+  /**
+   * Stream a part of the document content out, through a pooled buffer.
+   *
+   * @param outputStream Destination stream
+   * @param position Start of the part
+   * @param end End of the part, exclusive
+   * @throws IOException if reading or writing fails
+   */
+  void writeContent(
+      @NotNull OutputStream outputStream,
+      long position,
+      long end
+  ) throws IOException {
+    byte[] slab = BufferPool.getInstance().acquire(Streams.BUFFER_SIZE);
+
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(slab);
+
+      while (position < end) {
+        Cancellation.checkpoint();
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+        int read = readContent(buffer, position);
+        if (read <= 0) {
+          throw new IOException("Unexpected end of document");
+        }
+
+        outputStream.write(slab, 0, read);
+        position += read;
+      }
+    } finally {
+      BufferPool.getInstance().release(slab);
+    }
+  }
+
   /**
    * Replace bytes which "participiate" in digest calculation.
    *
@@ -76,41 +293,97 @@ class PdfDocument {
    */
   public void setHashableBytes(@NotNull byte[] hashableBytes) {
     this.hashableBytes = hashableBytes;
+    this.hashableRanges = null;
+  }
+
+  /**
+   * Replace the content ranges which "participiate" in digest
+   * calculation, hashed from the content without copying them.
+   *
+   * @param hashableRanges pairs of range start and length
+   */
+  void setHashableRanges(@NotNull long[] hashableRanges) {
+    this.hashableBytes = null;
+    this.hashableRanges = hashableRanges;
   }
 
   /**
    * Returns bytes sequence which may "participiate"
-   * in document digest calculation.
+   * in document digest calculation. Hashable ranges are copied into an
+   * array then.
    *
    * @return document hashable bytes stream
-   * @throws IOException if copying to the output stream fails
+   * @throws PdfDocumentException if the content could not be read
    */
-  public byte[] getHashableBytes() throws IOException {
-    return hashableBytes;
+  public byte[] getHashableBytes() throws PdfDocumentException {
+    if (hashableBytes != null) {
+      return hashableBytes;
+    }
+
+    try {
+      return copyRanges(hashableRanges);
+    } catch (IOException e) {
+      throw new PdfDocumentException(e.getMessage());
+    }
   }
 
   public void addSignaturePlaceholder(
       @NotNull PdfChange placeholder
   ) throws SignatureException {
-    placeholder.apply(this);
+    try (Trace.Scope span = Trace.span("stamp")) {
+      placeholder.apply(this);
+    }
   }
 
   public void addSignature(
       @NotNull PdfChange signature
   ) throws SignatureException {
-    signature.apply(this);
+    try (Trace.Scope span = Trace.span("stamp")) {
+      signature.apply(this);
+    }
   }
 
   public void addValidation(
       @NotNull PdfChange validation
   ) throws ValidationException {
-    validation.apply(this);
+    try (Trace.Scope span = Trace.span("stamp")) {
+      validation.apply(this);
+    }
   }
 
   public byte[] digest(
-      @NotNull HashAlgorithm algorithm
+      @Nullable HashAlgorithm algorithm
   ) throws DigestException {
-    return new Digest(hashableBytes).calculate(algorithm);
+    return hashableBytes != null
+      ? new Digest(hashableBytes).calculate(algorithm)
+      : new Digest(this::readContent, hashableRanges).calculate(algorithm);
+  }
+
+  /**
+   * Calculate digest of the bytes a single signature field covers.
+   *
+   * @param algorithm Hashing algorithm, default is used if null
+   * @param fieldName Signature field name
+   * @return field digest
+   * @throws DigestException if the field is not found or hashing fails
+   */
+  public byte[] digest(
+      @Nullable HashAlgorithm algorithm,
+      @NotNull String fieldName
+  ) throws DigestException {
+    PdfDictionary signatureDict
+        = getReader().getAcroFields().getSignatureDictionary(fieldName);
+
+    if (signatureDict == null) {
+      throw new DigestException("Signature field not found: " + fieldName);
+    }
+
+    try {
+      return new Digest(this::readContent, hashableRanges(signatureDict))
+        .calculate(algorithm);
+    } catch (IOException e) {
+      throw new DigestException(e.getMessage());
+    }
   }
 
   /**
@@ -127,35 +400,85 @@ class PdfDocument {
     PdfReader reader = getReader();
     AcroFields acroFields = reader.getAcroFields();
     List<String> signatureNames = acroFields.getSignatureNames();
-    OutputStream hashableBytesStream = new ByteArrayOutputStream();
+    LongStream.Builder ranges = LongStream.builder();
 
     for (String name : signatureNames) {
-      PdfDictionary signatureDict = acroFields.getSignatureDictionary(name);
-
-      // Take bytes sequence before signature
-      long signatureStartHexByte
-           = signatureHexBytePosition(signatureDict, SIGNATURE_START_BYTE_POS);
-      long contentStartHexByte
-           = signatureHexBytePosition(signatureDict, CONTENT_START_BYTE_POS);
-      for (long i = contentStartHexByte; i < signatureStartHexByte; i++) {
-        hashableBytesStream.write(getContentBytes()[(int) i]);
+      LongStream.of(hashableRanges(acroFields.getSignatureDictionary(name)))
+          .forEach(ranges);
+    }
+
+    setHashableRanges(ranges.build().toArray());
+  }
+
+  /**
+   * Take both byte ranges of a signature, skipping its /Contents.
+   *
+   * @param signatureDict Signature dictionary
+   * @return ranges the signature covers
+   * @throws IOException if the byte range exceeds the document
+   */
+  private long[] hashableRanges(
+      @NotNull PdfDictionary signatureDict
+  ) throws IOException {
+    long[] ranges = signatureDict.getAsArray(PdfName.BYTERANGE).asLongArray();
+    long length = getContentLength();
+
+    if (contentsSlot(ranges) == null) {
+      throw new IOException("Signature byte range is malformed");
+    }
+
+    for (int i = 0; i + 1 < ranges.length; i += 2) {
+      if (ranges[i] < 0 || ranges[i + 1] < 0
+          || ranges[i] + ranges[i + 1] > length) {
+        throw new IOException("Signature byte range exceeds the document");
       }
+    }
+
+    return ranges;
+  }
+
+  /**
+   * Copy content ranges into a single array.
+   */
+  private byte[] copyRanges(@NotNull long[] ranges) throws IOException {
+    long length = 0;
+    for (int i = 1; i < ranges.length; i += 2) {
+      length += ranges[i];
+    }
 
-      // Take bytes sequence after signature
-      long contentEndHexByte
-          = signatureHexBytePosition(signatureDict, CONTENT_END_BYTE_POS);
-      long signatureEndHexByte
-          = signatureHexBytePosition(signatureDict, SIGNATURE_END_BYTE_POS);
-      for (long i = signatureEndHexByte; i < contentEndHexByte; i++) {
-        hashableBytesStream.write(getContentBytes()[(int) i]);
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Hashable bytes are too large");
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate((int) length);
+
+    for (int i = 0; i + 1 < ranges.length; i += 2) {
+      long position = ranges[i];
+      long end = ranges[i] + ranges[i + 1];
+
+      while (position < end) {
+        buffer.limit((int) (buffer.position() + end - position));
+
+        int read = readContent(buffer, position);
+        if (read <= 0) {
+          throw new IOException("Unexpected end of document");
+        }
+
+        position += read;
       }
     }
 
-    hashableBytesStream.close();
+    return buffer.array();
+  }
 
-    setHashableBytes(
-        ((ByteArrayOutputStream) hashableBytesStream).toByteArray()
-    );
+  /**
+   * Give the heap of written content back, see {@link DocumentBuffer}.
+   */
+  private void releaseContent() {
+    if (content != null) {
+      content.release();
+      content = null;
+    }
   }
 
   /**
@@ -189,4 +512,22 @@ class PdfDocument {
         return ranges[position];
     }
   }
+
+  /**
+   * Find the /Contents slot a signature byte range leaves out.
+   *
+   * @param ranges Signature byte range
+   * @return slot start and end, angle brackets included, or null if the
+   *         byte range is not a {@code [0 a b c]} one
+   */
+  @Nullable
+  static long[] contentsSlot(@NotNull long[] ranges) {
+    if (ranges.length != 4) {
+      return null;
+    }
+
+    return new long[] {
+      ranges[SIGNATURE_START_BYTE_POS], ranges[SIGNATURE_END_BYTE_POS]
+    };
+  }
 }
@@ -0,0 +1,462 @@
+package com.advanon.pdfsignatures;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Library entry point, offering the same operations as the command line
+ * application without forking a JVM.
+ * <p>
+ *   Instances hold no per-document state, so a single signer may be shared
+ *   between threads and reused for any number of documents. Every operation
+ *   has an asynchronous variant which runs on a caller-supplied executor.
+ * </p>
+ * <p>
+ *   Operations give up with a {@link CancelledException} once they take
+ *   longer than the timeout of the signer, if it has one. Cancelling the
+ *   future of an asynchronous operation stops it as well, at the next
+ *   chunk it processes, and releases its buffers.
+ * </p>
+ */
+public final class PdfSigner {
+  @Nullable private final Long timeout;
+
+  /**
+   * Create a signer whose operations are not limited in time.
+   */
+  public PdfSigner() {
+    this(null);
+  }
+
+  /**
+   * Create a signer whose operations give up past the given time.
+   *
+   * @param timeout Time an operation may take in milliseconds, unlimited if
+   *                null
+   */
+  public PdfSigner(@Nullable Long timeout) {
+    this.timeout = timeout;
+  }
+
+  /**
+   * Add a signature placeholder to the document.
+   *
+   * @param source Document to prepare
+   * @param metadata Signature metadata
+   * @param estimatedSize Estimated signature size, default is used if null
+   * @param certificationLevel Certification level, default is used if null
+   * @return content of the new document
+   * @throws PdfDocumentException if the document could not be read
+   * @throws SignatureException if the placeholder could not be added
+   */
+  public byte[] addPlaceholder(
+      @NotNull PdfSource source,
+      @NotNull SignatureMetadata metadata,
+      @Nullable Integer estimatedSize,
+      @Nullable CertificationLevel certificationLevel
+  ) throws PdfDocumentException, SignatureException {
+    return within(() -> {
+      try (PdfDocument pdf = source.open()) {
+        pdf.addSignaturePlaceholder(
+            new Placeholder(metadata, estimatedSize, certificationLevel)
+        );
+
+        return pdf.getContentBytes();
+      }
+    });
+  }
+
+  /**
+   * Add the placeholder of a single field, or several fields empty in a
+   * single incremental update. Fields added empty then get their
+   * placeholder by name and are signed in turn, each one in an update of
+   * its own, so that {@code n} fields take {@code n + 1} passes. A single
+   * pass can not add the placeholders of several fields under PAdES: every
+   * signature covers the ones signed before it.
+   *
+   * @param source Document to prepare
+   * @param fields Fields to add
+   * @param certificationLevel Certification level, default is used if null
+   * @return content of the new document
+   * @throws PdfDocumentException if the document could not be read
+   * @throws SignatureException if the placeholders could not be added
+   */
+  public byte[] addPlaceholders(
+      @NotNull PdfSource source,
+      @NotNull List<FieldSpec> fields,
+      @Nullable CertificationLevel certificationLevel
+  ) throws PdfDocumentException, SignatureException {
+    return addPlaceholders(source, fields, certificationLevel, null);
+  }
+
+  /**
+   * Add the placeholder of a single field, or several fields empty, writing
+   * the same document for the same input, field metadata and seed. The
+   * file identifier is derived from the seed, modification dates are the
+   * latest signing date of the fields. The document is written with UTC
+   * as the default time zone, so output matches between hosts; other
+   * threads see UTC as the default time zone meanwhile.
+   *
+   * @param source Document to prepare
+   * @param fields Fields to add, every one with a signing date
+   * @param certificationLevel Certification level, default is used if null
+   * @param seed Seed of the output, output is not deterministic if null
+   * @return content of the new document
+   * @throws PdfDocumentException if the document could not be read
+   * @throws SignatureException if the placeholders could not be added
+   */
+  public byte[] addPlaceholders(
+      @NotNull PdfSource source,
+      @NotNull List<FieldSpec> fields,
+      @Nullable CertificationLevel certificationLevel,
+      @Nullable String seed
+  ) throws PdfDocumentException, SignatureException {
+    return within(() -> {
+      try (PdfDocument pdf = source.open()) {
+        pdf.addSignaturePlaceholder(
+            new Placeholder(fields, certificationLevel, seed)
+        );
+
+        return pdf.getContentBytes();
+      }
+    });
+  }
+
+  /**
+   * Calculate document digest excluding signatures.
+   *
+   * @param source Document to hash
+   * @param algorithm Hashing algorithm, default is used if null
+   * @return document digest
+   * @throws PdfDocumentException if the document could not be read
+   * @throws DigestException if hashing fails
+   */
+  public byte[] digest(
+      @NotNull PdfSource source,
+      @Nullable HashAlgorithm algorithm
+  ) throws PdfDocumentException, DigestException {
+    return within(() -> {
+      try (PdfDocument pdf = source.open()) {
+        return pdf.digest(algorithm);
+      }
+    });
+  }
+
+  /**
+   * Calculate digest of the bytes a single signature field covers.
+   *
+   * @param source Document to hash
+   * @param algorithm Hashing algorithm, default is used if null
+   * @param fieldName Signature field name
+   * @return field digest
+   * @throws PdfDocumentException if the document could not be read
+   * @throws DigestException if the field is not found or hashing fails
+   */
+  public byte[] digest(
+      @NotNull PdfSource source,
+      @Nullable HashAlgorithm algorithm,
+      @NotNull String fieldName
+  ) throws PdfDocumentException, DigestException {
+    return within(() -> {
+      try (PdfDocument pdf = source.open()) {
+        return pdf.digest(algorithm, fieldName);
+      }
+    });
+  }
+
+  /**
+   * Embed an external signature into the document placeholder.
+   *
+   * @param source Document with a signature placeholder
+   * @param signature External PKCS7 signature
+   * @return content of the signed document
+   * @throws PdfDocumentException if the document could not be read
+   * @throws SignatureException if the document could not be signed
+   */
+  public byte[] sign(
+      @NotNull PdfSource source,
+      @NotNull byte[] signature
+  ) throws PdfDocumentException, SignatureException {
+    return within(() -> {
+      try (PdfDocument pdf = source.open()) {
+        pdf.addSignature(new Signature(signature));
+
+        return pdf.getContentBytes();
+      }
+    });
+  }
+
+  /**
+   * Embed external signatures into the given signature fields. Fields
+   * whose byte ranges cover one another are rejected, as writing one would
+   * break the others.
+   *
+   * @param source Document with signature placeholders
+   * @param signaturesByField External PKCS7 signatures by field name
+   * @return content of the signed document
+   * @throws PdfDocumentException if the document could not be read
+   * @throws SignatureException if the document could not be signed
+   */
+  public byte[] sign(
+      @NotNull PdfSource source,
+      @NotNull Map<String, byte[]> signaturesByField
+  ) throws PdfDocumentException, SignatureException {
+    return within(() -> {
+      try (PdfDocument pdf = source.open()) {
+        pdf.addSignature(new Signature(signaturesByField));
+
+        return pdf.getContentBytes();
+      }
+    });
+  }
+
+  /**
+   * Embed LTV information into the signed document.
+   *
+   * @param source Signed document
+   * @param ocsps DER-encoded OCSP responses
+   * @param crls DER-encoded CRLs
+   * @return content of the new document
+   * @throws PdfDocumentException if the document could not be read
+   * @throws ValidationException if LTV information could not be embedded
+   */
+  public byte[] addValidation(
+      @NotNull PdfSource source,
+      @NotNull List<byte[]> ocsps,
+      @NotNull List<byte[]> crls
+  ) throws PdfDocumentException, ValidationException {
+    return within(() -> {
+      Validation validation = new Validation(ocsps, crls);
+
+      try (PdfDocument pdf = source.open()) {
+        pdf.addValidation(validation);
+
+        return pdf.getContentBytes();
+      }
+    });
+  }
+
+  /**
+   * Verify every signature of a document file. The file is streamed,
+   * not loaded into memory.
+   *
+   * @param path Path to the document
+   * @param password Document password, may be null
+   * @return verification results, in the signature fields order
+   * @throws VerificationException if the document could not be read
+   */
+  public List<SignatureVerification> verify(
+      @NotNull Path path,
+      @Nullable String password
+  ) throws VerificationException {
+    return within(() -> new Verification(path, password).verify());
+  }
+
+  /**
+   * Asynchronous variant of {@link #addPlaceholder}.
+   *
+   * @param source Document to prepare
+   * @param metadata Signature metadata
+   * @param estimatedSize Estimated signature size, default is used if null
+   * @param certificationLevel Certification level, default is used if null
+   * @param executor Executor to run the operation on
+   * @return future content of the new document
+   */
+  public CompletableFuture<byte[]> addPlaceholderAsync(
+      @NotNull PdfSource source,
+      @NotNull SignatureMetadata metadata,
+      @Nullable Integer estimatedSize,
+      @Nullable CertificationLevel certificationLevel,
+      @NotNull Executor executor
+  ) {
+    return supplyAsync(
+        () -> addPlaceholder(
+          source, metadata, estimatedSize, certificationLevel
+        ),
+        executor
+    );
+  }
+
+  /**
+   * Asynchronous variant of {@link #addPlaceholders}.
+   *
+   * @param source Document to prepare
+   * @param fields Fields to add
+   * @param certificationLevel Certification level, default is used if null
+   * @param executor Executor to run the operation on
+   * @return future content of the new document
+   */
+  public CompletableFuture<byte[]> addPlaceholdersAsync(
+      @NotNull PdfSource source,
+      @NotNull List<FieldSpec> fields,
+      @Nullable CertificationLevel certificationLevel,
+      @NotNull Executor executor
+  ) {
+    return supplyAsync(
+        () -> addPlaceholders(source, fields, certificationLevel), executor
+    );
+  }
+
+  /**
+   * Asynchronous variant of
+   * {@link #addPlaceholders(PdfSource, List, CertificationLevel, String)}.
+   *
+   * @param source Document to prepare
+   * @param fields Fields to add, every one with a signing date
+   * @param certificationLevel Certification level, default is used if null
+   * @param seed Seed of the output, output is not deterministic if null
+   * @param executor Executor to run the operation on
+   * @return future content of the new document
+   */
+  public CompletableFuture<byte[]> addPlaceholdersAsync(
+      @NotNull PdfSource source,
+      @NotNull List<FieldSpec> fields,
+      @Nullable CertificationLevel certificationLevel,
+      @Nullable String seed,
+      @NotNull Executor executor
+  ) {
+    return supplyAsync(
+        () -> addPlaceholders(source, fields, certificationLevel, seed),
+        executor
+    );
+  }
+
+  /**
+   * Asynchronous variant of {@link #digest(PdfSource, HashAlgorithm)}.
+   *
+   * @param source Document to hash
+   * @param algorithm Hashing algorithm, default is used if null
+   * @param executor Executor to run the operation on
+   * @return future document digest
+   */
+  public CompletableFuture<byte[]> digestAsync(
+      @NotNull PdfSource source,
+      @Nullable HashAlgorithm algorithm,
+      @NotNull Executor executor
+  ) {
+    return supplyAsync(
+        () -> digest(source, algorithm), executor
+    );
+  }
+
+  /**
+   * Asynchronous variant of {@link #sign(PdfSource, byte[])}.
+   *
+   * @param source Document with a signature placeholder
+   * @param signature External PKCS7 signature
+   * @param executor Executor to run the operation on
+   * @return future content of the signed document
+   */
+  public CompletableFuture<byte[]> signAsync(
+      @NotNull PdfSource source,
+      @NotNull byte[] signature,
+      @NotNull Executor executor
+  ) {
+    return supplyAsync(
+        () -> sign(source, signature), executor
+    );
+  }
+
+  /**
+   * Asynchronous variant of {@link #sign(PdfSource, Map)}.
+   *
+   * @param source Document with signature placeholders
+   * @param signaturesByField External PKCS7 signatures by field name
+   * @param executor Executor to run the operation on
+   * @return future content of the signed document
+   */
+  public CompletableFuture<byte[]> signAsync(
+      @NotNull PdfSource source,
+      @NotNull Map<String, byte[]> signaturesByField,
+      @NotNull Executor executor
+  ) {
+    return supplyAsync(
+        () -> sign(source, signaturesByField), executor
+    );
+  }
+
+  /**
+   * Asynchronous variant of {@link #addValidation}.
+   *
+   * @param source Signed document
+   * @param ocsps DER-encoded OCSP responses
+   * @param crls DER-encoded CRLs
+   * @param executor Executor to run the operation on
+   * @return future content of the new document
+   */
+  public CompletableFuture<byte[]> addValidationAsync(
+      @NotNull PdfSource source,
+      @NotNull List<byte[]> ocsps,
+      @NotNull List<byte[]> crls,
+      @NotNull Executor executor
+  ) {
+    return supplyAsync(
+        () -> addValidation(source, ocsps, crls), executor
+    );
+  }
+
+  /**
+   * Asynchronous variant of {@link #verify}.
+   *
+   * @param path Path to the document
+   * @param password Document password, may be null
+   * @param executor Executor to run the operation on
+   * @return future verification results
+   */
+  public CompletableFuture<List<SignatureVerification>> verifyAsync(
+      @NotNull Path path,
+      @Nullable String password,
+      @NotNull Executor executor
+  ) {
+    return supplyAsync(
+        () -> verify(path, password), executor
+    );
+  }
+
+  /**
+   * Run an operation within a cancellation with the signer timeout, unless
+   * it already runs within one.
+   */
+  private <T> T within(@NotNull Cancellation.Task<T, RuntimeException> task) {
+    return Cancellation.isActive()
+      ? task.run()
+      : new Cancellation(timeout).call(task);
+  }
+
+  /**
+   * Run an operation on the executor, cancelling it when the future is
+   * cancelled.
+   */
+  private <T> CompletableFuture<T> supplyAsync(
+      @NotNull Supplier<T> operation,
+      @NotNull Executor executor
+  ) {
+    Cancellation cancellation = new Cancellation(timeout);
+    CompletableFuture<T> future = new CompletableFuture<>();
+
+    future.whenComplete((result, error) -> {
+      if (future.isCancelled()) {
+        cancellation.cancel();
+      }
+    });
+
+    executor.execute(() -> {
+      try {
+        future.complete(cancellation.call(operation::get));
+      } catch (RuntimeException e) {
+        // Wrapped the way CompletableFuture.supplyAsync wraps it
+        future.completeExceptionally(new CompletionException(e));
+      }
+    });
+
+    return future;
+  }
+}
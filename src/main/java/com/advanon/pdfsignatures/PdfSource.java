@@ -0,0 +1,111 @@
+package com.advanon.pdfsignatures;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Document input accepted by {@link PdfSigner}.
+ * <p>
+ *   The content is read once, when the source is created. Sources are
+ *   immutable and may be shared between threads and reused for any number
+ *   of operations.
+ * </p>
+ */
+public final class PdfSource {
+  private final byte[] content;
+  @Nullable private final String password;
+
+  private PdfSource(@NotNull byte[] content, @Nullable String password) {
+    this.content = content;
+    this.password = password;
+  }
+
+  /**
+   * Create a source from a file.
+   *
+   * @param path Path to the document
+   * @return document source
+   * @throws PdfDocumentException if the file could not be read
+   */
+  public static PdfSource of(@NotNull Path path) throws PdfDocumentException {
+    try {
+      return new PdfSource(Files.readAllBytes(path), null);
+    } catch (IOException e) {
+      throw new PdfDocumentException(e.getMessage());
+    }
+  }
+
+  /**
+   * Create a source from a stream. The stream is read to its end,
+   * but not closed.
+   *
+   * @param inputStream Stream with the document content
+   * @return document source
+   * @throws PdfDocumentException if the stream could not be read
+   */
+  public static PdfSource of(
+      @NotNull InputStream inputStream
+  ) throws PdfDocumentException {
+    try {
+      return new PdfSource(Streams.readAllBytes(inputStream), null);
+    } catch (IOException e) {
+      throw new PdfDocumentException(e.getMessage());
+    }
+  }
+
+  /**
+   * Create a source from the remaining bytes of a buffer.
+   * The buffer position is left untouched.
+   *
+   * @param buffer Buffer with the document content
+   * @return document source
+   */
+  public static PdfSource of(@NotNull ByteBuffer buffer) {
+    ByteBuffer view = buffer.duplicate();
+    byte[] content = new byte[view.remaining()];
+    view.get(content);
+
+    return new PdfSource(content, null);
+  }
+
+  /**
+   * Create a source from a byte array. The array is copied.
+   *
+   * @param content Document content
+   * @return document source
+   */
+  public static PdfSource of(@NotNull byte[] content) {
+    return new PdfSource(content.clone(), null);
+  }
+
+  /**
+   * Return a copy of this source which opens the document with a password.
+   *
+   * @param password Document password
+   * @return document source
+   */
+  public PdfSource withPassword(@Nullable String password) {
+    return new PdfSource(content, password);
+  }
+
+  @Nullable
+  String getPassword() {
+    return password;
+  }
+
+  /**
+   * Open a new document on top of the source content.
+   *
+   * @return document
+   * @throws PdfDocumentException if the document could not be parsed
+   */
+  PdfDocument open() throws PdfDocumentException {
+    return new PdfDocument(content, password);
+  }
+}
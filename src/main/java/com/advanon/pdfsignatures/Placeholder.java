@@ -1,9 +1,13 @@
 package com.advanon.pdfsignatures;
 
 import com.itextpdf.text.DocumentException;
-import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.PdfAnnotation;
+import com.itextpdf.text.pdf.PdfAppearance;
+import com.itextpdf.text.pdf.PdfArray;
 import com.itextpdf.text.pdf.PdfDate;
 import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfFormField;
 import com.itextpdf.text.pdf.PdfLiteral;
 import com.itextpdf.text.pdf.PdfName;
 import com.itextpdf.text.pdf.PdfReader;
@@ -11,13 +15,20 @@ import com.itextpdf.text.pdf.PdfSignature;
 import com.itextpdf.text.pdf.PdfSignatureAppearance;
 import com.itextpdf.text.pdf.PdfStamper;
 import com.itextpdf.text.pdf.PdfString;
+import com.itextpdf.text.pdf.PdfTemplate;
+import com.itextpdf.text.pdf.PdfWriter;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -29,69 +40,501 @@ import org.jetbrains.annotations.Nullable;
  *   This class is generally designed to help in pre-signin
  *   document digest calculation.
  * </p>
+ * <p>
+ *   Several fields are added empty, without signature dictionaries, in a
+ *   single incremental update. Each of them then gets its placeholder in
+ *   an update of its own, given its name, and is signed before the next
+ *   one: every byte range is {@code [0 a b c]} and leaves out the
+ *   signature own /Contents only, as PAdES (and ISO 32000-2) expects, so
+ *   that every signature covers the ones signed before it. A single pass
+ *   can not add the placeholders of several fields: {@code n} fields take
+ *   {@code n + 1} passes.
+ * </p>
+ * <p>
+ *   Fields with an {@link AppearanceTemplate} get a visible appearance,
+ *   drawn with the resources of {@link AppearanceCache}.
+ * </p>
+ * <p>
+ *   Given a seed, placeholders are deterministic: the dates iText stamps
+ *   are replaced by the signing date and the file identifier is derived
+ *   from the seed, see {@link DeterministicOutput}.
+ * </p>
  */
 final class Placeholder extends PdfChange {
-  private int estimatedSize = Constants.DEFAULT_ESTIMATED_SIGNATURE_SIZE;
-  private SignatureMetadata signatureMetadata;
+  private final List<FieldSpec> fields;
   private CertificationLevel certificationLevel
           = CertificationLevel.NOT_CERTIFIED;
+  private final List<SignatureSlot> slots = new ArrayList<>();
+  private final List<String> fieldNames = new ArrayList<>();
+  @Nullable private final String seed;
 
   Placeholder(
       @NotNull SignatureMetadata signatureMetadata,
       @Nullable Integer estimatedSize,
       @Nullable CertificationLevel certificationLevel
   ) {
-    this.signatureMetadata = signatureMetadata;
+    this(
+        Collections.singletonList(
+          new FieldSpec(null, signatureMetadata, estimatedSize, 1, null)
+        ),
+        certificationLevel
+    );
+  }
+
+  /**
+   * Placeholder of a single field, or several empty fields added in a
+   * single pass.
+   *
+   * @param fields Fields to add
+   * @param certificationLevel Certification level, default is used if null
+   * @throws SignatureException if no fields are given, or several fields
+   *                            would certify the document
+   */
+  Placeholder(
+      @NotNull List<FieldSpec> fields,
+      @Nullable CertificationLevel certificationLevel
+  ) throws SignatureException {
+    this(fields, certificationLevel, null);
+  }
+
+  /**
+   * Placeholder of a single field, or several empty fields added in a
+   * single pass.
+   *
+   * @param fields Fields to add
+   * @param certificationLevel Certification level, default is used if null
+   * @param seed Seed of deterministic output, output is not deterministic
+   *             if null
+   * @throws SignatureException if no fields are given, several fields
+   *                            would certify the document, or a field of
+   *                            deterministic placeholders has no date
+   */
+  Placeholder(
+      @NotNull List<FieldSpec> fields,
+      @Nullable CertificationLevel certificationLevel,
+      @Nullable String seed
+  ) throws SignatureException {
+    if (fields.isEmpty()) {
+      throw new SignatureException("No signature fields given");
+    }
 
-    if (estimatedSize != null) {
-      this.estimatedSize = estimatedSize;
+    if (seed != null && fields.stream()
+        .anyMatch(field -> field.getMetadata().getDate() == null)) {
+      throw new SignatureException(
+        "Deterministic placeholders need a signing date"
+      );
     }
 
+    this.seed = seed;
+
+    this.fields = new ArrayList<>(fields);
+
     if (certificationLevel != null) {
       this.certificationLevel = certificationLevel;
     }
+
+    if (fields.size() > 1
+        && this.certificationLevel != CertificationLevel.NOT_CERTIFIED) {
+      throw new SignatureException(
+        "Only a single signature field may certify the document"
+      );
+    }
   }
 
   public void apply(@NotNull PdfDocument pdf) {
-    try {
-      PdfReader reader = pdf.getReader();
-      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-      PdfStamper stamper = this.buildStamper(reader, outputStream);
+    slots.clear();
+    fieldNames.clear();
 
-      stamper.setXmpMetadata(reader.getMetadata());
+    // Appearances are imported when the stamper closes, keep them open
+    List<PdfReader> appearances = new ArrayList<>();
+    List<DocumentBuffer> buffers = new ArrayList<>();
 
-      PdfSignatureAppearance signatureAppearance =
-          stamper.getSignatureAppearance();
-      PdfSignature signature = buildSignature(signatureMetadata);
-      signatureAppearance.setCryptoDictionary(signature);
+    // iText stamps the current time in the default time zone, the width of
+    // deterministic dates must not depend on the host
+    try (DeterministicOutput.UtcScope zone
+        = seed != null ? DeterministicOutput.utc() : null) {
+      if (fields.size() == 1) {
+        applySingle(pdf, fields.get(0), appearances, buffers);
+      } else {
+        applyEmptyFields(pdf, appearances, buffers);
+      }
+    } catch (IOException | DocumentException e) {
+      throw new SignatureException(e.getMessage());
+    } finally {
+      appearances.forEach(PdfReader::close);
+      buffers.forEach(DocumentBuffer::release);
+    }
+  }
+
+  private void applySingle(
+      @NotNull PdfDocument pdf,
+      @NotNull FieldSpec field,
+      @NotNull List<PdfReader> appearances,
+      @NotNull List<DocumentBuffer> buffers
+  ) throws IOException, DocumentException {
+    PdfReader reader = pdf.getReader();
+    boolean append = isAppending(reader);
+    DocumentBuffer outputStream = buildBuffer(
+        pdf, reader.getFileLength() + field.getEstimatedSize() * 2, buffers
+    );
+    PdfStamper stamper = this.buildStamper(reader, outputStream);
+
+    stamper.setXmpMetadata(reader.getMetadata());
 
-      assertCertificationLevelChangeable(reader);
+    PdfSignatureAppearance signatureAppearance =
+        stamper.getSignatureAppearance();
+    PdfSignature signature = buildSignature(field.getMetadata());
+    signatureAppearance.setCryptoDictionary(signature);
+
+    if (seed != null) {
+      // Visible signatures without an appearance show the signing date
+      signatureAppearance.setSignDate(field.getMetadata().getDate());
+    }
 
-      if (certificationLevel != CertificationLevel.NOT_CERTIFIED) {
-        signatureAppearance.setCertificationLevel(
-            this.certificationLevel.ordinal()
+    if (field.getName() != null && isEmptyField(reader, field.getName())) {
+      // Fields added empty beforehand keep their page and rectangle
+      signatureAppearance.setVisibleSignature(field.getName());
+    } else if (field.getName() != null || field.getRectangle() != null) {
+      assertAppearanceRectangle(field);
+      signatureAppearance.setVisibleSignature(
+          buildRectangle(field), field.getPage(), field.getName()
+      );
+    } else {
+      assertAppearanceRectangle(field);
+    }
+
+    if (field.getAppearance() != null) {
+      signatureAppearance.getLayer(2).addTemplate(
+          drawAppearance(
+            stamper,
+            field,
+            signatureAppearance.getFieldName(),
+            signatureAppearance.getRect(),
+            appearances
+          ),
+          0,
+          0
+      );
+    }
+
+    assertCertificationLevelChangeable(reader);
+
+    if (certificationLevel != CertificationLevel.NOT_CERTIFIED) {
+      signatureAppearance.setCertificationLevel(
+          this.certificationLevel.ordinal()
+      );
+    }
+
+    signatureAppearance.preClose(
+        (HashMap<PdfName, Integer>) buildExclusionSizes(field)
+    );
+
+    PdfLiteral contents = (PdfLiteral) signature.get(PdfName.CONTENTS);
+    long contentsStart = contents.getPosition();
+    long contentsEnd = contentsStart + contents.getPosLength();
+
+    assertWritingCertificationLevel(reader);
+
+    signatureAppearance.close(buildSignaturePlaceholder(signature));
+    outputStream.close();
+
+    long[] byteRange = new long[] {
+      0, contentsStart, contentsEnd, outputStream.size() - contentsEnd
+    };
+    slots.add(new SignatureSlot(
+        signatureAppearance.getFieldName(),
+        byteRange,
+        contentsStart,
+        contentsEnd
+    ));
+    fieldNames.add(signatureAppearance.getFieldName());
+
+    setContent(pdf, outputStream, append, buffers);
+    // Hashed from the content, the ranges are not copied
+    pdf.setHashableRanges(byteRange);
+  }
+
+  /**
+   * Add every field empty, without a signature dictionary, in a single
+   * stamper pass. Their placeholders are added one at a time later on.
+   */
+  private void applyEmptyFields(
+      @NotNull PdfDocument pdf,
+      @NotNull List<PdfReader> appearances,
+      @NotNull List<DocumentBuffer> buffers
+  ) throws IOException, DocumentException {
+    PdfReader reader = pdf.getReader();
+
+    assertWritingCertificationLevel(reader);
+
+    DocumentBuffer outputStream
+        = buildBuffer(pdf, reader.getFileLength(), buffers);
+    boolean append = isAppending(reader);
+    PdfStamper stamper = new PdfStamper(reader, outputStream, '\0', append);
+    PdfWriter writer = stamper.getWriter();
+
+    stamper.setXmpMetadata(reader.getMetadata());
+    writer.setSigFlags(
+        append
+          ? PdfWriter.SIGNATURE_EXISTS | PdfWriter.SIGNATURE_APPEND_ONLY
+          : PdfWriter.SIGNATURE_EXISTS
+    );
+
+    List<String> names = buildFieldNames(reader);
+
+    for (int i = 0; i < fields.size(); i++) {
+      FieldSpec field = fields.get(i);
+
+      assertAppearanceRectangle(field);
+
+      PdfFormField signatureField = PdfFormField.createSignature(writer);
+      signatureField.setFieldName(names.get(i));
+      signatureField.setFlags(PdfAnnotation.FLAGS_PRINT);
+
+      Rectangle rectangle = buildRectangle(field);
+      signatureField.setWidget(rectangle, null);
+      signatureField.setPage(field.getPage());
+      PdfAppearance appearance = PdfAppearance.createAppearance(
+          writer, rectangle.getWidth(), rectangle.getHeight()
+      );
+
+      if (field.getAppearance() != null) {
+        appearance.addTemplate(
+            drawAppearance(
+              stamper, field, names.get(i), rectangle, appearances
+            ),
+            0,
+            0
         );
       }
 
-      signatureAppearance.preClose(
-          (HashMap<PdfName, Integer>) buildExclusionSizes()
+      signatureField.setAppearance(
+          PdfAnnotation.APPEARANCE_NORMAL, appearance
       );
 
-      InputStream rangeStream = signatureAppearance.getRangeStream();
-      ByteArrayOutputStream rangeOutputStream = new ByteArrayOutputStream();
-      Streams.copyInputToOutputStream(rangeStream, rangeOutputStream);
-      pdf.setHashableBytes(rangeOutputStream.toByteArray());
-      rangeOutputStream.close();
+      stamper.addAnnotation(signatureField, field.getPage());
+    }
 
-      assertWritingCertificationLevel(reader);
+    stamper.close();
 
-      signatureAppearance.close(buildSignaturePlaceholder(signature));
-      outputStream.close();
+    fieldNames.addAll(names);
+    setContent(pdf, outputStream, append, buffers);
+    // Empty fields sign nothing yet
+    pdf.setHashableRanges(new long[0]);
+  }
 
-      pdf.setContentBytes(outputStream.toByteArray());
-    } catch (IOException | DocumentException e) {
-      throw new SignatureException(e.getMessage());
+  /**
+   * Slot of the placeholder added by the last {@link #apply} call.
+   *
+   * @return added slot, empty if not applied yet or fields were added empty
+   */
+  List<SignatureSlot> getSlots() {
+    return Collections.unmodifiableList(slots);
+  }
+
+  /**
+   * Names of the fields added by the last {@link #apply} call, in the order
+   * of the given fields.
+   *
+   * @return field names, empty if not applied yet
+   */
+  List<String> getFieldNames() {
+    return Collections.unmodifiableList(fieldNames);
+  }
+
+  /**
+   * Certification level the placeholder sets, if any.
+   *
+   * @return certification level
+   */
+  CertificationLevel getCertificationLevel() {
+    return certificationLevel;
+  }
+
+  /**
+   * Name every field, generating names for the ones without a name.
+   *
+   * @param reader PDF reader
+   * @return field names, in the order of the fields
+   * @throws SignatureException if a name is taken
+   */
+  private List<String> buildFieldNames(
+      @NotNull PdfReader reader
+  ) throws SignatureException {
+    Set<String> taken = new HashSet<>(
+        reader.getAcroFields().getFields().keySet()
+    );
+    List<String> names = new ArrayList<>();
+
+    for (FieldSpec field : fields) {
+      if (field.getName() != null && !taken.add(field.getName())) {
+        throw new SignatureException(
+          "Field name is already taken: " + field.getName()
+        );
+      }
+    }
+
+    int number = 1;
+    for (FieldSpec field : fields) {
+      String name = field.getName();
+
+      while (name == null) {
+        String candidate = "Signature" + number++;
+
+        if (taken.add(candidate)) {
+          name = candidate;
+        }
+      }
+
+      names.add(name);
     }
+
+    return names;
+  }
+
+  /**
+   * Buffer of written content, taking heap from the document allowance.
+   *
+   * @param pdf Document being written
+   * @param expectedSize Expected content size in bytes
+   * @param buffers Created buffers, to release once applied
+   * @return buffer
+   * @throws IOException if the buffer could not spill to disk
+   */
+  private DocumentBuffer buildBuffer(
+      @NotNull PdfDocument pdf,
+      long expectedSize,
+      @NotNull List<DocumentBuffer> buffers
+  ) throws IOException {
+    DocumentBuffer buffer = new DocumentBuffer(
+        pdf.getAllowance(), expectedSize
+    );
+    buffers.add(buffer);
+
+    return buffer;
+  }
+
+  /**
+   * Hand the written buffer over to the document, which releases it.
+   * Deterministic output is patched in an array, so it is copied into one.
+   *
+   * @param pdf Document, still holding the input content
+   * @param outputStream Written document
+   * @param append Whether the update was appended to the input
+   * @param buffers Created buffers, to release once applied
+   * @throws IOException if the buffer could not be read
+   */
+  private void setContent(
+      @NotNull PdfDocument pdf,
+      @NotNull DocumentBuffer outputStream,
+      boolean append,
+      @NotNull List<DocumentBuffer> buffers
+  ) throws IOException {
+    if (seed == null) {
+      buffers.remove(outputStream);
+      pdf.setContent(outputStream);
+      return;
+    }
+
+    byte[] contentBytes = outputStream.toByteArray();
+    makeDeterministic(pdf, contentBytes, append);
+    pdf.setContentBytes(contentBytes);
+  }
+
+  /**
+   * Patch the written update so that it only depends on the input, the
+   * field metadata and the seed. Signed documents keep their permanent
+   * file identifier, new ones get one from the seed.
+   *
+   * @param pdf Document, still holding the input content
+   * @param contentBytes Written document, patched in place
+   * @param append Whether the update was appended to the input
+   * @throws SignatureException if the update could not be patched
+   */
+  private void makeDeterministic(
+      @NotNull PdfDocument pdf,
+      @NotNull byte[] contentBytes,
+      boolean append
+  ) throws SignatureException {
+    Calendar date = fields.stream()
+        .map(field -> field.getMetadata().getDate())
+        .max(Comparator.naturalOrder())
+        .get();
+    PdfArray fileId = pdf.getReader().getTrailer().getAsArray(PdfName.ID);
+
+    DeterministicOutput.apply(
+        contentBytes,
+        append ? (int) pdf.getContentLength() : 0,
+        fileId != null && fileId.size() > 0,
+        date,
+        seed
+    );
+  }
+
+  /**
+   * Whether the document has a signature field of the given name which is
+   * not signed yet.
+   *
+   * @param reader PDF reader
+   * @param name Field name
+   * @return true if the field was added empty
+   */
+  private boolean isEmptyField(
+      @NotNull PdfReader reader,
+      @NotNull String name
+  ) {
+    return reader.getAcroFields().getBlankSignatureNames().contains(name);
+  }
+
+  /**
+   * Make sure a new field with an appearance has room for it.
+   *
+   * @param field Field to add
+   * @throws SignatureException if the field has no rectangle
+   */
+  private void assertAppearanceRectangle(
+      @NotNull FieldSpec field
+  ) throws SignatureException {
+    if (field.getAppearance() != null && field.getRectangle() == null) {
+      throw new SignatureException("Appearance needs a non-empty rectangle");
+    }
+  }
+
+  private Rectangle buildRectangle(@NotNull FieldSpec field) {
+    float[] corners = field.getRectangle();
+
+    return corners != null
+      ? new Rectangle(corners[0], corners[1], corners[2], corners[3])
+      : new Rectangle(0, 0, 0, 0);
+  }
+
+  /**
+   * Draw the appearance of a visible signature.
+   *
+   * @param stamper Document stamper
+   * @param field Field to draw the appearance of
+   * @param name Field name
+   * @param rectangle Widget rectangle
+   * @param appearances Opened appearance images, to close once stamped
+   * @return appearance form, to draw into the widget appearance
+   */
+  private PdfTemplate drawAppearance(
+      @NotNull PdfStamper stamper,
+      @NotNull FieldSpec field,
+      @NotNull String name,
+      @NotNull Rectangle rectangle,
+      @NotNull List<PdfReader> appearances
+  ) {
+    AppearanceTemplate template = field.getAppearance();
+
+    return AppearanceCache.getInstance().draw(
+        stamper,
+        template,
+        template.resolveText(name, field.getMetadata()),
+        rectangle.getWidth(),
+        rectangle.getHeight(),
+        appearances
+    );
   }
 
   /**
@@ -105,11 +548,27 @@ final class Placeholder extends PdfChange {
    */
   private PdfStamper buildStamper(
       @NotNull PdfReader reader,
-      @NotNull ByteArrayOutputStream outputStream
+      @NotNull DocumentBuffer outputStream
   ) throws IOException, DocumentException {
-    AcroFields acroFields = reader.getAcroFields();
-    boolean append = acroFields.getSignatureNames().size() > 0;
-    return PdfStamper.createSignature(reader, outputStream, '\0', null, append);
+    // iText keeps the whole document until the signature is embedded,
+    // in a temporary file of the given directory if there is one
+    return PdfStamper.createSignature(
+        reader,
+        outputStream,
+        '\0',
+        outputStream.getSpillDirectory(),
+        isAppending(reader)
+    );
+  }
+
+  /**
+   * Signed documents are updated incrementally, to keep their signatures.
+   *
+   * @param reader PDF reader object
+   * @return whether the document is appended to
+   */
+  private boolean isAppending(@NotNull PdfReader reader) {
+    return reader.getAcroFields().getSignatureNames().size() > 0;
   }
 
   private PdfSignature buildSignature(@NotNull SignatureMetadata metadata) {
@@ -175,9 +634,9 @@ final class Placeholder extends PdfChange {
    *
    * @return Map with sizes to exclude from the digest calculation
    */
-  private Map<PdfName, Integer> buildExclusionSizes() {
+  private Map<PdfName, Integer> buildExclusionSizes(@NotNull FieldSpec field) {
     Map<PdfName, Integer> exclusionSizes = new HashMap<>();
-    exclusionSizes.put(PdfName.CONTENTS, estimatedSize * 2 + 2);
+    exclusionSizes.put(PdfName.CONTENTS, field.getEstimatedSize() * 2 + 2);
     return exclusionSizes;
   }
 
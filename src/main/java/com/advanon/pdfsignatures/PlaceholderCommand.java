@@ -0,0 +1,146 @@
+package com.advanon.pdfsignatures;
+
+import com.itextpdf.text.pdf.codec.Base64;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Adds a signature placeholder to the document. Given a field spec, adds
+ * the placeholder of that field and returns its byte range and digest.
+ * Given several field specs, adds all the fields empty in a single pass and
+ * returns their names only, each one then gets its placeholder by name in a
+ * pass of its own: under PAdES a single pass can not return the
+ * placeholders of several fields, see {@link Placeholder}. With
+ * {@code --deterministic <seed>} the same input gives the same output, see
+ * {@link DeterministicOutput}. With {@code --certchain} the digest of the
+ * CMS signed attributes is returned instead of the document digest, for
+ * signers which sign a raw hash.
+ */
+final class PlaceholderCommand extends CommandHandler {
+  String execute(
+      @NotNull ApplicationArguments arguments
+  ) throws PdfDocumentException, SignatureException, DigestException,
+      IOException {
+    SignatureMetadata metadata = new SignatureMetadata(
+        arguments.getReason(),
+        arguments.getLocation(),
+        arguments.getContact(),
+        arguments.getDate()
+    );
+
+    Integer estimatedSize = estimatedSize(arguments);
+
+    List<FieldSpec> fields = new ArrayList<>();
+    for (String spec : arguments.getFieldSpecs()) {
+      fields.add(FieldSpec.parse(spec, metadata, estimatedSize));
+    }
+
+    CmsContainer container = cmsContainer(arguments);
+
+    if (fields.size() > 1
+        && (arguments.getManifest() != null || container != null)) {
+      throw new SignatureException(
+        "--manifest and --certchain need a single field"
+      );
+    }
+
+    Placeholder placeholder = new Placeholder(
+        fields.isEmpty()
+          ? Collections.singletonList(
+            new FieldSpec(null, metadata, estimatedSize, 1, null)
+          )
+          : fields,
+        arguments.getCertificationLevel(),
+        arguments.getSeed()
+    );
+
+    try (PdfDocument pdf = new PdfDocument(
+        arguments.getFile(),
+        arguments.getPassword()
+    )) {
+      pdf.addSignaturePlaceholder(placeholder);
+      writeOut(pdf, arguments.getOut());
+
+      if (fields.size() > 1) {
+        return String.join(";", placeholder.getFieldNames());
+      }
+
+      if (arguments.getManifest() != null) {
+        PlaceholderManifest.of(pdf, placeholder)
+          .write(Paths.get(arguments.getManifest()));
+      }
+
+      if (!fields.isEmpty() || container != null) {
+        byte[] digest = pdf.digest(arguments.getHashAlgorithm());
+
+        if (container != null) {
+          digest = container.attributesDigest(digest);
+        }
+
+        return fields.isEmpty()
+          ? Base64.encodeBytes(digest, Base64.DONT_BREAK_LINES)
+          : describe(placeholder.getSlots(), digest);
+      }
+    }
+
+    return arguments.getOut();
+  }
+
+  /**
+   * With {@code --estimatedsize auto} placeholders are sized after the
+   * signatures recorded for the signer profile, or at the default size
+   * while there are not enough of them.
+   *
+   * @param arguments Parsed command arguments
+   * @return estimated size, default is used if null
+   * @throws SignatureException if the size stats could not be read
+   */
+  @Nullable
+  private Integer estimatedSize(
+      @NotNull ApplicationArguments arguments
+  ) throws SignatureException {
+    if (!arguments.isAutoEstimatedSize()) {
+      return arguments.getEstimatedSize();
+    }
+
+    if (arguments.getSizeStats() == null) {
+      throw new SignatureException(
+        "--estimatedsize auto requires --sizestats"
+      );
+    }
+
+    return SignatureSizeStats.open(Paths.get(arguments.getSizeStats()))
+      .estimate(arguments.getProfile());
+  }
+
+  /**
+   * The field is described as "name:byte range:base64 digest".
+   *
+   * @param slots Added signature slot
+   * @param digest Digest of the byte range
+   * @return description of the field
+   */
+  private String describe(
+      @NotNull List<SignatureSlot> slots,
+      @NotNull byte[] digest
+  ) {
+    String encodedDigest = Base64.encodeBytes(digest, Base64.DONT_BREAK_LINES);
+
+    return slots.stream()
+      .map(slot -> slot.getName()
+        + ":" + LongStream.of(slot.getByteRange())
+          .mapToObj(Long::toString)
+          .collect(Collectors.joining(" "))
+        + ":" + encodedDigest)
+      .collect(Collectors.joining(";"));
+  }
+}
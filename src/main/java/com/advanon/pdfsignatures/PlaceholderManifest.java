@@ -0,0 +1,449 @@
+package com.advanon.pdfsignatures;
+
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfArray;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfString;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import org.bouncycastle.util.encoders.Hex;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Sidecar index of a document with signature placeholders, written by
+ * `placeholder` so that `digest`, `sign` and `verify` need no PDF parsing.
+ * <p>
+ *   The manifest is a properties file holding the byte range and /Contents
+ *   slot of every signature field (the placeholders come last), the
+ *   reserved /Contents size, the digests of the hashable bytes and a
+ *   fingerprint of the document. The fingerprint is a SHA-256 hash of the
+ *   file length and of every byte the placeholder byte range covers, which
+ *   is everything but the placeholder /Contents, so it stays the same once
+ *   the signature is embedded and changes with any other byte. Documents
+ *   which do not match the fingerprint are parsed as usual.
+ * </p>
+ */
+final class PlaceholderManifest {
+  private static final int VERSION = 1;
+
+  private final long length;
+  private final String fingerprint;
+  private final CertificationLevel certificationLevel;
+  private final List<SignatureSlot> fields;
+  private final Map<HashAlgorithm, byte[]> digests;
+
+  PlaceholderManifest(
+      long length,
+      @NotNull String fingerprint,
+      @NotNull CertificationLevel certificationLevel,
+      @NotNull List<SignatureSlot> fields,
+      @NotNull Map<HashAlgorithm, byte[]> digests
+  ) {
+    if (fields.isEmpty()) {
+      throw new ManifestException("Manifest lists no signature fields");
+    }
+
+    this.length = length;
+    this.fingerprint = fingerprint;
+    this.certificationLevel = certificationLevel;
+    this.fields = Collections.unmodifiableList(fields);
+    this.digests = digests;
+  }
+
+  /**
+   * Describe a document right after a placeholder was added to it.
+   *
+   * @param pdf Document the placeholder was applied to
+   * @param placeholder Applied placeholder
+   * @return document manifest
+   * @throws ManifestException if the placeholder was not applied
+   * @throws DigestException if hashing fails
+   */
+  static PlaceholderManifest of(
+      @NotNull PdfDocument pdf,
+      @NotNull Placeholder placeholder
+  ) throws ManifestException, DigestException {
+    List<SignatureSlot> added = placeholder.getSlots();
+
+    if (added.isEmpty()) {
+      throw new ManifestException(
+        placeholder.getFieldNames().isEmpty()
+          ? "Placeholder was not applied"
+          : "Fields added empty have no placeholder to describe"
+      );
+    }
+
+    // The reader still holds the document before the placeholder. Earlier
+    // signatures only survive incremental updates, so their offsets are
+    // the same in the new document.
+    PdfReader reader = pdf.getReader();
+    AcroFields acroFields = reader.getAcroFields();
+    List<SignatureSlot> fields = new ArrayList<>();
+
+    for (String name : acroFields.getSignatureNames()) {
+      PdfDictionary signatureDict = acroFields.getSignatureDictionary(name);
+      PdfArray existingRange = signatureDict.getAsArray(PdfName.BYTERANGE);
+      PdfString contents = signatureDict.getAsString(PdfName.CONTENTS);
+
+      if (existingRange == null || contents == null) {
+        continue;
+      }
+
+      long[] slot = PdfDocument.contentsSlot(existingRange.asLongArray());
+
+      if (slot != null) {
+        fields.add(new SignatureSlot(
+            name, existingRange.asLongArray(), slot[0], slot[1]
+        ));
+      }
+    }
+
+    fields.addAll(added);
+
+    CertificationLevel certificationLevel
+        = placeholder.getCertificationLevel();
+    if (certificationLevel == CertificationLevel.NOT_CERTIFIED) {
+      certificationLevel
+          = CertificationLevel.values()[reader.getCertificationLevel()];
+    }
+
+    Map<HashAlgorithm, byte[]> digests = new EnumMap<>(HashAlgorithm.class);
+    for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+      digests.put(algorithm, pdf.digest(algorithm));
+    }
+
+    long length = pdf.getContentLength();
+
+    try {
+      return new PlaceholderManifest(
+          length,
+          fingerprint(
+            length,
+            added.get(added.size() - 1).getByteRange(),
+            pdf::readContent
+          ),
+          certificationLevel,
+          fields,
+          digests
+      );
+    } catch (IOException e) {
+      throw new ManifestException(e.getMessage());
+    }
+  }
+
+  /**
+   * Read a manifest file.
+   *
+   * @param path Manifest path
+   * @return manifest
+   * @throws ManifestException if the manifest is missing or malformed
+   */
+  static PlaceholderManifest read(
+      @NotNull Path path
+  ) throws ManifestException {
+    Properties properties = new Properties();
+
+    try (Reader reader = Files.newBufferedReader(
+        path, StandardCharsets.UTF_8
+    )) {
+      properties.load(reader);
+    } catch (NoSuchFileException e) {
+      throw new ManifestException("Manifest not found: " + path);
+    } catch (IOException e) {
+      throw new ManifestException(e.getMessage());
+    }
+
+    try {
+      if (Integer.parseInt(require(properties, "version")) != VERSION) {
+        throw new ManifestException("Unsupported manifest version");
+      }
+
+      int fieldCount = Integer.parseInt(require(properties, "fields"));
+      List<SignatureSlot> fields = new ArrayList<>();
+
+      for (int i = 0; i < fieldCount; i++) {
+        long[] slot = longs(require(properties, "field." + i + ".contents"));
+
+        if (slot.length != 2) {
+          throw new ManifestException("Malformed manifest: field." + i);
+        }
+
+        fields.add(new SignatureSlot(
+            require(properties, "field." + i + ".name"),
+            longs(require(properties, "field." + i + ".byteRange")),
+            slot[0],
+            slot[1]
+        ));
+      }
+
+      Map<HashAlgorithm, byte[]> digests
+          = new EnumMap<>(HashAlgorithm.class);
+      for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+        String digest = properties.getProperty(
+            "digest." + algorithm.getAlgorithmName()
+        );
+
+        if (digest != null) {
+          digests.put(algorithm, Hex.decode(digest));
+        }
+      }
+
+      return new PlaceholderManifest(
+          Long.parseLong(require(properties, "length")),
+          require(properties, "fingerprint"),
+          CertificationLevel.values()[
+            Integer.parseInt(require(properties, "certificationLevel"))
+          ],
+          fields,
+          digests
+      );
+    } catch (RuntimeException e) {
+      if (e instanceof ManifestException) {
+        throw e;
+      }
+
+      throw new ManifestException("Malformed manifest: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Write the manifest file.
+   *
+   * @param path Manifest path
+   * @throws ManifestException if writing fails
+   */
+  void write(@NotNull Path path) throws ManifestException {
+    Properties properties = new Properties();
+
+    properties.setProperty("version", String.valueOf(VERSION));
+    properties.setProperty("length", String.valueOf(length));
+    properties.setProperty("fingerprint", fingerprint);
+    properties.setProperty(
+        "certificationLevel", String.valueOf(certificationLevel.ordinal())
+    );
+    properties.setProperty(
+        "reservedSize", String.valueOf(getPlaceholder().getReservedSize())
+    );
+    properties.setProperty("fields", String.valueOf(fields.size()));
+
+    for (int i = 0; i < fields.size(); i++) {
+      SignatureSlot field = fields.get(i);
+
+      properties.setProperty("field." + i + ".name", field.getName());
+      properties.setProperty(
+          "field." + i + ".byteRange", join(field.getByteRange())
+      );
+      properties.setProperty(
+          "field." + i + ".contents",
+          join(new long[] {field.getStart(), field.getEnd()})
+      );
+    }
+
+    for (Map.Entry<HashAlgorithm, byte[]> digest : digests.entrySet()) {
+      properties.setProperty(
+          "digest." + digest.getKey().getAlgorithmName(),
+          Hex.toHexString(digest.getValue())
+      );
+    }
+
+    try (Writer writer = Files.newBufferedWriter(
+        path, StandardCharsets.UTF_8
+    )) {
+      properties.store(writer, "pdf-signatures placeholder manifest");
+    } catch (IOException e) {
+      throw new ManifestException(e.getMessage());
+    }
+  }
+
+  /**
+   * Whether the document file is the one the manifest describes.
+   *
+   * @param path Document path
+   * @return true if the fingerprint matches
+   * @throws ManifestException if the document could not be read
+   */
+  boolean matches(@NotNull Path path) throws ManifestException {
+    try (FileChannel channel = FileChannel.open(
+        path, StandardOpenOption.READ
+    )) {
+      return matches(channel);
+    } catch (IOException e) {
+      throw new ManifestException(e.getMessage());
+    }
+  }
+
+  /**
+   * Whether the document is the one the manifest describes.
+   *
+   * @param channel Document file
+   * @return true if the fingerprint matches
+   * @throws IOException if reading the file fails
+   */
+  boolean matches(@NotNull FileChannel channel) throws IOException {
+    return channel.size() == length
+      && !fingerprint.isEmpty()
+      && fingerprint.equals(
+        fingerprint(length, getPlaceholder().getByteRange(), channel::read)
+      );
+  }
+
+  /**
+   * Signature fields of the document, in the signature fields order.
+   *
+   * @return fields, the placeholder is the last one
+   */
+  List<SignatureSlot> getFields() {
+    return fields;
+  }
+
+  SignatureSlot getPlaceholder() {
+    return fields.get(fields.size() - 1);
+  }
+
+  /**
+   * Certification level of the document, placeholder included.
+   *
+   * @return certification level
+   */
+  CertificationLevel getCertificationLevel() {
+    return certificationLevel;
+  }
+
+  /**
+   * Digest of the bytes covered by the placeholder byte range.
+   *
+   * @param algorithm Hashing algorithm, default is used if null
+   * @return digest or null if the manifest has none for the algorithm
+   */
+  @Nullable
+  byte[] getDigest(@Nullable HashAlgorithm algorithm) {
+    return digests.get(
+        algorithm != null ? algorithm : Constants.DEFAULT_HASH_ALGORITHM
+    );
+  }
+
+  /**
+   * Digest of the bytes a signature field covers.
+   *
+   * @param algorithm Hashing algorithm, default is used if null
+   * @param fieldName Signature field name
+   * @return digest or null if the field is not the placeholder, or the
+   *         manifest has no digest for the algorithm
+   */
+  @Nullable
+  byte[] getDigest(
+      @Nullable HashAlgorithm algorithm,
+      @NotNull String fieldName
+  ) {
+    return getPlaceholder().getName().equals(fieldName)
+      ? getDigest(algorithm)
+      : null;
+  }
+
+  private static String require(
+      @NotNull Properties properties,
+      @NotNull String key
+  ) throws ManifestException {
+    String value = properties.getProperty(key);
+
+    if (value == null) {
+      throw new ManifestException("Manifest has no " + key);
+    }
+
+    return value;
+  }
+
+  private static long[] longs(@NotNull String value) {
+    return Stream.of(value.trim().split(" "))
+      .mapToLong(Long::parseLong)
+      .toArray();
+  }
+
+  private static String join(@NotNull long[] values) {
+    return LongStream.of(values)
+      .mapToObj(String::valueOf)
+      .collect(Collectors.joining(" "));
+  }
+
+  private static String fingerprint(
+      long length,
+      @NotNull long[] byteRange,
+      @NotNull ContentSource source
+  ) throws IOException {
+    if (PdfDocument.contentsSlot(byteRange) == null
+        || byteRange[PdfDocument.CONTENT_START_BYTE_POS] != 0
+        || byteRange[PdfDocument.SIGNATURE_END_BYTE_POS]
+          + byteRange[PdfDocument.CONTENT_END_BYTE_POS] != length) {
+      return "";
+    }
+
+    byte[] slab = BufferPool.getInstance().acquire(Streams.BUFFER_SIZE);
+
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      ByteBuffer buffer = ByteBuffer.wrap(slab);
+
+      digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, length));
+
+      for (int i = 0; i < byteRange.length; i += 2) {
+        long end = byteRange[i] + byteRange[i + 1];
+
+        update(digest, buffer, source, byteRange[i], end);
+      }
+
+      return Hex.toHexString(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new ManifestException(e.getMessage());
+    } finally {
+      BufferPool.getInstance().release(slab);
+    }
+  }
+
+  private static void update(
+      @NotNull MessageDigest digest,
+      @NotNull ByteBuffer buffer,
+      @NotNull ContentSource source,
+      long position,
+      long end
+  ) throws IOException {
+    while (position < end) {
+      Cancellation.checkpoint();
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+      int read = source.read(buffer, position);
+      if (read <= 0) {
+        throw new IOException("Unexpected end of document");
+      }
+
+      buffer.flip();
+      digest.update(buffer);
+      position += read;
+    }
+  }
+}
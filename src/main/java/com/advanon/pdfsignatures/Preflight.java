@@ -0,0 +1,324 @@
+package com.advanon.pdfsignatures;
+
+import com.itextpdf.text.exceptions.BadPasswordException;
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfArray;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfString;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Cheap integrity check of a document file, to reject malformed, truncated
+ * or tampered documents before any work is done on them.
+ * <p>
+ *   The header and the tail are read first: a document must end with
+ *   {@code %%EOF}, with nothing but whitespace after it, and its startxref
+ *   must point to a cross-reference section. Then the document is opened
+ *   in partial mode, which reads the cross-reference sections only, and
+ *   just the catalog and the signature dictionaries are resolved. Documents
+ *   whose cross-reference table had to be rebuilt are rejected.
+ * </p>
+ * <p>
+ *   The byte range of every signature must start at the beginning of the
+ *   file, leave out nothing but the signature own /Contents and end at the
+ *   end of a revision, within the file.
+ * </p>
+ */
+final class Preflight {
+  private static final int HEADER_SIZE = 1024;
+  private static final int TAIL_SIZE = 4096;
+  // Revisions end with %%EOF and an optional end of line
+  private static final int REVISION_END_SIZE = 32;
+  private static final Pattern STARTXREF
+      = Pattern.compile("startxref\\s+(\\d+)");
+  private static final Pattern XREF_SECTION
+      = Pattern.compile("^\\s*(xref|\\d+\\s+\\d+\\s+obj)");
+
+  private final Path path;
+  @Nullable private final String password;
+
+  Preflight(@NotNull Path path, @Nullable String password) {
+    this.path = path;
+    this.password = password;
+  }
+
+  /**
+   * Check the document.
+   *
+   * @return report of a sound document
+   * @throws PreflightException if the document is malformed, truncated, or
+   *         a signature byte range is tampered with
+   */
+  Report check() throws PreflightException {
+    try (FileChannel channel = FileChannel.open(
+        path, StandardOpenOption.READ
+    )) {
+      checkTail(channel);
+
+      PdfReader reader = new PdfReader(
+          path.toString(),
+          password != null ? password.getBytes() : null,
+          true
+      );
+
+      try {
+        if (reader.isRebuilt()) {
+          throw new PreflightException("Cross-reference table is broken");
+        }
+
+        return new Report(
+            reader.isEncrypted(),
+            CertificationLevel.values()[reader.getCertificationLevel()],
+            checkSignatures(channel, reader)
+        );
+      } finally {
+        reader.close();
+      }
+    } catch (BadPasswordException e) {
+      throw new PreflightException("Document is encrypted: " + e.getMessage());
+    } catch (IOException e) {
+      throw new PreflightException(e.getMessage());
+    }
+  }
+
+  private void checkTail(@NotNull FileChannel channel) throws IOException {
+    long size = channel.size();
+
+    if (!read(channel, 0, HEADER_SIZE).contains("%PDF-")) {
+      throw new PreflightException("Document has no PDF header");
+    }
+
+    long tailStart = Math.max(0, size - TAIL_SIZE);
+    String tail = read(channel, tailStart, TAIL_SIZE);
+    int eof = tail.lastIndexOf("%%EOF");
+
+    if (eof < 0) {
+      throw new PreflightException("Document is truncated, %%EOF is missing");
+    }
+
+    if (!tail.substring(eof + 5).replace('\0', ' ').trim().isEmpty()) {
+      throw new PreflightException(
+        "Document is truncated after its last revision"
+      );
+    }
+
+    int startxref = tail.lastIndexOf("startxref", eof);
+    Matcher matcher = STARTXREF.matcher(tail);
+
+    if (startxref < 0 || !matcher.find(startxref)) {
+      throw new PreflightException("Document has no startxref");
+    }
+
+    long offset = Long.parseLong(matcher.group(1));
+
+    if (offset >= size
+        || !XREF_SECTION.matcher(read(channel, offset, 64)).find()) {
+      throw new PreflightException(
+        "startxref does not point to a cross-reference section"
+      );
+    }
+  }
+
+  private List<SignatureCoverage> checkSignatures(
+      @NotNull FileChannel channel,
+      @NotNull PdfReader reader
+  ) throws IOException {
+    AcroFields acroFields = reader.getAcroFields();
+    List<SignatureCoverage> coverages = new ArrayList<>();
+
+    for (String name : acroFields.getSignatureNames()) {
+      PdfDictionary signatureDict = acroFields.getSignatureDictionary(name);
+      PdfArray byteRange = signatureDict.getAsArray(PdfName.BYTERANGE);
+      PdfString contents = signatureDict.getAsString(PdfName.CONTENTS);
+
+      if (byteRange == null || contents == null) {
+        throw new PreflightException(
+          "Signature " + name + " has no byte range or contents"
+        );
+      }
+
+      coverages.add(new SignatureCoverage(
+          name,
+          checkByteRange(
+            channel,
+            name,
+            byteRange.asLongArray(),
+            contents.getOriginalBytes().length
+          )
+      ));
+    }
+
+    return coverages;
+  }
+
+  /**
+   * Check the byte range of a signature for gaps, overlaps and its end.
+   *
+   * @param channel Document file
+   * @param name Signature field name
+   * @param ranges Byte range
+   * @param contentsLength Length of the signature /Contents
+   * @return coverage of a sound byte range
+   * @throws PreflightException if the byte range is not sound
+   */
+  private SignatureVerification.Coverage checkByteRange(
+      @NotNull FileChannel channel,
+      @NotNull String name,
+      @NotNull long[] ranges,
+      int contentsLength
+  ) throws IOException {
+    if (ranges.length != 4) {
+      throw new PreflightException("Byte range of " + name + " is malformed");
+    }
+
+    if (ranges[PdfDocument.CONTENT_START_BYTE_POS] != 0) {
+      throw new PreflightException(
+        "Byte range of " + name + " does not start at the beginning"
+      );
+    }
+
+    long slotStart = ranges[PdfDocument.SIGNATURE_START_BYTE_POS];
+    long slotEnd = ranges[PdfDocument.SIGNATURE_END_BYTE_POS];
+
+    if (slotStart < 0 || slotEnd <= slotStart || ranges[3] < 0) {
+      throw new PreflightException(
+        "Byte range of " + name + " overlaps itself"
+      );
+    }
+
+    if (slotEnd - slotStart != 2L * contentsLength + 2
+        || !"<".equals(read(channel, slotStart, 1))
+        || !">".equals(read(channel, slotEnd - 1, 1))) {
+      throw new PreflightException(
+        "Byte range of " + name + " leaves out more than its contents"
+      );
+    }
+
+    long contentEnd = slotEnd + ranges[3];
+    long size = channel.size();
+
+    if (contentEnd > size) {
+      throw new PreflightException(
+        "Byte range of " + name + " exceeds the document"
+      );
+    }
+
+    long revisionEndStart = Math.max(0, contentEnd - REVISION_END_SIZE);
+    if (!read(channel, revisionEndStart, (int) (contentEnd - revisionEndStart))
+        .contains("%%EOF")) {
+      throw new PreflightException(
+        "Byte range of " + name + " does not end at a revision"
+      );
+    }
+
+    return contentEnd == size
+      ? SignatureVerification.Coverage.COVERS_DOCUMENT
+      : SignatureVerification.Coverage.COVERS_REVISION;
+  }
+
+  /**
+   * Read up to the given number of bytes as Latin-1 text.
+   */
+  private static String read(
+      @NotNull FileChannel channel,
+      long position,
+      int length
+  ) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(
+        (int) Math.max(0, Math.min(length, channel.size() - position))
+    );
+
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        break;
+      }
+    }
+
+    return new String(
+        buffer.array(), 0, buffer.position(), StandardCharsets.ISO_8859_1
+    );
+  }
+
+  /**
+   * Preflight report, described as "encrypted=<bool>;certlevel=<int>;
+   * signatures=<name:coverage,...>".
+   */
+  static final class Report {
+    private final boolean encrypted;
+    private final CertificationLevel certificationLevel;
+    private final List<SignatureCoverage> signatures;
+
+    private Report(
+        boolean encrypted,
+        @NotNull CertificationLevel certificationLevel,
+        @NotNull List<SignatureCoverage> signatures
+    ) {
+      this.encrypted = encrypted;
+      this.certificationLevel = certificationLevel;
+      this.signatures = signatures;
+    }
+
+    boolean isEncrypted() {
+      return encrypted;
+    }
+
+    CertificationLevel getCertificationLevel() {
+      return certificationLevel;
+    }
+
+    List<SignatureCoverage> getSignatures() {
+      return signatures;
+    }
+
+    @Override
+    public String toString() {
+      return "encrypted=" + encrypted
+        + ";certlevel=" + certificationLevel.ordinal()
+        + ";signatures=" + signatures.stream()
+          .map(SignatureCoverage::toString)
+          .collect(Collectors.joining(","));
+    }
+  }
+
+  static final class SignatureCoverage {
+    private final String name;
+    private final SignatureVerification.Coverage coverage;
+
+    private SignatureCoverage(
+        @NotNull String name,
+        @NotNull SignatureVerification.Coverage coverage
+    ) {
+      this.name = name;
+      this.coverage = coverage;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    SignatureVerification.Coverage getCoverage() {
+      return coverage;
+    }
+
+    @Override
+    public String toString() {
+      return name + ":" + coverage;
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package com.advanon.pdfsignatures;
+
+import java.nio.file.Paths;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Checks the integrity of a document before it is worked on, reported as
+ * "encrypted=<bool>;certlevel=<int>;signatures=<name:coverage,...>".
+ */
+final class PreflightCommand extends CommandHandler {
+  String execute(
+      @NotNull ApplicationArguments arguments
+  ) throws PreflightException {
+    return new Preflight(
+        Paths.get(arguments.getFile()),
+        arguments.getPassword()
+    ).check().toString();
+  }
+}
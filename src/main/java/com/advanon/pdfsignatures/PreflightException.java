@@ -0,0 +1,7 @@
+package com.advanon.pdfsignatures;
+
+public class PreflightException extends RuntimeException {
+  public PreflightException(String errorMessage) {
+    super(errorMessage);
+  }
+}
@@ -0,0 +1,181 @@
+package com.advanon.pdfsignatures;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.util.encoders.Hex;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Process-wide cache of parsed CRLs and OCSP responses, keyed by the
+ * SHA-256 of their content.
+ * <p>
+ *   CRLs of big issuers take tens of megabytes and seconds to parse, while
+ *   the same few CRLs come with every request. The cache is bounded by the
+ *   total encoded size of its entries ({@code 256 MB} by default, see
+ *   {@link #MAX_SIZE_PROPERTY}), least recently used entries are evicted
+ *   first. Parsed objects are immutable, so they are shared between threads.
+ * </p>
+ */
+final class RevocationCache {
+  static final String MAX_SIZE_PROPERTY = "pdfsignatures.revocationCacheSize";
+  private static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+
+  private static final RevocationCache INSTANCE = new RevocationCache(
+      Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE)
+  );
+
+  // Certificate factories are not guaranteed to be thread safe
+  private static final ThreadLocal<CertificateFactory> CERTIFICATE_FACTORY
+      = ThreadLocal.withInitial(() -> {
+        try {
+          return CertificateFactory.getInstance("X.509");
+        } catch (CertificateException e) {
+          throw new ValidationException(e.getMessage());
+        }
+      });
+
+  private final long maxSize;
+  private final Map<String, Entry> entries
+      = new LinkedHashMap<>(16, 0.75f, true);
+  private long size;
+
+  RevocationCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  static RevocationCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Parse a DER-encoded CRL, or return the one parsed before.
+   *
+   * @param encoded DER-encoded CRL
+   * @return parsed CRL
+   * @throws ValidationException if the CRL could not be parsed
+   */
+  X509CRL getCrl(@NotNull byte[] encoded) throws ValidationException {
+    return (X509CRL) get("crl", encoded, () -> {
+      try {
+        return CERTIFICATE_FACTORY.get().generateCRL(
+          new ByteArrayInputStream(encoded)
+        );
+      } catch (CRLException e) {
+        throw new ValidationException(e.getMessage());
+      }
+    });
+  }
+
+  /**
+   * Parse a DER-encoded OCSP response, or return the one parsed before.
+   *
+   * @param encoded DER-encoded OCSP response
+   * @return basic OCSP response
+   * @throws ValidationException if the response could not be parsed
+   *         or it is not successful
+   */
+  BasicOCSPResp getOcsp(@NotNull byte[] encoded) throws ValidationException {
+    return (BasicOCSPResp) get("ocsp", encoded, () -> {
+      try {
+        OCSPResp response = new OCSPResp(encoded);
+
+        if (response.getStatus() != OCSPResp.SUCCESSFUL) {
+          throw new ValidationException(
+            "OCSP response is not successful: " + response.getStatus()
+          );
+        }
+
+        return response.getResponseObject();
+      } catch (IOException | OCSPException e) {
+        throw new ValidationException(e.getMessage());
+      }
+    });
+  }
+
+  /**
+   * Total encoded size of cached entries.
+   *
+   * @return size in bytes
+   */
+  synchronized long getSize() {
+    return size;
+  }
+
+  private Object get(
+      @NotNull String type,
+      @NotNull byte[] encoded,
+      @NotNull Parser parser
+  ) throws ValidationException {
+    String key = type + ":" + contentHash(encoded);
+
+    synchronized (this) {
+      Entry entry = entries.get(key);
+
+      if (entry != null) {
+        return entry.value;
+      }
+    }
+
+    // Parsing takes long, do not block other threads meanwhile. The same
+    // content may be parsed twice by concurrent requests, which is harmless.
+    Object value = parser.parse();
+
+    put(key, new Entry(value, encoded.length));
+
+    return value;
+  }
+
+  private synchronized void put(@NotNull String key, @NotNull Entry entry) {
+    if (entry.size > maxSize || entries.containsKey(key)) {
+      return;
+    }
+
+    entries.put(key, entry);
+    size += entry.size;
+
+    Iterator<Entry> iterator = entries.values().iterator();
+
+    while (size > maxSize && iterator.hasNext()) {
+      size -= iterator.next().size;
+      iterator.remove();
+    }
+  }
+
+  private static String contentHash(@NotNull byte[] encoded) {
+    try {
+      return Hex.toHexString(
+        MessageDigest.getInstance("SHA-256").digest(encoded)
+      );
+    } catch (NoSuchAlgorithmException e) {
+      throw new ValidationException(e.getMessage());
+    }
+  }
+
+  private interface Parser {
+    Object parse() throws ValidationException;
+  }
+
+  private static final class Entry {
+    private final Object value;
+    private final long size;
+
+    private Entry(@NotNull Object value, long size) {
+      this.value = value;
+      this.size = size;
+    }
+  }
+}
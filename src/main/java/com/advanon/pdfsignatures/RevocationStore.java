@@ -0,0 +1,513 @@
+package com.advanon.pdfsignatures;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509CRL;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.util.encoders.Hex;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Local store of CRLs and OCSP responses, so that callers do not have to
+ * pass the same material with every request.
+ * <p>
+ *   CRLs are keyed by issuer and CRL number, only the latest CRL of every
+ *   issuer is kept. OCSP responses are keyed by the issuer name hash and
+ *   serial number of every certificate they answer for. Entries expire at
+ *   their nextUpdate time, and the least recently used ones are evicted
+ *   once the total size exceeds the limit ({@code 512 MB} by default, see
+ *   {@link #MAX_SIZE_PROPERTY}). Entries without nextUpdate expire a fixed
+ *   time after their thisUpdate ({@code 7 days} by default, see
+ *   {@link #MAX_AGE_PROPERTY}) instead of being kept for good.
+ * </p>
+ * <p>
+ *   Stores backed by a directory keep every entry in its own file, named
+ *   after the key and the expiration time, so that the index is rebuilt
+ *   from the directory listing alone. Stores without a directory keep
+ *   entries in memory. Parsing goes through {@link RevocationCache} either
+ *   way.
+ * </p>
+ */
+final class RevocationStore {
+  static final String MAX_SIZE_PROPERTY = "pdfsignatures.revocationStoreSize";
+  private static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+  static final String MAX_AGE_PROPERTY = "pdfsignatures.revocationStoreMaxAge";
+  private static final long DEFAULT_MAX_AGE = 7L * 24 * 60 * 60 * 1000;
+  private static final String FILE_SUFFIX = ".der";
+  private static final String CRL_PREFIX = "crl-";
+  private static final String OCSP_PREFIX = "ocsp-";
+
+  // OCSP requests identify the issuer by hash, SHA-1 is by far the most
+  // common, SHA-256 is what newer responders use
+  private static final ASN1ObjectIdentifier[] OCSP_HASH_ALGORITHMS = {
+    OIWObjectIdentifiers.idSHA1,
+    new ASN1ObjectIdentifier("2.16.840.1.101.3.4.2.1"),
+  };
+
+  private static final Map<Path, RevocationStore> STORES
+      = new ConcurrentHashMap<>();
+
+  @Nullable private final Path directory;
+  private final long maxSize;
+  private final long maxAge;
+  private final RevocationCache cache;
+  private final Map<String, Entry> entries
+      = new LinkedHashMap<>(16, 0.75f, true);
+  private long size;
+
+  RevocationStore(
+      @Nullable Path directory,
+      long maxSize,
+      @NotNull RevocationCache cache
+  ) {
+    this(directory, maxSize, DEFAULT_MAX_AGE, cache);
+  }
+
+  /**
+   * Revocation store.
+   *
+   * @param directory Store directory, or null to keep entries in memory
+   * @param maxSize Total size of entries, in bytes
+   * @param maxAge Life of entries without nextUpdate, counted from their
+   *        thisUpdate, in milliseconds
+   * @param cache Cache to parse entries with
+   */
+  RevocationStore(
+      @Nullable Path directory,
+      long maxSize,
+      long maxAge,
+      @NotNull RevocationCache cache
+  ) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+    this.maxAge = maxAge;
+    this.cache = cache;
+  }
+
+  /**
+   * Open the store kept in the given directory. Stores are shared within
+   * the process, so that long-running modes keep a single index.
+   *
+   * @param directory Store directory, created if missing
+   * @return revocation store
+   * @throws ValidationException if the directory could not be read
+   */
+  static RevocationStore open(
+      @NotNull Path directory
+  ) throws ValidationException {
+    return STORES.computeIfAbsent(
+        directory.toAbsolutePath().normalize(),
+        path -> {
+          RevocationStore store = new RevocationStore(
+              path,
+              Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE),
+              Long.getLong(MAX_AGE_PROPERTY, DEFAULT_MAX_AGE),
+              RevocationCache.getInstance()
+          );
+          store.load();
+
+          return store;
+        }
+    );
+  }
+
+  /**
+   * Store a CRL, unless a CRL with a higher number is already there.
+   *
+   * @param encoded DER-encoded CRL
+   * @throws ValidationException if the CRL could not be parsed or stored
+   */
+  synchronized void addCrl(@NotNull byte[] encoded) throws ValidationException {
+    X509CRL crl = cache.getCrl(encoded);
+    String issuer = hash(
+        OIWObjectIdentifiers.idSHA1, crl.getIssuerX500Principal().getEncoded()
+    );
+    BigInteger number = crlNumber(crl);
+
+    for (Entry entry : new ArrayList<>(entries.values())) {
+      if (!entry.key.startsWith(CRL_PREFIX + issuer + "-")) {
+        continue;
+      }
+
+      if (entry.crlNumber().compareTo(number) >= 0) {
+        return;
+      }
+
+      remove(entry);
+    }
+
+    put(
+        CRL_PREFIX + issuer + "-" + number.toString(16),
+        expiration(crl.getThisUpdate(), crl.getNextUpdate()),
+        encoded
+    );
+  }
+
+  /**
+   * Store an OCSP response under every certificate it answers for.
+   *
+   * @param encoded DER-encoded OCSP response
+   * @throws ValidationException if the response could not be parsed
+   *         or stored
+   */
+  synchronized void addOcsp(
+      @NotNull byte[] encoded
+  ) throws ValidationException {
+    BasicOCSPResp ocsp = cache.getOcsp(encoded);
+
+    for (SingleResp response : ocsp.getResponses()) {
+      CertificateID id = response.getCertID();
+
+      put(
+          ocspKey(
+            id.getHashAlgOID(),
+            Hex.toHexString(id.getIssuerNameHash()),
+            id.getSerialNumber()
+          ),
+          expiration(response.getThisUpdate(), response.getNextUpdate()),
+          encoded
+      );
+    }
+  }
+
+  /**
+   * Find the latest CRL issued by the issuer of the certificate.
+   *
+   * @param certificate Certificate to check
+   * @return DER-encoded CRL, or null if none is stored
+   * @throws ValidationException if the stored CRL could not be read
+   */
+  @Nullable
+  synchronized byte[] findCrl(
+      @NotNull X509CertificateHolder certificate
+  ) throws ValidationException {
+    String prefix = CRL_PREFIX + hash(
+        OIWObjectIdentifiers.idSHA1, issuerName(certificate)
+    ) + "-";
+
+    for (Entry entry : new ArrayList<>(entries.values())) {
+      if (entry.key.startsWith(prefix)) {
+        return read(entry.key);
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Find an OCSP response for the certificate.
+   *
+   * @param certificate Certificate to check
+   * @return DER-encoded OCSP response, or null if none is stored
+   * @throws ValidationException if the stored response could not be read
+   */
+  @Nullable
+  synchronized byte[] findOcsp(
+      @NotNull X509CertificateHolder certificate
+  ) throws ValidationException {
+    for (ASN1ObjectIdentifier algorithm : OCSP_HASH_ALGORITHMS) {
+      byte[] encoded = read(ocspKey(
+          algorithm,
+          hash(algorithm, issuerName(certificate)),
+          certificate.getSerialNumber()
+      ));
+
+      if (encoded != null) {
+        return encoded;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Total size of stored entries.
+   *
+   * @return size in bytes
+   */
+  synchronized long getSize() {
+    return size;
+  }
+
+  /**
+   * Rebuild the index from the directory listing, least recently used
+   * files first.
+   */
+  synchronized void load() throws ValidationException {
+    if (directory == null) {
+      return;
+    }
+
+    List<Path> files = new ArrayList<>();
+
+    try {
+      Files.createDirectories(directory);
+
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+          directory, "*" + FILE_SUFFIX
+      )) {
+        stream.forEach(files::add);
+      }
+
+      Map<Path, FileTime> accessTimes = new LinkedHashMap<>();
+      for (Path file : files) {
+        accessTimes.put(file, Files.getLastModifiedTime(file));
+      }
+      files.sort(Comparator.comparing(accessTimes::get));
+
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        String stem = name.substring(0, name.length() - FILE_SUFFIX.length());
+        int separator = stem.lastIndexOf('.');
+
+        if (separator < 0) {
+          continue;
+        }
+
+        Entry entry = new Entry(
+            stem.substring(0, separator),
+            Long.parseLong(stem.substring(separator + 1)),
+            Files.size(file),
+            null
+        );
+        entries.put(entry.key, entry);
+        size += entry.size;
+      }
+    } catch (IOException | NumberFormatException e) {
+      throw new ValidationException(e.getMessage());
+    }
+
+    evict();
+  }
+
+  @Nullable
+  private byte[] read(@NotNull String key) throws ValidationException {
+    Entry entry = entries.get(key);
+
+    if (entry == null) {
+      return null;
+    }
+
+    if (entry.isExpired()) {
+      remove(entry);
+      return null;
+    }
+
+    if (entry.content != null) {
+      return entry.content;
+    }
+
+    Path file = file(entry);
+
+    try {
+      byte[] content = Files.readAllBytes(file);
+      Files.setLastModifiedTime(
+          file, FileTime.fromMillis(System.currentTimeMillis())
+      );
+
+      return content;
+    } catch (NoSuchFileException e) {
+      // Evicted by another process sharing the directory
+      entries.remove(key);
+      size -= entry.size;
+
+      return null;
+    } catch (IOException e) {
+      throw new ValidationException(e.getMessage());
+    }
+  }
+
+  private void put(
+      @NotNull String key,
+      long expiration,
+      @NotNull byte[] content
+  ) throws ValidationException {
+    Entry existing = entries.get(key);
+    if (existing != null) {
+      remove(existing);
+    }
+
+    Entry entry = new Entry(
+        key, expiration, content.length, directory == null ? content : null
+    );
+
+    if (entry.isExpired() || entry.size > maxSize) {
+      return;
+    }
+
+    if (directory != null) {
+      write(entry, content);
+    }
+
+    entries.put(key, entry);
+    size += entry.size;
+
+    evict();
+  }
+
+  /**
+   * Write the entry file atomically, other processes may read the directory
+   * at the same time.
+   */
+  private void write(
+      @NotNull Entry entry,
+      @NotNull byte[] content
+  ) throws ValidationException {
+    try {
+      Path temporaryFile = Files.createTempFile(directory, entry.key, ".tmp");
+      Files.write(temporaryFile, content);
+      Files.move(
+          temporaryFile,
+          file(entry),
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING
+      );
+    } catch (IOException e) {
+      throw new ValidationException(e.getMessage());
+    }
+  }
+
+  private void evict() throws ValidationException {
+    Iterator<Entry> iterator = new ArrayList<>(entries.values()).iterator();
+
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+
+      if (size > maxSize || entry.isExpired()) {
+        remove(entry);
+      }
+    }
+  }
+
+  private void remove(@NotNull Entry entry) throws ValidationException {
+    entries.remove(entry.key);
+    size -= entry.size;
+
+    if (directory == null) {
+      return;
+    }
+
+    try {
+      Files.deleteIfExists(file(entry));
+    } catch (IOException e) {
+      throw new ValidationException(e.getMessage());
+    }
+  }
+
+  private Path file(@NotNull Entry entry) {
+    return directory.resolve(
+        entry.key + "." + entry.expiration + FILE_SUFFIX
+    );
+  }
+
+  private static String ocspKey(
+      @NotNull ASN1ObjectIdentifier algorithm,
+      @NotNull String issuerNameHash,
+      @NotNull BigInteger serialNumber
+  ) {
+    return OCSP_PREFIX + algorithm.getId() + "-" + issuerNameHash
+           + "-" + serialNumber.toString(16);
+  }
+
+  private long expiration(
+      @NotNull Date thisUpdate,
+      @Nullable Date nextUpdate
+  ) {
+    return nextUpdate != null
+        ? nextUpdate.getTime()
+        : thisUpdate.getTime() + maxAge;
+  }
+
+  private static BigInteger crlNumber(@NotNull X509CRL crl) {
+    byte[] extension = crl.getExtensionValue(Extension.cRLNumber.getId());
+
+    if (extension == null) {
+      return BigInteger.ZERO;
+    }
+
+    return ASN1Integer.getInstance(
+        ASN1OctetString.getInstance(extension).getOctets()
+    ).getValue();
+  }
+
+  private static byte[] issuerName(
+      @NotNull X509CertificateHolder certificate
+  ) throws ValidationException {
+    try {
+      return certificate.getIssuer().getEncoded();
+    } catch (IOException e) {
+      throw new ValidationException(e.getMessage());
+    }
+  }
+
+  private static String hash(
+      @NotNull ASN1ObjectIdentifier algorithm,
+      @NotNull byte[] content
+  ) throws ValidationException {
+    try {
+      String name = algorithm.equals(OIWObjectIdentifiers.idSHA1)
+          ? "SHA-1"
+          : "SHA-256";
+
+      return Hex.toHexString(MessageDigest.getInstance(name).digest(content));
+    } catch (NoSuchAlgorithmException e) {
+      throw new ValidationException(e.getMessage());
+    }
+  }
+
+  private static final class Entry {
+    private final String key;
+    private final long expiration;
+    private final long size;
+    @Nullable private final byte[] content;
+
+    private Entry(
+        @NotNull String key,
+        long expiration,
+        long size,
+        @Nullable byte[] content
+    ) {
+      this.key = key;
+      this.expiration = expiration;
+      this.size = size;
+      this.content = content;
+    }
+
+    // Files written before entries without nextUpdate got a bounded life
+    // carry expiration 0, and are dropped as expired
+    private boolean isExpired() {
+      return expiration < System.currentTimeMillis();
+    }
+
+    private BigInteger crlNumber() {
+      return new BigInteger(key.substring(key.lastIndexOf('-') + 1), 16);
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package com.advanon.pdfsignatures;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Embeds an external signature into the empty placeholder, or signatures
+ * into the given fields, see {@link Signature}. With a matching placeholder
+ * manifest signatures are written straight into the placeholders, without
+ * parsing the document.
+ * Given a raw signature and the signer chain, the CMS container is assembled
+ * here for the digest of a single placeholder, see {@link CmsContainer}: the
+ * one given with {@code --field}, or the only empty one. Embedded signature
+ * sizes are recorded into the size stats, if given.
+ */
+final class SignCommand extends CommandHandler {
+  String execute(
+      @NotNull ApplicationArguments arguments
+  ) throws PdfDocumentException, SignatureException, IOException {
+    CmsContainer container = cmsContainer(arguments);
+    assertRawSignature(arguments, container);
+
+    if (arguments.getManifest() != null) {
+      Path file = Paths.get(arguments.getFile());
+      PlaceholderManifest manifest = PlaceholderManifest.read(
+          Paths.get(arguments.getManifest())
+      );
+
+      if (manifest.matches(file)) {
+        String field = container != null
+            ? rawSignatureField(
+              arguments, Signature.emptyPlaceholders(file, manifest)
+            )
+            : null;
+        byte[] digest = field != null
+            ? manifest.getDigest(arguments.getHashAlgorithm(), field)
+            : null;
+
+        // Only the placeholder digest is in the manifest
+        if (container == null || digest != null) {
+          Signature signature = signature(arguments, container, field, digest);
+          signature.apply(file, Paths.get(arguments.getOut()), manifest);
+          recordSizes(arguments, signature);
+
+          return arguments.getOut();
+        }
+      }
+    }
+
+    Signature signature;
+
+    try (PdfDocument pdf = new PdfDocument(
+        arguments.getFile(),
+        arguments.getPassword()
+    )) {
+      String field = container != null
+          ? rawSignatureField(arguments, Signature.emptyPlaceholders(pdf))
+          : null;
+
+      signature = signature(
+          arguments,
+          container,
+          field,
+          field != null
+            ? pdf.digest(arguments.getHashAlgorithm(), field)
+            : null
+      );
+      pdf.addSignature(signature);
+      writeOut(pdf, arguments.getOut());
+    }
+
+    recordSizes(arguments, signature);
+
+    return arguments.getOut();
+  }
+
+  /**
+   * Record embedded signature sizes, so that placeholders of the signer
+   * profile may be sized after them.
+   */
+  private void recordSizes(
+      @NotNull ApplicationArguments arguments,
+      @NotNull Signature signature
+  ) throws SignatureException {
+    if (arguments.getSizeStats() != null) {
+      SignatureSizeStats.open(Paths.get(arguments.getSizeStats()))
+        .record(arguments.getProfile(), signature.getEmbeddedSizes());
+    }
+  }
+
+  /**
+   * Make sure a raw signature comes with the signer chain and nothing else.
+   *
+   * @param arguments Parsed command arguments
+   * @param container Container of raw signatures, null without a chain
+   * @throws SignatureException if the signatures given do not fit together
+   */
+  private void assertRawSignature(
+      @NotNull ApplicationArguments arguments,
+      @Nullable CmsContainer container
+  ) throws SignatureException {
+    if (arguments.getRawSignature() == null && container == null) {
+      return;
+    }
+
+    if (arguments.getRawSignature() == null || container == null) {
+      throw new SignatureException(
+        "--rawsignature and --certchain must be given together"
+      );
+    }
+
+    if (arguments.getSignature() != null
+        || !arguments.getFieldSignatures().isEmpty()) {
+      throw new SignatureException(
+        "--rawsignature may not be given with --signature or --fieldsignature"
+      );
+    }
+  }
+
+  /**
+   * Signature to embed. A raw signature is wrapped into a CMS container
+   * built for the digest of its field, and embedded into that field only.
+   *
+   * @param arguments Parsed command arguments
+   * @param container Container of raw signatures, null without a chain
+   * @param field Field of the raw signature, needed with a container only
+   * @param fieldDigest Digest of the field, needed with a container only
+   * @return signature
+   * @throws SignatureException if the signatures given do not fit together
+   */
+  private Signature signature(
+      @NotNull ApplicationArguments arguments,
+      @Nullable CmsContainer container,
+      @Nullable String field,
+      @Nullable byte[] fieldDigest
+  ) throws SignatureException {
+    if (container != null) {
+      return new Signature(Collections.singletonMap(
+        field,
+        container.assemble(fieldDigest, arguments.getRawSignature())
+      ));
+    }
+
+    if (arguments.getFieldSignatures().isEmpty()) {
+      return new Signature(arguments.getSignature());
+    }
+
+    if (arguments.getSignature() != null) {
+      throw new SignatureException(
+        "Either --signature or --fieldsignature may be given, not both"
+      );
+    }
+
+    return new Signature(arguments.getFieldSignatures());
+  }
+}
@@ -7,68 +7,358 @@ import com.itextpdf.text.pdf.PdfReader;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+/**
+ * Embeds external signatures into signature placeholders.
+ * <p>
+ *   A single signature goes into the placeholder which is not signed yet,
+ *   signatures given by field name go into their fields only. The byte
+ *   range of a placeholder covers the /Contents of every placeholder added
+ *   before it, so writing a signature breaks the signatures of the later
+ *   placeholders which cover it: signatures whose slots cover one another
+ *   are rejected, placeholders are signed one at a time, in the order they
+ *   were added. Slots are checked before anything is written.
+ * </p>
+ */
 class Signature extends PdfChange {
-  private byte[] signature;
+  @Nullable private byte[] signature;
+  private Map<String, byte[]> signaturesByField = Collections.emptyMap();
+  private final List<Integer> embeddedSizes = new ArrayList<>();
 
   Signature(@NotNull byte[] signature) {
     this.signature = signature;
   }
 
   /**
-   * Find the placeholder position in a document byte sequence and put an
-   * external signature on top of these bytes.
+   * Signatures to embed into the given fields.
+   *
+   * @param signaturesByField External signatures by signature field name
+   * @throws SignatureException if no signatures are given
+   */
+  Signature(
+      @NotNull Map<String, byte[]> signaturesByField
+  ) throws SignatureException {
+    if (signaturesByField.isEmpty()) {
+      throw new SignatureException("No signatures given");
+    }
+
+    this.signaturesByField = new LinkedHashMap<>(signaturesByField);
+  }
+
+  /**
+   * Find the placeholder positions in a document byte sequence and put
+   * external signatures on top of these bytes.
    *
    * @param pdf PDF document to sign
    * @throws SignatureException if document could not be signed
    */
   public void apply(@NotNull PdfDocument pdf) throws SignatureException {
+    DocumentBuffer outputStream = null;
+
     try {
       PdfReader reader = pdf.getReader();
-      OutputStream outputStream = new ByteArrayOutputStream();
 
       assertWritingAllowedByCertificationlevel(reader);
 
-      AcroFields acroFields = reader.getAcroFields();
-      List<String> signatureNames = acroFields.getSignatureNames();
-      byte[] pdfBytes = pdf.getContentBytes();
+      List<Slot> slots = select(readSlots(pdf));
+      recordSizes(slots);
+      slots.sort(Comparator.comparingLong(slot -> slot.start));
 
-      for (String name : signatureNames) {
-        PdfDictionary signatureDict = acroFields.getSignatureDictionary(name);
-        long signatureStartHexByte = pdf.signatureHexBytePosition(
-            signatureDict, PdfDocument.SIGNATURE_START_BYTE_POS
-        );
-        long signatureEndHexByte = pdf.signatureHexBytePosition(
-            signatureDict, PdfDocument.SIGNATURE_END_BYTE_POS
-        );
+      // The signed document is assembled in a buffer of its own, which
+      // spills like the others, rather than in a copy of the content
+      outputStream = new DocumentBuffer(
+          pdf.getAllowance(), pdf.getContentLength()
+      );
+      long position = 0;
 
-        assertActualSignatureSizeFitsPlaceholder(
-            (signatureEndHexByte - signatureStartHexByte - 2) / 2
-        );
+      for (Slot slot : slots) {
+        byte[] hexSignature = hexEncode(slot.signature);
 
-        byte[] hexSignature = hexEncode(signature);
-        System.arraycopy(
-            hexSignature,
-            0,
-            pdfBytes,
-            (int) signatureStartHexByte + 1, // Ignore "<" marker
-            hexSignature.length
-        );
+        pdf.writeContent(outputStream, position, slot.start + 1);
+        outputStream.write(hexSignature); // After the "<" marker
+        position = slot.start + 1 + hexSignature.length;
       }
 
+      pdf.writeContent(outputStream, position, pdf.getContentLength());
       outputStream.close();
 
-      pdf.setContentBytes(pdfBytes);
+      // The document releases the buffer from now on
+      pdf.setContent(outputStream);
+      outputStream = null;
       pdf.updateHashableBytes();
     } catch (IOException e) {
       throw new SignatureException(e.getMessage());
+    } finally {
+      if (outputStream != null) {
+        outputStream.release();
+      }
     }
   }
 
+  /**
+   * Put external signatures into the placeholders described by a manifest,
+   * without parsing the document. The document is copied to the destination
+   * and only the /Contents slots are overwritten.
+   *
+   * @param source Document with signature placeholders
+   * @param destination Path of the signed document, may be the source
+   * @param manifest Manifest matching the source document
+   * @throws SignatureException if document could not be signed
+   */
+  void apply(
+      @NotNull Path source,
+      @NotNull Path destination,
+      @NotNull PlaceholderManifest manifest
+  ) throws SignatureException {
+    if (manifest.getCertificationLevel()
+        == CertificationLevel.CERTIFIED_NO_CHANGES_ALLOWED) {
+      throw new SignatureException("No changes allowed to the document");
+    }
+
+    try {
+      List<Slot> slots = select(readSlots(source, manifest));
+      recordSizes(slots);
+
+      Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
+
+      try (RandomAccessFile file = new RandomAccessFile(
+          destination.toFile(), "rw"
+      )) {
+        for (Slot slot : slots) {
+          file.seek(slot.start + 1); // Ignore "<" marker
+          file.write(hexEncode(slot.signature));
+        }
+      }
+    } catch (IOException e) {
+      throw new SignatureException(e.getMessage());
+    }
+  }
+
+  /**
+   * Names of the placeholders of a document which are not signed yet.
+   *
+   * @param pdf PDF document
+   * @return names of the empty placeholders
+   */
+  static List<String> emptyPlaceholders(@NotNull PdfDocument pdf) {
+    return emptyNames(readSlots(pdf));
+  }
+
+  /**
+   * Names of the placeholders described by a manifest which are not signed
+   * yet.
+   *
+   * @param source Document with signature placeholders
+   * @param manifest Manifest matching the source document
+   * @return names of the empty placeholders
+   * @throws IOException if the document could not be read
+   */
+  static List<String> emptyPlaceholders(
+      @NotNull Path source,
+      @NotNull PlaceholderManifest manifest
+  ) throws IOException {
+    return emptyNames(readSlots(source, manifest));
+  }
+
+  private static List<String> emptyNames(@NotNull List<Slot> slots) {
+    List<String> names = new ArrayList<>();
+
+    for (Slot slot : slots) {
+      if (slot.empty) {
+        names.add(slot.name);
+      }
+    }
+
+    return names;
+  }
+
+  private static List<Slot> readSlots(@NotNull PdfDocument pdf) {
+    AcroFields acroFields = pdf.getReader().getAcroFields();
+    List<Slot> slots = new ArrayList<>();
+
+    for (String name : acroFields.getSignatureNames()) {
+      PdfDictionary signatureDict = acroFields.getSignatureDictionary(name);
+      long signatureStartHexByte = pdf.signatureHexBytePosition(
+          signatureDict, PdfDocument.SIGNATURE_START_BYTE_POS
+      );
+      long signatureEndHexByte = pdf.signatureHexBytePosition(
+          signatureDict, PdfDocument.SIGNATURE_END_BYTE_POS
+      );
+      ByteArrayOutputStream hexContents = new ByteArrayOutputStream();
+
+      try {
+        // Ignore "<" and ">" markers
+        pdf.writeContent(
+            hexContents, signatureStartHexByte + 1, signatureEndHexByte - 1
+        );
+      } catch (IOException e) {
+        throw new SignatureException(e.getMessage());
+      }
+
+      slots.add(new Slot(
+          name,
+          signatureStartHexByte,
+          signatureEndHexByte,
+          pdf.signatureHexBytePosition(
+            signatureDict, PdfDocument.CONTENT_END_BYTE_POS
+          ),
+          isEmpty(hexContents.toByteArray(), 0, hexContents.size())
+      ));
+    }
+
+    return slots;
+  }
+
+  private static List<Slot> readSlots(
+      @NotNull Path source,
+      @NotNull PlaceholderManifest manifest
+  ) throws IOException {
+    List<Slot> slots = new ArrayList<>();
+
+    try (RandomAccessFile file = new RandomAccessFile(
+        source.toFile(), "r"
+    )) {
+      for (SignatureSlot field : manifest.getFields()) {
+        byte[] hexContents = new byte[
+            (int) (field.getEnd() - field.getStart() - 2)
+        ];
+        file.seek(field.getStart() + 1); // Ignore "<" marker
+        file.readFully(hexContents);
+
+        long[] byteRange = field.getByteRange();
+
+        slots.add(new Slot(
+            field.getName(),
+            field.getStart(),
+            field.getEnd(),
+            byteRange[byteRange.length - 2] + byteRange[byteRange.length - 1],
+            isEmpty(hexContents, 0, hexContents.length)
+        ));
+      }
+    }
+
+    return slots;
+  }
+
+  /**
+   * Pick the slots to write and the signatures to write into them, making
+   * sure every one of them fits before anything is written.
+   *
+   * @param candidates Every signature slot of the document
+   * @return slots to write, along with their signatures
+   * @throws SignatureException if a signature could not be embedded
+   */
+  private List<Slot> select(
+      @NotNull List<Slot> candidates
+  ) throws SignatureException {
+    List<Slot> slots = new ArrayList<>();
+
+    for (Slot candidate : candidates) {
+      byte[] slotSignature = signature;
+
+      if (!signaturesByField.isEmpty()) {
+        slotSignature = signaturesByField.get(candidate.name);
+
+        if (slotSignature != null && !candidate.empty) {
+          throw new SignatureException(
+            "Signature field is already signed: " + candidate.name
+          );
+        }
+      }
+
+      if (slotSignature != null && candidate.empty) {
+        assertActualSignatureSizeFitsPlaceholder(
+            slotSignature, (candidate.end - candidate.start - 2) / 2
+        );
+        slots.add(candidate.withSignature(slotSignature));
+      }
+    }
+
+    for (String name : signaturesByField.keySet()) {
+      if (slots.stream().noneMatch(slot -> slot.name.equals(name))) {
+        throw new SignatureException("Signature field not found: " + name);
+      }
+    }
+
+    if (slots.isEmpty()) {
+      throw new SignatureException("No empty signature placeholder found");
+    }
+
+    assertNotCovered(slots);
+
+    return slots;
+  }
+
+  /**
+   * Make sure no slot to write lies in the byte range of another one, whose
+   * signature writing it would break.
+   *
+   * @param slots Slots to write
+   * @throws SignatureException if a slot is covered by another one
+   */
+  private static void assertNotCovered(
+      @NotNull List<Slot> slots
+  ) throws SignatureException {
+    for (Slot slot : slots) {
+      for (Slot other : slots) {
+        if (slot != other && slot.start < other.coveredEnd) {
+          throw new SignatureException(
+            "Signing " + slot.name + " breaks the signature of " + other.name
+              + ", placeholders must be signed one at a time"
+          );
+        }
+      }
+    }
+  }
+
+  /**
+   * Sizes of the signatures embedded by the last {@code apply} call, one per
+   * written placeholder.
+   *
+   * @return signature sizes in bytes, empty if not applied yet
+   */
+  List<Integer> getEmbeddedSizes() {
+    return Collections.unmodifiableList(embeddedSizes);
+  }
+
+  private void recordSizes(@NotNull List<Slot> slots) {
+    embeddedSizes.clear();
+
+    for (Slot slot : slots) {
+      embeddedSizes.add(slot.signature.length);
+    }
+  }
+
+  /**
+   * Placeholders are filled with zeros, signed slots are not.
+   */
+  private static boolean isEmpty(
+      @NotNull byte[] hexContents,
+      int start,
+      int end
+  ) {
+    for (int i = start; i < end; i++) {
+      if (hexContents[i] != '0') {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
   private byte[] hexEncode(byte[] sequence) throws IOException {
     ByteBuffer byteBuffer = new ByteBuffer();
 
@@ -104,12 +394,56 @@ class Signature extends PdfChange {
    *
    * @throws SignatureException if signature is too big
    */
-  private void assertActualSignatureSizeFitsPlaceholder(long asctualSize)
-      throws SignatureException {
-    if (this.signature.length > asctualSize) {
+  private void assertActualSignatureSizeFitsPlaceholder(
+      @NotNull byte[] slotSignature, long asctualSize
+  ) throws SignatureException {
+    if (slotSignature.length > asctualSize) {
       throw new SignatureException(
         "Actual signature length is greater than the placeholder"
       );
     }
   }
+
+  /**
+   * Signature /Contents slot, angle brackets included.
+   */
+  private static final class Slot {
+    private final String name;
+    private final long start;
+    private final long end;
+    // End of the byte range, which covers everything before but the slot
+    private final long coveredEnd;
+    private final boolean empty;
+    @Nullable private final byte[] signature;
+
+    private Slot(
+        @NotNull String name,
+        long start,
+        long end,
+        long coveredEnd,
+        boolean empty
+    ) {
+      this(name, start, end, coveredEnd, empty, null);
+    }
+
+    private Slot(
+        @NotNull String name,
+        long start,
+        long end,
+        long coveredEnd,
+        boolean empty,
+        @Nullable byte[] signature
+    ) {
+      this.name = name;
+      this.start = start;
+      this.end = end;
+      this.coveredEnd = coveredEnd;
+      this.empty = empty;
+      this.signature = signature;
+    }
+
+    private Slot withSignature(@NotNull byte[] signature) {
+      return new Slot(name, start, end, coveredEnd, empty, signature);
+    }
+  }
 }
@@ -0,0 +1,259 @@
+package com.advanon.pdfsignatures;
+
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509CRL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.util.encoders.Hex;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Certificates a document signature depends on: the ones embedded into its
+ * PKCS7 and into its signature timestamp token. Used to pick validation
+ * material relevant to the signature.
+ */
+final class SignatureChain {
+  private final PdfName vriKey;
+  private final List<X509CertificateHolder> certificates;
+
+  private SignatureChain(
+      @NotNull PdfName vriKey,
+      @NotNull List<X509CertificateHolder> certificates
+  ) {
+    this.vriKey = vriKey;
+    this.certificates = certificates;
+  }
+
+  /**
+   * Read the chain of a signature. Signatures which could not be parsed
+   * (i.e. empty placeholders) get an empty chain.
+   *
+   * @param signatureDict Signature dictionary
+   * @return signature chain
+   * @throws ValidationException if the signature has no contents
+   */
+  static SignatureChain of(
+      @NotNull PdfDictionary signatureDict
+  ) throws ValidationException {
+    PdfString contents = signatureDict.getAsString(PdfName.CONTENTS);
+
+    if (contents == null) {
+      throw new ValidationException("Signature has no contents");
+    }
+
+    byte[] pkcs7 = contents.getOriginalBytes();
+
+    try {
+      CMSSignedData signedData = new CMSSignedData(pkcs7);
+      List<X509CertificateHolder> certificates = new ArrayList<>(
+          certificates(signedData)
+      );
+
+      Collection<SignerInformation> signers
+          = signedData.getSignerInfos().getSigners();
+
+      for (SignerInformation signer : signers) {
+        AttributeTable attributes = signer.getUnsignedAttributes();
+        Attribute token = attributes != null
+            ? attributes.get(
+              PKCSObjectIdentifiers.id_aa_signatureTimeStampToken
+            )
+            : null;
+
+        if (token != null) {
+          certificates.addAll(certificates(new CMSSignedData(
+              token.getAttrValues().getObjectAt(0).toASN1Primitive()
+                .getEncoded()
+          )));
+        }
+      }
+
+      return new SignatureChain(vriKey(signatureDict, pkcs7), certificates);
+    } catch (CMSException | IOException | RuntimeException e) {
+      return new SignatureChain(
+          vriKey(signatureDict, pkcs7), Collections.emptyList()
+      );
+    }
+  }
+
+  /**
+   * Key of the signature VRI entry, upper case hex SHA-1 of its contents.
+   *
+   * @return VRI key
+   */
+  PdfName getVriKey() {
+    return vriKey;
+  }
+
+  /**
+   * Whether any certificates are known. Relevance can not be told
+   * for signatures without them.
+   *
+   * @return true if the chain is known
+   */
+  boolean isKnown() {
+    return !certificates.isEmpty();
+  }
+
+  List<X509CertificateHolder> getCertificates() {
+    return certificates;
+  }
+
+  /**
+   * DER-encoded chain certificates.
+   *
+   * @return encoded certificates
+   * @throws ValidationException if encoding fails
+   */
+  List<byte[]> getEncodedCertificates() throws ValidationException {
+    return encode(certificates);
+  }
+
+  /**
+   * Whether the CRL is issued by the issuer of any chain certificate.
+   *
+   * @param crl CRL to check
+   * @return true if the CRL is relevant
+   */
+  boolean isRelevant(@NotNull X509CRL crl) {
+    X500Name issuer = X500Name.getInstance(
+        crl.getIssuerX500Principal().getEncoded()
+    );
+
+    return certificates.stream()
+      .anyMatch(certificate -> certificate.getIssuer().equals(issuer));
+  }
+
+  /**
+   * Whether the OCSP response answers for any chain certificate.
+   *
+   * @param ocsp OCSP response to check
+   * @return true if the response is relevant
+   * @throws ValidationException if the issuer name could not be hashed
+   */
+  boolean isRelevant(@NotNull BasicOCSPResp ocsp) throws ValidationException {
+    for (SingleResp response : ocsp.getResponses()) {
+      CertificateID id = response.getCertID();
+
+      for (X509CertificateHolder certificate : certificates) {
+        if (id.getSerialNumber().equals(certificate.getSerialNumber())
+            && Arrays.equals(
+              id.getIssuerNameHash(),
+              digest(id.getHashAlgOID(), certificate.getIssuer())
+            )) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * DER-encoded certificates of the OCSP responder.
+   *
+   * @param ocsp OCSP response
+   * @return encoded certificates
+   * @throws ValidationException if encoding fails
+   */
+  static List<byte[]> responderCertificates(
+      @NotNull BasicOCSPResp ocsp
+  ) throws ValidationException {
+    return encode(Arrays.asList(ocsp.getCerts()));
+  }
+
+  private static PdfName vriKey(
+      @NotNull PdfDictionary signatureDict,
+      @NotNull byte[] pkcs7
+  ) throws ValidationException {
+    try (ASN1InputStream inputStream = new ASN1InputStream(pkcs7)) {
+      byte[] hashed = pkcs7;
+
+      // Document timestamps are hashed without the placeholder padding
+      if (PdfName.ETSI_RFC3161.equals(
+          PdfReader.getPdfObject(signatureDict.get(PdfName.SUBFILTER))
+      )) {
+        hashed = inputStream.readObject().getEncoded();
+      }
+
+      return new PdfName(Hex.toHexString(
+          MessageDigest.getInstance("SHA-1").digest(hashed)
+      ).toUpperCase());
+    } catch (IOException | NoSuchAlgorithmException e) {
+      throw new ValidationException(e.getMessage());
+    }
+  }
+
+  private static byte[] digest(
+      @NotNull ASN1ObjectIdentifier algorithm,
+      @NotNull ASN1Encodable content
+  ) throws ValidationException {
+    try {
+      DigestCalculator calculator = new JcaDigestCalculatorProviderBuilder()
+          .build()
+          .get(new AlgorithmIdentifier(algorithm));
+
+      try (OutputStream outputStream = calculator.getOutputStream()) {
+        outputStream.write(content.toASN1Primitive().getEncoded());
+      }
+
+      return calculator.getDigest();
+    } catch (OperatorCreationException | IOException e) {
+      throw new ValidationException(e.getMessage());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Collection<X509CertificateHolder> certificates(
+      @NotNull CMSSignedData signedData
+  ) {
+    return signedData.getCertificates().getMatches(null);
+  }
+
+  private static List<byte[]> encode(
+      @NotNull List<X509CertificateHolder> certificates
+  ) throws ValidationException {
+    List<byte[]> encoded = new ArrayList<>();
+
+    for (X509CertificateHolder certificate : certificates) {
+      try {
+        encoded.add(certificate.getEncoded());
+      } catch (IOException e) {
+        throw new ValidationException(e.getMessage());
+      }
+    }
+
+    return encoded;
+  }
+}
@@ -4,13 +4,21 @@ import java.util.Calendar;
 
 import org.jetbrains.annotations.Nullable;
 
-class SignatureMetadata {
+public class SignatureMetadata {
   @Nullable private String reason;
   @Nullable private String location;
   @Nullable private String contact;
   @Nullable private Calendar date;
 
-  SignatureMetadata(
+  /**
+   * Create signature metadata. Every attribute is optional.
+   *
+   * @param reason Signing reason
+   * @param location Signing location
+   * @param contact Signing contact
+   * @param date Date of signing
+   */
+  public SignatureMetadata(
       @Nullable String reason,
       @Nullable String location,
       @Nullable String contact,
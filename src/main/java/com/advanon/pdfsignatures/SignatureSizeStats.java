@@ -0,0 +1,167 @@
+package com.advanon.pdfsignatures;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Local store of embedded signature sizes, used to size placeholders after
+ * the signatures actually produced instead of the default estimate.
+ * <p>
+ *   Sizes are kept per signer profile, one file per profile holding the
+ *   latest {@link #MAX_SAMPLES} sizes, one per line. Placeholders are sized
+ *   at the 99th percentile plus a tenth, and at the default size until
+ *   a profile has {@link #MIN_SAMPLES} samples. Files are rewritten
+ *   atomically, processes sharing the directory may drop a sample of each
+ *   other now and then, which is harmless for an estimate.
+ * </p>
+ */
+final class SignatureSizeStats {
+  static final String DEFAULT_PROFILE = "default";
+  static final int MIN_SAMPLES = 20;
+  static final int MAX_SAMPLES = 1000;
+  private static final int PERCENTILE = 99;
+  private static final int MARGIN_PERCENT = 10;
+  private static final String FILE_SUFFIX = ".sizes";
+  private static final Pattern PROFILE_PATTERN
+      = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+  private static final Map<Path, SignatureSizeStats> STORES
+      = new ConcurrentHashMap<>();
+
+  private final Path directory;
+
+  private SignatureSizeStats(@NotNull Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Open the stats kept in the given directory. Instances are shared within
+   * the process, so that concurrent commands do not overwrite each other.
+   *
+   * @param directory Stats directory, created if missing
+   * @return signature size stats
+   * @throws SignatureException if the directory could not be created
+   */
+  static SignatureSizeStats open(
+      @NotNull Path directory
+  ) throws SignatureException {
+    try {
+      Files.createDirectories(directory);
+    } catch (IOException e) {
+      throw new SignatureException(e.getMessage());
+    }
+
+    return STORES.computeIfAbsent(
+        directory.toAbsolutePath().normalize(), SignatureSizeStats::new
+    );
+  }
+
+  /**
+   * Record sizes of signatures embedded for the profile.
+   *
+   * @param profile Signer profile, default is used if null
+   * @param sizes Embedded signature sizes in bytes
+   * @throws SignatureException if the profile is invalid or stats could
+   *                            not be written
+   */
+  synchronized void record(
+      @Nullable String profile,
+      @NotNull List<Integer> sizes
+  ) throws SignatureException {
+    if (sizes.isEmpty()) {
+      return;
+    }
+
+    Path file = file(profile);
+    List<Integer> samples = read(file);
+    samples.addAll(sizes);
+
+    if (samples.size() > MAX_SAMPLES) {
+      samples = samples.subList(samples.size() - MAX_SAMPLES, samples.size());
+    }
+
+    try {
+      Path temporaryFile = Files.createTempFile(directory, "sizes", ".tmp");
+      Files.write(
+          temporaryFile,
+          samples.stream().map(String::valueOf).collect(Collectors.toList()),
+          StandardCharsets.US_ASCII
+      );
+      Files.move(
+          temporaryFile,
+          file,
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING
+      );
+    } catch (IOException e) {
+      throw new SignatureException(e.getMessage());
+    }
+  }
+
+  /**
+   * Estimate the signature size of the profile.
+   *
+   * @param profile Signer profile, default is used if null
+   * @return estimated size in bytes, or null if there are not enough samples
+   * @throws SignatureException if the profile is invalid or stats could
+   *                            not be read
+   */
+  @Nullable
+  synchronized Integer estimate(
+      @Nullable String profile
+  ) throws SignatureException {
+    List<Integer> samples = read(file(profile));
+
+    if (samples.size() < MIN_SAMPLES) {
+      return null;
+    }
+
+    Collections.sort(samples);
+    int rank = (PERCENTILE * samples.size() + 99) / 100;
+    int percentile = samples.get(rank - 1);
+
+    return (int) ((percentile * (100L + MARGIN_PERCENT) + 99) / 100);
+  }
+
+  private Path file(@Nullable String profile) throws SignatureException {
+    String name = profile != null ? profile : DEFAULT_PROFILE;
+
+    if (!PROFILE_PATTERN.matcher(name).matches()) {
+      throw new SignatureException("Invalid signer profile: " + name);
+    }
+
+    return directory.resolve(name + FILE_SUFFIX);
+  }
+
+  private List<Integer> read(@NotNull Path file) throws SignatureException {
+    List<Integer> samples = new ArrayList<>();
+
+    try {
+      for (String line : Files.readAllLines(file, StandardCharsets.US_ASCII)) {
+        if (!line.trim().isEmpty()) {
+          samples.add(Integer.parseInt(line.trim()));
+        }
+      }
+    } catch (NoSuchFileException e) {
+      return samples;
+    } catch (IOException | NumberFormatException e) {
+      throw new SignatureException("Malformed signature size stats: " + file);
+    }
+
+    return samples;
+  }
+}
@@ -0,0 +1,68 @@
+package com.advanon.pdfsignatures;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Signature field along with its byte range and the position of its
+ * /Contents slot in the document.
+ */
+final class SignatureSlot {
+  private final String name;
+  private final long[] byteRange;
+  private final long start;
+  private final long end;
+
+  /**
+   * Create a slot.
+   *
+   * @param name Signature field name
+   * @param byteRange Signature byte range, (offset, length) pairs
+   * @param start Offset of the slot, at the opening angle bracket
+   * @param end Offset right after the slot closing angle bracket
+   * @throws SignatureException if the byte range or the slot is invalid
+   */
+  SignatureSlot(
+      @NotNull String name,
+      @NotNull long[] byteRange,
+      long start,
+      long end
+  ) throws SignatureException {
+    if (byteRange.length < 4 || byteRange.length % 2 != 0) {
+      throw new SignatureException("Invalid byte range of " + name);
+    }
+
+    if (start < 0 || end < start + 2) {
+      throw new SignatureException("Invalid contents slot of " + name);
+    }
+
+    this.name = name;
+    this.byteRange = byteRange;
+    this.start = start;
+    this.end = end;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  long[] getByteRange() {
+    return byteRange;
+  }
+
+  long getStart() {
+    return start;
+  }
+
+  long getEnd() {
+    return end;
+  }
+
+  /**
+   * Number of signature bytes the slot holds.
+   *
+   * @return reserved size
+   */
+  long getReservedSize() {
+    return (end - start - 2) / 2;
+  }
+}
@@ -0,0 +1,84 @@
+package com.advanon.pdfsignatures;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Verification result of a single document signature.
+ */
+public final class SignatureVerification {
+  public enum Status {
+    /** PKCS7 signature matches the signed byte range. */
+    VALID,
+    /** PKCS7 signature is broken or does not match the byte range. */
+    INVALID
+  }
+
+  public enum Coverage {
+    /** Byte range covers the whole file except the /Contents slot. */
+    COVERS_DOCUMENT,
+    /** Byte range covers an earlier revision, later updates follow it. */
+    COVERS_REVISION,
+    /** Byte range leaves out more than the /Contents slot. */
+    INVALID_RANGE
+  }
+
+  private final String name;
+  private final Status status;
+  private final Coverage coverage;
+  @Nullable private final String message;
+
+  SignatureVerification(
+      @NotNull String name,
+      @NotNull Status status,
+      @NotNull Coverage coverage,
+      @Nullable String message
+  ) {
+    this.name = name;
+    this.status = status;
+    this.coverage = coverage;
+    this.message = message;
+  }
+
+  /**
+   * Signature field name.
+   *
+   * @return field name
+   */
+  public String getName() {
+    return name;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public Coverage getCoverage() {
+    return coverage;
+  }
+
+  /**
+   * Reason of the failed verification.
+   *
+   * @return failure reason, null if the signature is valid
+   */
+  @Nullable
+  public String getMessage() {
+    return message;
+  }
+
+  /**
+   * Whether the signature is valid and its byte range is sound. Signatures
+   * of earlier revisions are valid as well, check the coverage to tell.
+   *
+   * @return true if nothing is wrong with the signature
+   */
+  public boolean isValid() {
+    return status == Status.VALID && coverage != Coverage.INVALID_RANGE;
+  }
+
+  @Override
+  public String toString() {
+    return name + ":" + status + ":" + coverage;
+  }
+}
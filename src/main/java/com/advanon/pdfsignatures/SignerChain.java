@@ -0,0 +1,119 @@
+package com.advanon.pdfsignatures;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Certificate chain of a signer whose signatures are made elsewhere, i.e.
+ * by an HSM, read from a PEM or DER file with the signer certificate first.
+ * <p>
+ *   The same few signers sign request after request, so chains are parsed
+ *   once and cached for the life of the process, keyed by path. Files
+ *   changed since they were read are read again.
+ * </p>
+ */
+final class SignerChain {
+  private static final Map<Path, SignerChain> CACHE
+      = new ConcurrentHashMap<>();
+
+  private final List<X509Certificate> certificates;
+  private final FileTime modified;
+  private final long size;
+
+  private SignerChain(
+      @NotNull List<X509Certificate> certificates,
+      @NotNull FileTime modified,
+      long size
+  ) {
+    this.certificates = Collections.unmodifiableList(certificates);
+    this.modified = modified;
+    this.size = size;
+  }
+
+  /**
+   * Read the chain file, or return the chain read from it before.
+   *
+   * @param path Chain file path
+   * @return signer chain
+   * @throws SignatureException if the file could not be read or holds
+   *         no certificates
+   */
+  static SignerChain read(@NotNull Path path) throws SignatureException {
+    Path key = path.toAbsolutePath().normalize();
+
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(
+          key, BasicFileAttributes.class
+      );
+      SignerChain cached = CACHE.get(key);
+
+      if (cached != null
+          && cached.modified.equals(attributes.lastModifiedTime())
+          && cached.size == attributes.size()) {
+        return cached;
+      }
+
+      SignerChain chain = new SignerChain(
+          parse(key), attributes.lastModifiedTime(), attributes.size()
+      );
+      CACHE.put(key, chain);
+
+      return chain;
+    } catch (IOException e) {
+      throw new SignatureException(
+        "Could not read certificate chain: " + e.getMessage()
+      );
+    }
+  }
+
+  /**
+   * Certificate of the signer, the first one of the chain.
+   *
+   * @return signer certificate
+   */
+  X509Certificate getSigner() {
+    return certificates.get(0);
+  }
+
+  List<X509Certificate> getCertificates() {
+    return certificates;
+  }
+
+  private static List<X509Certificate> parse(
+      @NotNull Path path
+  ) throws IOException, SignatureException {
+    List<X509Certificate> certificates = new ArrayList<>();
+
+    try (InputStream inputStream = Files.newInputStream(path)) {
+      for (Certificate certificate : CertificateFactory.getInstance("X.509")
+          .generateCertificates(inputStream)) {
+        certificates.add((X509Certificate) certificate);
+      }
+    } catch (CertificateException e) {
+      throw new SignatureException(
+        "Could not parse certificate chain: " + e.getMessage()
+      );
+    }
+
+    if (certificates.isEmpty()) {
+      throw new SignatureException("Certificate chain is empty: " + path);
+    }
+
+    return certificates;
+  }
+}
@@ -0,0 +1,82 @@
+package com.advanon.pdfsignatures;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Finished span of a request trace, see {@link Trace}. Times are in
+ * nanoseconds since the epoch, identifiers are lowercase hex as in the W3C
+ * trace context.
+ */
+final class Span {
+  static final int KIND_INTERNAL = 1;
+  static final int KIND_SERVER = 2;
+
+  private final String traceId;
+  private final String spanId;
+  @Nullable private final String parentSpanId;
+  private final String name;
+  private final int kind;
+  private final long startTime;
+  private final long endTime;
+  @Nullable private final String error;
+
+  Span(
+      @NotNull String traceId,
+      @NotNull String spanId,
+      @Nullable String parentSpanId,
+      @NotNull String name,
+      int kind,
+      long startTime,
+      long endTime,
+      @Nullable String error
+  ) {
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.parentSpanId = parentSpanId;
+    this.name = name;
+    this.kind = kind;
+    this.startTime = startTime;
+    this.endTime = endTime;
+    this.error = error;
+  }
+
+  String getTraceId() {
+    return traceId;
+  }
+
+  String getSpanId() {
+    return spanId;
+  }
+
+  @Nullable
+  String getParentSpanId() {
+    return parentSpanId;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  int getKind() {
+    return kind;
+  }
+
+  long getStartTime() {
+    return startTime;
+  }
+
+  long getEndTime() {
+    return endTime;
+  }
+
+  /**
+   * Error the span ended with.
+   *
+   * @return error message, or null if the span succeeded
+   */
+  @Nullable
+  String getError() {
+    return error;
+  }
+}
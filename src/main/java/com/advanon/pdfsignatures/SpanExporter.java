@@ -0,0 +1,19 @@
+package com.advanon.pdfsignatures;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Destination of the spans of traced requests.
+ */
+interface SpanExporter {
+  /**
+   * Export the spans of a request once it completes.
+   *
+   * @param spans Finished spans of the request
+   * @throws IOException if the spans could not be exported
+   */
+  void export(@NotNull List<Span> spans) throws IOException;
+}
@@ -7,8 +7,10 @@ import java.io.OutputStream;
 import org.jetbrains.annotations.NotNull;
 
 public class Streams {
+  static final int BUFFER_SIZE = 64 * 1024;
+
   /**
-   * Copies Input stream to Output stream byte by byte.
+   * Copies Input stream to Output stream chunk by chunk.
    *
    * @param inputStream Source stream
    * @param outputStream Destinatin stream
@@ -18,9 +20,37 @@ public class Streams {
       @NotNull InputStream inputStream,
       @NotNull OutputStream outputStream
   ) throws IOException {
-    int readByte;
-    while ((readByte = inputStream.read()) != -1) {
-      outputStream.write(readByte);
+    byte[] chunk = BufferPool.getInstance().acquire(BUFFER_SIZE);
+    int read;
+
+    try {
+      while ((read = inputStream.read(chunk)) != -1) {
+        Cancellation.checkpoint();
+        outputStream.write(chunk, 0, read);
+      }
+    } finally {
+      BufferPool.getInstance().release(chunk);
+    }
+  }
+
+  /**
+   * Reads Input stream to its end.
+   *
+   * @param inputStream Source stream
+   * @return stream content
+   * @throws IOException if read fails
+   */
+  public static byte[] readAllBytes(
+      @NotNull InputStream inputStream
+  ) throws IOException {
+    DocumentBuffer outputStream = new DocumentBuffer(null, 0);
+
+    try {
+      copyInputToOutputStream(inputStream, outputStream);
+
+      return outputStream.toByteArray();
+    } finally {
+      outputStream.release();
     }
   }
 }
@@ -0,0 +1,185 @@
+package com.advanon.pdfsignatures;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.util.Date;
+
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+/**
+ * Self-made documents and revocation material, used to exercise every
+ * document operation without any external input (i.e. during warm-up).
+ * <p>
+ *   Nothing here is meant to be trusted: the signature is a random blob
+ *   and the CRL and OCSP response are issued by a throwaway certificate.
+ * </p>
+ */
+final class SyntheticMaterial {
+  private static final int SIGNATURE_SIZE = 7 * 1024;
+  private static final long VALIDITY = 24L * 60 * 60 * 1000;
+
+  private final byte[] document;
+  private final byte[] certificate;
+  private final byte[] signature;
+  private final byte[] crl;
+  private final byte[] ocsp;
+
+  private SyntheticMaterial(
+      byte[] document,
+      byte[] certificate,
+      byte[] signature,
+      byte[] crl,
+      byte[] ocsp
+  ) {
+    this.document = document;
+    this.certificate = certificate;
+    this.signature = signature;
+    this.crl = crl;
+    this.ocsp = ocsp;
+  }
+
+  /**
+   * Generate a fresh set of material.
+   *
+   * @return synthetic material
+   * @throws PdfDocumentException if generation fails
+   */
+  static SyntheticMaterial generate() throws PdfDocumentException {
+    try {
+      KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+      generator.initialize(256);
+      KeyPair keyPair = generator.generateKeyPair();
+      ContentSigner signer = new JcaContentSignerBuilder("SHA256withECDSA")
+          .build(keyPair.getPrivate());
+
+      X500Name name = new X500Name("CN=pdf-signatures synthetic issuer");
+      Date now = new Date();
+      Date nextUpdate = new Date(now.getTime() + VALIDITY);
+
+      X509CertificateHolder certificate = new JcaX509v3CertificateBuilder(
+          name, BigInteger.ONE, now, nextUpdate, name, keyPair.getPublic()
+      ).build(signer);
+
+      X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(name, now);
+      crlBuilder.setNextUpdate(nextUpdate);
+      crlBuilder.addCRLEntry(BigInteger.TEN, now, CRLReason.superseded);
+
+      CertificateID certificateId = new CertificateID(
+          new JcaDigestCalculatorProviderBuilder().build()
+            .get(CertificateID.HASH_SHA1),
+          certificate,
+          BigInteger.ONE
+      );
+      BasicOCSPRespBuilder ocspBuilder = new BasicOCSPRespBuilder(
+          new RespID(name)
+      );
+      ocspBuilder.addResponse(
+          certificateId, CertificateStatus.GOOD, now, nextUpdate
+      );
+      BasicOCSPResp basicOcsp = ocspBuilder.build(
+          signer, new X509CertificateHolder[] {certificate}, now
+      );
+
+      byte[] signatureContent = new byte[SIGNATURE_SIZE];
+      new SecureRandom().nextBytes(signatureContent);
+
+      return new SyntheticMaterial(
+          generateDocument(),
+          certificate.getEncoded(),
+          new DEROctetString(signatureContent).getEncoded(),
+          crlBuilder.build(signer).getEncoded(),
+          new OCSPRespBuilder()
+            .build(OCSPRespBuilder.SUCCESSFUL, basicOcsp)
+            .getEncoded()
+      );
+    } catch (GeneralSecurityException | OperatorCreationException
+             | OCSPException | DocumentException | IOException e) {
+      throw new PdfDocumentException(e.getMessage());
+    }
+  }
+
+  private static byte[] generateDocument()
+      throws DocumentException, IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    Document document = new Document();
+
+    PdfWriter.getInstance(document, outputStream);
+    document.open();
+    document.add(new Paragraph("pdf-signatures synthetic document"));
+    document.close();
+
+    return outputStream.toByteArray();
+  }
+
+  /**
+   * Unsigned single page document.
+   *
+   * @return document content
+   */
+  byte[] getDocument() {
+    return document;
+  }
+
+  /**
+   * Self-signed certificate with serial number 1. It issues the CRL and
+   * the OCSP response answers for it.
+   *
+   * @return DER-encoded certificate
+   */
+  byte[] getCertificate() {
+    return certificate;
+  }
+
+  /**
+   * Random DER blob which fits the default placeholder.
+   *
+   * @return signature
+   */
+  byte[] getSignature() {
+    return signature;
+  }
+
+  /**
+   * DER-encoded CRL.
+   *
+   * @return CRL
+   */
+  byte[] getCrl() {
+    return crl;
+  }
+
+  /**
+   * DER-encoded OCSP response.
+   *
+   * @return OCSP response
+   */
+  byte[] getOcsp() {
+    return ocsp;
+  }
+}
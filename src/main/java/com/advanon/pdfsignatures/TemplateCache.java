@@ -0,0 +1,185 @@
+package com.advanon.pdfsignatures;
+
+import com.itextpdf.text.pdf.PdfReader;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bouncycastle.util.encoders.Hex;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Process-wide cache of parsed documents, for documents which are signed
+ * over and over again, like terms and conditions.
+ * <p>
+ *   Documents are keyed by the SHA-256 of their content and password. A
+ *   document is parsed into a master reader the second time it is seen,
+ *   one-off documents never take space in the cache. Every open of a cached
+ *   document gets an independent duplicate of the master, with its own
+ *   xref table, AcroForm and page tree, so stamping it leaves the master
+ *   untouched. Duplicating takes a fraction of the parsing time.
+ * </p>
+ * <p>
+ *   The cache is bounded by the total content size of the cached documents
+ *   ({@code 128 MB} by default, see {@link #MAX_SIZE_PROPERTY}, zero
+ *   disables the cache), least recently used documents are evicted first.
+ *   The content size of every master is reserved from the process memory
+ *   budget until it is evicted, documents are not cached while the budget
+ *   is exhausted, see {@link MemoryBudget}.
+ * </p>
+ */
+final class TemplateCache {
+  static final String MAX_SIZE_PROPERTY = "pdfsignatures.templateCacheSize";
+  private static final long DEFAULT_MAX_SIZE = 128L * 1024 * 1024;
+  // Documents seen once, remembered to admit them when seen again
+  private static final int MAX_SIGHTINGS = 1024;
+
+  private static final TemplateCache INSTANCE = new TemplateCache(
+      Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE),
+      MemoryBudget.getInstance()
+  );
+
+  private final long maxSize;
+  private final MemoryBudget budget;
+  private final Map<String, Entry> entries
+      = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<String, Boolean> sightings
+      = new LinkedHashMap<>(16, 0.75f, true);
+  private long size;
+
+  TemplateCache(long maxSize, @NotNull MemoryBudget budget) {
+    this.maxSize = maxSize;
+    this.budget = budget;
+  }
+
+  static TemplateCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Open a reader of the document, duplicating the cached master if there
+   * is one.
+   *
+   * @param content Document content
+   * @param password Document password, may be null
+   * @return reader owned by the caller
+   * @throws IOException if the document could not be parsed
+   */
+  PdfReader open(
+      @NotNull byte[] content,
+      @Nullable byte[] password
+  ) throws IOException {
+    if (maxSize <= 0 || content.length > maxSize) {
+      return new PdfReader(content, password);
+    }
+
+    String key = key(content, password);
+    Entry entry;
+
+    synchronized (this) {
+      entry = entries.get(key);
+
+      if (entry == null && sightings.remove(key) == null) {
+        sightings.put(key, Boolean.TRUE);
+
+        if (sightings.size() > MAX_SIGHTINGS) {
+          Iterator<String> eldest = sightings.keySet().iterator();
+          eldest.next();
+          eldest.remove();
+        }
+
+        return new PdfReader(content, password);
+      }
+    }
+
+    if (entry == null) {
+      // Parsing takes long, do not block other threads meanwhile. The same
+      // document may be parsed twice by concurrent requests, which is
+      // harmless.
+      PdfReader master = new PdfReader(content, password);
+      MemoryBudget.Allowance allowance = budget.tryReserve(content.length);
+
+      if (allowance == null) {
+        return master;
+      }
+
+      entry = new Entry(master, allowance, content.length);
+      put(key, entry);
+    }
+
+    return entry.duplicate();
+  }
+
+  /**
+   * Total content size of cached documents.
+   *
+   * @return size in bytes
+   */
+  synchronized long getSize() {
+    return size;
+  }
+
+  private synchronized void put(@NotNull String key, @NotNull Entry entry) {
+    if (entries.containsKey(key)) {
+      entry.allowance.close();
+      return;
+    }
+
+    entries.put(key, entry);
+    size += entry.size;
+
+    Iterator<Entry> iterator = entries.values().iterator();
+
+    while (size > maxSize && iterator.hasNext()) {
+      Entry evicted = iterator.next();
+
+      size -= evicted.size;
+      evicted.allowance.close();
+      iterator.remove();
+    }
+  }
+
+  private static String key(
+      @NotNull byte[] content,
+      @Nullable byte[] password
+  ) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      String contentHash = Hex.toHexString(digest.digest(content));
+
+      return password != null
+        ? contentHash + ":" + Hex.toHexString(digest.digest(password))
+        : contentHash;
+    } catch (NoSuchAlgorithmException e) {
+      throw new PdfDocumentException(e.getMessage());
+    }
+  }
+
+  private static final class Entry {
+    // Never handed out, and never closed: duplicates read the same content
+    private final PdfReader master;
+    // Reservation of the master in the memory budget
+    private final MemoryBudget.Allowance allowance;
+    private final long size;
+
+    private Entry(
+        @NotNull PdfReader master,
+        @NotNull MemoryBudget.Allowance allowance,
+        long size
+    ) {
+      this.master = master;
+      this.allowance = allowance;
+      this.size = size;
+    }
+
+    private synchronized PdfReader duplicate() {
+      return new PdfReader(master);
+    }
+  }
+}
@@ -0,0 +1,226 @@
+package com.advanon.pdfsignatures;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Spans of a single request, so that the time of a slow request may be split
+ * between its phases.
+ * <p>
+ *   A request given a W3C {@code traceparent} joins the trace of its caller,
+ *   i.e. the Node wrapper, others start a trace of their own. The request
+ *   runs as a span, {@link #call(Cancellation.Task)}, and its phases as child
+ *   spans, {@link #span(String)}: parsing, hashing, stamping and writing.
+ *   Spans are handed to the exporter once the request completes; tracing
+ *   never fails a request.
+ * </p>
+ * <p>
+ *   Like cancellations, spans find the trace of the thread they run on.
+ *   Phases run outside of a traced request, or on other threads, are not
+ *   recorded.
+ * </p>
+ */
+final class Trace {
+  private static final Pattern TRACEPARENT = Pattern.compile(
+      "[0-9a-f]{2}-([0-9a-f]{32})-([0-9a-f]{16})-[0-9a-f]{2}"
+  );
+  private static final Scope NONE = new Scope(null, null, null, null, 0);
+  private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+  private final String name;
+  private final String traceId;
+  @Nullable private final String parentSpanId;
+  private final String spanId;
+  private final SpanExporter exporter;
+  private final long epochTime;
+  private final long anchor;
+  private final List<Span> spans = Collections.synchronizedList(
+      new ArrayList<>()
+  );
+
+  /**
+   * Create the trace of a request.
+   *
+   * @param name Request name, i.e. the command
+   * @param traceparent W3C trace context of the caller, a new trace is
+   *                    started if null or invalid
+   * @param exporter Destination of the spans
+   */
+  Trace(
+      @NotNull String name,
+      @Nullable String traceparent,
+      @NotNull SpanExporter exporter
+  ) {
+    Matcher matcher = TRACEPARENT.matcher(
+        traceparent != null ? traceparent.trim() : ""
+    );
+    boolean joined = matcher.matches()
+        && !matcher.group(1).matches("0+")
+        && !matcher.group(2).matches("0+");
+
+    this.name = name;
+    this.traceId = joined ? matcher.group(1) : randomId(16);
+    this.parentSpanId = joined ? matcher.group(2) : null;
+    this.spanId = randomId(8);
+    this.exporter = exporter;
+    this.epochTime = System.currentTimeMillis() * 1000000;
+    this.anchor = System.nanoTime();
+  }
+
+  String getTraceId() {
+    return traceId;
+  }
+
+  String getSpanId() {
+    return spanId;
+  }
+
+  /**
+   * Start a phase of the request the current thread works on. The phase
+   * ends when the returned scope is closed, on the same thread.
+   *
+   * @param name Phase name
+   * @return scope of the phase, which records nothing outside of a trace
+   */
+  static Scope span(@NotNull String name) {
+    Scope current = CURRENT.get();
+
+    if (current == null) {
+      return NONE;
+    }
+
+    Scope scope = new Scope(
+        current.trace, name, current.spanId, randomId(8), Span.KIND_INTERNAL
+    );
+    CURRENT.set(scope);
+
+    return scope;
+  }
+
+  /**
+   * Record a phase of the request which ends now, but was not run within
+   * the trace, i.e. the time the request was queued.
+   *
+   * @param name Phase name
+   * @param since {@link System#nanoTime()} the phase started at
+   */
+  void record(@NotNull String name, long since) {
+    spans.add(new Span(
+        traceId, randomId(8), spanId, name, Span.KIND_INTERNAL,
+        time(since), now(), null
+    ));
+  }
+
+  /**
+   * Run the request within the trace, on the current thread, and export its
+   * spans once done.
+   *
+   * @param task Request to run
+   * @param <T> Result type
+   * @param <E> Exception type
+   * @return task result
+   * @throws E if the task fails
+   */
+  <T, E extends Exception> T call(
+      @NotNull Cancellation.Task<T, E> task
+  ) throws E {
+    Scope scope = new Scope(this, name, parentSpanId, spanId, Span.KIND_SERVER);
+    CURRENT.set(scope);
+
+    try {
+      return task.run();
+    } catch (Exception e) {
+      scope.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+      throw e;
+    } finally {
+      scope.close();
+      export();
+    }
+  }
+
+  private void export() {
+    try {
+      exporter.export(new ArrayList<>(spans));
+    } catch (IOException e) {
+      // Spans are lost, the request they describe is not
+    }
+  }
+
+  private long now() {
+    return time(System.nanoTime());
+  }
+
+  private long time(long nanoTime) {
+    return epochTime + (nanoTime - anchor);
+  }
+
+  private static String randomId(int bytes) {
+    StringBuilder id = new StringBuilder();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+
+    for (int i = 0; i < bytes; i++) {
+      id.append(String.format("%02x", random.nextInt(256)));
+    }
+
+    return id.toString();
+  }
+
+  /**
+   * Span being recorded on the current thread.
+   */
+  static final class Scope implements AutoCloseable {
+    @Nullable private final Trace trace;
+    @Nullable private final String name;
+    @Nullable private final String parentSpanId;
+    @Nullable private final String spanId;
+    private final int kind;
+    @Nullable private final Scope previous;
+    private final long start;
+    @Nullable private String error;
+
+    private Scope(
+        @Nullable Trace trace,
+        @Nullable String name,
+        @Nullable String parentSpanId,
+        @Nullable String spanId,
+        int kind
+    ) {
+      this.trace = trace;
+      this.name = name;
+      this.parentSpanId = parentSpanId;
+      this.spanId = spanId;
+      this.kind = kind;
+      this.previous = trace != null ? CURRENT.get() : null;
+      this.start = trace != null ? trace.now() : 0;
+    }
+
+    /**
+     * End the span and make its parent current again.
+     */
+    @Override
+    public void close() {
+      if (trace == null) {
+        return;
+      }
+
+      trace.spans.add(new Span(
+          trace.traceId, spanId, parentSpanId, name, kind,
+          start, trace.now(), error
+      ));
+
+      if (previous != null) {
+        CURRENT.set(previous);
+      } else {
+        CURRENT.remove();
+      }
+    }
+  }
+}
@@ -1,60 +1,96 @@
 package com.advanon.pdfsignatures;
 
 import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.AcroFields;
 import com.itextpdf.text.pdf.PdfReader;
 import com.itextpdf.text.pdf.PdfStamper;
-import com.itextpdf.text.pdf.security.LtvVerification;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.security.GeneralSecurityException;
 import java.security.cert.CRLException;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509CRL;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
+import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.ocsp.BasicOCSPResp;
-import org.bouncycastle.cert.ocsp.OCSPException;
-import org.bouncycastle.cert.ocsp.OCSPResp;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Embeds OCSP / CRL LTV information into the document
  * For OCSP @see https://tools.ietf.org/html/rfc2560
  * For CRL @see https://tools.ietf.org/html/rfc5280
  * For PAdES LTV @see https://www.etsi.org/deliver/etsi_ts/102700_102799/10277804/01.01.01_60/ts_10277804v010101p.pdf
+ * <p>
+ *   Every signature VRI entry gets the material relevant to its certificate
+ *   chain, written once into the DSS and shared between signatures, see
+ *   {@link DssWriter}. Given material which no signature needs is still
+ *   stored in the DSS, once.
+ * </p>
  */
 class Validation extends PdfChange {
-  private List<OCSPResp> ocsps;
-  private List<X509CRL> crls = new ArrayList<>();
+  private final List<Material<BasicOCSPResp>> ocsps;
+  private final List<Material<X509CRL>> crls;
+  @Nullable private final RevocationStore store;
+  private final RevocationCache cache;
 
   Validation(
       @NotNull List<byte[]> ocsps,
       @NotNull List<byte[]> crls
   ) throws ValidationException {
-    this.ocsps = ocsps.stream().map(ocsp -> {
-      try {
-        return new OCSPResp(ocsp);
-      } catch (IOException e) {
-        throw new ValidationException(e.getMessage());
-      }
-    }).collect(Collectors.toList());
+    this(ocsps, crls, null);
+  }
 
-    this.crls = crls.stream().map(crl -> {
-      try {
-        return (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(
-          new ByteArrayInputStream(crl)
-        );
-      } catch (CRLException | CertificateException e) {
-        throw new ValidationException(e.getMessage());
-      }
-    }).collect(Collectors.toList());
+  Validation(
+      @NotNull List<byte[]> ocsps,
+      @NotNull List<byte[]> crls,
+      @Nullable RevocationStore store
+  ) throws ValidationException {
+    this(ocsps, crls, store, RevocationCache.getInstance());
+  }
+
+  /**
+   * Parse validation material once, in parallel, and keep the encoded forms
+   * to embed, so that every signature reuses them.
+   * <p>
+   *   With a store, the given material is saved into it, and every signature
+   *   additionally gets the stored material which matches the certificates
+   *   of its PKCS7, so the material may be passed once and omitted later.
+   * </p>
+   *
+   * @param ocsps DER-encoded OCSP responses
+   * @param crls DER-encoded CRLs
+   * @param store Store of material passed by previous requests, may be null
+   * @param cache Cache of material parsed by previous requests
+   * @throws ValidationException if any of the inputs could not be parsed
+   */
+  Validation(
+      @NotNull List<byte[]> ocsps,
+      @NotNull List<byte[]> crls,
+      @Nullable RevocationStore store,
+      @NotNull RevocationCache cache
+  ) throws ValidationException {
+    this.store = store;
+    this.cache = cache;
+
+    Cancellation cancellation = Cancellation.current();
+
+    this.ocsps = ocsps.parallelStream()
+      .map(cancellation.bind(ocsp -> Material.of(cache.getOcsp(ocsp))))
+      .collect(Collectors.toList());
+
+    this.crls = crls.parallelStream()
+      .map(cancellation.bind(crl -> Material.of(cache.getCrl(crl))))
+      .collect(Collectors.toList());
+
+    if (store != null) {
+      ocsps.forEach(store::addOcsp);
+      crls.forEach(store::addCrl);
+    }
   }
 
   /**
@@ -64,36 +100,78 @@ class Validation extends PdfChange {
    * @throws ValidationException if application fails
    */
   public void apply(@NotNull PdfDocument pdf) throws ValidationException {
+    DocumentBuffer outputStream = null;
+
     try {
       PdfReader reader = pdf.getReader();
 
       assertCertificationLevel(reader);
 
-      OutputStream outputStream = new ByteArrayOutputStream();
+      outputStream = new DocumentBuffer(
+          pdf.getAllowance(), reader.getFileLength()
+      );
       PdfStamper stamper = new PdfStamper(reader, outputStream, '\0', true);
-      LtvVerification ltvVerification = stamper.getLtvVerification();
-
-      for (String signatureName : reader.getAcroFields().getSignatureNames()) {
-        boolean result = ltvVerification.addVerification(
-            signatureName,
-            asnOneEncodedOcspList(),
-            asnOneEncodedCrlList(),
-            null
+      DssWriter dss = new DssWriter(reader, stamper);
+      AcroFields acroFields = reader.getAcroFields();
+
+      dss.load();
+
+      // Stored material is parsed and encoded once per document
+      Map<BasicOCSPResp, Material<BasicOCSPResp>> storedOcsps
+          = new IdentityHashMap<>();
+      Map<X509CRL, Material<X509CRL>> storedCrls = new IdentityHashMap<>();
+
+      for (String signatureName : acroFields.getSignatureNames()) {
+        Cancellation.checkpoint();
+
+        SignatureChain chain = SignatureChain.of(
+            acroFields.getSignatureDictionary(signatureName)
+        );
+
+        List<Material<BasicOCSPResp>> signatureOcsps = new ArrayList<>(ocsps);
+        List<Material<X509CRL>> signatureCrls = new ArrayList<>(crls);
+        addStoredMaterial(
+            chain, signatureOcsps, signatureCrls, storedOcsps, storedCrls
         );
 
-        if (!result) {
-          throw new ValidationException("Failed to embed LTV information");
+        List<byte[]> certificates = new ArrayList<>();
+
+        // Relevance can not be told without certificates, attach everything
+        if (chain.isKnown()) {
+          signatureOcsps.removeIf(ocsp -> !chain.isRelevant(ocsp.parsed));
+          signatureCrls.removeIf(crl -> !chain.isRelevant(crl.parsed));
+
+          certificates.addAll(chain.getEncodedCertificates());
+          for (Material<BasicOCSPResp> ocsp : signatureOcsps) {
+            certificates.addAll(
+                SignatureChain.responderCertificates(ocsp.parsed)
+            );
+          }
         }
+
+        dss.addVerification(
+            chain.getVriKey(),
+            Material.encoded(signatureOcsps),
+            Material.encoded(signatureCrls),
+            certificates
+        );
       }
 
-      ltvVerification.merge();
+      dss.addUnreferenced(Material.encoded(ocsps), Material.encoded(crls));
+      dss.write();
       stamper.close();
       outputStream.close();
 
-      pdf.setContentBytes(((ByteArrayOutputStream) outputStream).toByteArray());
+      // The document releases the buffer from now on
+      pdf.setContent(outputStream);
+      outputStream = null;
       pdf.updateHashableBytes();
-    } catch (IOException | GeneralSecurityException | DocumentException e) {
+    } catch (IOException | DocumentException e) {
       throw new ValidationException(e.getMessage());
+    } finally {
+      if (outputStream != null) {
+        outputStream.release();
+      }
     }
   }
 
@@ -109,34 +187,83 @@ class Validation extends PdfChange {
   }
 
   /**
-   * Return ASN.1 (X.509) encoded list of OCSPs.
+   * Add the stored material which matches the chain certificates.
    *
-   * @return list of ASN.1-encoded OCSPs
-   * @throws ValidationException if encoding fails
+   * @param chain Signature chain
+   * @param signatureOcsps OCSP responses of the signature
+   * @param signatureCrls CRLs of the signature
+   * @param storedOcsps Stored OCSP responses used so far
+   * @param storedCrls Stored CRLs used so far
+   * @throws ValidationException if stored material could not be read
    */
-  private List<byte[]> asnOneEncodedOcspList() throws ValidationException {
-    return ocsps.stream().map(ocsp -> {
-      try {
-        return ((BasicOCSPResp) ocsp.getResponseObject()).getEncoded();
-      } catch (OCSPException | IOException e) {
-        throw new ValidationException(e.getMessage());
+  private void addStoredMaterial(
+      @NotNull SignatureChain chain,
+      @NotNull List<Material<BasicOCSPResp>> signatureOcsps,
+      @NotNull List<Material<X509CRL>> signatureCrls,
+      @NotNull Map<BasicOCSPResp, Material<BasicOCSPResp>> storedOcsps,
+      @NotNull Map<X509CRL, Material<X509CRL>> storedCrls
+  ) throws ValidationException {
+    if (store == null) {
+      return;
+    }
+
+    for (X509CertificateHolder certificate : chain.getCertificates()) {
+      byte[] ocsp = store.findOcsp(certificate);
+      if (ocsp != null) {
+        signatureOcsps.add(storedOcsps.computeIfAbsent(
+            cache.getOcsp(ocsp), Material::of
+        ));
+      }
+
+      byte[] crl = store.findCrl(certificate);
+      if (crl != null) {
+        signatureCrls.add(storedCrls.computeIfAbsent(
+            cache.getCrl(crl), Material::of
+        ));
       }
-    }).collect(Collectors.toList());
+    }
   }
 
   /**
-   * Return ASN.1 (X.509) encoded list of CRLs.
+   * Parsed validation material along with its encoded form to embed.
    *
-   * @return list of ASN.1-encoded CRLs
-   * @throws ValidationException if encoding fails
+   * @param <T> Parsed material type
    */
-  private List<byte[]> asnOneEncodedCrlList() throws ValidationException {
-    return crls.stream().map(crl -> {
+  private static final class Material<T> {
+    private final T parsed;
+    private final byte[] encoded;
+
+    private Material(@NotNull T parsed, @NotNull byte[] encoded) {
+      this.parsed = parsed;
+      this.encoded = encoded;
+    }
+
+    private static Material<BasicOCSPResp> of(
+        @NotNull BasicOCSPResp ocsp
+    ) throws ValidationException {
+      try {
+        return new Material<>(ocsp, ocsp.getEncoded());
+      } catch (IOException e) {
+        throw new ValidationException(e.getMessage());
+      }
+    }
+
+    private static Material<X509CRL> of(
+        @NotNull X509CRL crl
+    ) throws ValidationException {
       try {
-        return crl.getEncoded();
+        return new Material<>(crl, crl.getEncoded());
       } catch (CRLException e) {
         throw new ValidationException(e.getMessage());
       }
-    }).collect(Collectors.toList());
+    }
+
+    private static <T> List<byte[]> encoded(
+        @NotNull List<Material<T>> materials
+    ) {
+      return materials.stream()
+        .map(material -> material.encoded)
+        .collect(Collectors.toList());
+    }
   }
 }
@@ -0,0 +1,417 @@
+package com.advanon.pdfsignatures;
+
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfArray;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.util.encoders.Hex;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Verifies every signature of a document file.
+ * <p>
+ *   The document is opened in partial mode, only the signature dictionaries
+ *   are parsed. Signed byte ranges are streamed from the file straight into
+ *   the digest, so that the document is never held in memory as a whole.
+ *   Signatures are verified in parallel, each one reads the file on its own
+ *   through positional reads of a shared channel.
+ * </p>
+ * <p>
+ *   Given a matching {@link PlaceholderManifest}, byte ranges are taken
+ *   from the manifest and the document is not parsed at all.
+ * </p>
+ */
+final class Verification {
+  // Byte range keeps the length after the signature, not the end offset
+  private static final int CONTENT_LENGTH_AFTER_SIGNATURE
+      = PdfDocument.CONTENT_END_BYTE_POS;
+
+  private final Path path;
+  @Nullable private final String password;
+  @Nullable private final PlaceholderManifest manifest;
+
+  Verification(@NotNull Path path, @Nullable String password) {
+    this(path, password, null);
+  }
+
+  Verification(
+      @NotNull Path path,
+      @Nullable String password,
+      @Nullable PlaceholderManifest manifest
+  ) {
+    this.path = path;
+    this.password = password;
+    this.manifest = manifest;
+  }
+
+  /**
+   * Verify all the document signatures.
+   *
+   * @return verification results, in the signature fields order
+   * @throws VerificationException if the document could not be read
+   */
+  List<SignatureVerification> verify() throws VerificationException {
+    try (FileChannel channel = FileChannel.open(
+        path, StandardOpenOption.READ
+    )) {
+      List<SignedRange> signedRanges = manifest != null
+          && manifest.matches(channel)
+          ? readSignedRanges(channel, manifest)
+          : readSignedRanges();
+
+      return signedRanges.parallelStream()
+        .map(Cancellation.current().bind(
+          signedRange -> verify(channel, signedRange)
+        ))
+        .collect(Collectors.toList());
+    } catch (IOException | UncheckedIOException e) {
+      throw new VerificationException(e.getMessage());
+    }
+  }
+
+  /**
+   * Read byte ranges and PKCS7 blobs of every signature. The reader is not
+   * thread safe, so this is done upfront, before verifying in parallel.
+   *
+   * @return signed ranges
+   * @throws IOException if the document could not be parsed
+   */
+  private List<SignedRange> readSignedRanges() throws IOException {
+    PdfReader reader = new PdfReader(
+        path.toString(),
+        password != null ? password.getBytes() : null,
+        true
+    );
+
+    try {
+      AcroFields acroFields = reader.getAcroFields();
+      List<SignedRange> signedRanges = new ArrayList<>();
+
+      for (String name : acroFields.getSignatureNames()) {
+        PdfDictionary signatureDict = acroFields.getSignatureDictionary(name);
+        PdfArray byteRange = signatureDict.getAsArray(PdfName.BYTERANGE);
+        PdfString contents = signatureDict.getAsString(PdfName.CONTENTS);
+
+        signedRanges.add(new SignedRange(
+            name,
+            byteRange != null ? byteRange.asLongArray() : new long[0],
+            contents != null ? contents.getOriginalBytes() : new byte[0]
+        ));
+      }
+
+      return signedRanges;
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Read PKCS7 blobs of the signatures a manifest lists, straight from
+   * their /Contents slots.
+   *
+   * @param channel Document file
+   * @param manifest Manifest matching the document
+   * @return signed ranges
+   * @throws IOException if reading the file fails
+   */
+  private List<SignedRange> readSignedRanges(
+      @NotNull FileChannel channel,
+      @NotNull PlaceholderManifest manifest
+  ) throws IOException {
+    List<SignedRange> signedRanges = new ArrayList<>();
+
+    for (SignatureSlot field : manifest.getFields()) {
+      long slotStart = field.getStart() + 1; // Ignore "<" marker
+      long slotLength = field.getEnd() - slotStart - 1;
+
+      if (slotLength < 0 || slotLength > Integer.MAX_VALUE) {
+        throw new IOException("Invalid byte range of " + field.getName());
+      }
+
+      ByteBuffer hexContents = ByteBuffer.allocate((int) slotLength);
+      while (hexContents.hasRemaining()) {
+        if (channel.read(
+            hexContents, slotStart + hexContents.position()
+        ) < 0) {
+          throw new IOException("Byte range exceeds the file");
+        }
+      }
+
+      byte[] contents;
+      try {
+        contents = Hex.decode(hexContents.array());
+      } catch (RuntimeException e) {
+        throw new IOException("Invalid contents of " + field.getName());
+      }
+
+      signedRanges.add(
+          new SignedRange(field.getName(), field.getByteRange(), contents)
+      );
+    }
+
+    return signedRanges;
+  }
+
+  private SignatureVerification verify(
+      @NotNull FileChannel channel,
+      @NotNull SignedRange signedRange
+  ) throws UncheckedIOException {
+    try {
+      SignatureVerification.Coverage coverage = coverage(channel, signedRange);
+
+      if (coverage == SignatureVerification.Coverage.INVALID_RANGE) {
+        return signedRange.result(
+            SignatureVerification.Status.INVALID,
+            coverage,
+            "Byte range does not match the signature contents"
+        );
+      }
+
+      String failure = verifySignature(channel, signedRange);
+
+      return signedRange.result(
+          failure == null
+            ? SignatureVerification.Status.VALID
+            : SignatureVerification.Status.INVALID,
+          coverage,
+          failure
+      );
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Make sure the byte range starts at the beginning of the file and leaves
+   * out exactly the signature /Contents hex string, angle brackets included.
+   *
+   * @param channel Document file
+   * @param signedRange Signature to check
+   * @return byte range coverage
+   * @throws IOException if reading the file fails
+   */
+  private SignatureVerification.Coverage coverage(
+      @NotNull FileChannel channel,
+      @NotNull SignedRange signedRange
+  ) throws IOException {
+    long[] ranges = signedRange.ranges;
+    long fileSize = channel.size();
+
+    if (ranges.length != 4
+        || ranges[PdfDocument.CONTENT_START_BYTE_POS] != 0
+        || ranges[PdfDocument.SIGNATURE_START_BYTE_POS] < 0
+        || ranges[CONTENT_LENGTH_AFTER_SIGNATURE] < 0) {
+      return SignatureVerification.Coverage.INVALID_RANGE;
+    }
+
+    long slotStart = ranges[PdfDocument.SIGNATURE_START_BYTE_POS];
+    long slotEnd = ranges[PdfDocument.SIGNATURE_END_BYTE_POS];
+    long contentEnd = slotEnd + ranges[CONTENT_LENGTH_AFTER_SIGNATURE];
+
+    if (slotEnd <= slotStart + 1
+        || contentEnd > fileSize
+        || slotEnd - slotStart - 2 != 2L * signedRange.contents.length
+        || readByte(channel, slotStart) != '<'
+        || readByte(channel, slotEnd - 1) != '>') {
+      return SignatureVerification.Coverage.INVALID_RANGE;
+    }
+
+    return contentEnd == fileSize
+      ? SignatureVerification.Coverage.COVERS_DOCUMENT
+      : SignatureVerification.Coverage.COVERS_REVISION;
+  }
+
+  /**
+   * Check the detached PKCS7 signature against digests of the byte range.
+   *
+   * @param channel Document file
+   * @param signedRange Signature to check
+   * @return failure reason or null if the signature is valid
+   * @throws IOException if reading the file fails
+   */
+  @Nullable
+  private String verifySignature(
+      @NotNull FileChannel channel,
+      @NotNull SignedRange signedRange
+  ) throws IOException {
+    try {
+      CMSSignedData signedData = new CMSSignedData(signedRange.contents);
+
+      if (signedData.getSignedContent() != null) {
+        return "Only detached signatures are supported";
+      }
+
+      CMSSignedData detachedData = new CMSSignedData(
+          digest(channel, signedRange, signedData.getDigestAlgorithmIDs()),
+          signedRange.contents
+      );
+      Collection<SignerInformation> signers
+          = detachedData.getSignerInfos().getSigners();
+
+      if (signers.isEmpty()) {
+        return "No signer information found";
+      }
+
+      for (SignerInformation signer : signers) {
+        @SuppressWarnings("unchecked")
+        Collection<X509CertificateHolder> certificates
+            = detachedData.getCertificates().getMatches(signer.getSID());
+
+        if (certificates.isEmpty()) {
+          return "Signer certificate not found";
+        }
+
+        boolean verified = signer.verify(
+            new JcaSimpleSignerInfoVerifierBuilder()
+              .build(certificates.iterator().next())
+        );
+
+        if (!verified) {
+          return "Signature does not match the document";
+        }
+      }
+
+      return null;
+    } catch (CancelledException e) {
+      throw e;
+    } catch (CMSException | OperatorCreationException
+             | CertificateException | RuntimeException e) {
+      return e.getMessage();
+    }
+  }
+
+  /**
+   * Stream the byte range through every digest the signers need at once.
+   *
+   * @param channel Document file
+   * @param signedRange Signature to hash
+   * @param algorithms Digest algorithms
+   * @return digests by algorithm identifier
+   * @throws IOException if reading the file fails
+   * @throws OperatorCreationException if an algorithm is not supported
+   */
+  private Map<ASN1ObjectIdentifier, byte[]> digest(
+      @NotNull FileChannel channel,
+      @NotNull SignedRange signedRange,
+      @NotNull Collection<AlgorithmIdentifier> algorithms
+  ) throws IOException, OperatorCreationException {
+    DigestCalculatorProvider provider
+        = new JcaDigestCalculatorProviderBuilder().build();
+    List<DigestCalculator> calculators = new ArrayList<>();
+
+    for (AlgorithmIdentifier algorithm : algorithms) {
+      calculators.add(provider.get(algorithm));
+    }
+
+    long[] ranges = signedRange.ranges;
+    byte[] slab = BufferPool.getInstance().acquire(Streams.BUFFER_SIZE);
+    ByteBuffer buffer = ByteBuffer.wrap(slab);
+
+    try {
+      for (int i = 0; i < ranges.length; i += 2) {
+        long position = ranges[i];
+        long end = ranges[i] + ranges[i + 1];
+
+        while (position < end) {
+          Cancellation.checkpoint();
+          buffer.clear();
+          buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+          int read = channel.read(buffer, position);
+          if (read < 0) {
+            throw new IOException("Byte range exceeds the file");
+          }
+
+          for (DigestCalculator calculator : calculators) {
+            OutputStream outputStream = calculator.getOutputStream();
+            outputStream.write(buffer.array(), 0, read);
+          }
+
+          position += read;
+        }
+      }
+    } finally {
+      BufferPool.getInstance().release(slab);
+    }
+
+    Map<ASN1ObjectIdentifier, byte[]> digests = new HashMap<>();
+
+    for (DigestCalculator calculator : calculators) {
+      calculator.getOutputStream().close();
+      digests.put(
+          calculator.getAlgorithmIdentifier().getAlgorithm(),
+          calculator.getDigest()
+      );
+    }
+
+    return digests;
+  }
+
+  private int readByte(
+      @NotNull FileChannel channel,
+      long position
+  ) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(1);
+
+    if (channel.read(buffer, position) != 1) {
+      return -1;
+    }
+
+    return buffer.get(0);
+  }
+
+  private static final class SignedRange {
+    private final String name;
+    private final long[] ranges;
+    private final byte[] contents;
+
+    private SignedRange(
+        @NotNull String name,
+        @NotNull long[] ranges,
+        @NotNull byte[] contents
+    ) {
+      this.name = name;
+      this.ranges = ranges;
+      this.contents = contents;
+    }
+
+    private SignatureVerification result(
+        @NotNull SignatureVerification.Status status,
+        @NotNull SignatureVerification.Coverage coverage,
+        @Nullable String message
+    ) {
+      return new SignatureVerification(name, status, coverage, message);
+    }
+  }
+}
@@ -0,0 +1,7 @@
+package com.advanon.pdfsignatures;
+
+public class VerificationException extends RuntimeException {
+  public VerificationException(String errorMessage) {
+    super(errorMessage);
+  }
+}
@@ -0,0 +1,26 @@
+package com.advanon.pdfsignatures;
+
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Verifies every document signature, reported as a comma-separated list of
+ * "field name:status:coverage" entries.
+ */
+final class VerifyCommand extends CommandHandler {
+  String execute(
+      @NotNull ApplicationArguments arguments
+  ) throws VerificationException, ManifestException {
+    return new Verification(
+        Paths.get(arguments.getFile()),
+        arguments.getPassword(),
+        arguments.getManifest() != null
+          ? PlaceholderManifest.read(Paths.get(arguments.getManifest()))
+          : null
+    ).verify().stream()
+      .map(SignatureVerification::toString)
+      .collect(Collectors.joining(","));
+  }
+}
@@ -0,0 +1,117 @@
+package com.advanon.pdfsignatures;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs every document operation in memory against synthetic documents,
+ * until the JIT compiler is done with the hot paths.
+ * <p>
+ *   Operations are run in batches. Compilation is considered settled once
+ *   the JIT spends less than {@link #SETTLED_COMPILATION_SHARE} of a batch
+ *   wall time compiling, for {@link #SETTLED_BATCHES} batches in a row.
+ *   The warm-up stops earlier if it runs out of iterations or time.
+ * </p>
+ */
+final class WarmUp {
+  static final int DEFAULT_MAX_ITERATIONS = 2000;
+  static final long DEFAULT_MAX_DURATION = 60000;
+
+  private static final int BATCH_SIZE = 20;
+  private static final int SETTLED_BATCHES = 3;
+  private static final double SETTLED_COMPILATION_SHARE = 0.02;
+
+  private final int maxIterations;
+  private final long maxDuration;
+
+  WarmUp(int maxIterations, long maxDuration) {
+    this.maxIterations = maxIterations;
+    this.maxDuration = maxDuration;
+  }
+
+  /**
+   * Run the warm-up.
+   *
+   * @return number of iterations performed
+   * @throws PdfDocumentException if synthetic material could not be created
+   */
+  int run() throws PdfDocumentException {
+    if (maxIterations <= 0) {
+      return 0;
+    }
+
+    SyntheticMaterial material = SyntheticMaterial.generate();
+    CompilationMXBean compiler = compilationMonitor();
+    long deadline = System.currentTimeMillis() + maxDuration;
+    int iterations = 0;
+    int settledBatches = 0;
+
+    while (iterations < maxIterations
+           && settledBatches < SETTLED_BATCHES
+           && System.currentTimeMillis() < deadline
+           && !Thread.currentThread().isInterrupted()) {
+      long batchStart = System.nanoTime();
+      long compilationStart = compiler != null
+          ? compiler.getTotalCompilationTime()
+          : 0;
+
+      for (int i = 0; i < BATCH_SIZE && iterations < maxIterations; i++) {
+        iterate(material);
+        iterations++;
+      }
+
+      if (compiler != null) {
+        double batchMillis = (System.nanoTime() - batchStart) / 1e6;
+        long compilationMillis
+            = compiler.getTotalCompilationTime() - compilationStart;
+
+        settledBatches = compilationMillis
+            < batchMillis * SETTLED_COMPILATION_SHARE
+            ? settledBatches + 1
+            : 0;
+      }
+    }
+
+    return iterations;
+  }
+
+  /**
+   * Placeholder, digest, sign and LTV on a single synthetic document.
+   *
+   * @param material Synthetic material
+   */
+  private void iterate(SyntheticMaterial material) {
+    PdfSigner signer = new PdfSigner();
+
+    byte[] placeholdered = signer.addPlaceholder(
+        PdfSource.of(material.getDocument()),
+        new SignatureMetadata("Warm-up", null, null, null),
+        null,
+        null
+    );
+    signer.digest(PdfSource.of(placeholdered), null);
+
+    byte[] signed = signer.sign(
+        PdfSource.of(placeholdered), material.getSignature()
+    );
+    signer.addValidation(
+        PdfSource.of(signed),
+        Collections.singletonList(material.getOcsp()),
+        Collections.singletonList(material.getCrl())
+    );
+  }
+
+  @Nullable
+  private CompilationMXBean compilationMonitor() {
+    CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+
+    if (compiler == null || !compiler.isCompilationTimeMonitoringSupported()) {
+      return null;
+    }
+
+    return compiler;
+  }
+}
@@ -0,0 +1,42 @@
+package com.advanon.pdfsignatures;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Processes documents dropped into the inbox until the process is stopped,
+ * see {@link WatchFolder}.
+ */
+final class WatchCommand extends CommandHandler {
+  String execute(
+      @NotNull ApplicationArguments arguments
+  ) throws WatchException, IOException {
+    if (arguments.getInbox() == null || arguments.getOutbox() == null) {
+      throw new WatchException("--inbox and --outbox are required");
+    }
+
+    Path outbox = Paths.get(arguments.getOutbox());
+
+    WatchFolder watchFolder = new WatchFolder(
+        arguments,
+        Paths.get(arguments.getInbox()),
+        outbox,
+        arguments.getErrors() != null
+          ? Paths.get(arguments.getErrors())
+          : outbox.resolve("errors"),
+        arguments.getChain() != null
+          ? arguments.getChain()
+          : WatchFolder.CHAIN_PLACEHOLDER,
+        arguments.getWorkers() != null
+          ? arguments.getWorkers()
+          : Runtime.getRuntime().availableProcessors()
+    );
+
+    watchFolder.run();
+
+    return "";
+  }
+}
@@ -0,0 +1,7 @@
+package com.advanon.pdfsignatures;
+
+public class WatchException extends RuntimeException {
+  public WatchException(String errorMessage) {
+    super(errorMessage);
+  }
+}
@@ -0,0 +1,442 @@
+package com.advanon.pdfsignatures;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Watch-folder mode, for upstream systems which can only drop files into a
+ * directory.
+ * <p>
+ *   Documents dropped into the inbox are claimed by an atomic move into its
+ *   ".processing" directory and run through the operation chain on a pool
+ *   of workers, one per core by default, scheduled in lanes by size (see
+ *   {@link LaneScheduler}):
+ * </p>
+ * <ul>
+ *   <li>"placeholder" adds a placeholder to "name.pdf", and writes the
+ *   document and "name.digest", its digest or the field descriptions;</li>
+ *   <li>"sign" embeds the base64 signature of the sibling "name.sig" into
+ *   "name.pdf", and adds LTV information if CRLs, OCSPs or a store are
+ *   given.</li>
+ * </ul>
+ * <p>
+ *   Results are written under temporary names and moved into the outbox
+ *   once complete, "name.digest" last. Failed documents, and documents
+ *   which took longer than the --timeout, are moved to the error folder
+ *   along with a "name.error" report. Claimed files are only
+ *   deleted once the results are in place, and files left claimed by a
+ *   crashed process are moved back to the inbox on start, so every document
+ *   is processed at least once. Files starting with a dot are ignored:
+ *   upstream systems should write under such a name and rename once done.
+ * </p>
+ */
+final class WatchFolder {
+  static final String CHAIN_PLACEHOLDER = "placeholder";
+  static final String CHAIN_SIGN = "sign";
+  static final String PROCESSING_DIRECTORY = ".processing";
+  static final String DOCUMENT_EXTENSION = ".pdf";
+  static final String SIGNATURE_EXTENSION = ".sig";
+  static final String DIGEST_EXTENSION = ".digest";
+  static final String ERROR_EXTENSION = ".error";
+  private static final String PART_EXTENSION = ".part";
+  // Events may be lost on overflow, the inbox is scanned at least this often
+  private static final long SCAN_INTERVAL = 1000;
+
+  private final ApplicationArguments arguments;
+  private final Path inbox;
+  private final Path processing;
+  private final Path outbox;
+  private final Path errors;
+  private final String chain;
+  private final int workers;
+  private final Set<String> pending = ConcurrentHashMap.newKeySet();
+  private volatile boolean stopped;
+
+  /**
+   * Create a watch folder.
+   *
+   * @param arguments Arguments of the operations, i.e. the estimated size
+   * @param inbox Directory documents are dropped into
+   * @param outbox Directory results are written to
+   * @param errors Directory failed documents and error reports are moved to
+   * @param chain Operation chain, "placeholder" or "sign"
+   * @param workers Number of documents processed concurrently
+   * @throws WatchException if the chain is not known
+   */
+  WatchFolder(
+      @NotNull ApplicationArguments arguments,
+      @NotNull Path inbox,
+      @NotNull Path outbox,
+      @NotNull Path errors,
+      @NotNull String chain,
+      int workers
+  ) throws WatchException {
+    if (!chain.equals(CHAIN_PLACEHOLDER) && !chain.equals(CHAIN_SIGN)) {
+      throw new WatchException("Unknown operation chain " + chain);
+    }
+
+    this.arguments = arguments;
+    this.inbox = inbox;
+    this.processing = inbox.resolve(PROCESSING_DIRECTORY);
+    this.outbox = outbox;
+    this.errors = errors;
+    this.chain = chain;
+    this.workers = Math.max(1, workers);
+  }
+
+  /**
+   * Process dropped documents until stopped. Documents being processed are
+   * completed before returning.
+   *
+   * @throws IOException if the inbox could not be watched
+   */
+  void run() throws IOException {
+    Files.createDirectories(processing);
+    Files.createDirectories(outbox);
+    Files.createDirectories(errors);
+
+    reclaim();
+
+    LaneScheduler scheduler = new LaneScheduler(workers);
+
+    try (WatchService watchService = inbox.getFileSystem().newWatchService()) {
+      inbox.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+
+      while (!stopped) {
+        scan(scheduler);
+
+        WatchKey key = watchService.poll(SCAN_INTERVAL, TimeUnit.MILLISECONDS);
+        if (key != null) {
+          // Every event, overflows included, leads to a scan
+          key.pollEvents();
+          key.reset();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      awaitTermination(scheduler);
+    }
+  }
+
+  /**
+   * Stop watching, documents being processed are completed.
+   */
+  void stop() {
+    stopped = true;
+  }
+
+  /**
+   * Move files left claimed by a former process back to the inbox, and
+   * delete results it left incomplete.
+   */
+  private void reclaim() throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(processing)) {
+      for (Path file : files) {
+        try {
+          Files.move(file, inbox.resolve(file.getFileName()));
+        } catch (FileAlreadyExistsException e) {
+          // Dropped again meanwhile, the newer file wins
+          Files.delete(file);
+        }
+      }
+    }
+
+    deleteParts(outbox);
+    deleteParts(errors);
+  }
+
+  private void deleteParts(@NotNull Path directory) throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(
+        directory, ".*" + PART_EXTENSION
+    )) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  /**
+   * Submit every complete document of the inbox which is not submitted yet.
+   */
+  private void scan(@NotNull LaneScheduler scheduler) throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(inbox)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+
+        if (name.startsWith(".") || !name.endsWith(DOCUMENT_EXTENSION)) {
+          continue;
+        }
+
+        String baseName = name.substring(
+            0, name.length() - DOCUMENT_EXTENSION.length()
+        );
+
+        if (chain.equals(CHAIN_SIGN)
+            && !Files.exists(inbox.resolve(baseName + SIGNATURE_EXTENSION))) {
+          continue;
+        }
+
+        if (pending.add(baseName)) {
+          scheduler.execute(
+              scheduler.classify(operation(), size(file)),
+              () -> process(baseName)
+          );
+        }
+      }
+    }
+  }
+
+  private void process(@NotNull String baseName) {
+    try {
+      new Job(baseName).run();
+    } catch (IOException | RuntimeException e) {
+      // Files stay claimed and are reclaimed on restart
+      System.err.println(
+          "STATUS=ERROR\n"
+          + "ERROR_TYPE=" + e.getClass() + "\n"
+          + "ERROR_MESSAGE=" + e.getMessage()
+      );
+    } finally {
+      pending.remove(baseName);
+    }
+  }
+
+  /**
+   * The most expensive operation of the chain, which the document is
+   * scheduled after.
+   */
+  private String operation() {
+    if (chain.equals(CHAIN_SIGN)) {
+      return isValidating() ? "ltv" : "sign";
+    }
+
+    return "placeholder";
+  }
+
+  private boolean isValidating() {
+    return arguments.getStore() != null
+      || !arguments.getCrls().isEmpty()
+      || !arguments.getOcsps().isEmpty();
+  }
+
+  private long size(@NotNull Path file) {
+    try {
+      return Files.size(file);
+    } catch (IOException e) {
+      // Claimed meanwhile, the job finds out
+      return 0;
+    }
+  }
+
+  private void awaitTermination(@NotNull LaneScheduler scheduler) {
+    try {
+      scheduler.shutdown();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Processing of a single document, from claiming it to publishing the
+   * results.
+   */
+  private final class Job {
+    private final String baseName;
+    private final List<Path> claimed = new ArrayList<>();
+    private final List<Path> parts = new ArrayList<>();
+
+    private Job(@NotNull String baseName) {
+      this.baseName = baseName;
+    }
+
+    private void run() throws IOException {
+      Path document = claim(baseName + DOCUMENT_EXTENSION);
+
+      if (document == null) {
+        // Claimed by another worker meanwhile
+        return;
+      }
+
+      try {
+        Cancellation.Task<Void, IOException> task
+            = () -> new Cancellation(arguments.getTimeout()).call(() -> {
+              runChain(document);
+              return null;
+            });
+
+        if (arguments.getTraceFile() != null) {
+          new Trace(
+              chain,
+              null,
+              new OtlpFileExporter(Paths.get(arguments.getTraceFile()))
+          ).call(task);
+        } else {
+          task.run();
+        }
+      } catch (IOException | RuntimeException e) {
+        fail(e);
+        return;
+      }
+
+      for (Path file : claimed) {
+        Files.deleteIfExists(file);
+      }
+    }
+
+    private void runChain(@NotNull Path document) throws IOException {
+      if (chain.equals(CHAIN_PLACEHOLDER)) {
+        placeholder(document);
+      } else {
+        sign(document);
+      }
+    }
+
+    private void placeholder(@NotNull Path document) throws IOException {
+      Path out = part(outbox, baseName + DOCUMENT_EXTENSION);
+      String result = new PlaceholderCommand().execute(
+          arguments.with("--file", document.toString(), "--out", out.toString())
+      );
+
+      // Given field specs, the result describes every field with its digest
+      String digest = arguments.getFieldSpecs().isEmpty()
+          ? new DigestCommand().execute(
+            arguments.with("--file", out.toString())
+          )
+          : result;
+
+      Path digestOut = part(outbox, baseName + DIGEST_EXTENSION);
+      Files.write(digestOut, digest.getBytes(StandardCharsets.UTF_8));
+
+      publish(out, outbox, baseName + DOCUMENT_EXTENSION);
+      publish(digestOut, outbox, baseName + DIGEST_EXTENSION);
+    }
+
+    private void sign(@NotNull Path document) throws IOException {
+      Path signatureFile = claim(baseName + SIGNATURE_EXTENSION);
+
+      if (signatureFile == null) {
+        throw new WatchException("Signature file is missing");
+      }
+
+      String signature = new String(
+          Files.readAllBytes(signatureFile), StandardCharsets.US_ASCII
+      ).trim();
+      Path out = part(outbox, baseName + DOCUMENT_EXTENSION);
+
+      if (!isValidating()) {
+        new SignCommand().execute(arguments.with(
+            "--file", document.toString(),
+            "--out", out.toString(),
+            "--signature", signature
+        ));
+        publish(out, outbox, baseName + DOCUMENT_EXTENSION);
+        return;
+      }
+
+      Path signed = part(outbox, baseName + ".signed");
+      new SignCommand().execute(arguments.with(
+          "--file", document.toString(),
+          "--out", signed.toString(),
+          "--signature", signature
+      ));
+      new LtvCommand().execute(arguments.with(
+          "--file", signed.toString(),
+          "--out", out.toString()
+      ));
+      Files.delete(signed);
+
+      publish(out, outbox, baseName + DOCUMENT_EXTENSION);
+    }
+
+    /**
+     * Move the failed files to the error folder along with a report, and
+     * delete incomplete results.
+     */
+    private void fail(@NotNull Exception error) throws IOException {
+      Path report = part(errors, baseName + ERROR_EXTENSION);
+      Files.write(
+          report,
+          ("STATUS="
+            + (error instanceof CancelledException ? "CANCELLED" : "ERROR")
+            + "\n"
+            + "ERROR_TYPE=" + error.getClass() + "\n"
+            + "ERROR_MESSAGE=" + error.getMessage() + "\n")
+            .getBytes(StandardCharsets.UTF_8)
+      );
+
+      for (Path file : claimed) {
+        Files.move(
+            file,
+            errors.resolve(file.getFileName()),
+            StandardCopyOption.REPLACE_EXISTING
+        );
+      }
+
+      publish(report, errors, baseName + ERROR_EXTENSION);
+
+      for (Path part : parts) {
+        Files.deleteIfExists(part);
+      }
+    }
+
+    /**
+     * Claim a file of the inbox by moving it atomically, so that a single
+     * worker gets it.
+     *
+     * @return claimed file, or null if it is gone
+     */
+    @Nullable
+    private Path claim(@NotNull String name) throws IOException {
+      Path file = processing.resolve(name);
+
+      try {
+        Files.move(
+            inbox.resolve(name), file, StandardCopyOption.ATOMIC_MOVE
+        );
+      } catch (NoSuchFileException e) {
+        return null;
+      }
+
+      claimed.add(file);
+      return file;
+    }
+
+    private Path part(@NotNull Path directory, @NotNull String name) {
+      Path part = directory.resolve("." + name + PART_EXTENSION);
+      parts.add(part);
+
+      return part;
+    }
+
+    private void publish(
+        @NotNull Path part,
+        @NotNull Path directory,
+        @NotNull String name
+    ) throws IOException {
+      Files.move(
+          part, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE
+      );
+    }
+  }
+}
@@ -1,3 +1,4 @@
+const fs = require('fs');
 const { getInstalledPath } = require('get-installed-path');
 const { exec } = require('child_process');
 
@@ -6,8 +7,19 @@ const {
   ResponseKeys,
   ResponseKeysMap,
   ExecutablePath,
+  ClassDataArchivePath,
+  KillGracePeriod,
   StatusTypes,
 } = require('./constants');
+const {
+  isTracing,
+  startTrace,
+  startSpan,
+  endSpan,
+  toTraceparent,
+  createTraceFilePath,
+  exportTrace,
+} = require('./trace');
 
 /**
  * Initialize object based on available response keys
@@ -66,37 +78,123 @@ const parseResponse = (response) => {
 };
 
 /**
- * Execute command with given args
+ * Build JVM options. The class data sharing archive is used when it was
+ * dumped next to the jar on install (see install.js).
+ *
+ * @param {string} selfPath
+ * @returns {string}
+ */
+const buildJavaOptions = (selfPath) => {
+  const archivePath = `${selfPath}/${ClassDataArchivePath}`;
+
+  if (!fs.existsSync(archivePath)) {
+    return '';
+  }
+
+  return `-XX:SharedArchiveFile=${archivePath} -Xshare:auto `;
+};
+
+/**
+ * Run the JVM with the given command and args. Given the span of the
+ * command, its phases are traced: resolving the package, and the JVM
+ * process from spawn to exit, which the JVM spans are children of.
  *
  * @param {string} command
  * @param {object} args
+ * @param {object} [span]
  */
-const executeCommand = async (command, args = {}) => {
+const runCommand = async (command, args, span) => {
+  const prepare = span && startSpan(span, 'prepare');
   const selfPath = await getInstalledPath(PackageName, { local: true });
-  const parsedArgs = buildArguments(args);
+  const javaOptions = buildJavaOptions(selfPath);
+  const spawn = span && startSpan(span, 'process');
+  const parsedArgs = buildArguments(
+    span ? { ...args, traceparent: toTraceparent(spawn) } : args,
+  );
+
+  if (prepare) {
+    endSpan(prepare);
+  }
 
   return new Promise((resolve, reject) => {
-    exec(
-      `java -jar ${selfPath}/${ExecutablePath} ${command} ${parsedArgs}`,
+    let killTimer = null;
+    let exited = false;
+
+    const child = exec(
+      `java ${javaOptions}-jar ${selfPath}/${ExecutablePath} ${command} ${parsedArgs}`,
       (error, stdout, stderr) => {
+        exited = true;
+        clearTimeout(killTimer);
+
+        if (spawn) {
+          endSpan(spawn, error);
+        }
+
         if (error) {
           reject(error);
         } else {
           const response = parseResponse(stdout || stderr);
           if (response.status === StatusTypes.Success) {
             resolve(response.result);
+          } else if (response.status === StatusTypes.Cancelled) {
+            reject(`Cancelled ${response.errorType}: ${response.errorMessage}`);
           } else {
             reject(`Error ${response.errorType}: ${response.errorMessage}`);
           }
         }
       },
     );
+
+    if (!exited && args.timeout !== undefined && args.timeout !== null) {
+      killTimer = setTimeout(
+        () => child.kill(), Number(args.timeout) + KillGracePeriod,
+      );
+    }
   });
 };
 
+/**
+ * Execute command with given args
+ *
+ * With a "timeout" argument the JVM gives up once it passes, and answers
+ * with the CANCELLED status, rejected as "Cancelled ...". The process is
+ * killed if it does not exit shortly after.
+ *
+ * With a "tracefile" argument, or a trace exporter set, the command is
+ * traced: it joins the trace of the "traceparent" argument, if given, and
+ * its spans are exported along with the JVM spans once it completes.
+ *
+ * @param {string} command
+ * @param {object} args
+ */
+const executeCommand = async (command, args = {}) => {
+  const { traceparent, tracefile, ...commandArgs } = args;
+
+  if (!isTracing(tracefile)) {
+    return runCommand(command, commandArgs);
+  }
+
+  const span = startTrace(command, traceparent);
+  const jvmTraceFile = createTraceFilePath();
+  let failure;
+
+  try {
+    return await runCommand(
+      command, { ...commandArgs, tracefile: jvmTraceFile }, span,
+    );
+  } catch (error) {
+    failure = error;
+    throw error;
+  } finally {
+    endSpan(span, failure);
+    await exportTrace(span, tracefile, jvmTraceFile);
+  }
+};
+
 module.exports = {
   initResult,
   buildArguments,
+  buildJavaOptions,
   parseResponse,
   executeCommand,
 };
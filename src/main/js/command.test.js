@@ -1,17 +1,20 @@
 jest.mock('child_process');
 jest.mock('get-installed-path');
 
+const fs = require('fs');
 const { getInstalledPath } = require('get-installed-path');
 const { exec } = require('child_process');
 
 const {
   initResult,
   buildArguments,
+  buildJavaOptions,
   parseResponse,
   executeCommand,
 } = require('./command');
 
-const { ExecutablePath } = require('./constants');
+const { ExecutablePath, ClassDataArchivePath } = require('./constants');
+const { setTraceExporter } = require('./trace');
 
 describe('#initResult', () => {
   test('initializes result object', () => {
@@ -47,6 +50,26 @@ describe('#buildArguments', () => {
   });
 });
 
+describe('#buildJavaOptions', () => {
+  afterEach(() => {
+    jest.restoreAllMocks();
+  });
+
+  test('uses class data sharing archive when it exists', () => {
+    jest.spyOn(fs, 'existsSync').mockImplementation(() => true);
+
+    expect(buildJavaOptions('self')).toEqual(
+      `-XX:SharedArchiveFile=self/${ClassDataArchivePath} -Xshare:auto `,
+    );
+  });
+
+  test('skips class data sharing archive when it is missing', () => {
+    jest.spyOn(fs, 'existsSync').mockImplementation(() => false);
+
+    expect(buildJavaOptions('self')).toEqual('');
+  });
+});
+
 describe('#parseResponse', () => {
   test('parses successful response', () => {
     const response = "STATUS=SUCCESS\nRESULT=HELLO\n";
@@ -112,4 +135,56 @@ describe('#executeCommand', () => {
 
     await executeCommand('command', { a: 'b' });
   });
+
+  test('rejects cancelled commands', async () => {
+    getInstalledPath.mockImplementation(() => 'fake-self-path');
+
+    exec.mockImplementation((cmd, callback) => {
+      expect(cmd).toEqual(`java -jar fake-self-path/${ExecutablePath} command --timeout "10"`);
+      callback(
+        null,
+        'STATUS=CANCELLED\nERROR_TYPE=CancelledException\nERROR_MESSAGE=Request deadline exceeded',
+      );
+
+      return { kill: jest.fn() };
+    });
+
+    await expect(executeCommand('command', { timeout: 10 })).rejects.toEqual(
+      'Cancelled CancelledException: Request deadline exceeded',
+    );
+  });
+
+  test('traces commands along with the JVM', async () => {
+    const traceId = '0af7651916cd43dd8448eb211c80319c';
+    const exporter = jest.fn();
+    setTraceExporter(exporter);
+
+    getInstalledPath.mockImplementation(() => 'fake-self-path');
+
+    exec.mockImplementation((cmd, callback) => {
+      expect(cmd).toMatch(new RegExp(
+        `command --a "b" --tracefile ".+" --traceparent "00-${traceId}-[0-9a-f]{16}-01"$`,
+      ));
+      callback(null, 'STATUS=SUCCESS');
+    });
+
+    try {
+      await executeCommand('command', {
+        a: 'b',
+        traceparent: `00-${traceId}-b7ad6b7169203331-01`,
+      });
+    } finally {
+      setTraceExporter(null);
+    }
+
+    const { spans } = exporter.mock.calls[0][0].resourceSpans[0].scopeSpans[0];
+    const [prepare, spawn, command] = spans;
+
+    expect(spans.map(({ name }) => name))
+      .toEqual(['prepare', 'process', 'command']);
+    expect(spans.every((span) => span.traceId === traceId)).toBe(true);
+    expect(command.parentSpanId).toEqual('b7ad6b7169203331');
+    expect(prepare.parentSpanId).toEqual(command.spanId);
+    expect(spawn.parentSpanId).toEqual(command.spanId);
+  });
 });
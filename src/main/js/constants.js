@@ -1,6 +1,11 @@
 const PackageName = 'pdf-signatures';
 const PackageVersion = '0.1.0';
 const ExecutablePath = `libs/${PackageName}-${PackageVersion}.jar`;
+const ClassDataArchivePath = `libs/${PackageName}-${PackageVersion}.jsa`;
+const ClassListPath = `libs/${PackageName}-${PackageVersion}.classlist`;
+// Time the JVM is given to report a timeout on its own before it is killed
+const KillGracePeriod = 5000;
+const TraceServiceName = `${PackageName}-node`;
 
 /**
  * @enum {string}
@@ -8,6 +13,7 @@ const ExecutablePath = `libs/${PackageName}-${PackageVersion}.jar`;
 const StatusTypes = {
   Success: 'SUCCESS',
   Error: 'ERROR',
+  Cancelled: 'CANCELLED',
 };
 
 /**
@@ -30,6 +36,17 @@ const ResponseKeysMap = {
   [ResponseKeys.ErrorMessage]: 'errorMessage',
 };
 
+/**
+ * OTLP span kinds
+ *
+ * @enum {number}
+ */
+const SpanKinds = {
+  Internal: 1,
+  Server: 2,
+  Client: 3,
+};
+
 /**
  * @enum {string}
  */
@@ -38,6 +55,9 @@ const CommandsMap = {
   AddPlaceholder: 'placeholder',
   SignDocument: 'sign',
   AddLtvInformation: 'ltv',
+  VerifySignatures: 'verify',
+  ExtractSignatures: 'extract',
+  PreflightCheck: 'preflight',
 };
 
 /**
@@ -63,9 +83,14 @@ module.exports = {
   PackageName,
   PackageVersion,
   ExecutablePath,
+  ClassDataArchivePath,
+  ClassListPath,
+  KillGracePeriod,
+  TraceServiceName,
   StatusTypes,
   ResponseKeys,
   ResponseKeysMap,
+  SpanKinds,
   CommandsMap,
   CertificationLevels,
   HashAlgorithms,
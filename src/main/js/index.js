@@ -1,7 +1,9 @@
 const constants = require('./constants');
 const pdf = require('./pdf');
+const { setTraceExporter } = require('./trace');
 
 module.exports = {
   ...constants,
   ...pdf,
+  setTraceExporter,
 };
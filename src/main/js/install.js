@@ -0,0 +1,66 @@
+const fs = require('fs');
+const path = require('path');
+const { execFileSync } = require('child_process');
+
+const {
+  ExecutablePath,
+  ClassDataArchivePath,
+  ClassListPath,
+} = require('./constants');
+
+/**
+ * Dump the class data sharing archive against the installed jar.
+ *
+ * The JVM only maps an archive dumped against the very jar file it runs:
+ * same path, size and modification time, which packing and installing the
+ * package change. So the archive is dumped once installed, from the class
+ * list recorded at build time, and checked with -Xshare:on; an archive the
+ * JVM rejects is removed, so that it is never passed silently.
+ *
+ * @param {string} selfPath - Installed package directory
+ * @returns {boolean} Whether a usable archive was created
+ */
+const createClassDataArchive = (selfPath) => {
+  const jarPath = `${selfPath}/${ExecutablePath}`;
+  const archivePath = `${selfPath}/${ClassDataArchivePath}`;
+  const classListPath = `${selfPath}/${ClassListPath}`;
+
+  if (!fs.existsSync(jarPath) || !fs.existsSync(classListPath)) {
+    return false;
+  }
+
+  try {
+    execFileSync('java', [
+      '-Xshare:dump',
+      `-XX:SharedClassListFile=${classListPath}`,
+      `-XX:SharedArchiveFile=${archivePath}`,
+      '-cp', jarPath,
+    ], { stdio: 'ignore' });
+
+    execFileSync('java', [
+      `-XX:SharedArchiveFile=${archivePath}`,
+      '-Xshare:on',
+      '-jar', jarPath,
+      'version',
+    ], { stdio: 'ignore' });
+
+    return true;
+  } catch (e) {
+    if (fs.existsSync(archivePath)) {
+      fs.unlinkSync(archivePath);
+    }
+
+    return false;
+  }
+};
+
+if (require.main === module) {
+  // Never fails the install, the package runs without the archive
+  if (!createClassDataArchive(path.resolve(__dirname, '../../..'))) {
+    console.log('No class data sharing archive, the JVM starts without it');
+  }
+}
+
+module.exports = {
+  createClassDataArchive,
+};
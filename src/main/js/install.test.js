@@ -0,0 +1,57 @@
+jest.mock('child_process');
+
+const fs = require('fs');
+const { execFileSync } = require('child_process');
+
+const { createClassDataArchive } = require('./install');
+const {
+  ExecutablePath,
+  ClassDataArchivePath,
+  ClassListPath,
+} = require('./constants');
+
+describe('#createClassDataArchive', () => {
+  afterEach(() => {
+    jest.restoreAllMocks();
+    execFileSync.mockReset();
+  });
+
+  test('dumps and checks the archive against the installed jar', () => {
+    jest.spyOn(fs, 'existsSync').mockImplementation(() => true);
+
+    expect(createClassDataArchive('self')).toEqual(true);
+    expect(execFileSync).toHaveBeenCalledWith('java', [
+      '-Xshare:dump',
+      `-XX:SharedClassListFile=self/${ClassListPath}`,
+      `-XX:SharedArchiveFile=self/${ClassDataArchivePath}`,
+      '-cp', `self/${ExecutablePath}`,
+    ], { stdio: 'ignore' });
+    expect(execFileSync).toHaveBeenCalledWith('java', [
+      `-XX:SharedArchiveFile=self/${ClassDataArchivePath}`,
+      '-Xshare:on',
+      '-jar', `self/${ExecutablePath}`,
+      'version',
+    ], { stdio: 'ignore' });
+  });
+
+  test('removes the archive the JVM rejects', () => {
+    jest.spyOn(fs, 'existsSync').mockImplementation(() => true);
+    const unlinkSync = jest.spyOn(fs, 'unlinkSync')
+      .mockImplementation(() => undefined);
+    execFileSync
+      .mockImplementationOnce(() => undefined)
+      .mockImplementationOnce(() => {
+        throw new Error('Unable to use shared archive');
+      });
+
+    expect(createClassDataArchive('self')).toEqual(false);
+    expect(unlinkSync).toHaveBeenCalledWith(`self/${ClassDataArchivePath}`);
+  });
+
+  test('skips the archive without a class list', () => {
+    jest.spyOn(fs, 'existsSync').mockImplementation(() => false);
+
+    expect(createClassDataArchive('self')).toEqual(false);
+    expect(execFileSync).not.toHaveBeenCalled();
+  });
+});
@@ -7,13 +7,29 @@ const { executeCommand } = require('./command');
  * @param {object} params
  * @param {string} params.file
  * @param {string} params.out
- * @param {number} [params.estimatedsize=30000]
+ * @param {number|string} [params.estimatedsize=30000] - Size in bytes, or
+ *   'auto' to size it after the signatures recorded in "sizestats"
  * @param {number} [params.certlevel=0]
  * @param {string} [params.password]
  * @param {string} [params.reason]
  * @param {string} [params.location]
  * @param {string} [params.contact]
  * @param {string} [params.date]
+ * @param {string} [params.algorithm='SHA-512']
+ * @param {string} [params.manifest] - Where to save the placeholder manifest
+ * @param {string} [params.sizestats] - Directory of recorded signature sizes
+ * @param {string} [params.profile='default'] - Signer profile
+ * @param {string} [params.deterministic] - Seed, given with a date the same
+ *   input always gives the same document
+ * @param {string} [params.certchain] - PEM or DER file of the signer chain,
+ *   signer first. The digest of the CMS signed attributes is returned, to be
+ *   signed raw and given to signPdf as "rawsignature"
+ * @param {number} [params.timeout] - Milliseconds the command may take, it
+ *   is rejected as cancelled past them
+ * @param {string} [params.traceparent] - W3C trace context the command
+ *   joins
+ * @param {string} [params.tracefile] - File the spans of the command and
+ *   the JVM are appended to, in the OTLP JSON format
  *
  * @returns {string} Bae64-encoded document digest
  */
@@ -27,6 +43,15 @@ const addSignaturePlaceholderToPdf = async ({
   location,
   contact,
   date,
+  algorithm,
+  manifest,
+  sizestats,
+  profile,
+  deterministic,
+  certchain,
+  timeout,
+  traceparent,
+  tracefile,
 }) => {
   if (!(file && out)) {
     throw new Error('\'file\' and \'out\' attributes are mandatory');
@@ -42,6 +67,165 @@ const addSignaturePlaceholderToPdf = async ({
     location,
     contact,
     date,
+    algorithm,
+    manifest,
+    sizestats,
+    profile,
+    deterministic,
+    certchain,
+    timeout,
+    traceparent,
+    tracefile,
+  });
+};
+
+/**
+ * Build a command line field spec.
+ *
+ * @param {object} field
+ *
+ * @returns {string} Semicolon-separated key=value pairs
+ */
+const fieldSpec = ({
+  name,
+  page,
+  rect,
+  size,
+  reason,
+  location,
+  contact,
+  image,
+  text,
+  font,
+  fontsize,
+}) => Object.entries({
+  name,
+  page,
+  rect: rect && rect.join(','),
+  size,
+  reason,
+  location,
+  contact,
+  image,
+  text: text && text.replace(/\n/g, '\\n'),
+  font,
+  fontsize,
+})
+  .filter(([, value]) => value !== undefined && value !== null)
+  .map(([key, value]) => {
+    if (String(value).includes(';')) {
+      throw new Error(`Field '${key}' may not contain ';'`);
+    }
+
+    return `${key}=${value}`;
+  })
+  .join(';');
+
+/**
+ * Create a new pdf with the signature placeholder of a single field, or with
+ * several empty fields added in a single incremental update.
+ *
+ * Fields added empty get their placeholder later on, one at a time, by
+ * calling this again with a single field of the same name. Each one is
+ * signed before the next placeholder is added, so n fields take n + 1
+ * calls: under PAdES every signature covers the ones signed before it.
+ *
+ * @param {object} params
+ * @param {string} params.file
+ * @param {string} params.out
+ * @param {Array<{name: string, page: number, rect: Array<number>,
+ *   size: number, reason: string, location: string, contact: string,
+ *   image: string, text: string, font: string, fontsize: number}>}
+ *   params.fields - Fields to add, every attribute is optional. Fields with
+ *   an image or a text are visible and need a rect, unless they were added
+ *   empty beforehand
+
+ * @param {number|string} [params.estimatedsize=30000] - Size of fields
+ *   without one, or 'auto' to size them after "sizestats"
+ * @param {number} [params.certlevel=0] - Only a single field may certify
+ * @param {string} [params.password]
+ * @param {string} [params.date]
+ * @param {string} [params.algorithm='SHA-512']
+ * @param {string} [params.manifest] - Where to save the placeholder manifest,
+ *   single field only
+ * @param {string} [params.sizestats] - Directory of recorded signature sizes
+ * @param {string} [params.profile='default'] - Signer profile
+ * @param {string} [params.deterministic] - Seed, given with a date the same
+ *   input always gives the same document
+ * @param {string} [params.certchain] - PEM or DER file of the signer chain,
+ *   the digest returned is the one of the CMS signed attributes, single
+ *   field only
+ * @param {number} [params.timeout] - Milliseconds the command may take, it
+ *   is rejected as cancelled past them
+ * @param {string} [params.traceparent] - W3C trace context the command
+ *   joins
+ * @param {string} [params.tracefile] - File the spans of the command and
+ *   the JVM are appended to, in the OTLP JSON format
+ *
+ * @returns {Array<{name: string, byteRange: Array<number>, digest: string}>}
+ *   Byte range and Base64-encoded digest of a single field, or the names of
+ *   the fields added empty, in the given order
+ */
+const addSignaturePlaceholdersToPdf = async ({
+  file,
+  out,
+  fields,
+  estimatedsize,
+  certlevel,
+  password,
+  date,
+  algorithm,
+  manifest,
+  sizestats,
+  profile,
+  deterministic,
+  certchain,
+  timeout,
+  traceparent,
+  tracefile,
+}) => {
+  if (!(file && out && fields)) {
+    throw new Error(
+      '\'file\', \'out\' and \'fields\' attributes are mandatory',
+    );
+  }
+
+  if (!(fields instanceof Array && fields.length > 0)) {
+    throw new Error('\'fields\' attribute must be a non-empty array');
+  }
+
+  const result = await executeCommand(CommandsMap.AddPlaceholder, {
+    file,
+    out,
+    fieldspec: fields.map(fieldSpec),
+    estimatedsize,
+    certlevel,
+    password,
+    date,
+    algorithm,
+    manifest,
+    sizestats,
+    profile,
+    deterministic,
+    certchain,
+    timeout,
+    traceparent,
+    tracefile,
+  });
+
+  if (fields.length > 1) {
+    return result.split(';').map(name => ({ name }));
+  }
+
+  return result.split(';').map((entry) => {
+    const parts = entry.split(':');
+    const [byteRange, digest] = parts.slice(-2);
+
+    return {
+      name: parts.slice(0, -2).join(':'),
+      byteRange: byteRange.split(' ').map(Number),
+      digest,
+    };
   });
 };
 
@@ -52,10 +236,30 @@ const addSignaturePlaceholderToPdf = async ({
  * @param {string} params.file
  * @param {string} [params.password]
  * @param {string} [params.algorithm='SHA-512']
+ * @param {string} [params.manifest] - Placeholder manifest
+ * @param {string} [params.field] - Signature field to hash the byte range of
+ * @param {string} [params.certchain] - PEM or DER file of the signer chain,
+ *   the digest of the CMS signed attributes is returned
+ * @param {number} [params.timeout] - Milliseconds the command may take, it
+ *   is rejected as cancelled past them
+ * @param {string} [params.traceparent] - W3C trace context the command
+ *   joins
+ * @param {string} [params.tracefile] - File the spans of the command and
+ *   the JVM are appended to, in the OTLP JSON format
  *
  * @returns {string} Bae64-encoded document digest
  */
-const pdfDigest = async ({ file, password, algorithm }) => {
+const pdfDigest = async ({
+  file,
+  password,
+  algorithm,
+  manifest,
+  field,
+  certchain,
+  timeout,
+  traceparent,
+  tracefile,
+}) => {
   if (!(file)) {
     throw new Error('\'file\' attribute is mandatory');
   }
@@ -64,6 +268,12 @@ const pdfDigest = async ({ file, password, algorithm }) => {
     file,
     password,
     algorithm,
+    manifest,
+    field,
+    certchain,
+    timeout,
+    traceparent,
+    tracefile,
   });
 };
 
@@ -73,8 +283,30 @@ const pdfDigest = async ({ file, password, algorithm }) => {
  * @param {object} params
  * @param {string} params.file
  * @param {string} params.out
- * @param {string} params.signature - Base64-encoded external signature
+ * @param {string} [params.signature] - Base64-encoded external signature,
+ *   embedded into the empty placeholder
+ * @param {object} [params.signatures] - Base64-encoded external signatures
+ *   by field name, used instead of "signature"
+ * @param {string} [params.rawsignature] - Base64-encoded raw signature of
+ *   the signed attributes digest, used instead of "signature". The CMS
+ *   container is assembled around it
+ * @param {string} [params.certchain] - PEM or DER file of the signer chain,
+ *   required with "rawsignature"
+ * @param {string} [params.algorithm='SHA-512'] - Digest algorithm of the
+ *   raw signature
+ * @param {string} [params.field] - Field of the raw signature, needed unless
+ *   a single placeholder is empty
  * @param {string} [params.password]
+ * @param {string} [params.manifest] - Placeholder manifest
+ * @param {string} [params.sizestats] - Directory where to record the
+ *   embedded signature sizes
+ * @param {string} [params.profile='default'] - Signer profile
+ * @param {number} [params.timeout] - Milliseconds the command may take, it
+ *   is rejected as cancelled past them
+ * @param {string} [params.traceparent] - W3C trace context the command
+ *   joins
+ * @param {string} [params.tracefile] - File the spans of the command and
+ *   the JVM are appended to, in the OTLP JSON format
  *
  * @returns {string} Signed document path
  */
@@ -82,19 +314,58 @@ const signPdf = async ({
   file,
   out,
   signature,
+  signatures,
+  rawsignature,
+  certchain,
+  algorithm,
+  field,
   password,
+  manifest,
+  sizestats,
+  profile,
+  timeout,
+  traceparent,
+  tracefile,
 }) => {
-  if (!(file && out && signature)) {
+  if (!(file && out && (signature || signatures || rawsignature))) {
     throw new Error(
       '\'file\', \'out\' and \'signature\' attributes are mandatory',
     );
   }
 
+  if (signature && signatures) {
+    throw new Error(
+      'Either \'signature\' or \'signatures\' attribute may be set',
+    );
+  }
+
+  if (rawsignature && (signature || signatures)) {
+    throw new Error(
+      '\'rawsignature\' may not be set along with \'signature\' or \'signatures\'',
+    );
+  }
+
+  if (rawsignature && !certchain) {
+    throw new Error('\'certchain\' attribute is mandatory with \'rawsignature\'');
+  }
+
   return executeCommand(CommandsMap.SignDocument, {
     file,
     out,
     signature,
+    fieldsignature: signatures && Object.entries(signatures)
+      .map(([field, fieldSignature]) => `${field}:${fieldSignature}`),
+    rawsignature,
+    certchain,
+    algorithm,
+    field,
     password,
+    manifest,
+    sizestats,
+    profile,
+    timeout,
+    traceparent,
+    tracefile,
   });
 };
 
@@ -104,30 +375,233 @@ const signPdf = async ({
  * @param {object} params
  * @param {string} params.file
  * @param {string} params.out
- * @param {Array<string>} params.crl
- * @param {Array<string>} params.ocsp
+ * @param {Array<string>} params.crl - May be omitted when a store is given
+ * @param {Array<string>} params.ocsp - May be omitted when a store is given
+ * @param {string} [params.store] - Directory of stored CRLs and OCSPs
+ * @param {number} [params.timeout] - Milliseconds the command may take, it
+ *   is rejected as cancelled past them
+ * @param {string} [params.traceparent] - W3C trace context the command
+ *   joins
+ * @param {string} [params.tracefile] - File the spans of the command and
+ *   the JVM are appended to, in the OTLP JSON format
  *
  * @returns {string} Path of a new document
  */
-const addLtvToPdf = async ({ file, out, crl, ocsp }) => {
-  if (!(file && out && crl && ocsp)) {
+const addLtvToPdf = async ({
+  file,
+  out,
+  crl,
+  ocsp,
+  store,
+  timeout,
+  traceparent,
+  tracefile,
+}) => {
+  if (!(file && out && ((crl && ocsp) || store))) {
     throw new Error(
       '\'file\', \'out\', \'crl\' and \'ocsp\' attributes are mandatory',
     );
   }
 
-  if (!(crl instanceof Array && ocsp instanceof Array)) {
+  if (!((crl || []) instanceof Array && (ocsp || []) instanceof Array)) {
     throw new Error('\'crl\' and \'ocsp\' attributes must be arrays');
   }
 
   return executeCommand(
-    CommandsMap.AddLtvInformation, { file, out, crl, ocsp },
+    CommandsMap.AddLtvInformation, {
+      file,
+      out,
+      crl,
+      ocsp,
+      store,
+      timeout,
+      traceparent,
+      tracefile,
+    },
+  );
+};
+
+/**
+ * Verify every signature of the document.
+ *
+ * @param {object} params
+ * @param {string} params.file
+ * @param {string} [params.password]
+ * @param {string} [params.manifest] - Placeholder manifest
+ * @param {number} [params.timeout] - Milliseconds the command may take, it
+ *   is rejected as cancelled past them
+ * @param {string} [params.traceparent] - W3C trace context the command
+ *   joins
+ * @param {string} [params.tracefile] - File the spans of the command and
+ *   the JVM are appended to, in the OTLP JSON format
+ *
+ * @returns {Array<{name: string, status: string, coverage: string}>}
+ *   Verification result of every signature, in the signature fields order
+ */
+const verifyPdf = async ({
+  file,
+  password,
+  manifest,
+  timeout,
+  traceparent,
+  tracefile,
+}) => {
+  if (!(file)) {
+    throw new Error('\'file\' attribute is mandatory');
+  }
+
+  const result = await executeCommand(
+    CommandsMap.VerifySignatures, {
+      file,
+      password,
+      manifest,
+      timeout,
+      traceparent,
+      tracefile,
+    },
+  );
+
+  if (!result) {
+    return [];
+  }
+
+  return result.split(',').map((entry) => {
+    const fields = entry.split(':');
+    const [status, coverage] = fields.slice(-2);
+
+    return { name: fields.slice(0, -2).join(':'), status, coverage };
+  });
+};
+
+/**
+ * Extract the PKCS7 of every document signature, and optionally the
+ * revision every signature signs.
+ *
+ * @param {object} params
+ * @param {string} params.file
+ * @param {string} [params.out] - Directory where to write the PKCS7 files,
+ *   they are returned Base64-encoded if omitted
+ * @param {string} [params.revisions] - Directory where to write the signed
+ *   revisions
+ * @param {string} [params.password]
+ * @param {string} [params.manifest] - Placeholder manifest
+ * @param {number} [params.timeout] - Milliseconds the command may take, it
+ *   is rejected as cancelled past them
+ * @param {string} [params.traceparent] - W3C trace context the command
+ *   joins
+ * @param {string} [params.tracefile] - File the spans of the command and
+ *   the JVM are appended to, in the OTLP JSON format
+ *
+ * @returns {Array<{name: string, contents: string, revision: string}>}
+ *   PKCS7 file path (or Base64-encoded PKCS7) and revision file path of
+ *   every signature, in the signature fields order. Both are empty for empty
+ *   placeholders
+ */
+const extractSignatures = async ({
+  file,
+  out,
+  revisions,
+  password,
+  manifest,
+  timeout,
+  traceparent,
+  tracefile,
+}) => {
+  if (!(file)) {
+    throw new Error('\'file\' attribute is mandatory');
+  }
+
+  const result = await executeCommand(
+    CommandsMap.ExtractSignatures, {
+      file,
+      out,
+      revisions,
+      password,
+      manifest,
+      timeout,
+      traceparent,
+      tracefile,
+    },
+  );
+
+  if (!result) {
+    return [];
+  }
+
+  return result.split(',').map((entry) => {
+    const fields = entry.split(':');
+    const [contents, revision] = fields.slice(-2);
+
+    return { name: fields.slice(0, -2).join(':'), contents, revision };
+  });
+};
+
+/**
+ * Check the document integrity before working on it: the document must not
+ * be truncated and the byte range of every signature must be sound. Only
+ * the tail of the document and the signature dictionaries are read.
+ *
+ * @param {object} params
+ * @param {string} params.file
+ * @param {string} [params.password]
+ * @param {number} [params.timeout] - Milliseconds the command may take, it
+ *   is rejected as cancelled past them
+ * @param {string} [params.traceparent] - W3C trace context the command
+ *   joins
+ * @param {string} [params.tracefile] - File the spans of the command and
+ *   the JVM are appended to, in the OTLP JSON format
+ *
+ * @returns {{encrypted: boolean, certificationLevel: number,
+ *   signatures: Array<{name: string, coverage: string}>}}
+ *   Encryption, certification level (see CertificationLevels) and coverage
+ *   of every signature, rejected if the document is not sound
+ */
+const preflightPdf = async ({
+  file,
+  password,
+  timeout,
+  traceparent,
+  tracefile,
+}) => {
+  if (!(file)) {
+    throw new Error('\'file\' attribute is mandatory');
+  }
+
+  const result = await executeCommand(
+    CommandsMap.PreflightCheck, {
+      file,
+      password,
+      timeout,
+      traceparent,
+      tracefile,
+    },
   );
+
+  const [, encrypted, certificationLevel, signatures] = result.match(
+    /^encrypted=(true|false);certlevel=(\d+);signatures=(.*)$/,
+  );
+
+  return {
+    encrypted: encrypted === 'true',
+    certificationLevel: Number(certificationLevel),
+    signatures: signatures ? signatures.split(',').map((entry) => {
+      const separator = entry.lastIndexOf(':');
+
+      return {
+        name: entry.slice(0, separator),
+        coverage: entry.slice(separator + 1),
+      };
+    }) : [],
+  };
 };
 
 module.exports = {
   addSignaturePlaceholderToPdf,
+  addSignaturePlaceholdersToPdf,
   pdfDigest,
   signPdf,
   addLtvToPdf,
+  verifyPdf,
+  extractSignatures,
+  preflightPdf,
 };
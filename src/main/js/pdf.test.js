@@ -1,8 +1,12 @@
 const {
   addSignaturePlaceholderToPdf,
+  addSignaturePlaceholdersToPdf,
   pdfDigest,
   signPdf,
   addLtvToPdf,
+  verifyPdf,
+  extractSignatures,
+  preflightPdf,
 } = require('./pdf');
 
 jest.mock('./command');
@@ -51,6 +55,153 @@ describe('#addSignaturePlaceholderToPdf', () => {
   });
 });
 
+describe('#addSignaturePlaceholderToPdf with automatic size', () => {
+  test('passes size stats through', async () => {
+    await addSignaturePlaceholderToPdf({
+      file: 'my-file.pdf',
+      out: 'out-file.pdf',
+      estimatedsize: 'auto',
+      sizestats: 'sizes',
+      profile: 'seal',
+    });
+
+    expect(executeCommand).toHaveBeenCalledWith('placeholder', {
+      file: 'my-file.pdf',
+      out: 'out-file.pdf',
+      estimatedsize: 'auto',
+      sizestats: 'sizes',
+      profile: 'seal',
+    });
+  });
+});
+
+describe('#addSignaturePlaceholderToPdf in deterministic mode', () => {
+  test('passes the seed through', async () => {
+    await addSignaturePlaceholderToPdf({
+      file: 'my-file.pdf',
+      out: 'out-file.pdf',
+      date: '2019-10-01T10:00:00Z',
+      deterministic: 'request-42',
+    });
+
+    expect(executeCommand).toHaveBeenCalledWith('placeholder', {
+      file: 'my-file.pdf',
+      out: 'out-file.pdf',
+      date: '2019-10-01T10:00:00Z',
+      deterministic: 'request-42',
+    });
+  });
+});
+
+describe('#addSignaturePlaceholdersToPdf', () => {
+  test('requires "fields" to be set', async () => {
+    await expect(addSignaturePlaceholdersToPdf({
+      file: 'file.pdf',
+      out: 'out.pdf',
+    }))
+      .rejects
+      .toEqual(new Error(
+        '\'file\', \'out\' and \'fields\' attributes are mandatory',
+      ));
+  });
+
+  test('requires "fields" to be a non-empty array', async () => {
+    await expect(addSignaturePlaceholdersToPdf({
+      file: 'file.pdf',
+      out: 'out.pdf',
+      fields: [],
+    }))
+      .rejects
+      .toEqual(new Error('\'fields\' attribute must be a non-empty array'));
+  });
+
+  test('rejects field values containing the separator', async () => {
+    await expect(addSignaturePlaceholdersToPdf({
+      file: 'file.pdf',
+      out: 'out.pdf',
+      fields: [{ reason: 'a;b' }],
+    }))
+      .rejects
+      .toEqual(new Error('Field \'reason\' may not contain \';\''));
+  });
+
+  test('calls #executeCommand with field specs', async () => {
+    executeCommand.mockResolvedValueOnce('Buyer;Signature2');
+
+    await addSignaturePlaceholdersToPdf({
+      file: 'my-file.pdf',
+      out: 'out-file.pdf',
+      fields: [
+        { name: 'Buyer', page: 2, rect: [36, 36, 236, 96] },
+        { size: 12000, reason: 'reason' },
+      ],
+      algorithm: 'SHA-256',
+    });
+
+    expect(executeCommand).toHaveBeenCalledWith('placeholder', {
+      file: 'my-file.pdf',
+      out: 'out-file.pdf',
+      fieldspec: [
+        'name=Buyer;page=2;rect=36,36,236,96',
+        'size=12000;reason=reason',
+      ],
+      algorithm: 'SHA-256',
+    });
+  });
+
+  test('passes visible appearance of fields', async () => {
+    executeCommand.mockResolvedValueOnce('Buyer:0 10 20 30:ZGlnZXN0');
+
+    await addSignaturePlaceholdersToPdf({
+      file: 'my-file.pdf',
+      out: 'out-file.pdf',
+      fields: [{
+        rect: [0, 0, 200, 50],
+        image: 'logo.png',
+        text: 'Signed by {contact}\non {date}',
+        fontsize: 8,
+      }],
+    });
+
+    expect(executeCommand).toHaveBeenCalledWith('placeholder', {
+      file: 'my-file.pdf',
+      out: 'out-file.pdf',
+      fieldspec: [
+        'rect=0,0,200,50;image=logo.png;text=Signed by {contact}\\non {date};fontsize=8',
+      ],
+    });
+  });
+
+  test('parses the byte range and the digest of a field', async () => {
+    executeCommand.mockResolvedValueOnce('Sig:2:0 10 20 30:ZGlnZXN0');
+
+    await expect(addSignaturePlaceholdersToPdf({
+      file: 'file.pdf',
+      out: 'out.pdf',
+      fields: [{ name: 'Sig:2' }],
+    })).resolves.toEqual([
+      {
+        name: 'Sig:2',
+        byteRange: [0, 10, 20, 30],
+        digest: 'ZGlnZXN0',
+      },
+    ]);
+  });
+
+  test('parses the names of fields added empty', async () => {
+    executeCommand.mockResolvedValueOnce('Buyer;Sig:2');
+
+    await expect(addSignaturePlaceholdersToPdf({
+      file: 'file.pdf',
+      out: 'out.pdf',
+      fields: [{ name: 'Buyer' }, { name: 'Sig:2' }],
+    })).resolves.toEqual([
+      { name: 'Buyer' },
+      { name: 'Sig:2' },
+    ]);
+  });
+});
+
 describe('#pdfDigest', () => {
   test('requires "file" to be set', async () => {
     await expect(pdfDigest({}))
@@ -111,6 +262,94 @@ describe('#signPdf', () => {
       password: '123456',
     });
   });
+  test('passes "manifest" through', async () => {
+    await signPdf({
+      file: 'file.pdf',
+      out: 'out.pdf',
+      signature: 'signature',
+      manifest: 'file.manifest',
+    });
+
+    expect(executeCommand).toHaveBeenCalledWith('sign', {
+      file: 'file.pdf',
+      out: 'out.pdf',
+      signature: 'signature',
+      manifest: 'file.manifest',
+    });
+  });
+
+  test('passes size stats through', async () => {
+    await signPdf({
+      file: 'file.pdf',
+      out: 'out.pdf',
+      signature: 'signature',
+      sizestats: 'sizes',
+      profile: 'seal',
+    });
+
+    expect(executeCommand).toHaveBeenCalledWith('sign', {
+      file: 'file.pdf',
+      out: 'out.pdf',
+      signature: 'signature',
+      sizestats: 'sizes',
+      profile: 'seal',
+    });
+  });
+
+  test('passes "signatures" as field signatures', async () => {
+    await signPdf({
+      file: 'file.pdf',
+      out: 'out.pdf',
+      signatures: { Signature1: 'first', Signature2: 'second' },
+    });
+
+    expect(executeCommand).toHaveBeenCalledWith('sign', {
+      file: 'file.pdf',
+      out: 'out.pdf',
+      fieldsignature: ['Signature1:first', 'Signature2:second'],
+    });
+  });
+
+  test('rejects both "signature" and "signatures"', async () => {
+    await expect(signPdf({
+      file: 'file.pdf',
+      out: 'out.pdf',
+      signature: 'signature',
+      signatures: { Signature1: 'first' },
+    }))
+      .rejects
+      .toEqual(new Error('Either \'signature\' or \'signatures\' attribute may be set'));
+  });
+
+  test('passes a raw signature with its certificate chain', async () => {
+    await signPdf({
+      file: 'file.pdf',
+      out: 'out.pdf',
+      rawsignature: 'raw',
+      certchain: 'chain.pem',
+      algorithm: 'SHA-256',
+      field: 'Buyer',
+    });
+
+    expect(executeCommand).toHaveBeenCalledWith('sign', {
+      file: 'file.pdf',
+      out: 'out.pdf',
+      rawsignature: 'raw',
+      certchain: 'chain.pem',
+      algorithm: 'SHA-256',
+      field: 'Buyer',
+    });
+  });
+
+  test('requires "certchain" along with "rawsignature"', async () => {
+    await expect(signPdf({
+      file: 'file.pdf',
+      out: 'out.pdf',
+      rawsignature: 'raw',
+    }))
+      .rejects
+      .toEqual(new Error('\'certchain\' attribute is mandatory with \'rawsignature\''));
+  });
 });
 
 describe('#addLtvToPdf', () => {
@@ -153,4 +392,130 @@ describe('#addLtvToPdf', () => {
       crl: [],
     });
   });
+
+  test('allows "crl" and "ocsp" to be omitted with "store"', async () => {
+    await addLtvToPdf({
+      file: 'file.pdf',
+      out: 'out.pdf',
+      store: '/var/lib/revocation',
+    });
+
+    expect(executeCommand).toHaveBeenCalledWith('ltv', {
+      file: 'file.pdf',
+      out: 'out.pdf',
+      store: '/var/lib/revocation',
+    });
+  });
+});
+
+describe('#verifyPdf', () => {
+  test('requires "file" to be set', async () => {
+    await expect(verifyPdf({}))
+      .rejects
+      .toEqual(new Error('\'file\' attribute is mandatory'));
+  });
+
+  test('calls #executeCommand with proper arguments', async () => {
+    await verifyPdf({ file: 'file.pdf', password: '123456' });
+
+    expect(executeCommand).toHaveBeenCalledWith('verify', {
+      file: 'file.pdf',
+      password: '123456',
+    });
+  });
+
+  test('parses verification results', async () => {
+    executeCommand.mockResolvedValueOnce(
+      'Signature1:VALID:COVERS_REVISION,Sig:2:INVALID:COVERS_DOCUMENT',
+    );
+
+    await expect(verifyPdf({ file: 'file.pdf' })).resolves.toEqual([
+      { name: 'Signature1', status: 'VALID', coverage: 'COVERS_REVISION' },
+      { name: 'Sig:2', status: 'INVALID', coverage: 'COVERS_DOCUMENT' },
+    ]);
+  });
+
+  test('returns no results for unsigned document', async () => {
+    executeCommand.mockResolvedValueOnce('');
+
+    await expect(verifyPdf({ file: 'file.pdf' })).resolves.toEqual([]);
+  });
+});
+
+describe('#extractSignatures', () => {
+  test('requires "file" to be set', async () => {
+    await expect(extractSignatures({}))
+      .rejects
+      .toEqual(new Error('\'file\' attribute is mandatory'));
+  });
+
+  test('calls #executeCommand with proper arguments', async () => {
+    await extractSignatures({
+      file: 'file.pdf',
+      out: 'signatures',
+      revisions: 'revisions',
+    });
+
+    expect(executeCommand).toHaveBeenCalledWith('extract', {
+      file: 'file.pdf',
+      out: 'signatures',
+      revisions: 'revisions',
+    });
+  });
+
+  test('parses extracted signatures', async () => {
+    executeCommand.mockResolvedValueOnce(
+      'Signature1:signatures/file.Signature1.p7s:revisions/file.Signature1.pdf,Sig:2::',
+    );
+
+    await expect(extractSignatures({ file: 'file.pdf' })).resolves.toEqual([
+      {
+        name: 'Signature1',
+        contents: 'signatures/file.Signature1.p7s',
+        revision: 'revisions/file.Signature1.pdf',
+      },
+      { name: 'Sig:2', contents: '', revision: '' },
+    ]);
+  });
+});
+
+describe('#preflightPdf', () => {
+  test('requires "file" to be set', async () => {
+    await expect(preflightPdf({}))
+      .rejects
+      .toEqual(new Error('\'file\' attribute is mandatory'));
+  });
+
+  test('calls #executeCommand with proper arguments', async () => {
+    executeCommand.mockResolvedValueOnce(
+      'encrypted=false;certlevel=0;signatures=',
+    );
+
+    await expect(preflightPdf({ file: 'file.pdf', password: '123456' }))
+      .resolves.toEqual({
+        encrypted: false,
+        certificationLevel: 0,
+        signatures: [],
+      });
+
+    expect(executeCommand).toHaveBeenCalledWith('preflight', {
+      file: 'file.pdf',
+      password: '123456',
+    });
+  });
+
+  test('parses the report', async () => {
+    executeCommand.mockResolvedValueOnce(
+      'encrypted=true;certlevel=2;signatures=Signature1:COVERS_REVISION,Sig:2:COVERS_DOCUMENT',
+    );
+
+    await expect(preflightPdf({ file: 'file.pdf' })).resolves.toEqual({
+      encrypted: true,
+      certificationLevel: 2,
+      signatures: [
+        { name: 'Signature1', coverage: 'COVERS_REVISION' },
+        { name: 'Sig:2', coverage: 'COVERS_DOCUMENT' },
+      ],
+    });
+  });
 });
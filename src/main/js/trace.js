@@ -0,0 +1,232 @@
+const crypto = require('crypto');
+const fs = require('fs');
+const os = require('os');
+const path = require('path');
+const { promisify } = require('util');
+
+const {
+  PackageName,
+  PackageVersion,
+  TraceServiceName,
+  SpanKinds,
+} = require('./constants');
+
+const appendFile = promisify(fs.appendFile);
+const readFile = promisify(fs.readFile);
+const unlink = promisify(fs.unlink);
+
+const epoch = Date.now();
+const anchor = process.hrtime();
+
+let traceExporter = null;
+
+/**
+ * Hand the spans of every command to the given function, along with the
+ * spans of the JVM. It is called with an OTLP JSON export request, i.e.
+ * { resourceSpans: [...] }, and may return a promise.
+ *
+ * @param {function|null} exporter - Exporter, or null to stop exporting
+ */
+const setTraceExporter = (exporter) => {
+  traceExporter = exporter;
+};
+
+/**
+ * Whether commands are traced.
+ *
+ * @param {string} [tracefile]
+ * @returns {boolean}
+ */
+const isTracing = (tracefile) => Boolean(tracefile || traceExporter);
+
+const randomId = (bytes) => crypto.randomBytes(bytes).toString('hex');
+
+/**
+ * Current time in nanoseconds since the epoch. It is a string, as OTLP JSON
+ * encodes it: nanoseconds do not fit a number.
+ *
+ * @returns {string}
+ */
+const now = () => {
+  const [seconds, nanoseconds] = process.hrtime(anchor);
+  const milliseconds = epoch + seconds * 1000 + Math.floor(nanoseconds / 1e6);
+
+  return `${milliseconds}${String(nanoseconds % 1e6).padStart(6, '0')}`;
+};
+
+/**
+ * Parse a W3C trace context.
+ *
+ * @param {string} [traceparent]
+ * @returns {object|null} Trace and parent span ids, null if invalid
+ */
+const parseTraceparent = (traceparent) => {
+  const matches = /^[0-9a-f]{2}-([0-9a-f]{32})-([0-9a-f]{16})-[0-9a-f]{2}$/
+    .exec(String(traceparent || '').trim());
+
+  if (!matches || /^0+$/.test(matches[1]) || /^0+$/.test(matches[2])) {
+    return null;
+  }
+
+  return { traceId: matches[1], spanId: matches[2] };
+};
+
+const createSpan = (trace, name, parentSpanId, kind) => ({
+  trace,
+  name,
+  parentSpanId,
+  kind,
+  spanId: randomId(8),
+  startTimeUnixNano: now(),
+});
+
+/**
+ * Start the span of a command, which joins the trace of the given context
+ * or starts a new one.
+ *
+ * @param {string} name
+ * @param {string} [traceparent]
+ * @returns {object} span
+ */
+const startTrace = (name, traceparent) => {
+  const parent = parseTraceparent(traceparent);
+  const trace = { traceId: parent ? parent.traceId : randomId(16), spans: [] };
+
+  return createSpan(
+    trace, name, parent ? parent.spanId : undefined, SpanKinds.Client,
+  );
+};
+
+/**
+ * Start a phase of a traced command.
+ *
+ * @param {object} parent - Span of the command
+ * @param {string} name
+ * @returns {object} span
+ */
+const startSpan = (parent, name) => createSpan(
+  parent.trace, name, parent.spanId, SpanKinds.Internal,
+);
+
+/**
+ * End a span, recording it in its trace.
+ *
+ * @param {object} span
+ * @param {*} [error] - Error the span ended with
+ */
+const endSpan = (span, error) => {
+  span.trace.spans.push({
+    traceId: span.trace.traceId,
+    spanId: span.spanId,
+    ...(span.parentSpanId ? { parentSpanId: span.parentSpanId } : {}),
+    name: span.name,
+    kind: span.kind,
+    startTimeUnixNano: span.startTimeUnixNano,
+    endTimeUnixNano: now(),
+    ...(error ? { status: { code: 2, message: String(error) } } : {}),
+  });
+};
+
+/**
+ * W3C trace context which makes the JVM spans children of the given span.
+ *
+ * @param {object} span
+ * @returns {string}
+ */
+const toTraceparent = (span) => `00-${span.trace.traceId}-${span.spanId}-01`;
+
+/**
+ * Path of a file the JVM writes its spans to, read back once it exits.
+ *
+ * @returns {string}
+ */
+const createTraceFilePath = () => path.join(
+  os.tmpdir(), `${PackageName}-${randomId(8)}.trace`,
+);
+
+/**
+ * OTLP JSON export request of the given spans.
+ *
+ * @param {object[]} spans
+ * @returns {object}
+ */
+const buildExportRequest = (spans) => ({
+  resourceSpans: [{
+    resource: {
+      attributes: [
+        { key: 'service.name', value: { stringValue: TraceServiceName } },
+        { key: 'service.version', value: { stringValue: PackageVersion } },
+      ],
+    },
+    scopeSpans: [{
+      scope: { name: PackageName, version: PackageVersion },
+      spans,
+    }],
+  }],
+});
+
+/**
+ * Read the export requests the JVM wrote, one per line, and delete them.
+ *
+ * @param {string} jvmTraceFile
+ * @returns {object[]} export requests
+ */
+const collectJvmTrace = async (jvmTraceFile) => {
+  try {
+    const content = await readFile(jvmTraceFile, 'utf8');
+    await unlink(jvmTraceFile);
+
+    return content.split('\n').filter((line) => line).map(JSON.parse);
+  } catch (error) {
+    // The JVM exited before writing any span
+    return [];
+  }
+};
+
+/**
+ * Export the spans of a command along with the spans of the JVM: appended
+ * to the trace file, one export request per line, and handed to the trace
+ * exporter. Tracing never fails a command, errors are ignored.
+ *
+ * @param {object} span - Ended span of the command
+ * @param {string} [tracefile]
+ * @param {string} jvmTraceFile
+ */
+const exportTrace = async (span, tracefile, jvmTraceFile) => {
+  const requests = [
+    buildExportRequest(span.trace.spans),
+    ...(await collectJvmTrace(jvmTraceFile)),
+  ];
+
+  try {
+    if (tracefile) {
+      await appendFile(
+        tracefile,
+        requests.map((request) => `${JSON.stringify(request)}\n`).join(''),
+      );
+    }
+
+    if (traceExporter) {
+      await traceExporter({
+        resourceSpans: requests.reduce(
+          (result, request) => [...result, ...request.resourceSpans], [],
+        ),
+      });
+    }
+  } catch (error) {
+    // Spans are lost, the command they describe is not
+  }
+};
+
+module.exports = {
+  setTraceExporter,
+  isTracing,
+  parseTraceparent,
+  startTrace,
+  startSpan,
+  endSpan,
+  toTraceparent,
+  createTraceFilePath,
+  buildExportRequest,
+  exportTrace,
+};
@@ -0,0 +1,85 @@
+const fs = require('fs');
+const os = require('os');
+const path = require('path');
+
+const {
+  parseTraceparent,
+  startTrace,
+  startSpan,
+  endSpan,
+  toTraceparent,
+  createTraceFilePath,
+  exportTrace,
+} = require('./trace');
+
+const traceId = '0af7651916cd43dd8448eb211c80319c';
+const traceparent = `00-${traceId}-b7ad6b7169203331-01`;
+
+describe('#parseTraceparent', () => {
+  test('parses trace contexts', () => {
+    expect(parseTraceparent(traceparent)).toEqual({
+      traceId,
+      spanId: 'b7ad6b7169203331',
+    });
+  });
+
+  test('rejects invalid trace contexts', () => {
+    expect(parseTraceparent(undefined)).toBeNull();
+    expect(parseTraceparent('00-abc-def-01')).toBeNull();
+    expect(parseTraceparent(
+      '00-00000000000000000000000000000000-b7ad6b7169203331-01',
+    )).toBeNull();
+  });
+});
+
+describe('#startTrace', () => {
+  test('joins the trace of the given context', () => {
+    const span = startTrace('sign', traceparent);
+
+    expect(span.trace.traceId).toEqual(traceId);
+    expect(span.parentSpanId).toEqual('b7ad6b7169203331');
+    expect(toTraceparent(span)).toEqual(`00-${traceId}-${span.spanId}-01`);
+  });
+
+  test('starts a new trace without context', () => {
+    const span = startTrace('sign');
+
+    expect(span.trace.traceId).toMatch(/^[0-9a-f]{32}$/);
+    expect(span.parentSpanId).toBeUndefined();
+  });
+});
+
+describe('#exportTrace', () => {
+  const tracefile = path.join(os.tmpdir(), 'pdf-signatures-test.trace');
+
+  afterEach(() => {
+    if (fs.existsSync(tracefile)) {
+      fs.unlinkSync(tracefile);
+    }
+  });
+
+  test('appends node and JVM spans to the trace file', async () => {
+    const span = startTrace('sign', traceparent);
+    const phase = startSpan(span, 'process');
+    const jvmTraceFile = createTraceFilePath();
+    const jvmRequest = { resourceSpans: [{ scopeSpans: [] }] };
+
+    fs.writeFileSync(jvmTraceFile, `${JSON.stringify(jvmRequest)}\n`);
+
+    endSpan(phase);
+    endSpan(span, 'Error failed');
+    await exportTrace(span, tracefile, jvmTraceFile);
+
+    const lines = fs.readFileSync(tracefile, 'utf8').split('\n');
+    const [nodeRequest] = lines.map((line) => line && JSON.parse(line));
+    const [processSpan, signSpan] = nodeRequest
+      .resourceSpans[0].scopeSpans[0].spans;
+
+    expect(lines).toHaveLength(3);
+    expect(JSON.parse(lines[1])).toEqual(jvmRequest);
+    expect(fs.existsSync(jvmTraceFile)).toBe(false);
+    expect(processSpan.parentSpanId).toEqual(signSpan.spanId);
+    expect(signSpan.status).toEqual({ code: 2, message: 'Error failed' });
+    expect(signSpan.endTimeUnixNano >= processSpan.endTimeUnixNano).toBe(true);
+  });
+});
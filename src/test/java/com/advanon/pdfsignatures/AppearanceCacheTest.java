@@ -0,0 +1,131 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+class AppearanceCacheTest {
+  private AppearanceTemplate text
+      = new AppearanceTemplate(null, "Signed by {contact}", null, null);
+
+  @Test
+  public void itLoadsTemplateOnce() {
+    AppearanceCache cache = new AppearanceCache(1024 * 1024);
+
+    AppearanceCache.Resources first = cache.get(text);
+
+    assertSame(first, cache.get(text));
+    assertSame(
+        first,
+        cache.get(new AppearanceTemplate(null, "Other", null, 8f))
+    );
+    assertNotNull(first.getFont());
+  }
+
+  @Test
+  public void itLoadsImageAndFont() throws IOException {
+    Path image = createImage();
+
+    try {
+      AppearanceCache.Resources resources = new AppearanceCache(1024 * 1024)
+          .get(new AppearanceTemplate(image.toString(), "Text", null, 8f));
+
+      PdfReader reader = new PdfReader(resources.getImage());
+      PdfDictionary pageResources = reader.getPageN(1)
+          .getAsDict(PdfName.RESOURCES);
+
+      assertEquals(reader.getPageSize(1).getWidth(), 40f);
+      assertNotNull(pageResources.getAsDict(PdfName.XOBJECT));
+      assertNotNull(resources.getFont());
+      reader.close();
+    } finally {
+      Files.delete(image);
+    }
+  }
+
+  @Test
+  public void itEvictsLeastRecentlyUsed() throws IOException {
+    Path image = createImage();
+
+    try {
+      AppearanceTemplate imageOnly
+          = new AppearanceTemplate(image.toString(), null, null, null);
+      AppearanceTemplate imageAndText
+          = new AppearanceTemplate(image.toString(), "Text", null, null);
+      long size = new AppearanceCache(1024 * 1024).get(imageOnly)
+          .getImage().length;
+      AppearanceCache cache = new AppearanceCache(size * 3 / 2);
+
+      AppearanceCache.Resources first = cache.get(imageOnly);
+      cache.get(imageAndText);
+
+      assertEquals(cache.getSize(), size);
+      assertNotSame(first, cache.get(imageOnly));
+    } finally {
+      Files.delete(image);
+    }
+  }
+
+  @Test
+  public void itResolvesText() {
+    SignatureMetadata metadata
+        = new SignatureMetadata("Approval", null, "John", null);
+
+    assertEquals(
+        new AppearanceTemplate(null, "{name}: {reason} by {contact}{date}",
+          null, null).resolveText("Buyer", metadata),
+        "Buyer: Approval by John"
+    );
+  }
+
+  @Test
+  public void itResolvesDateInItsOwnTimeZone() {
+    Calendar date = new GregorianCalendar(TimeZone.getTimeZone("GMT+14"));
+    date.clear();
+    date.set(2020, Calendar.JANUARY, 1, 0, 30);
+
+    assertEquals(
+        new AppearanceTemplate(null, "{date}", null, null).resolveText(
+          "Buyer", new SignatureMetadata(null, null, null, date)
+        ),
+        "2020-01-01"
+    );
+  }
+
+  @Test
+  public void itRejectsEmptyAppearance() {
+    assertThrows(
+        SignatureException.class,
+        () -> new AppearanceTemplate(null, null, null, null)
+    );
+  }
+
+  private static Path createImage() throws IOException {
+    Path image = Files.createTempFile("pdf-signatures", ".png");
+
+    ImageIO.write(
+        new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB), "png",
+        image.toFile()
+    );
+
+    return image;
+  }
+}
@@ -0,0 +1,73 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class BufferPoolTest {
+  private static final int SLAB_SIZE = BufferPool.MIN_SLAB_SIZE;
+
+  @Test
+  public void itReusesReleasedSlabs() {
+    BufferPool pool = new BufferPool(1024 * 1024);
+    byte[] slab = pool.acquire(1000);
+
+    assertEquals(slab.length, SLAB_SIZE);
+    assertEquals(pool.getHitRate(), 0.0);
+
+    pool.release(slab);
+    assertEquals(pool.getRetained(), SLAB_SIZE);
+
+    assertSame(pool.acquire(SLAB_SIZE), slab);
+    assertEquals(pool.getRetained(), 0);
+    assertEquals(pool.getHitRate(), 0.5);
+  }
+
+  @Test
+  public void itServesRequestsFromTheSmallestFittingClass() {
+    BufferPool pool = new BufferPool(1024 * 1024);
+
+    assertEquals(pool.acquire(SLAB_SIZE + 1).length, SLAB_SIZE * 4);
+    assertEquals(pool.acquire(SLAB_SIZE * 4).length, SLAB_SIZE * 4);
+  }
+
+  @Test
+  public void itRetainsUpToMaxSize() {
+    BufferPool pool = new BufferPool(SLAB_SIZE);
+    byte[] first = pool.acquire(SLAB_SIZE);
+    byte[] second = pool.acquire(SLAB_SIZE);
+
+    pool.release(first);
+    pool.release(second);
+
+    assertEquals(pool.getRetained(), SLAB_SIZE);
+    assertSame(pool.acquire(SLAB_SIZE), first);
+  }
+
+  @Test
+  public void itDoesNotPoolOversizeOrForeignArrays() {
+    BufferPool pool = new BufferPool(Long.MAX_VALUE);
+    int oversize = SLAB_SIZE * 256 + 1;
+    byte[] slab = pool.acquire(oversize);
+
+    assertEquals(slab.length, oversize);
+
+    pool.release(slab);
+    pool.release(new byte[1000]);
+
+    assertEquals(pool.getRetained(), 0);
+  }
+
+  @Test
+  public void itIsDisabledWithZeroSize() {
+    BufferPool pool = new BufferPool(0);
+    byte[] slab = pool.acquire(SLAB_SIZE);
+
+    pool.release(slab);
+
+    assertEquals(pool.getRetained(), 0);
+    assertNotSame(pool.acquire(SLAB_SIZE), slab);
+  }
+}
@@ -0,0 +1,79 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+class CancellationTest {
+  @Test
+  public void itRunsTasksWithinTheCancellation() {
+    Cancellation cancellation = new Cancellation(null);
+
+    assertFalse(Cancellation.isActive());
+    assertEquals(
+        cancellation.call(() -> {
+          Cancellation.checkpoint();
+          return Cancellation.current();
+        }),
+        cancellation
+    );
+    assertFalse(Cancellation.isActive());
+  }
+
+  @Test
+  public void itStopsAtCheckpointsOnceCancelled() {
+    Cancellation cancellation = new Cancellation(null);
+
+    CancelledException exception = assertThrows(
+        CancelledException.class,
+        () -> cancellation.call(() -> {
+          cancellation.cancel();
+          Cancellation.checkpoint();
+          return null;
+        })
+    );
+
+    assertEquals(exception.getMessage(), "Request was cancelled");
+  }
+
+  @Test
+  public void itDoesNotStartPastTheDeadline() {
+    Cancellation cancellation = new Cancellation(0L);
+
+    CancelledException exception = assertThrows(
+        CancelledException.class,
+        () -> cancellation.call(() -> {
+          throw new IllegalStateException("Must not start");
+        })
+    );
+
+    assertEquals(exception.getMessage(), "Request deadline exceeded");
+  }
+
+  @Test
+  public void itBindsFunctionsRunOnOtherThreads() {
+    Cancellation cancellation = new Cancellation(null);
+
+    List<Boolean> active = cancellation.call(
+        () -> Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8).parallelStream()
+          .map(Cancellation.current().bind(value -> Cancellation.isActive()))
+          .collect(Collectors.toList())
+    );
+
+    assertTrue(active.stream().allMatch(Boolean::booleanValue));
+  }
+
+  @Test
+  public void itIgnoresCheckpointsOutsideRequests() {
+    Cancellation.checkpoint();
+
+    assertFalse(Cancellation.isActive());
+  }
+}
@@ -0,0 +1,262 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.itextpdf.text.pdf.PdfReader;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.util.BigIntegers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CmsContainerTest {
+  private Path unsignedPdfPath = Paths.get(
+      "src", "test", "java", "resources", "unsigned_pdf.pdf"
+  );
+
+  private PdfSigner signer = new PdfSigner();
+  private KeyPair keyPair;
+  private Path chainPath;
+
+  @BeforeEach
+  public void createSigner() throws Exception {
+    keyPair = keyPair();
+
+    X500Name name = new X500Name("CN=Raw signer");
+    Date now = new Date();
+    byte[] certificate = new JcaX509v3CertificateBuilder(
+        name,
+        BigInteger.ONE,
+        new Date(now.getTime() - 60000),
+        new Date(now.getTime() + 60000),
+        name,
+        keyPair.getPublic()
+    ).build(
+        new JcaContentSignerBuilder("SHA256withECDSA")
+          .build(keyPair.getPrivate())
+    ).getEncoded();
+
+    chainPath = Files.createTempFile("pdf-signatures", ".der");
+    Files.write(chainPath, certificate);
+  }
+
+  @AfterEach
+  public void deleteChain() throws Exception {
+    Files.deleteIfExists(chainPath);
+  }
+
+  @Test
+  public void itAssemblesVerifiableSignature() throws Exception {
+    byte[] placeholdered = placeholdered();
+    byte[] documentDigest = signer.digest(PdfSource.of(placeholdered), null);
+    CmsContainer container = new CmsContainer(
+        SignerChain.read(chainPath), null
+    );
+
+    byte[] rawSignature = signRaw(
+        keyPair.getPrivate(), container.attributesDigest(documentDigest)
+    );
+    byte[] signature = container.assemble(documentDigest, rawSignature);
+
+    assertVerifies(signer.sign(PdfSource.of(placeholdered), signature));
+  }
+
+  @Test
+  public void itAcceptsPlainEcdsaSignatures() throws Exception {
+    byte[] placeholdered = placeholdered();
+    byte[] documentDigest = signer.digest(PdfSource.of(placeholdered), null);
+    CmsContainer container = new CmsContainer(
+        SignerChain.read(chainPath), null
+    );
+
+    ASN1Sequence der = ASN1Sequence.getInstance(signRaw(
+        keyPair.getPrivate(), container.attributesDigest(documentDigest)
+    ));
+    byte[] plain = new byte[64];
+    for (int i = 0; i < 2; i++) {
+      System.arraycopy(
+          BigIntegers.asUnsignedByteArray(
+            32, ASN1Integer.getInstance(der.getObjectAt(i)).getValue()
+          ),
+          0,
+          plain,
+          i * 32,
+          32
+      );
+    }
+
+    assertVerifies(signer.sign(
+        PdfSource.of(placeholdered), container.assemble(documentDigest, plain)
+    ));
+  }
+
+  @Test
+  public void itDigestsTheEmptyPlaceholderOfSignedDocuments()
+      throws Exception {
+    CmsContainer container = new CmsContainer(
+        SignerChain.read(chainPath), null
+    );
+    byte[] placeholdered = placeholdered();
+    byte[] documentDigest = signer.digest(PdfSource.of(placeholdered), null);
+    byte[] signed = signer.sign(
+        PdfSource.of(placeholdered),
+        container.assemble(
+          documentDigest,
+          signRaw(
+            keyPair.getPrivate(), container.attributesDigest(documentDigest)
+          )
+        )
+    );
+    byte[] resigned = signer.addPlaceholder(
+        PdfSource.of(signed),
+        new SignatureMetadata("Reason", null, null, null),
+        null,
+        null
+    );
+    List<String> names
+        = new PdfReader(resigned).getAcroFields().getSignatureNames();
+    Path path = Files.createTempFile("pdf-signatures", ".pdf");
+
+    try {
+      Files.write(path, resigned);
+      String digest = new DigestCommand().execute(
+          new ApplicationArguments(Arrays.asList(
+            "--file", path.toString(), "--certchain", chainPath.toString()
+          )).parse()
+      );
+
+      assertEquals(names.size(), 2);
+      assertEquals(
+          digest,
+          Base64.getEncoder().encodeToString(container.attributesDigest(
+            signer.digest(
+              PdfSource.of(resigned), null, names.get(names.size() - 1)
+            )
+          ))
+      );
+      assertNotEquals(
+          digest,
+          Base64.getEncoder().encodeToString(container.attributesDigest(
+            signer.digest(PdfSource.of(resigned), null)
+          ))
+      );
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  public void itGivesTheSameAttributesDigest() throws Exception {
+    byte[] documentDigest = new byte[64];
+    CmsContainer container = new CmsContainer(
+        SignerChain.read(chainPath), HashAlgorithm.SHA_512
+    );
+
+    assertEquals(container.attributesDigest(documentDigest).length, 64);
+    assertArrayEquals(
+        container.attributesDigest(documentDigest),
+        new CmsContainer(SignerChain.read(chainPath), null)
+          .attributesDigest(documentDigest)
+    );
+  }
+
+  @Test
+  public void itRejectsSignatureOfAnotherKey() throws Exception {
+    byte[] documentDigest = new byte[64];
+    CmsContainer container = new CmsContainer(
+        SignerChain.read(chainPath), null
+    );
+    byte[] foreign = signRaw(
+        keyPair().getPrivate(), container.attributesDigest(documentDigest)
+    );
+
+    assertThrows(
+        SignatureException.class,
+        () -> container.assemble(documentDigest, foreign)
+    );
+  }
+
+  @Test
+  public void itCachesChains() {
+    SignerChain chain = SignerChain.read(chainPath);
+
+    assertSame(chain, SignerChain.read(chainPath));
+    assertEquals(chain.getCertificates().size(), 1);
+  }
+
+  @Test
+  public void itThrowsOnMissingChain() {
+    assertThrows(
+        SignatureException.class,
+        () -> SignerChain.read(Paths.get("missing.pem"))
+    );
+  }
+
+  private byte[] placeholdered() {
+    return signer.addPlaceholder(
+        PdfSource.of(unsignedPdfPath),
+        new SignatureMetadata("Reason", null, null, null),
+        null,
+        null
+    );
+  }
+
+  private void assertVerifies(byte[] signed) throws Exception {
+    Path path = Files.createTempFile("pdf-signatures", ".pdf");
+
+    try {
+      Files.write(path, signed);
+      List<SignatureVerification> verifications
+          = new Verification(path, null).verify();
+
+      assertEquals(verifications.size(), 1);
+      assertTrue(verifications.get(0).isValid());
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  /**
+   * Sign a digest as it is, the way HSMs do.
+   */
+  private static byte[] signRaw(
+      PrivateKey key,
+      byte[] digest
+  ) throws Exception {
+    java.security.Signature raw
+        = java.security.Signature.getInstance("NONEwithECDSA");
+    raw.initSign(key);
+    raw.update(digest);
+
+    return raw.sign();
+  }
+
+  private static KeyPair keyPair() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(256);
+
+    return generator.generateKeyPair();
+  }
+}
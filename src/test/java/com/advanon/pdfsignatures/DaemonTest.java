@@ -0,0 +1,154 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+
+class DaemonTest {
+  private Path placeholderedPdfPath =
+      Paths.get("src", "test", "java", "resources", "placeholdered_pdf.pdf");
+
+  @Test
+  public void itServesRequestsUntilShutdown() throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    Daemon daemon = new Daemon(
+        new BufferedReader(new StringReader(
+          "1\tdigest\t--file\t" + placeholderedPdfPath + "\n"
+          + "2\tshutdown\n"
+          + "3\tdigest\t--file\t" + placeholderedPdfPath + "\n"
+        )),
+        new PrintStream(outputStream, true, "UTF-8"),
+        new WarmUp(0, 0),
+        null
+    );
+
+    daemon.run();
+
+    String output = outputStream.toString("UTF-8");
+
+    assertTrue(output.startsWith("STATE=WARMING\n\n"));
+    assertTrue(output.contains("ID=1\nSTATUS=SUCCESS\nRESULT="));
+    assertTrue(output.contains("ID=2\nSTATUS=SUCCESS\nRESULT=STOPPED\n\n"));
+    assertFalse(output.contains("ID=3"));
+  }
+
+  @Test
+  public void itRespondsWithErrorBlock() throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    Daemon daemon = new Daemon(
+        new BufferedReader(new StringReader("1\tdigest\t--file\n")),
+        new PrintStream(outputStream, true, "UTF-8"),
+        new WarmUp(0, 0),
+        null
+    );
+
+    daemon.run();
+
+    assertTrue(
+        outputStream.toString("UTF-8").contains("ID=1\nSTATUS=ERROR\n")
+    );
+  }
+
+  @Test
+  public void itReportsBufferPoolStats() throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    Daemon daemon = new Daemon(
+        new BufferedReader(new StringReader("1\tstats\n")),
+        new PrintStream(outputStream, true, "UTF-8"),
+        new WarmUp(0, 0),
+        null
+    );
+
+    daemon.run();
+
+    assertTrue(
+        outputStream.toString("UTF-8").matches(
+          "(?s).*ID=1\nSTATUS=SUCCESS\nRESULT=buffer_pool_hit_rate=[0-9.]+,"
+          + "buffer_pool_retained=[0-9]+\n\n.*"
+        )
+    );
+  }
+
+  @Test
+  public void itCancelsRequests() throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    Daemon daemon = new Daemon(
+        new BufferedReader(new StringReader(
+          "1\tdigest\t--file\t" + placeholderedPdfPath + "\t--timeout\t0\n"
+          + "2\tcancel\t3\n"
+        )),
+        new PrintStream(outputStream, true, "UTF-8"),
+        new WarmUp(0, 0),
+        null
+    );
+
+    daemon.run();
+
+    String output = outputStream.toString("UTF-8");
+
+    assertTrue(output.contains("ID=1\nSTATUS=CANCELLED\n"));
+    assertTrue(output.contains("ID=2\nSTATUS=SUCCESS\nRESULT=NOT_FOUND\n"));
+  }
+
+  @Test
+  public void itSignalsReadiness() throws Exception {
+    Path readyFile = Files.createTempFile("pdf-signatures", ".ready");
+    Files.delete(readyFile);
+
+    PipedWriter requests = new PipedWriter();
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    Daemon daemon = new Daemon(
+        new BufferedReader(new PipedReader(requests)),
+        new PrintStream(outputStream, true, "UTF-8"),
+        new WarmUp(0, 0),
+        readyFile
+    );
+
+    Thread daemonThread = new Thread(() -> {
+      try {
+        daemon.run();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    daemonThread.start();
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!daemon.isReady() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    assertTrue(daemon.isReady());
+    assertTrue(Files.exists(readyFile));
+
+    requests.write("1\tready\n2\tshutdown\n");
+    requests.close();
+    daemonThread.join(10000);
+
+    String output = outputStream.toString("UTF-8");
+
+    assertTrue(output.contains("STATE=READY\n\n"));
+    assertTrue(output.contains("ID=1\nSTATUS=SUCCESS\nRESULT=READY\n\n"));
+    assertFalse(Files.exists(readyFile));
+  }
+
+  @Test
+  public void itWarmsUpWithinIterationLimit() {
+    assertEquals(new WarmUp(0, 60000).run(), 0);
+    assertEquals(new WarmUp(3, 60000).run(), 3);
+  }
+}
@@ -71,4 +71,15 @@ class DigestTest {
         new Digest(bytes).calculate(HashAlgorithm.SHA_512)
     );
   }
+
+  @Test
+  public void itCalculatesDigestOfRanges() throws DigestException {
+    byte[] bytes = "xxABxxCDx".getBytes(StandardCharsets.UTF_8);
+
+    assertArrayEquals(
+        sampleSha256Sequence,
+        new Digest(ContentSource.of(bytes), new long[] {2, 2, 6, 2})
+          .calculate(HashAlgorithm.SHA_256)
+    );
+  }
 }
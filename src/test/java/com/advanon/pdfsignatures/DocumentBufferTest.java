@@ -0,0 +1,128 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class DocumentBufferTest {
+  private byte[] content = randomContent(200 * 1024);
+
+  @Test
+  public void itKeepsContentInHeapWithinAllowance() throws IOException {
+    MemoryBudget.Allowance allowance
+        = new MemoryBudget(0, 1024 * 1024, 0).admit(1024 * 1024);
+    DocumentBuffer buffer = new DocumentBuffer(allowance, 0);
+
+    buffer.write(content[0]);
+    buffer.write(content, 1, content.length - 1);
+    buffer.close();
+
+    assertFalse(buffer.isSpilled());
+    assertArrayEquals(buffer.toByteArray(), content);
+
+    buffer.release();
+    assertEquals(allowance.getAvailable(), 1024 * 1024);
+  }
+
+  @Test
+  public void itSpillsPastAllowance() throws IOException {
+    MemoryBudget.Allowance allowance
+        = new MemoryBudget(0, 100 * 1024, 0).admit(100 * 1024);
+    DocumentBuffer buffer = new DocumentBuffer(allowance, 0);
+
+    buffer.write(content, 0, 1000);
+    assertFalse(buffer.isSpilled());
+
+    buffer.write(content, 1000, content.length - 1000);
+    buffer.close();
+
+    assertTrue(buffer.isSpilled());
+    assertEquals(allowance.getAvailable(), 100 * 1024);
+    assertArrayEquals(buffer.toByteArray(), content);
+
+    buffer.release();
+    assertFalse(buffer.isSpilled());
+  }
+
+  @Test
+  public void itSpillsRightAwayIfExpectedSizeDoesNotFit() throws IOException {
+    MemoryBudget.Allowance allowance
+        = new MemoryBudget(0, 100 * 1024, 0).admit(100 * 1024);
+    DocumentBuffer buffer = new DocumentBuffer(allowance, content.length);
+
+    assertTrue(buffer.isSpilled());
+
+    buffer.write(content);
+    assertArrayEquals(buffer.toByteArray(), content);
+
+    buffer.release();
+  }
+
+  @Test
+  public void itReadsSpilledContentInPlace() throws IOException {
+    MemoryBudget.Allowance allowance
+        = new MemoryBudget(0, 100 * 1024, 0).admit(100 * 1024);
+    DocumentBuffer buffer = new DocumentBuffer(allowance, content.length);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    ByteBuffer read = ByteBuffer.allocate(1000);
+
+    buffer.write(content);
+    buffer.writeTo(outputStream);
+
+    assertArrayEquals(outputStream.toByteArray(), content);
+    assertEquals(buffer.read(read, 150 * 1024), 1000);
+    assertArrayEquals(
+        read.array(),
+        Arrays.copyOfRange(content, 150 * 1024, 150 * 1024 + 1000)
+    );
+    assertEquals(buffer.read(read, content.length), -1);
+
+    buffer.release();
+  }
+
+  @Test
+  public void itReadsAcrossChunks() throws IOException {
+    DocumentBuffer buffer = new DocumentBuffer(null, 0);
+    ByteBuffer read = ByteBuffer.allocate(1000);
+
+    buffer.write(content);
+
+    assertEquals(buffer.read(read, 64 * 1024 - 500), 1000);
+    assertArrayEquals(
+        read.array(),
+        Arrays.copyOfRange(content, 64 * 1024 - 500, 64 * 1024 + 500)
+    );
+
+    buffer.release();
+  }
+
+  @Test
+  public void itIsReleasedWithItsAllowance() throws IOException {
+    MemoryBudget budget = new MemoryBudget(1024 * 1024, 1024 * 1024, 0);
+    MemoryBudget.Allowance allowance = budget.admit(1024 * 1024);
+    DocumentBuffer buffer = new DocumentBuffer(allowance, content.length);
+
+    buffer.write(content);
+    allowance.close();
+
+    assertEquals(buffer.size(), content.length);
+    assertEquals(allowance.getAvailable(), 1024 * 1024);
+    assertEquals(budget.getReserved(), 0);
+  }
+
+  private static byte[] randomContent(int length) {
+    byte[] bytes = new byte[length];
+    new Random(42).nextBytes(bytes);
+
+    return bytes;
+  }
+}
@@ -0,0 +1,58 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+class DocumentLeakDetectorTest {
+  private ByteArrayOutputStream report = new ByteArrayOutputStream();
+
+  @Test
+  public void itDoesNotTrackWhenDisabled() {
+    DocumentLeakDetector detector
+        = new DocumentLeakDetector(false, new PrintStream(report));
+
+    assertNull(detector.track(new Object()));
+    assertEquals(detector.getOpenCount(), 0);
+  }
+
+  @Test
+  public void itForgetsClosedResources() {
+    DocumentLeakDetector detector
+        = new DocumentLeakDetector(true, new PrintStream(report));
+
+    DocumentLeakDetector.Tracker tracker = detector.track(new Object());
+    assertEquals(detector.getOpenCount(), 1);
+
+    tracker.close();
+    assertEquals(detector.getOpenCount(), 0);
+  }
+
+  @Test
+  public void itReportsLeakedResources() throws InterruptedException {
+    DocumentLeakDetector detector
+        = new DocumentLeakDetector(true, new PrintStream(report));
+
+    trackAndDrop(detector);
+
+    for (int i = 0; i < 50 && detector.getLeakCount() == 0; i++) {
+      System.gc();
+      Thread.sleep(20);
+      detector.poll();
+    }
+
+    assertEquals(detector.getLeakCount(), 1);
+    assertEquals(detector.getOpenCount(), 0);
+    assertTrue(report.toString().contains("was not closed"));
+    assertTrue(report.toString().contains("trackAndDrop"));
+  }
+
+  private void trackAndDrop(DocumentLeakDetector detector) {
+    detector.track(new Object());
+  }
+}
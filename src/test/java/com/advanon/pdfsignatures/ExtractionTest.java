@@ -0,0 +1,125 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.itextpdf.text.pdf.codec.Base64;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+class ExtractionTest {
+  private Path unsignedPdfPath = Paths.get(
+      "src", "test", "java", "resources", "unsigned_pdf.pdf"
+  );
+  private Path signaturePath =
+      Paths.get("src", "test", "java", "resources", "signature.pkcs7");
+
+  private PdfSigner signer = new PdfSigner();
+
+  @Test
+  public void itReturnsSignatureContents() throws Exception {
+    Path signed = signedPdf();
+
+    try {
+      List<Extraction.Result> results
+          = new Extraction(signed, null, null).extract(null, null);
+
+      assertEquals(results.size(), 1);
+      assertArrayEquals(
+          Base64.decode(results.get(0).getContents()),
+          Files.readAllBytes(signaturePath)
+      );
+      assertEquals(results.get(0).getRevision(), "");
+    } finally {
+      Files.delete(signed);
+    }
+  }
+
+  @Test
+  public void itWritesContentsAndRevisions() throws Exception {
+    Path signed = signedPdf();
+    Path directory = Files.createTempDirectory("pdf-signatures");
+
+    try {
+      Extraction.Result result = new Extraction(signed, null, null)
+          .extract(directory, directory).get(0);
+
+      assertArrayEquals(
+          Files.readAllBytes(Paths.get(result.getContents())),
+          Files.readAllBytes(signaturePath)
+      );
+      // The only signature signs the whole document
+      assertArrayEquals(
+          Files.readAllBytes(Paths.get(result.getRevision())),
+          Files.readAllBytes(signed)
+      );
+      assertTrue(result.getContents().endsWith(
+          Extraction.CONTENTS_EXTENSION
+      ));
+    } finally {
+      try (Stream<Path> files = Files.list(directory)) {
+        files.forEach(file -> file.toFile().delete());
+      }
+      Files.delete(directory);
+      Files.delete(signed);
+    }
+  }
+
+  @Test
+  public void itSkipsEmptyPlaceholders() throws Exception {
+    Path placeholdered = Files.createTempFile("pdf-signatures", ".pdf");
+    Path directory = Files.createTempDirectory("pdf-signatures");
+
+    try {
+      Files.write(placeholdered, placeholdered());
+
+      Extraction.Result result = new Extraction(placeholdered, null, null)
+          .extract(directory, directory).get(0);
+
+      assertEquals(result.getContents(), "");
+      assertEquals(result.getRevision(), "");
+      try (Stream<Path> files = Files.list(directory)) {
+        assertFalse(files.findAny().isPresent());
+      }
+    } finally {
+      Files.delete(directory);
+      Files.delete(placeholdered);
+    }
+  }
+
+  @Test
+  public void itThrowsOnMissingFile() {
+    assertThrows(
+        ExtractionException.class,
+        () -> new Extraction(Paths.get("missing.pdf"), null, null)
+          .extract(null, null)
+    );
+  }
+
+  private byte[] placeholdered() {
+    return signer.addPlaceholder(
+        PdfSource.of(unsignedPdfPath),
+        new SignatureMetadata("Reason", null, null, null),
+        null,
+        null
+    );
+  }
+
+  private Path signedPdf() throws Exception {
+    Path signed = Files.createTempFile("pdf-signatures", ".pdf");
+    Files.write(signed, signer.sign(
+        PdfSource.of(placeholdered()), Files.readAllBytes(signaturePath)
+    ));
+
+    return signed;
+  }
+}
@@ -0,0 +1,74 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import org.junit.jupiter.api.Test;
+
+class FieldSpecTest {
+  private GregorianCalendar date
+      = new GregorianCalendar(2019, Calendar.JANUARY, 1);
+  private SignatureMetadata defaults
+      = new SignatureMetadata("Reason", "Location", "Contact", date);
+
+  @Test
+  public void itParsesFieldSpec() {
+    FieldSpec field = FieldSpec.parse(
+        "name=Buyer;page=2;rect=36,36,236,96;size=12000;reason=Purchase",
+        defaults,
+        null
+    );
+
+    assertEquals(field.getName(), "Buyer");
+    assertEquals(field.getPage(), 2);
+    assertArrayEquals(field.getRectangle(), new float[] {36, 36, 236, 96});
+    assertEquals(field.getEstimatedSize(), 12000);
+    assertEquals(field.getMetadata().getReason(), "Purchase");
+    assertEquals(field.getMetadata().getLocation(), "Location");
+    assertEquals(field.getMetadata().getDate(), date);
+  }
+
+  @Test
+  public void itFallsBackToDefaults() {
+    FieldSpec field = FieldSpec.parse("", defaults, 20000);
+
+    assertNull(field.getName());
+    assertNull(field.getRectangle());
+    assertEquals(field.getPage(), 1);
+    assertEquals(field.getEstimatedSize(), 20000);
+    assertEquals(field.getMetadata().getContact(), "Contact");
+    assertEquals(
+        FieldSpec.parse("", defaults, null).getEstimatedSize(),
+        Constants.DEFAULT_ESTIMATED_SIGNATURE_SIZE
+    );
+  }
+
+  @Test
+  public void itRejectsMalformedFieldSpec() {
+    assertThrows(
+        SignatureException.class,
+        () -> FieldSpec.parse("name", defaults, null)
+    );
+    assertThrows(
+        SignatureException.class,
+        () -> FieldSpec.parse("color=red", defaults, null)
+    );
+    assertThrows(
+        SignatureException.class,
+        () -> FieldSpec.parse("page=first", defaults, null)
+    );
+    assertThrows(
+        SignatureException.class,
+        () -> FieldSpec.parse("page=0", defaults, null)
+    );
+    assertThrows(
+        SignatureException.class,
+        () -> FieldSpec.parse("rect=1,2,3", defaults, null)
+    );
+  }
+}
@@ -0,0 +1,153 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class LaneSchedulerTest {
+  private static final long LARGE_SIZE = 1024 * 1024;
+
+  @Test
+  public void itClassifiesRequestsBySizeAndOperation() throws Exception {
+    LaneScheduler scheduler = new LaneScheduler(1, LARGE_SIZE);
+
+    assertEquals(
+        scheduler.classify("digest", 1024), LaneScheduler.Lane.CHEAP
+    );
+    assertEquals(
+        scheduler.classify("placeholder", 1024), LaneScheduler.Lane.EXPENSIVE
+    );
+    assertEquals(
+        scheduler.classify("sign", LARGE_SIZE), LaneScheduler.Lane.LARGE
+    );
+    assertEquals(
+        scheduler.classify("preflight", LARGE_SIZE), LaneScheduler.Lane.CHEAP
+    );
+
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void itLendsReservationsOfIdleLanes() throws Exception {
+    LaneScheduler scheduler = new LaneScheduler(3, LARGE_SIZE);
+    CountDownLatch gate = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(3);
+
+    for (int i = 0; i < 3; i++) {
+      scheduler.execute(LaneScheduler.Lane.LARGE, () -> {
+        started.countDown();
+        await(gate);
+      });
+    }
+
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    assertEquals(scheduler.getQueued(LaneScheduler.Lane.LARGE), 0);
+
+    gate.countDown();
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void itKeepsReservedWorkersForQueuedLanes() throws Exception {
+    LaneScheduler scheduler = new LaneScheduler(3, LARGE_SIZE);
+    CountDownLatch largeGate = new CountDownLatch(1);
+    CountDownLatch cheapGate = new CountDownLatch(1);
+    CountDownLatch cheapStarted = new CountDownLatch(2);
+    CountDownLatch largeDone = new CountDownLatch(1);
+    List<LaneScheduler.Lane> order
+        = Collections.synchronizedList(new ArrayList<>());
+
+    scheduler.execute(LaneScheduler.Lane.LARGE, () -> await(largeGate));
+    for (int i = 0; i < 2; i++) {
+      scheduler.execute(LaneScheduler.Lane.CHEAP, () -> {
+        cheapStarted.countDown();
+        await(cheapGate);
+      });
+    }
+
+    // The idle expensive lane holds no worker back
+    assertTrue(cheapStarted.await(10, TimeUnit.SECONDS));
+
+    scheduler.execute(LaneScheduler.Lane.LARGE, () -> {
+      order.add(LaneScheduler.Lane.LARGE);
+      largeDone.countDown();
+    });
+    for (int i = 0; i < 8; i++) {
+      scheduler.execute(
+          LaneScheduler.Lane.CHEAP, () -> order.add(LaneScheduler.Lane.CHEAP)
+      );
+    }
+
+    // Cheap requests are ahead by weight, but the last free worker is kept
+    // for the large lane which has none running
+    largeGate.countDown();
+    assertTrue(largeDone.await(10, TimeUnit.SECONDS));
+
+    cheapGate.countDown();
+    scheduler.shutdown();
+
+    assertEquals(order.get(0), LaneScheduler.Lane.LARGE);
+  }
+
+  @Test
+  public void itDequeuesLanesByWeight() throws Exception {
+    LaneScheduler scheduler = new LaneScheduler(1, LARGE_SIZE);
+    CountDownLatch gate = new CountDownLatch(1);
+    List<LaneScheduler.Lane> order
+        = Collections.synchronizedList(new ArrayList<>());
+
+    scheduler.execute(LaneScheduler.Lane.EXPENSIVE, () -> await(gate));
+
+    for (int i = 0; i < 8; i++) {
+      scheduler.execute(
+          LaneScheduler.Lane.LARGE, () -> order.add(LaneScheduler.Lane.LARGE)
+      );
+      scheduler.execute(
+          LaneScheduler.Lane.CHEAP, () -> order.add(LaneScheduler.Lane.CHEAP)
+      );
+    }
+
+    gate.countDown();
+    scheduler.shutdown();
+
+    assertEquals(
+        Collections.frequency(order.subList(0, 9), LaneScheduler.Lane.LARGE),
+        1
+    );
+  }
+
+  @Test
+  public void itCompletesQueuedRequestsOnShutdown() throws Exception {
+    LaneScheduler scheduler = new LaneScheduler(2, LARGE_SIZE);
+    CountDownLatch done = new CountDownLatch(10);
+
+    for (int i = 0; i < 10; i++) {
+      scheduler.execute(LaneScheduler.Lane.EXPENSIVE, done::countDown);
+    }
+
+    scheduler.shutdown();
+
+    assertEquals(done.getCount(), 0);
+    assertThrows(
+        RejectedExecutionException.class,
+        () -> scheduler.execute(LaneScheduler.Lane.CHEAP, () -> { })
+    );
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
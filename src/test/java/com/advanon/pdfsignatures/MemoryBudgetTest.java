@@ -0,0 +1,88 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class MemoryBudgetTest {
+  @Test
+  public void itCapsAllowancesAtRequestBudget() {
+    MemoryBudget budget = new MemoryBudget(1000, 100, 0);
+
+    try (MemoryBudget.Allowance allowance = budget.admit(500)) {
+      assertEquals(budget.getReserved(), 100);
+      assertTrue(allowance.tryTake(60));
+      assertFalse(allowance.tryTake(60));
+
+      allowance.giveBack(60);
+      assertTrue(allowance.tryTake(100));
+    }
+
+    assertEquals(budget.getReserved(), 0);
+  }
+
+  @Test
+  public void itRejectsRequestsOverRequestBudgetOnDemand() {
+    MemoryBudget budget = new MemoryBudget(1000, 100, 0, true);
+
+    assertThrows(PdfDocumentException.class, () -> budget.admit(500));
+    assertEquals(budget.getReserved(), 0);
+  }
+
+  @Test
+  public void itReservesOnlyWhatIsLeft() {
+    MemoryBudget budget = new MemoryBudget(150, 100, 0);
+    MemoryBudget.Allowance cached = budget.tryReserve(120);
+
+    assertNull(budget.tryReserve(50));
+    assertThrows(PdfDocumentException.class, () -> budget.admit(50));
+
+    cached.close();
+    budget.admit(50).close();
+
+    assertEquals(budget.getReserved(), 0);
+  }
+
+  @Test
+  public void itRejectsWhenExhausted() {
+    MemoryBudget budget = new MemoryBudget(150, 100, 0);
+
+    try (MemoryBudget.Allowance allowance = budget.admit(100)) {
+      assertThrows(PdfDocumentException.class, () -> budget.admit(100));
+    }
+  }
+
+  @Test
+  public void itAdmitsOnceMemoryIsReleased() throws Exception {
+    MemoryBudget budget = new MemoryBudget(150, 100, 10000);
+    MemoryBudget.Allowance first = budget.admit(100);
+
+    CompletableFuture<MemoryBudget.Allowance> second
+        = CompletableFuture.supplyAsync(() -> budget.admit(100));
+
+    Thread.sleep(100);
+    assertFalse(second.isDone());
+
+    first.close();
+    second.get(5, TimeUnit.SECONDS).close();
+
+    assertEquals(budget.getReserved(), 0);
+  }
+
+  @Test
+  public void itIsNotLimitedWithoutSize() {
+    MemoryBudget budget = new MemoryBudget(0, 100, 0);
+
+    budget.admit(100);
+    budget.admit(100);
+
+    assertEquals(budget.getReserved(), 0);
+  }
+}
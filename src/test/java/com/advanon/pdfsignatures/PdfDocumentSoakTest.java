@@ -0,0 +1,83 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Long-running checks, excluded from the default test run.
+ * Run with `./gradlew soakTest`.
+ */
+@Tag("soak")
+class PdfDocumentSoakTest {
+  private static final int OPERATIONS = 100_000;
+  private static final int WARMUP_OPERATIONS = 1_000;
+  private static final long FILE_DESCRIPTORS_THRESHOLD = 16;
+  private static final long HEAP_THRESHOLD = 32L * 1024 * 1024;
+
+  private Path placeholderedPdfPath =
+      Paths.get("src", "test", "java", "resources", "placeholdered_pdf.pdf");
+
+  @Test
+  public void itKeepsResourcesFlatUnderSustainedLoad() {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    assumeTrue(os instanceof UnixOperatingSystemMXBean);
+    UnixOperatingSystemMXBean unixOs = (UnixOperatingSystemMXBean) os;
+
+    runOperations(WARMUP_OPERATIONS);
+
+    long fileDescriptorsBefore = unixOs.getOpenFileDescriptorCount();
+    long heapBefore = usedHeapAfterGc();
+
+    runOperations(OPERATIONS);
+
+    long fileDescriptorsAfter = unixOs.getOpenFileDescriptorCount();
+    long heapAfter = usedHeapAfterGc();
+
+    assertTrue(
+        fileDescriptorsAfter - fileDescriptorsBefore
+          < FILE_DESCRIPTORS_THRESHOLD,
+        "File descriptors grew from " + fileDescriptorsBefore
+          + " to " + fileDescriptorsAfter
+    );
+    assertTrue(
+        heapAfter - heapBefore < HEAP_THRESHOLD,
+        "Heap grew from " + heapBefore + " to " + heapAfter
+    );
+
+    DocumentLeakDetector detector = DocumentLeakDetector.getInstance();
+    detector.poll();
+    assertEquals(detector.getOpenCount(), 0);
+    assertEquals(detector.getLeakCount(), 0);
+  }
+
+  private void runOperations(int count) {
+    String path = placeholderedPdfPath.toString();
+
+    for (int i = 0; i < count; i++) {
+      try (PdfDocument pdf = new PdfDocument(path, null)) {
+        pdf.digest(HashAlgorithm.SHA_256);
+      }
+    }
+  }
+
+  private long usedHeapAfterGc() {
+    Runtime runtime = Runtime.getRuntime();
+
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,449 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class PdfSignerTest {
+  private Path unsignedPdfPath = Paths.get(
+      "src", "test", "java", "resources", "unsigned_pdf.pdf"
+  );
+  private Path placeholderedPdfPath =
+      Paths.get("src", "test", "java", "resources", "placeholdered_pdf.pdf");
+  private Path placeholderedDigestPath = Paths.get(
+      "src", "test", "java", "resources", "digest.sha512"
+  );
+  private Path signaturePath =
+      Paths.get("src", "test", "java", "resources", "signature.pkcs7");
+  private Path signedPdfPath =
+      Paths.get("src", "test", "java", "resources", "signed_pdf.pdf");
+  private Path crlPath =
+      Paths.get("src", "test", "java", "resources", "crl.x509");
+  private Path ocspPath =
+      Paths.get("src", "test", "java", "resources", "ocsp.x509");
+
+  private PdfSigner signer = new PdfSigner();
+  private ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  @AfterEach
+  public void teardown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void itAddsPlaceholder() throws IOException {
+    byte[] placeholdered = signer.addPlaceholder(
+        PdfSource.of(unsignedPdfPath),
+        new SignatureMetadata("Reason", "Location", "Contact", null),
+        null,
+        null
+    );
+
+    PdfReader reader = new PdfReader(placeholdered);
+
+    assertEquals(reader.getAcroFields().getSignatureNames().size(), 1);
+  }
+
+  @Test
+  public void itAddsVisiblePlaceholders() throws IOException {
+    SignatureMetadata metadata
+        = new SignatureMetadata("Reason", null, "Contact", null);
+    AppearanceTemplate appearance
+        = new AppearanceTemplate(null, "Signed by {contact}", null, null);
+    float[] rectangle = new float[] {36, 36, 236, 96};
+
+    byte[] single = signer.addPlaceholders(
+        PdfSource.of(unsignedPdfPath),
+        Collections.singletonList(
+          new FieldSpec("Buyer", metadata, null, 1, rectangle, appearance)
+        ),
+        null
+    );
+    byte[] multiple = signer.addPlaceholders(
+        PdfSource.of(unsignedPdfPath),
+        Arrays.asList(
+          new FieldSpec("Buyer", metadata, null, 1, rectangle, appearance),
+          new FieldSpec("Seller", metadata, null, 1, rectangle, appearance)
+        ),
+        null
+    );
+
+    byte[] seller = signer.addPlaceholders(
+        PdfSource.of(multiple),
+        Collections.singletonList(
+          new FieldSpec("Seller", metadata, null, 1, null, appearance)
+        ),
+        null
+    );
+
+    assertTrue(hasAppearance(single, "Buyer"));
+    assertTrue(hasAppearance(multiple, "Buyer"));
+    assertTrue(hasAppearance(multiple, "Seller"));
+    assertTrue(hasAppearance(seller, "Seller"));
+    assertEquals(signatureNames(seller), Collections.singletonList("Seller"));
+  }
+
+  @Test
+  public void itCalculatesDigestFromEverySourceType() throws IOException {
+    byte[] pdfBytes = Files.readAllBytes(placeholderedPdfPath);
+    byte[] expectedDigest = Files.readAllBytes(placeholderedDigestPath);
+
+    assertArrayEquals(
+        expectedDigest,
+        signer.digest(PdfSource.of(placeholderedPdfPath), HashAlgorithm.SHA_512)
+    );
+    assertArrayEquals(
+        expectedDigest,
+        signer.digest(
+          PdfSource.of(new ByteArrayInputStream(pdfBytes)),
+          HashAlgorithm.SHA_512
+        )
+    );
+    assertArrayEquals(
+        expectedDigest,
+        signer.digest(
+          PdfSource.of(ByteBuffer.wrap(pdfBytes)), HashAlgorithm.SHA_512
+        )
+    );
+  }
+
+  @Test
+  public void itReusesSourceBetweenOperations() throws IOException {
+    PdfSource source = PdfSource.of(placeholderedPdfPath);
+    byte[] signature = Files.readAllBytes(signaturePath);
+
+    byte[] digestBefore = signer.digest(source, HashAlgorithm.SHA_512);
+    byte[] signed = signer.sign(source, signature);
+    byte[] digestAfter = signer.digest(source, HashAlgorithm.SHA_512);
+
+    assertEquals(
+        signed.length, Files.readAllBytes(placeholderedPdfPath).length
+    );
+    assertArrayEquals(digestBefore, digestAfter);
+  }
+
+  @Test
+  public void itRejectsSigningPlaceholdersCoveringEachOther()
+      throws IOException {
+    byte[] placeholdered = twoPlaceholders();
+    List<String> names = signatureNames(placeholdered);
+    byte[] first = Files.readAllBytes(signaturePath);
+    byte[] second = new byte[] {1, 2, 3};
+
+    Map<String, byte[]> signatures = new HashMap<>();
+    signatures.put(names.get(0), first);
+    signatures.put(names.get(1), second);
+
+    assertThrows(
+        SignatureException.class,
+        () -> signer.sign(PdfSource.of(placeholdered), signatures)
+    );
+    assertThrows(
+        SignatureException.class,
+        () -> signer.sign(PdfSource.of(placeholdered), first)
+    );
+  }
+
+  @Test
+  public void itSignsOnlyEmptyPlaceholders() throws IOException {
+    byte[] placeholdered = twoPlaceholders();
+    List<String> names = signatureNames(placeholdered);
+    byte[] first = Files.readAllBytes(signaturePath);
+    byte[] second = new byte[] {1, 2, 3};
+
+    byte[] signedOnce = signer.sign(
+        PdfSource.of(placeholdered),
+        Collections.singletonMap(names.get(0), first)
+    );
+    byte[] signedTwice = signer.sign(PdfSource.of(signedOnce), second);
+
+    assertTrue(contentsStartWith(signedTwice, names.get(0), first));
+    assertTrue(contentsStartWith(signedTwice, names.get(1), second));
+    assertThrows(
+        SignatureException.class,
+        () -> signer.sign(PdfSource.of(signedTwice), second)
+    );
+  }
+
+  @Test
+  public void itListsEmptyPlaceholders() throws IOException {
+    byte[] placeholdered = twoPlaceholders();
+    List<String> names = signatureNames(placeholdered);
+    byte[] signedOnce = signer.sign(
+        PdfSource.of(placeholdered),
+        Collections.singletonMap(
+          names.get(0), Files.readAllBytes(signaturePath)
+        )
+    );
+
+    try (PdfDocument pdf = PdfSource.of(placeholdered).open()) {
+      assertEquals(Signature.emptyPlaceholders(pdf), names);
+    }
+    try (PdfDocument pdf = PdfSource.of(signedOnce).open()) {
+      assertEquals(Signature.emptyPlaceholders(pdf), names.subList(1, 2));
+    }
+  }
+
+  @Test
+  public void itRejectsFieldSignaturesWhichCouldNotBeEmbedded()
+      throws IOException {
+    byte[] placeholdered = twoPlaceholders();
+    List<String> names = signatureNames(placeholdered);
+    byte[] signature = Files.readAllBytes(signaturePath);
+
+    assertThrows(
+        SignatureException.class,
+        () -> signer.sign(
+          PdfSource.of(placeholdered),
+          Collections.singletonMap("Unknown", signature)
+        )
+    );
+    assertThrows(
+        SignatureException.class,
+        () -> signer.sign(
+          PdfSource.of(placeholdered),
+          Collections.singletonMap(
+            names.get(0),
+            new byte[Constants.DEFAULT_ESTIMATED_SIGNATURE_SIZE + 1]
+          )
+        )
+    );
+    assertThrows(
+        SignatureException.class,
+        () -> signer.sign(
+          PdfSource.of(signedPdfPath),
+          Collections.singletonMap(
+            signatureNames(Files.readAllBytes(signedPdfPath)).get(0),
+            signature
+          )
+        )
+    );
+  }
+
+  @Test
+  public void itRunsOperationsOnExecutor() throws IOException {
+    PdfSource source = PdfSource.of(signedPdfPath);
+    byte[] crlBytes = Files.readAllBytes(crlPath);
+    byte[] ocspBytes = Files.readAllBytes(ocspPath);
+
+    byte[] validated = signer.addValidationAsync(
+        source,
+        Arrays.asList(ocspBytes),
+        Arrays.asList(crlBytes),
+        executor
+    ).join();
+
+    assertTrue(
+        validated.length
+          > Files.readAllBytes(signedPdfPath).length + crlBytes.length
+    );
+  }
+
+  @Test
+  public void itCompletesExceptionallyOnFailure() {
+    PdfSource source = PdfSource.of(new byte[] {1, 2, 3});
+
+    CompletionException exception = assertThrows(
+        CompletionException.class,
+        () -> signer.digestAsync(source, null, executor).join()
+    );
+
+    assertTrue(exception.getCause() instanceof PdfDocumentException);
+  }
+
+  @Test
+  public void itGivesUpPastTimeout() {
+    PdfSigner timedSigner = new PdfSigner(0L);
+    PdfSource source = PdfSource.of(placeholderedPdfPath);
+
+    assertThrows(
+        CancelledException.class, () -> timedSigner.digest(source, null)
+    );
+
+    CompletionException exception = assertThrows(
+        CompletionException.class,
+        () -> timedSigner.digestAsync(source, null, executor).join()
+    );
+
+    assertTrue(exception.getCause() instanceof CancelledException);
+  }
+
+  @Test
+  public void itRejectsCertifyingSeveralFields() {
+    SignatureMetadata metadata = new SignatureMetadata(null, null, null, null);
+
+    assertThrows(
+        SignatureException.class,
+        () -> signer.addPlaceholders(
+          PdfSource.of(unsignedPdfPath),
+          Arrays.asList(
+            new FieldSpec(null, metadata, null, 1, null),
+            new FieldSpec(null, metadata, null, 1, null)
+          ),
+          CertificationLevel.CERTIFIED_FORM_FILLING
+        )
+    );
+  }
+
+  @Test
+  public void itNamesAddedFieldsUniquely() throws IOException {
+    SignatureMetadata metadata = new SignatureMetadata(null, null, null, null);
+    byte[] placeholdered = signer.addPlaceholders(
+        PdfSource.of(twoPlaceholders()),
+        Arrays.asList(
+          new FieldSpec(null, metadata, null, 1, null),
+          new FieldSpec(null, metadata, null, 1, null)
+        ),
+        null
+    );
+
+    AcroFields fields = new PdfReader(placeholdered).getAcroFields();
+    Set<String> names = new HashSet<>(fields.getSignatureNames());
+    names.addAll(fields.getBlankSignatureNames());
+
+    assertEquals(names.size(), 4);
+  }
+
+  @Test
+  public void itWritesDeterministicPlaceholders() throws IOException {
+    Calendar date = DatatypeConverter.parseDateTime("2019-10-01T10:00:00Z");
+    SignatureMetadata metadata
+        = new SignatureMetadata("Reason", null, null, date);
+    List<FieldSpec> single = Collections.singletonList(
+        new FieldSpec(null, metadata, null, 1, null)
+    );
+    List<FieldSpec> several = Arrays.asList(
+        new FieldSpec("Buyer", metadata, null, 1, null),
+        new FieldSpec("Seller", metadata, null, 1, null)
+    );
+
+    for (PdfSource source : Arrays.asList(
+        PdfSource.of(unsignedPdfPath), PdfSource.of(twoPlaceholders()))) {
+      for (List<FieldSpec> fields : Arrays.asList(single, several)) {
+        byte[] first = signer.addPlaceholders(source, fields, null, "seed");
+        byte[] second = signer.addPlaceholders(source, fields, null, "seed");
+        byte[] reseeded = signer.addPlaceholders(source, fields, null, "other");
+
+        assertArrayEquals(first, second);
+        assertFalse(Arrays.equals(first, reseeded));
+        assertEquals(
+            new PdfReader(first).getInfo().get("ModDate"),
+            "D:20191001100000Z"
+        );
+      }
+    }
+  }
+
+  @Test
+  public void itWritesDeterministicPlaceholdersInEveryTimeZone() {
+    Calendar date = DatatypeConverter.parseDateTime("2019-10-01T10:00:00Z");
+    List<FieldSpec> fields = Collections.singletonList(new FieldSpec(
+        null, new SignatureMetadata("Reason", null, null, date), null, 1, null
+    ));
+    TimeZone hostZone = TimeZone.getDefault();
+
+    try {
+      TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+      byte[] utc = signer.addPlaceholders(
+          PdfSource.of(unsignedPdfPath), fields, null, "seed"
+      );
+
+      TimeZone zurich = TimeZone.getTimeZone("Europe/Zurich");
+      TimeZone.setDefault(zurich);
+      byte[] local = signer.addPlaceholders(
+          PdfSource.of(unsignedPdfPath), fields, null, "seed"
+      );
+
+      assertArrayEquals(utc, local);
+      assertEquals(TimeZone.getDefault(), zurich);
+    } finally {
+      TimeZone.setDefault(hostZone);
+    }
+  }
+
+  @Test
+  public void itRequiresDateForDeterministicPlaceholders() {
+    SignatureMetadata metadata = new SignatureMetadata(null, null, null, null);
+
+    assertThrows(
+        SignatureException.class,
+        () -> signer.addPlaceholders(
+          PdfSource.of(unsignedPdfPath),
+          Collections.singletonList(
+            new FieldSpec(null, metadata, null, 1, null)
+          ),
+          null,
+          "seed"
+        )
+    );
+  }
+
+  private byte[] twoPlaceholders() {
+    SignatureMetadata metadata = new SignatureMetadata(null, null, null, null);
+    byte[] placeholdered = signer.addPlaceholder(
+        PdfSource.of(unsignedPdfPath), metadata, null, null
+    );
+
+    return signer.addPlaceholder(
+        PdfSource.of(placeholdered), metadata, null, null
+    );
+  }
+
+  private boolean hasAppearance(byte[] pdf, String name) throws IOException {
+    PdfDictionary widget = new PdfReader(pdf).getAcroFields()
+        .getFieldItem(name)
+        .getWidget(0);
+    PdfDictionary appearance = widget.getAsDict(PdfName.AP);
+
+    return appearance != null && appearance.get(PdfName.N) != null
+      && widget.getAsArray(PdfName.RECT).getAsNumber(2).floatValue() == 236;
+  }
+
+  private List<String> signatureNames(byte[] pdf) throws IOException {
+    return new PdfReader(pdf).getAcroFields().getSignatureNames();
+  }
+
+  private boolean contentsStartWith(
+      byte[] pdf, String name, byte[] signature
+  ) throws IOException {
+    AcroFields acroFields = new PdfReader(pdf).getAcroFields();
+    byte[] contents = acroFields.getSignatureDictionary(name)
+        .getAsString(PdfName.CONTENTS)
+        .getOriginalBytes();
+
+    return Arrays.equals(
+        Arrays.copyOf(contents, signature.length), signature
+    );
+  }
+}
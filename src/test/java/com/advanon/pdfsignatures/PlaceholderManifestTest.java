@@ -0,0 +1,183 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.itextpdf.text.pdf.PdfName;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PlaceholderManifestTest {
+  private Path unsignedPdfPath = Paths.get(
+      "src", "test", "java", "resources", "unsigned_pdf.pdf"
+  );
+  private Path signaturePath =
+      Paths.get("src", "test", "java", "resources", "signature.pkcs7");
+
+  private Path placeholdered;
+  private Path manifestPath;
+  private byte[] hashableBytes;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    placeholdered = Files.createTempFile("pdf-signatures", ".pdf");
+    manifestPath = Files.createTempFile("pdf-signatures", ".manifest");
+
+    Placeholder placeholder = new Placeholder(
+        new SignatureMetadata("Reason", null, null, null), null, null
+    );
+
+    try (PdfDocument pdf = PdfSource.of(unsignedPdfPath).open()) {
+      pdf.addSignaturePlaceholder(placeholder);
+      hashableBytes = pdf.getHashableBytes();
+
+      Files.write(placeholdered, pdf.getContentBytes());
+      PlaceholderManifest.of(pdf, placeholder).write(manifestPath);
+    }
+  }
+
+  @AfterEach
+  public void cleanup() throws IOException {
+    Files.deleteIfExists(placeholdered);
+    Files.deleteIfExists(manifestPath);
+  }
+
+  @Test
+  public void itDescribesThePlaceholder() throws IOException {
+    PlaceholderManifest manifest = PlaceholderManifest.read(manifestPath);
+
+    try (PdfDocument pdf = PdfSource.of(placeholdered).open()) {
+      long[] byteRange = pdf.getReader().getAcroFields()
+          .getSignatureDictionary(manifest.getPlaceholder().getName())
+          .getAsArray(PdfName.BYTERANGE)
+          .asLongArray();
+
+      assertArrayEquals(byteRange, manifest.getPlaceholder().getByteRange());
+      assertArrayEquals(
+          pdf.digest(HashAlgorithm.SHA_256),
+          manifest.getDigest(HashAlgorithm.SHA_256)
+      );
+    }
+
+    assertEquals(manifest.getFields().size(), 1);
+    assertEquals(
+        manifest.getPlaceholder().getReservedSize(),
+        Constants.DEFAULT_ESTIMATED_SIGNATURE_SIZE
+    );
+    assertArrayEquals(
+        new Digest(hashableBytes).calculate(null),
+        manifest.getDigest(null)
+    );
+    assertTrue(manifest.matches(placeholdered));
+  }
+
+  @Test
+  public void itDoesNotMatchModifiedDocument() throws IOException {
+    byte[] content = Files.readAllBytes(placeholdered);
+    content[0] ^= 1;
+    Files.write(placeholdered, content);
+
+    assertFalse(PlaceholderManifest.read(manifestPath).matches(placeholdered));
+  }
+
+  @Test
+  public void itDoesNotMatchDocumentModifiedAnywhereItIsSigned()
+      throws IOException {
+    PlaceholderManifest manifest = PlaceholderManifest.read(manifestPath);
+    long[] byteRange = manifest.getPlaceholder().getByteRange();
+    byte[] content = Files.readAllBytes(placeholdered);
+    content[(int) (byteRange[1] / 2)] ^= 1;
+    Files.write(placeholdered, content);
+
+    assertFalse(manifest.matches(placeholdered));
+  }
+
+  @Test
+  public void itSignsLikeParsingDoes() throws IOException {
+    byte[] signature = Files.readAllBytes(signaturePath);
+    Path signed = Files.createTempFile("pdf-signatures", ".pdf");
+
+    try {
+      PlaceholderManifest manifest = PlaceholderManifest.read(manifestPath);
+      new Signature(signature).apply(placeholdered, signed, manifest);
+
+      try (PdfDocument pdf = PdfSource.of(placeholdered).open()) {
+        pdf.addSignature(new Signature(signature));
+
+        assertArrayEquals(pdf.getContentBytes(), Files.readAllBytes(signed));
+      }
+
+      assertTrue(manifest.matches(signed));
+    } finally {
+      Files.delete(signed);
+    }
+  }
+
+  @Test
+  public void itRejectsSignatureLargerThanPlaceholder() {
+    assertThrows(
+        SignatureException.class,
+        () -> new Signature(
+          new byte[Constants.DEFAULT_ESTIMATED_SIGNATURE_SIZE + 1]
+        ).apply(
+          placeholdered,
+          placeholdered,
+          PlaceholderManifest.read(manifestPath)
+        )
+    );
+  }
+
+  @Test
+  public void itVerifiesLikeParsingDoes() throws IOException {
+    Path signed = Files.createTempFile("pdf-signatures", ".pdf");
+
+    try {
+      PlaceholderManifest manifest = PlaceholderManifest.read(manifestPath);
+      new Signature(Files.readAllBytes(signaturePath))
+        .apply(placeholdered, signed, manifest);
+
+      assertEquals(
+          describe(new Verification(signed, null).verify()),
+          describe(new Verification(signed, null, manifest).verify())
+      );
+    } finally {
+      Files.delete(signed);
+    }
+  }
+
+  @Test
+  public void itThrowsOnMissingManifest() {
+    assertThrows(
+        ManifestException.class,
+        () -> PlaceholderManifest.read(Paths.get("missing.manifest"))
+    );
+  }
+
+  @Test
+  public void itThrowsOnMalformedManifest() throws IOException {
+    Files.write(manifestPath, "version=1\n".getBytes());
+
+    assertThrows(
+        ManifestException.class,
+        () -> PlaceholderManifest.read(manifestPath)
+    );
+  }
+
+  private List<String> describe(List<SignatureVerification> verifications) {
+    return verifications.stream()
+      .map(SignatureVerification::toString)
+      .collect(Collectors.toList());
+  }
+}
@@ -2,9 +2,11 @@ package com.advanon.pdfsignatures;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.itextpdf.text.Rectangle;
 import com.itextpdf.text.pdf.AcroFields;
 import com.itextpdf.text.pdf.PdfDictionary;
 import com.itextpdf.text.pdf.PdfName;
@@ -18,7 +20,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.List;
 
@@ -43,8 +47,8 @@ class PlaceholderTest {
   @Mock private SignatureMetadata signatureMetadata;
   @Mock private PdfDocument pdfDocument;
 
-  @Captor ArgumentCaptor<byte[]> contentBytesCaptor;
-  @Captor ArgumentCaptor<byte[]> hashableBytesCaptor;
+  @Captor ArgumentCaptor<DocumentBuffer> contentCaptor;
+  @Captor ArgumentCaptor<long[]> hashableRangesCaptor;
 
   @BeforeEach
   public void setup() throws IOException {
@@ -75,11 +79,11 @@ class PlaceholderTest {
 
     placeholder.apply(pdfDocument);
 
-    verify(pdfDocument).setContentBytes(contentBytesCaptor.capture());
-    verify(pdfDocument).setHashableBytes(hashableBytesCaptor.capture());
+    verify(pdfDocument).setContent(contentCaptor.capture());
+    verify(pdfDocument).setHashableRanges(hashableRangesCaptor.capture());
 
-    byte[] contentBytes = contentBytesCaptor.getValue();
-    byte[] hashableBytes = hashableBytesCaptor.getValue();
+    byte[] contentBytes = contentCaptor.getValue().toByteArray();
+    long[] hashableRanges = hashableRangesCaptor.getValue();
 
     int originalPdfLength = Files.readAllBytes(unsignedPdfPath).length;
 
@@ -88,7 +92,8 @@ class PlaceholderTest {
     );
 
     assertTrue(
-        hashableBytes.length <= originalPdfLength + hashableBytesRangeThreshold
+        hashableRanges[1] + hashableRanges[3]
+          <= originalPdfLength + hashableBytesRangeThreshold
     );
   }
 
@@ -101,9 +106,9 @@ class PlaceholderTest {
 
     placeholder.apply(pdfDocument);
 
-    verify(pdfDocument).setContentBytes(contentBytesCaptor.capture());
+    verify(pdfDocument).setContent(contentCaptor.capture());
 
-    byte[] contentBytes = contentBytesCaptor.getValue();
+    byte[] contentBytes = contentCaptor.getValue().toByteArray();
 
     PdfReader reader = new PdfReader(contentBytes);
     AcroFields fields = reader.getAcroFields();
@@ -133,4 +138,72 @@ class PlaceholderTest {
         )
     );
   }
+
+  @Test
+  public void itAddsSeveralEmptyFieldsInOnePass() throws IOException {
+    Placeholder placeholder = new Placeholder(
+        Arrays.asList(
+          new FieldSpec("Buyer", signatureMetadata, null, 1, null),
+          new FieldSpec(
+            "Seller", signatureMetadata, null, 1, new float[] {36, 36, 236, 96}
+          )
+        ),
+        null
+    );
+
+    placeholder.apply(pdfDocument);
+
+    verify(pdfDocument).setContent(contentCaptor.capture());
+
+    AcroFields fields
+        = new PdfReader(contentCaptor.getValue().toByteArray()).getAcroFields();
+
+    assertEquals(
+        fields.getBlankSignatureNames(), Arrays.asList("Buyer", "Seller")
+    );
+    assertTrue(fields.getSignatureNames().isEmpty());
+    assertTrue(placeholder.getSlots().isEmpty());
+    assertEquals(placeholder.getFieldNames(), Arrays.asList("Buyer", "Seller"));
+  }
+
+  @Test
+  public void itAddsPlaceholdersToEmptyFields() throws IOException {
+    new Placeholder(
+        Arrays.asList(
+          new FieldSpec("Buyer", signatureMetadata, null, 1, null),
+          new FieldSpec(
+            "Seller", signatureMetadata, null, 1, new float[] {36, 36, 236, 96}
+          )
+        ),
+        null
+    ).apply(pdfDocument);
+
+    verify(pdfDocument).setContent(contentCaptor.capture());
+    when(pdfDocument.getReader()).thenReturn(
+        new PdfReader(contentCaptor.getValue().toByteArray())
+    );
+
+    Placeholder placeholder = new Placeholder(
+        Collections.singletonList(
+          new FieldSpec("Seller", signatureMetadata, null, 1, null)
+        ),
+        null
+    );
+
+    placeholder.apply(pdfDocument);
+
+    verify(pdfDocument, times(2)).setContent(contentCaptor.capture());
+
+    byte[] contentBytes = contentCaptor.getValue().toByteArray();
+    AcroFields fields = new PdfReader(contentBytes).getAcroFields();
+    long[] byteRange = placeholder.getSlots().get(0).getByteRange();
+    Rectangle position = fields.getFieldPositions("Seller").get(0).position;
+
+    assertEquals(fields.getSignatureNames(), Arrays.asList("Seller"));
+    assertEquals(fields.getBlankSignatureNames(), Arrays.asList("Buyer"));
+    assertEquals(byteRange.length, 4);
+    assertEquals(byteRange[2] + byteRange[3], (long) contentBytes.length);
+    assertEquals(position.getWidth(), 200f);
+    assertEquals(position.getHeight(), 60f);
+  }
 }
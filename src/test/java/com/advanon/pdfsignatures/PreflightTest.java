@@ -0,0 +1,130 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class PreflightTest {
+  private Path unsignedPdfPath = Paths.get(
+      "src", "test", "java", "resources", "unsigned_pdf.pdf"
+  );
+  private Path signaturePath =
+      Paths.get("src", "test", "java", "resources", "signature.pkcs7");
+
+  private PdfSigner signer = new PdfSigner();
+
+  @Test
+  public void itReportsUnsignedDocument() {
+    Preflight.Report report = new Preflight(unsignedPdfPath, null).check();
+
+    assertFalse(report.isEncrypted());
+    assertEquals(
+        report.getCertificationLevel(), CertificationLevel.NOT_CERTIFIED
+    );
+    assertTrue(report.getSignatures().isEmpty());
+  }
+
+  @Test
+  public void itReportsSignatureCoverage() throws Exception {
+    Path signed = write(signer.sign(
+        PdfSource.of(placeholdered(null)), Files.readAllBytes(signaturePath)
+    ));
+
+    try {
+      Preflight.Report report = new Preflight(signed, null).check();
+
+      assertEquals(report.getSignatures().size(), 1);
+      assertEquals(
+          report.getSignatures().get(0).getCoverage(),
+          SignatureVerification.Coverage.COVERS_DOCUMENT
+      );
+    } finally {
+      Files.delete(signed);
+    }
+  }
+
+  @Test
+  public void itReportsCertificationLevel() throws Exception {
+    Path certified = write(
+        placeholdered(CertificationLevel.CERTIFIED_FORM_FILLING)
+    );
+
+    try {
+      assertEquals(
+          new Preflight(certified, null).check().getCertificationLevel(),
+          CertificationLevel.CERTIFIED_FORM_FILLING
+      );
+    } finally {
+      Files.delete(certified);
+    }
+  }
+
+  @Test
+  public void itRejectsTruncatedDocument() throws Exception {
+    byte[] content = Files.readAllBytes(unsignedPdfPath);
+    Path truncated = write(Arrays.copyOf(content, content.length - 100));
+
+    try {
+      assertThrows(
+          PreflightException.class,
+          () -> new Preflight(truncated, null).check()
+      );
+    } finally {
+      Files.delete(truncated);
+    }
+  }
+
+  @Test
+  public void itRejectsTamperedByteRange() throws Exception {
+    String content = new String(
+        placeholdered(null), StandardCharsets.ISO_8859_1
+    );
+    assertTrue(content.contains("/ByteRange [0 "));
+    Path tampered = write(
+        content.replace("/ByteRange [0 ", "/ByteRange [1 ")
+          .getBytes(StandardCharsets.ISO_8859_1)
+    );
+
+    try {
+      assertThrows(
+          PreflightException.class,
+          () -> new Preflight(tampered, null).check()
+      );
+    } finally {
+      Files.delete(tampered);
+    }
+  }
+
+  @Test
+  public void itThrowsOnMissingFile() {
+    assertThrows(
+        PreflightException.class,
+        () -> new Preflight(Paths.get("missing.pdf"), null).check()
+    );
+  }
+
+  private byte[] placeholdered(CertificationLevel certificationLevel) {
+    return signer.addPlaceholder(
+        PdfSource.of(unsignedPdfPath),
+        new SignatureMetadata("Reason", null, null, null),
+        null,
+        certificationLevel
+    );
+  }
+
+  private static Path write(byte[] content) throws Exception {
+    Path path = Files.createTempFile("pdf-signatures", ".pdf");
+    Files.write(path, content);
+
+    return path;
+  }
+}
@@ -0,0 +1,74 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.cert.X509CRL;
+
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.junit.jupiter.api.Test;
+
+class RevocationCacheTest {
+  private Path crlPath =
+      Paths.get("src", "test", "java", "resources", "crl.x509");
+  private Path ocspPath =
+      Paths.get("src", "test", "java", "resources", "ocsp.x509");
+
+  @Test
+  public void itParsesSameContentOnce() throws Exception {
+    RevocationCache cache = new RevocationCache(1024 * 1024);
+    byte[] crlBytes = Files.readAllBytes(crlPath);
+    byte[] ocspBytes = Files.readAllBytes(ocspPath);
+
+    X509CRL crl = cache.getCrl(crlBytes);
+    BasicOCSPResp ocsp = cache.getOcsp(ocspBytes);
+
+    assertSame(crl, cache.getCrl(crlBytes.clone()));
+    assertSame(ocsp, cache.getOcsp(ocspBytes.clone()));
+    assertArrayEquals(crl.getEncoded(), crlBytes);
+    assertEquals(cache.getSize(), crlBytes.length + ocspBytes.length);
+  }
+
+  @Test
+  public void itEvictsLeastRecentlyUsedEntries() throws IOException {
+    byte[] crlBytes = Files.readAllBytes(crlPath);
+    byte[] ocspBytes = Files.readAllBytes(ocspPath);
+    RevocationCache cache = new RevocationCache(
+        Math.max(crlBytes.length, ocspBytes.length)
+    );
+
+    X509CRL crl = cache.getCrl(crlBytes);
+    cache.getOcsp(ocspBytes);
+
+    assertEquals(cache.getSize(), ocspBytes.length);
+    assertNotSame(crl, cache.getCrl(crlBytes));
+  }
+
+  @Test
+  public void itDoesNotCacheWhenDisabled() throws IOException {
+    RevocationCache cache = new RevocationCache(0);
+    byte[] crlBytes = Files.readAllBytes(crlPath);
+
+    assertNotSame(cache.getCrl(crlBytes), cache.getCrl(crlBytes));
+    assertEquals(cache.getSize(), 0);
+  }
+
+  @Test
+  public void itThrowsOnMalformedContent() {
+    RevocationCache cache = new RevocationCache(1024);
+
+    assertThrows(
+        ValidationException.class, () -> cache.getCrl(new byte[] {1, 2, 3})
+    );
+    assertThrows(
+        ValidationException.class, () -> cache.getOcsp(new byte[] {1, 2, 3})
+    );
+  }
+}
@@ -0,0 +1,214 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RevocationStoreTest {
+  private static SyntheticMaterial material;
+  private static X509CertificateHolder certificate;
+
+  private Path crlPath =
+      Paths.get("src", "test", "java", "resources", "crl.x509");
+  private Path ocspPath =
+      Paths.get("src", "test", "java", "resources", "ocsp.x509");
+
+  private RevocationCache cache = new RevocationCache(1024 * 1024);
+  private Path directory;
+
+  @BeforeAll
+  public static void setupMaterial() throws IOException {
+    material = SyntheticMaterial.generate();
+    certificate = new X509CertificateHolder(material.getCertificate());
+  }
+
+  @BeforeEach
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("pdf-signatures-store");
+  }
+
+  @AfterEach
+  public void teardown() throws IOException {
+    for (Path file : listFiles()) {
+      Files.delete(file);
+    }
+
+    Files.delete(directory);
+  }
+
+  @Test
+  public void itFindsMaterialByCertificate() {
+    RevocationStore store = new RevocationStore(null, 1024 * 1024, cache);
+
+    store.addCrl(material.getCrl());
+    store.addOcsp(material.getOcsp());
+
+    assertArrayEquals(store.findCrl(certificate), material.getCrl());
+    assertArrayEquals(store.findOcsp(certificate), material.getOcsp());
+    assertEquals(
+        store.getSize(), material.getCrl().length + material.getOcsp().length
+    );
+  }
+
+  @Test
+  public void itReloadsMaterialFromDirectory() throws IOException {
+    RevocationStore store = new RevocationStore(directory, 1024 * 1024, cache);
+    store.addCrl(material.getCrl());
+    store.addOcsp(material.getOcsp());
+
+    RevocationStore reloaded = new RevocationStore(
+        directory, 1024 * 1024, cache
+    );
+    reloaded.load();
+
+    assertEquals(listFiles().size(), 2);
+    assertArrayEquals(reloaded.findCrl(certificate), material.getCrl());
+    assertArrayEquals(reloaded.findOcsp(certificate), material.getOcsp());
+  }
+
+  @Test
+  public void itDropsExpiredMaterial() throws IOException {
+    new RevocationStore(directory, 1024 * 1024, cache)
+        .addCrl(material.getCrl());
+
+    Path file = listFiles().get(0);
+    String name = file.getFileName().toString();
+    String key = name.substring(0, name.indexOf('.'));
+    Files.move(file, directory.resolve(key + ".1.der"));
+
+    RevocationStore reloaded = new RevocationStore(
+        directory, 1024 * 1024, cache
+    );
+    reloaded.load();
+
+    assertNull(reloaded.findCrl(certificate));
+    assertTrue(listFiles().isEmpty());
+  }
+
+  @Test
+  public void itBoundsMaterialWithoutNextUpdate() throws Exception {
+    long day = 24L * 60 * 60 * 1000;
+    // Whole seconds, as encoded in the response
+    long thisUpdate = (System.currentTimeMillis() - 2 * day) / 1000 * 1000;
+    byte[] ocsp = ocspWithoutNextUpdate(new Date(thisUpdate));
+
+    RevocationStore shortLived = new RevocationStore(
+        null, 1024 * 1024, day, cache
+    );
+    shortLived.addOcsp(ocsp);
+
+    assertNull(shortLived.findOcsp(certificate));
+    assertEquals(shortLived.getSize(), 0);
+
+    RevocationStore store = new RevocationStore(
+        directory, 1024 * 1024, 7 * day, cache
+    );
+    store.addOcsp(ocsp);
+
+    assertArrayEquals(store.findOcsp(certificate), ocsp);
+    assertTrue(
+        listFiles().get(0).getFileName().toString()
+          .endsWith("." + (thisUpdate + 7 * day) + ".der")
+    );
+  }
+
+  @Test
+  public void itEvictsLeastRecentlyUsedMaterial() throws IOException {
+    RevocationStore store = new RevocationStore(
+        directory, material.getOcsp().length, cache
+    );
+
+    store.addCrl(material.getCrl());
+    store.addOcsp(material.getOcsp());
+
+    assertNull(store.findCrl(certificate));
+    assertArrayEquals(store.findOcsp(certificate), material.getOcsp());
+    assertEquals(listFiles().size(), 1);
+  }
+
+  @Test
+  public void itStoresMaterialPassedToValidation() throws IOException {
+    RevocationStore store = new RevocationStore(null, 1024 * 1024, cache);
+
+    new Validation(
+        Arrays.asList(Files.readAllBytes(ocspPath)),
+        Arrays.asList(Files.readAllBytes(crlPath)),
+        store,
+        cache
+    );
+
+    assertTrue(store.getSize() > 0);
+  }
+
+  private static byte[] ocspWithoutNextUpdate(
+      Date thisUpdate
+  ) throws GeneralSecurityException, OperatorCreationException,
+           OCSPException, IOException {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(256);
+    ContentSigner signer = new JcaContentSignerBuilder("SHA256withECDSA")
+        .build(generator.generateKeyPair().getPrivate());
+
+    BasicOCSPRespBuilder builder = new BasicOCSPRespBuilder(
+        new RespID(new X500Name("CN=pdf-signatures test responder"))
+    );
+    builder.addResponse(
+        new CertificateID(
+            new JcaDigestCalculatorProviderBuilder().build()
+              .get(CertificateID.HASH_SHA1),
+            certificate,
+            certificate.getSerialNumber()
+        ),
+        CertificateStatus.GOOD,
+        thisUpdate,
+        null
+    );
+
+    return new OCSPRespBuilder()
+        .build(OCSPRespBuilder.SUCCESSFUL, builder.build(
+            signer, null, thisUpdate
+        ))
+        .getEncoded();
+  }
+
+  private List<Path> listFiles() throws IOException {
+    List<Path> files = new ArrayList<>();
+
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      stream.forEach(files::add);
+    }
+
+    return files;
+  }
+}
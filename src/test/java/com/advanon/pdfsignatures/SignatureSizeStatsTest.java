@@ -0,0 +1,88 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SignatureSizeStatsTest {
+  private Path directory;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("pdf-signatures-sizes");
+  }
+
+  @AfterEach
+  public void teardown() throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        Files.delete(file);
+      }
+    }
+
+    Files.delete(directory);
+  }
+
+  @Test
+  public void itFallsBackUntilThereAreEnoughSamples() {
+    SignatureSizeStats stats = SignatureSizeStats.open(directory);
+
+    stats.record(
+        null, Collections.nCopies(SignatureSizeStats.MIN_SAMPLES - 1, 7000)
+    );
+    assertNull(stats.estimate(null));
+
+    stats.record(null, Collections.singletonList(7000));
+    assertEquals(stats.estimate(null), Integer.valueOf(7700));
+  }
+
+  @Test
+  public void itSizesAtHighPercentilePerProfile() {
+    SignatureSizeStats stats = SignatureSizeStats.open(directory);
+    List<Integer> sizes = new ArrayList<>();
+
+    for (int i = 1; i <= 100; i++) {
+      sizes.add(7000 + i);
+    }
+    stats.record("seal", sizes);
+
+    assertEquals(stats.estimate("seal"), Integer.valueOf(7809));
+    assertNull(stats.estimate("other"));
+  }
+
+  @Test
+  public void itKeepsLatestSamplesOnly() {
+    SignatureSizeStats stats = SignatureSizeStats.open(directory);
+
+    stats.record(
+        "seal", Collections.nCopies(SignatureSizeStats.MAX_SAMPLES, 20000)
+    );
+    stats.record(
+        "seal", Collections.nCopies(SignatureSizeStats.MAX_SAMPLES, 5000)
+    );
+
+    assertEquals(stats.estimate("seal"), Integer.valueOf(5500));
+  }
+
+  @Test
+  public void itRejectsInvalidProfile() {
+    SignatureSizeStats stats = SignatureSizeStats.open(directory);
+
+    assertThrows(
+        SignatureException.class,
+        () -> stats.estimate("../profile")
+    );
+  }
+}
@@ -3,7 +3,9 @@ package com.advanon.pdfsignatures;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.verify;
@@ -50,8 +52,8 @@ class SignatureTest {
 
   @Mock private PdfDocument pdfDocument;
 
-  @Captor ArgumentCaptor<byte[]> contentBytesCaptor;
-  @Captor ArgumentCaptor<byte[]> hashableBytesCaptor;
+  @Captor ArgumentCaptor<DocumentBuffer> contentCaptor;
+  @Captor ArgumentCaptor<long[]> hashableRangesCaptor;
 
   @BeforeEach
   public void setup() throws IOException {
@@ -70,6 +72,11 @@ class SignatureTest {
     );
 
     when(pdfDocument.getContentBytes()).thenReturn(pdfBytes);
+    when(pdfDocument.getContentLength()).thenReturn((long) pdfBytes.length);
+    when(pdfDocument.readContent(any(), anyLong())).thenCallRealMethod();
+    doCallRealMethod()
+        .when(pdfDocument)
+        .writeContent(any(), anyLong(), anyLong());
     doCallRealMethod().when(pdfDocument).updateHashableBytes();
 
     when(
@@ -89,17 +96,18 @@ class SignatureTest {
 
     signature.apply(pdfDocument);
 
-    verify(pdfDocument).setContentBytes(contentBytesCaptor.capture());
-    verify(pdfDocument).setHashableBytes(hashableBytesCaptor.capture());
+    verify(pdfDocument).setContent(contentCaptor.capture());
+    verify(pdfDocument).setHashableRanges(hashableRangesCaptor.capture());
 
-    byte[] contentBytes = contentBytesCaptor.getValue();
-    byte[] hashableBytes = hashableBytesCaptor.getValue();
+    byte[] contentBytes = contentCaptor.getValue().toByteArray();
+    long[] hashableRanges = hashableRangesCaptor.getValue();
 
     int originalPdfLength = Files.readAllBytes(placeholderedPdfPath).length;
 
     assertTrue(contentBytes.length == originalPdfLength);
     assertTrue(
-        hashableBytes.length <= originalPdfLength + hashableBytesRangeThreshold
+        hashableRanges[1] + hashableRanges[3]
+          <= originalPdfLength + hashableBytesRangeThreshold
     );
   }
 
@@ -112,9 +120,9 @@ class SignatureTest {
 
     signature.apply(pdfDocument);
 
-    verify(pdfDocument).setContentBytes(contentBytesCaptor.capture());
+    verify(pdfDocument).setContent(contentCaptor.capture());
 
-    byte[] contentBytes = contentBytesCaptor.getValue();
+    byte[] contentBytes = contentCaptor.getValue().toByteArray();
 
     PdfReader reader = new PdfReader(
         new ByteArrayInputStream(contentBytes)
@@ -145,12 +153,14 @@ class SignatureTest {
 
     signature.apply(pdfDocument);
 
-    verify(pdfDocument).setHashableBytes(hashableBytesCaptor.capture());
+    verify(pdfDocument).setContent(contentCaptor.capture());
+    verify(pdfDocument).setHashableRanges(hashableRangesCaptor.capture());
 
-    byte[] hashableBytes = hashableBytesCaptor.getValue();
     byte[] placeholderedDigest = Files.readAllBytes(placeholderedDigestPath);
-    byte[] signedDigest
-           = new Digest(hashableBytes).calculate(HashAlgorithm.SHA_512);
+    byte[] signedDigest = new Digest(
+        contentCaptor.getValue(),
+        hashableRangesCaptor.getValue()
+    ).calculate(HashAlgorithm.SHA_512);
 
     assertArrayEquals(signedDigest, placeholderedDigest);
   }
@@ -0,0 +1,117 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TemplateCacheTest {
+  private Path unsignedPdfPath = Paths.get(
+      "src", "test", "java", "resources", "unsigned_pdf.pdf"
+  );
+
+  private byte[] content;
+  private MemoryBudget unlimitedBudget = new MemoryBudget(0, 0, 0);
+
+  @BeforeEach
+  public void setup() throws IOException {
+    content = Files.readAllBytes(unsignedPdfPath);
+  }
+
+  @Test
+  public void itAdmitsDocumentsSeenTwice() throws IOException {
+    TemplateCache cache = new TemplateCache(1024 * 1024, unlimitedBudget);
+
+    cache.open(content, null).close();
+    assertEquals(cache.getSize(), 0);
+
+    cache.open(content, null).close();
+    assertEquals(cache.getSize(), content.length);
+  }
+
+  @Test
+  public void itHandsOutIndependentDuplicates()
+      throws IOException, DocumentException {
+    TemplateCache cache = new TemplateCache(1024 * 1024, unlimitedBudget);
+    cache.open(content, null).close();
+
+    PdfReader first = cache.open(content, null);
+    PdfReader second = cache.open(content, null);
+
+    assertNotSame(first, second);
+
+    first.getCatalog().put(PdfName.LANG, new PdfString("de"));
+    ByteArrayOutputStream stamped = new ByteArrayOutputStream();
+    new PdfStamper(first, stamped).close();
+
+    assertEquals(second.getCatalog().get(PdfName.LANG), null);
+    assertEquals(
+        new PdfReader(stamped.toByteArray()).getNumberOfPages(),
+        second.getNumberOfPages()
+    );
+    assertEquals(
+        new PdfReader(stamped.toByteArray()).getCatalog()
+          .getAsString(PdfName.LANG).toString(),
+        "de"
+    );
+    second.close();
+  }
+
+  @Test
+  public void itReservesMastersFromMemoryBudget() throws IOException {
+    MemoryBudget budget = new MemoryBudget(content.length * 3 / 2, 0, 0);
+    TemplateCache cache = new TemplateCache(1024 * 1024, budget);
+
+    cache.open(content, null).close();
+    cache.open(content, null).close();
+    assertEquals(budget.getReserved(), content.length);
+
+    byte[] other = content.clone();
+    other[other.length - 1] = ' ';
+    cache.open(other, null).close();
+    cache.open(other, null).close();
+
+    // The budget holds a single master, the other one is not cached
+    assertEquals(cache.getSize(), content.length);
+    assertEquals(budget.getReserved(), content.length);
+  }
+
+  @Test
+  public void itReleasesEvictedMasters() throws IOException {
+    MemoryBudget budget = new MemoryBudget(1024 * 1024, 0, 0);
+    TemplateCache cache = new TemplateCache(content.length * 3 / 2, budget);
+    byte[] other = content.clone();
+    other[other.length - 1] = ' ';
+
+    cache.open(content, null).close();
+    cache.open(content, null).close();
+    cache.open(other, null).close();
+    cache.open(other, null).close();
+
+    assertEquals(cache.getSize(), other.length);
+    assertEquals(budget.getReserved(), other.length);
+  }
+
+  @Test
+  public void itIsDisabledWithoutSize() throws IOException {
+    TemplateCache cache = new TemplateCache(0, unlimitedBudget);
+
+    cache.open(content, null).close();
+    cache.open(content, null).close();
+
+    assertEquals(cache.getSize(), 0);
+  }
+}
@@ -0,0 +1,127 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TraceTest {
+  private static final String TRACEPARENT
+      = "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01";
+
+  private List<Span> exported = new ArrayList<>();
+
+  @Test
+  public void itJoinsTheTraceOfTheCaller() {
+    Trace trace = new Trace("digest", TRACEPARENT, exported::addAll);
+
+    trace.call(() -> null);
+
+    assertEquals(trace.getTraceId(), "0af7651916cd43dd8448eb211c80319c");
+    assertEquals(exported.size(), 1);
+    assertEquals(exported.get(0).getParentSpanId(), "b7ad6b7169203331");
+    assertEquals(exported.get(0).getKind(), Span.KIND_SERVER);
+  }
+
+  @Test
+  public void itStartsATraceWithoutValidCaller() {
+    Trace trace = new Trace(
+        "digest",
+        "00-00000000000000000000000000000000-b7ad6b7169203331-01",
+        exported::addAll
+    );
+
+    trace.call(() -> null);
+
+    assertNotEquals(trace.getTraceId(), "00000000000000000000000000000000");
+    assertEquals(trace.getTraceId().length(), 32);
+    assertNull(exported.get(0).getParentSpanId());
+  }
+
+  @Test
+  public void itRecordsNestedPhases() {
+    Trace trace = new Trace("sign", null, exported::addAll);
+
+    trace.call(() -> {
+      try (Trace.Scope parse = Trace.span("parse")) {
+        try (Trace.Scope hash = Trace.span("hash")) {
+          return null;
+        }
+      }
+    });
+
+    assertEquals(exported.size(), 3);
+
+    Span hash = exported.get(0);
+    Span parse = exported.get(1);
+    Span request = exported.get(2);
+
+    assertEquals(hash.getName(), "hash");
+    assertEquals(hash.getParentSpanId(), parse.getSpanId());
+    assertEquals(parse.getParentSpanId(), request.getSpanId());
+    assertEquals(request.getSpanId(), trace.getSpanId());
+    assertTrue(parse.getStartTime() >= request.getStartTime());
+    assertTrue(parse.getEndTime() <= request.getEndTime());
+  }
+
+  @Test
+  public void itRecordsFailedRequests() {
+    Trace trace = new Trace("sign", null, exported::addAll);
+
+    assertThrows(SignatureException.class, () -> trace.call(() -> {
+      throw new SignatureException("Signature is missing");
+    }));
+
+    assertEquals(
+        exported.get(0).getError(), "SignatureException: Signature is missing"
+    );
+  }
+
+  @Test
+  public void itIgnoresPhasesOutsideRequests() {
+    try (Trace.Scope span = Trace.span("parse")) {
+      Trace trace = new Trace("digest", null, exported::addAll);
+
+      trace.call(() -> null);
+    }
+
+    assertEquals(exported.size(), 1);
+    assertNull(exported.get(0).getParentSpanId());
+  }
+
+  @Test
+  public void itAppendsExportRequestsToFile() throws IOException {
+    Path file = Files.createTempFile("pdf-signatures", ".trace");
+
+    try {
+      SpanExporter exporter = new OtlpFileExporter(file);
+
+      new Trace("digest", TRACEPARENT, exporter).call(() -> null);
+      new Trace("sign", TRACEPARENT, exporter).call(() -> null);
+
+      List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+
+      assertEquals(lines.size(), 2);
+      assertTrue(lines.get(0).startsWith("{\"resourceSpans\":[{"));
+      assertTrue(lines.get(0).contains(
+          "\"traceId\":\"0af7651916cd43dd8448eb211c80319c\""
+      ));
+      assertTrue(lines.get(0).contains(
+          "\"parentSpanId\":\"b7ad6b7169203331\",\"name\":\"digest\",\"kind\":2"
+      ));
+      assertTrue(lines.get(1).contains("\"name\":\"sign\""));
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
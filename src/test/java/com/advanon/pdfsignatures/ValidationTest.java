@@ -1,5 +1,7 @@
 package com.advanon.pdfsignatures;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.isA;
@@ -7,7 +9,9 @@ import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.itextpdf.text.pdf.PdfArray;
 import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
 import com.itextpdf.text.pdf.PdfReader;
 
 import java.io.ByteArrayInputStream;
@@ -37,7 +41,7 @@ class ValidationTest {
       Paths.get("src", "test", "java", "resources", "signed_pdf.pdf");
 
   @Mock private PdfDocument pdfDocument;
-  @Captor ArgumentCaptor<byte[]> contentBytesCaptor;
+  @Captor ArgumentCaptor<DocumentBuffer> contentCaptor;
 
   @BeforeEach
   public void setup() throws IOException {
@@ -55,7 +59,7 @@ class ValidationTest {
           new PdfReader(new ByteArrayInputStream(pdfBytes))
     );
 
-    when(pdfDocument.getContentBytes()).thenReturn(pdfBytes);
+    when(pdfDocument.getContentLength()).thenReturn((long) pdfBytes.length);
     doCallRealMethod().when(pdfDocument).updateHashableBytes();
 
     when(
@@ -78,9 +82,9 @@ class ValidationTest {
 
     validation.apply(pdfDocument);
 
-    verify(pdfDocument).setContentBytes(contentBytesCaptor.capture());
+    verify(pdfDocument).setContent(contentCaptor.capture());
 
-    byte[] contentBytes = contentBytesCaptor.getValue();
+    byte[] contentBytes = contentCaptor.getValue().toByteArray();
 
     int originalPdfLength = Files.readAllBytes(signedPdfPath).length;
 
@@ -89,4 +93,55 @@ class ValidationTest {
           > originalPdfLength + crlBytes.length + ocspBytes.length
     );
   }
+
+  @Test
+  public void itWritesMaterialOnceAcrossRuns() throws IOException {
+    byte[] crlBytes = Files.readAllBytes(crlPath);
+    byte[] ocspBytes = Files.readAllBytes(ocspPath);
+    PdfSigner signer = new PdfSigner();
+
+    byte[] validated = signer.addValidation(
+        PdfSource.of(signedPdfPath),
+        Arrays.asList(ocspBytes, ocspBytes),
+        Arrays.asList(crlBytes, crlBytes)
+    );
+    byte[] revalidated = signer.addValidation(
+        PdfSource.of(validated),
+        Arrays.asList(ocspBytes),
+        Arrays.asList(crlBytes)
+    );
+
+    PdfDictionary dss = new PdfReader(revalidated)
+        .getCatalog()
+        .getAsDict(PdfName.DSS);
+
+    assertNotNull(dss);
+    assertEquals(dss.getAsArray(PdfName.CRLS).size(), 1);
+    assertEquals(dss.getAsArray(PdfName.OCSPS).size(), 1);
+    assertEquals(dss.getAsDict(PdfName.VRI).size(), 1);
+  }
+
+  @Test
+  public void itReferencesRelevantMaterialFromVri() throws IOException {
+    byte[] validated = new PdfSigner().addValidation(
+        PdfSource.of(signedPdfPath),
+        Arrays.asList(Files.readAllBytes(ocspPath)),
+        Arrays.asList(Files.readAllBytes(crlPath))
+    );
+
+    PdfDictionary dss = new PdfReader(validated)
+        .getCatalog()
+        .getAsDict(PdfName.DSS);
+    PdfDictionary vris = dss.getAsDict(PdfName.VRI);
+    PdfDictionary vri = vris.getAsDict(vris.getKeys().iterator().next());
+    PdfArray vriCrls = vri.getAsArray(PdfName.CRL);
+
+    // The CRL is issued by the root of the signer chain
+    assertEquals(vriCrls.size(), 1);
+    assertEquals(
+        vriCrls.getAsIndirectObject(0).getNumber(),
+        dss.getAsArray(PdfName.CRLS).getAsIndirectObject(0).getNumber()
+    );
+    assertTrue(vri.getAsArray(PdfName.CERT).size() >= 2);
+  }
 }
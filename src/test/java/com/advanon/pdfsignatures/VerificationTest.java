@@ -0,0 +1,315 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.junit.jupiter.api.Test;
+
+class VerificationTest {
+  private Path unsignedPdfPath = Paths.get(
+      "src", "test", "java", "resources", "unsigned_pdf.pdf"
+  );
+  private Path signedPdfPath =
+      Paths.get("src", "test", "java", "resources", "signed_pdf.pdf");
+
+  private PdfSigner signer = new PdfSigner();
+
+  @Test
+  public void itVerifiesValidSignature() throws Exception {
+    Path signed = signUnsignedPdf();
+
+    try {
+      List<SignatureVerification> verifications
+          = new Verification(signed, null).verify();
+
+      assertEquals(verifications.size(), 1);
+      assertEquals(
+          verifications.get(0).getStatus(),
+          SignatureVerification.Status.VALID
+      );
+      assertEquals(
+          verifications.get(0).getCoverage(),
+          SignatureVerification.Coverage.COVERS_DOCUMENT
+      );
+      assertTrue(verifications.get(0).isValid());
+    } finally {
+      Files.delete(signed);
+    }
+  }
+
+  @Test
+  public void itDetectsTamperedDocument() throws Exception {
+    Path signed = signUnsignedPdf();
+
+    try {
+      byte[] content = Files.readAllBytes(signed);
+      content[content.length / 4] ^= 1;
+      Files.write(signed, content);
+
+      SignatureVerification verification
+          = new Verification(signed, null).verify().get(0);
+
+      assertEquals(
+          verification.getStatus(), SignatureVerification.Status.INVALID
+      );
+      assertFalse(verification.isValid());
+    } finally {
+      Files.delete(signed);
+    }
+  }
+
+  @Test
+  public void itReportsSignatureWhichDoesNotMatchDocument() {
+    SignatureVerification verification
+        = new Verification(signedPdfPath, null).verify().get(0);
+
+    assertEquals(
+        verification.getStatus(), SignatureVerification.Status.INVALID
+    );
+    assertEquals(
+        verification.getCoverage(),
+        SignatureVerification.Coverage.COVERS_DOCUMENT
+    );
+  }
+
+  @Test
+  public void itReportsRevisionCoverageAfterIncrementalUpdate()
+      throws Exception {
+    Path signed = signUnsignedPdf();
+    Path updated = Files.createTempFile("pdf-signatures", ".pdf");
+
+    try {
+      Files.write(updated, signer.addPlaceholder(
+          PdfSource.of(signed),
+          new SignatureMetadata(null, null, null, null),
+          null,
+          null
+      ));
+
+      List<SignatureVerification> verifications
+          = new Verification(updated, null).verify();
+
+      assertEquals(verifications.size(), 2);
+      assertEquals(
+          verifications.get(0).getCoverage(),
+          SignatureVerification.Coverage.COVERS_REVISION
+      );
+      assertTrue(verifications.get(0).isValid());
+    } finally {
+      Files.delete(signed);
+      Files.delete(updated);
+    }
+  }
+
+  @Test
+  public void itVerifiesFieldsAddedTogether() throws Exception {
+    byte[] document = signer.addPlaceholders(
+        PdfSource.of(unsignedPdfPath),
+        Arrays.asList(
+          new FieldSpec("Buyer", metadata(), null, 1, null),
+          new FieldSpec("Seller", metadata(), null, 1, null)
+        ),
+        null
+    );
+
+    for (String name : Arrays.asList("Buyer", "Seller")) {
+      byte[] hashableBytes;
+      try (PdfDocument pdf = PdfSource.of(document).open()) {
+        pdf.addSignaturePlaceholder(new Placeholder(
+            Collections.singletonList(
+              new FieldSpec(name, metadata(), null, 1, null)
+            ),
+            null
+        ));
+        document = pdf.getContentBytes();
+        hashableBytes = pdf.getHashableBytes();
+      }
+
+      assertArrayEquals(
+          signer.digest(PdfSource.of(document), null, name),
+          new Digest(hashableBytes).calculate(null)
+      );
+
+      document = signer.sign(
+          PdfSource.of(document),
+          Collections.singletonMap(name, detachedSignature(hashableBytes))
+      );
+    }
+
+    Path signed = Files.createTempFile("pdf-signatures", ".pdf");
+
+    try {
+      Files.write(signed, document);
+
+      List<SignatureVerification> verifications
+          = new Verification(signed, null).verify();
+
+      assertEquals(verifications.size(), 2);
+      for (SignatureVerification verification : verifications) {
+        assertTrue(verification.isValid());
+      }
+      assertEquals(
+          verifications.get(0).getCoverage(),
+          SignatureVerification.Coverage.COVERS_REVISION
+      );
+      assertEquals(
+          verifications.get(1).getCoverage(),
+          SignatureVerification.Coverage.COVERS_DOCUMENT
+      );
+    } finally {
+      Files.delete(signed);
+    }
+  }
+
+  @Test
+  public void itSignsTheLastPlaceholderOfStackedOnes() throws Exception {
+    byte[] document = Files.readAllBytes(unsignedPdfPath);
+    byte[] hashableBytes = null;
+
+    for (String name : Arrays.asList("Buyer", "Seller")) {
+      try (PdfDocument pdf = PdfSource.of(document).open()) {
+        pdf.addSignaturePlaceholder(new Placeholder(
+            Collections.singletonList(
+              new FieldSpec(name, metadata(), null, 1, null)
+            ),
+            null
+        ));
+        document = pdf.getContentBytes();
+        hashableBytes = pdf.getHashableBytes();
+      }
+    }
+
+    byte[] placeholdered = document;
+    byte[] sellerSignature = detachedSignature(hashableBytes);
+    Map<String, byte[]> signatures = new HashMap<>();
+    signatures.put("Buyer", sellerSignature);
+    signatures.put("Seller", sellerSignature);
+
+    // Signing Buyer would change bytes the Seller signature covers
+    assertThrows(
+        SignatureException.class,
+        () -> signer.sign(PdfSource.of(placeholdered), signatures)
+    );
+
+    Path signed = Files.createTempFile("pdf-signatures", ".pdf");
+
+    try {
+      Files.write(
+          signed,
+          signer.sign(
+            PdfSource.of(placeholdered),
+            Collections.singletonMap("Seller", sellerSignature)
+          )
+      );
+
+      List<SignatureVerification> verifications
+          = new Verification(signed, null).verify();
+
+      assertEquals(verifications.size(), 2);
+      assertTrue(
+          verifications.stream().anyMatch(
+            verification -> verification.getName().equals("Seller")
+              && verification.isValid()
+          )
+      );
+    } finally {
+      Files.delete(signed);
+    }
+  }
+
+  @Test
+  public void itReturnsNothingForUnsignedDocument() {
+    assertTrue(new Verification(unsignedPdfPath, null).verify().isEmpty());
+  }
+
+  @Test
+  public void itThrowsOnMissingFile() {
+    assertThrows(
+        VerificationException.class,
+        () -> new Verification(Paths.get("missing.pdf"), null).verify()
+    );
+  }
+
+  private Path signUnsignedPdf() throws Exception {
+    byte[] placeholdered = signer.addPlaceholder(
+        PdfSource.of(unsignedPdfPath),
+        new SignatureMetadata("Reason", null, null, null),
+        null,
+        null
+    );
+
+    byte[] hashableBytes;
+    try (PdfDocument pdf = PdfSource.of(placeholdered).open()) {
+      hashableBytes = pdf.getHashableBytes();
+    }
+
+    Path signed = Files.createTempFile("pdf-signatures", ".pdf");
+    Files.write(signed, signer.sign(
+        PdfSource.of(placeholdered), detachedSignature(hashableBytes)
+    ));
+
+    return signed;
+  }
+
+  private SignatureMetadata metadata() {
+    return new SignatureMetadata("Reason", null, null, null);
+  }
+
+  private byte[] detachedSignature(byte[] content) throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(256);
+    KeyPair keyPair = generator.generateKeyPair();
+    ContentSigner contentSigner = new JcaContentSignerBuilder(
+        "SHA256withECDSA"
+    ).build(keyPair.getPrivate());
+
+    X500Name name = new X500Name("CN=Test signer");
+    Date now = new Date();
+    X509CertificateHolder certificate = new JcaX509v3CertificateBuilder(
+        name,
+        BigInteger.ONE,
+        new Date(now.getTime() - 60000),
+        new Date(now.getTime() + 60000),
+        name,
+        keyPair.getPublic()
+    ).build(contentSigner);
+
+    CMSSignedDataGenerator cmsGenerator = new CMSSignedDataGenerator();
+    cmsGenerator.addSignerInfoGenerator(
+        new JcaSignerInfoGeneratorBuilder(
+          new JcaDigestCalculatorProviderBuilder().build()
+        ).build(contentSigner, certificate)
+    );
+    cmsGenerator.addCertificate(certificate);
+
+    return cmsGenerator.generate(
+        new CMSProcessableByteArray(content), false
+    ).getEncoded();
+  }
+}
@@ -0,0 +1,162 @@
+package com.advanon.pdfsignatures;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.itextpdf.text.pdf.codec.Base64;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WatchFolderTest {
+  private Path unsignedPdfPath =
+      Paths.get("src", "test", "java", "resources", "unsigned_pdf.pdf");
+  private Path placeholderedPdfPath =
+      Paths.get("src", "test", "java", "resources", "placeholdered_pdf.pdf");
+  private Path signaturePath =
+      Paths.get("src", "test", "java", "resources", "signature.pkcs7");
+
+  private Path directory;
+  private Path inbox;
+  private Path outbox;
+  private Path errors;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("pdf-signatures-watch");
+    inbox = Files.createDirectory(directory.resolve("inbox"));
+    outbox = directory.resolve("outbox");
+    errors = directory.resolve("errors");
+  }
+
+  @AfterEach
+  public void teardown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      List<Path> paths = files
+          .sorted(Comparator.reverseOrder())
+          .collect(Collectors.toList());
+
+      for (Path path : paths) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  public void itAddsPlaceholdersToDroppedDocuments() throws Exception {
+    Files.copy(unsignedPdfPath, inbox.resolve("contract.pdf"));
+
+    watch(WatchFolder.CHAIN_PLACEHOLDER, outbox.resolve("contract.digest"));
+
+    assertTrue(Files.exists(outbox.resolve("contract.pdf")));
+    assertFalse(Files.exists(inbox.resolve("contract.pdf")));
+    assertTrue(isEmpty(inbox.resolve(WatchFolder.PROCESSING_DIRECTORY)));
+    assertFalse(
+        new String(
+          Files.readAllBytes(outbox.resolve("contract.digest")),
+          StandardCharsets.UTF_8
+        ).isEmpty()
+    );
+  }
+
+  @Test
+  public void itSignsDocumentsWithSiblingSignatures() throws Exception {
+    Files.copy(placeholderedPdfPath, inbox.resolve("contract.pdf"));
+    Files.write(
+        inbox.resolve("contract.sig"),
+        Base64.encodeBytes(
+          Files.readAllBytes(signaturePath), Base64.DONT_BREAK_LINES
+        ).getBytes(StandardCharsets.US_ASCII)
+    );
+
+    watch(WatchFolder.CHAIN_SIGN, outbox.resolve("contract.pdf"));
+
+    assertFalse(Files.exists(inbox.resolve("contract.sig")));
+    assertTrue(isEmpty(inbox.resolve(WatchFolder.PROCESSING_DIRECTORY)));
+    assertTrue(isEmpty(errors));
+  }
+
+  @Test
+  public void itReportsFailedDocuments() throws Exception {
+    Files.write(inbox.resolve("broken.pdf"), "not a pdf".getBytes());
+
+    watch(WatchFolder.CHAIN_PLACEHOLDER, errors.resolve("broken.error"));
+
+    assertTrue(Files.exists(errors.resolve("broken.pdf")));
+    assertTrue(
+        new String(
+          Files.readAllBytes(errors.resolve("broken.error")),
+          StandardCharsets.UTF_8
+        ).startsWith("STATUS=ERROR\n")
+    );
+    assertTrue(isEmpty(outbox));
+  }
+
+  @Test
+  public void itReclaimsDocumentsOfCrashedProcess() throws Exception {
+    Path processing = Files.createDirectory(
+        inbox.resolve(WatchFolder.PROCESSING_DIRECTORY)
+    );
+    Files.copy(unsignedPdfPath, processing.resolve("contract.pdf"));
+    Files.createDirectories(outbox);
+    Files.write(outbox.resolve(".contract.pdf.part"), new byte[] {1, 2, 3});
+
+    watch(WatchFolder.CHAIN_PLACEHOLDER, outbox.resolve("contract.digest"));
+
+    assertTrue(Files.exists(outbox.resolve("contract.pdf")));
+    assertFalse(Files.exists(outbox.resolve(".contract.pdf.part")));
+    assertTrue(isEmpty(processing));
+  }
+
+  /**
+   * Watch the inbox until the expected file shows up, then stop.
+   */
+  private void watch(String chain, Path expected) throws Exception {
+    WatchFolder watchFolder = new WatchFolder(
+        new ApplicationArguments(Collections.emptyList()).parse(),
+        inbox,
+        outbox,
+        errors,
+        chain,
+        2
+    );
+
+    Thread watchThread = new Thread(() -> {
+      try {
+        watchFolder.run();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    watchThread.start();
+
+    long deadline = System.currentTimeMillis() + 30000;
+    while (!Files.exists(expected) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    watchFolder.stop();
+    watchThread.join(30000);
+
+    assertTrue(Files.exists(expected));
+  }
+
+  private boolean isEmpty(Path path) throws IOException {
+    try (Stream<Path> files = Files.list(path)) {
+      return !files.findAny().isPresent();
+    }
+  }
+}